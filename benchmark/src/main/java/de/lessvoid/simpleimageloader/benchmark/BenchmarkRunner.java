@@ -0,0 +1,24 @@
+package de.lessvoid.simpleimageloader.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all benchmarks with the GC profiler enabled so that the results report ops/s as well as the bytes allocated
+ * per operation (gc.alloc.rate.norm). Any regular JMH command line option can be given to override the defaults,
+ * e.g. "-p size=1024" or "LoadBenchmark.flipped".
+ * @author void
+ */
+public class BenchmarkRunner {
+  public static void main(final String[] args) throws Exception {
+    CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+    ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLineOptions).addProfiler(GCProfiler.class);
+    if (commandLineOptions.getIncludes().isEmpty()) {
+      options.include(LoadBenchmark.class.getSimpleName());
+    }
+    new Runner(options.build()).run();
+  }
+}
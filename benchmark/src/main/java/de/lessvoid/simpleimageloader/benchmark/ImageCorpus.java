@@ -0,0 +1,92 @@
+package de.lessvoid.simpleimageloader.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Generates the synthetic images the benchmarks load. The pixels are a smooth gradient with some noise (so that PNG
+ * compression behaves somewhat like it does for real art) and a few blocks of the color key returned by
+ * getTransparentColor().
+ * @author void
+ */
+public class ImageCorpus {
+  private static final int[] TRANSPARENT_COLOR = new int[] { 255, 0, 255 };
+  private static final int TGA_HEADER_SIZE = 18;
+  private static final int TGA_TYPE_TRUECOLOR = 2;
+  private static final int KEY_BLOCK_SIZE = 16;
+
+  /**
+   * The color key painted into every generated image.
+   * @return the transparent color bytes (R, G, B)
+   */
+  public static int[] getTransparentColor() {
+    return TRANSPARENT_COLOR.clone();
+  }
+
+  /**
+   * Create the encoded bytes of a width x height RGB image in the given format.
+   * @param format "tga" or any format name ImageIO can write (e.g. "png")
+   * @param width the width of the image
+   * @param height the height of the image
+   * @return the encoded image
+   * @throws IOException
+   */
+  public static byte[] create(final String format, final int width, final int height) throws IOException {
+    int[] rgb = createPixels(width, height);
+    if ("tga".equals(format)) {
+      return encodeTGA(rgb, width, height);
+    }
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    image.setRGB(0, 0, width, height, rgb, 0, width);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    if (!ImageIO.write(image, format, out)) {
+      throw new IOException("No ImageIO writer for format: " + format);
+    }
+    return out.toByteArray();
+  }
+
+  private static int[] createPixels(final int width, final int height) {
+    Random random = new Random(width * 31L + height);
+    int[] rgb = new int[width * height];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int r = (x * 255 / width + random.nextInt(8)) & 0xFF;
+        int g = (y * 255 / height + random.nextInt(8)) & 0xFF;
+        int b = ((x + y) * 127 / (width + height) + random.nextInt(8)) & 0xFF;
+        if (((x / KEY_BLOCK_SIZE) + (y / KEY_BLOCK_SIZE)) % 7 == 0) {
+          r = TRANSPARENT_COLOR[0];
+          g = TRANSPARENT_COLOR[1];
+          b = TRANSPARENT_COLOR[2];
+        }
+        rgb[y * width + x] = (r << 16) | (g << 8) | b;
+      }
+    }
+    return rgb;
+  }
+
+  private static byte[] encodeTGA(final int[] rgb, final int width, final int height) {
+    byte[] data = new byte[TGA_HEADER_SIZE + width * height * 3];
+    data[2] = TGA_TYPE_TRUECOLOR;
+    data[12] = (byte) width;
+    data[13] = (byte) (width >> 8);
+    data[14] = (byte) height;
+    data[15] = (byte) (height >> 8);
+    data[16] = 24;
+
+    // TGA stores BGR pixels starting with the bottom row
+    int ofs = TGA_HEADER_SIZE;
+    for (int y = height - 1; y >= 0; y--) {
+      for (int x = 0; x < width; x++) {
+        int pixel = rgb[y * width + x];
+        data[ofs++] = (byte) pixel;
+        data[ofs++] = (byte) (pixel >> 8);
+        data[ofs++] = (byte) (pixel >> 16);
+      }
+    }
+    return data;
+  }
+}
@@ -0,0 +1,133 @@
+package de.lessvoid.simpleimageloader.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lessvoid.simpleimageloader.ImageData;
+import de.lessvoid.simpleimageloader.SimpleImageLoader;
+import de.lessvoid.simpleimageloader.SimpleImageLoaderConfig;
+
+/**
+ * Measures SimpleImageLoader.load() for every supported format, image size and SimpleImageLoaderConfig option.
+ *
+ * The "tga" format is handled by ImageTypeTGA, "png" by ImageTypePNG and "bmp" by the default ImageType
+ * (ImageTypeImageIO). The powerOfTwoSupport benchmark loads an image one pixel smaller than size in each dimension so
+ * that the padding actually happens and the result has the same size as the other benchmarks.
+ *
+ * The corpus is 24 bit RGB, and modeARGB and premultipliedAlpha only change anything for 32 bit data. Both benchmarks
+ * therefore add their option on top of forceAlpha(), so compare them against the forceAlpha benchmark, not against the
+ * baseline. allPixelOps runs the color key, modeARGB and premultipliedAlpha together since they share a single pass.
+ *
+ * @author void
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBenchmark {
+  @Param({ "tga", "png", "bmp" })
+  public String format;
+
+  @Param({ "64", "1024", "4096" })
+  public int size;
+
+  private SimpleImageLoader loader;
+  private String filename;
+  private byte[] image;
+  private byte[] npotImage;
+
+  private SimpleImageLoaderConfig defaultConfig;
+  private SimpleImageLoaderConfig flippedConfig;
+  private SimpleImageLoaderConfig forceAlphaConfig;
+  private SimpleImageLoaderConfig transparentConfig;
+  private SimpleImageLoaderConfig powerOfTwoSupportConfig;
+  private SimpleImageLoaderConfig modeARGBConfig;
+  private SimpleImageLoaderConfig premultipliedAlphaConfig;
+  private SimpleImageLoaderConfig allPixelOpsConfig;
+  private SimpleImageLoaderConfig subsampleConfig;
+
+  @Setup
+  public void setup() throws IOException {
+    loader = new SimpleImageLoader();
+    filename = "corpus." + format;
+    image = ImageCorpus.create(format, size, size);
+    npotImage = ImageCorpus.create(format, size - 1, size - 1);
+
+    defaultConfig = new SimpleImageLoaderConfig();
+    flippedConfig = new SimpleImageLoaderConfig().flipped();
+    forceAlphaConfig = new SimpleImageLoaderConfig().forceAlpha();
+    transparentConfig = new SimpleImageLoaderConfig().transparent(ImageCorpus.getTransparentColor());
+    powerOfTwoSupportConfig = new SimpleImageLoaderConfig().powerOfTwoSupport();
+
+    // ARGB and premultiplied alpha only change anything for 32 bit data
+    modeARGBConfig = new SimpleImageLoaderConfig().forceAlpha().modeARGB();
+    premultipliedAlphaConfig = new SimpleImageLoaderConfig().forceAlpha().premultipliedAlpha();
+
+    // all pixel operations at once - they run in a single pass
+    allPixelOpsConfig = new SimpleImageLoaderConfig()
+        .transparent(ImageCorpus.getTransparentColor())
+        .modeARGB()
+        .premultipliedAlpha();
+    subsampleConfig = new SimpleImageLoaderConfig().subsample(2);
+  }
+
+  @Benchmark
+  public ImageData baseline() throws IOException {
+    return loader.load(filename, new ByteArrayInputStream(image), defaultConfig);
+  }
+
+  @Benchmark
+  public ImageData flipped() throws IOException {
+    return loader.load(filename, new ByteArrayInputStream(image), flippedConfig);
+  }
+
+  @Benchmark
+  public ImageData forceAlpha() throws IOException {
+    return loader.load(filename, new ByteArrayInputStream(image), forceAlphaConfig);
+  }
+
+  @Benchmark
+  public ImageData transparent() throws IOException {
+    return loader.load(filename, new ByteArrayInputStream(image), transparentConfig);
+  }
+
+  @Benchmark
+  public ImageData powerOfTwoSupport() throws IOException {
+    return loader.load(filename, new ByteArrayInputStream(npotImage), powerOfTwoSupportConfig);
+  }
+
+  @Benchmark
+  public ImageData modeARGB() throws IOException {
+    return loader.load(filename, new ByteArrayInputStream(image), modeARGBConfig);
+  }
+
+  @Benchmark
+  public ImageData premultipliedAlpha() throws IOException {
+    return loader.load(filename, new ByteArrayInputStream(image), premultipliedAlphaConfig);
+  }
+
+  @Benchmark
+  public ImageData allPixelOps() throws IOException {
+    return loader.load(filename, new ByteArrayInputStream(image), allPixelOpsConfig);
+  }
+
+  @Benchmark
+  public ImageData subsample() throws IOException {
+    return loader.load(filename, new ByteArrayInputStream(image), subsampleConfig);
+  }
+}
@@ -0,0 +1,53 @@
+package de.lessvoid.simpleimageloader;
+
+/**
+ * The block compressed formats SimpleImageLoaderConfig.blockCompression() can encode the image data into. Both store
+ * blocks of 4x4 pixels, row by row, so the width and height of the compressed image data are multiples of 4.
+ *
+ * @author void
+ */
+public enum BlockCompression {
+
+  /**
+   * BC1 (DXT1) - 8 bytes per block, RGB with 1 bit alpha. Use GL_COMPRESSED_RGBA_S3TC_DXT1_EXT for images with alpha
+   * and GL_COMPRESSED_RGB_S3TC_DXT1_EXT for images without.
+   */
+  BC1(8),
+
+  /**
+   * BC3 (DXT5) - 16 bytes per block, RGB with interpolated 8 bit alpha. Use GL_COMPRESSED_RGBA_S3TC_DXT5_EXT.
+   */
+  BC3(16);
+
+  private final int blockSize;
+
+  private BlockCompression(final int blockSize) {
+    this.blockSize = blockSize;
+  }
+
+  /**
+   * The number of bytes of a 4x4 block.
+   * @return the block size in bytes
+   */
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  /**
+   * The number of bits per pixel (4 for BC1 and 8 for BC3).
+   * @return bits per pixel
+   */
+  public int getBitsPerPixel() {
+    return blockSize / 2;
+  }
+
+  /**
+   * The number of bytes of an image of the given size in this format, e.g. for glCompressedTexImage2D().
+   * @param width the width of the image in pixels
+   * @param height the height of the image in pixels
+   * @return the size in bytes
+   */
+  public int getSize(final int width, final int height) {
+    return (width + 3) / 4 * ((height + 3) / 4) * blockSize;
+  }
+}
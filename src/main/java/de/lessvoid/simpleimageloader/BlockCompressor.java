@@ -0,0 +1,482 @@
+package de.lessvoid.simpleimageloader;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import de.lessvoid.simpleimageloader.buffer.BufferAllocator;
+
+/**
+ * Encodes loaded 24 or 32 bit image data into BC1 or BC3 blocks.
+ *
+ * The two endpoint colors of each block are found by projecting the colors onto their principal axis and taking the
+ * extremes, the pixels then get the index of the closest color of the palette. For BC1 pixels with an alpha below 128
+ * become transparent (using the three color mode of the block) and are left out of the color fit. BC3 stores the
+ * alpha values in a separate block with the minimum and maximum alpha as endpoints.
+ *
+ * The block rows of a level are encoded in parallel with the common ForkJoinPool into a byte array. The result is
+ * only written to the buffer from the allocator once everything has been encoded because with a
+ * DestinationBufferAllocator it is the same memory the source data is read from.
+ *
+ * @author void
+ */
+final class BlockCompressor {
+  private static final int TRANSPARENT_THRESHOLD = 128;
+  private static final int BLOCK_ROWS_PER_TASK = 4;
+  private static final int POWER_ITERATIONS = 8;
+
+  private BlockCompressor() {
+  }
+
+  /**
+   * Pad the image data to a multiple of 4 in both directions by repeating the last column and row. The mipmap levels
+   * need to be calculated from the padded image so that their sizes match the compressed levels. Image data that is
+   * already a multiple of 4 is returned as it is, otherwise the given imageData is released.
+   *
+   * @param imageData the image data without mipmaps
+   * @param allocator the BufferAllocator to get the ByteBuffer for the padded image from
+   * @return the padded ImageData instance
+   */
+  static ImageData align(final ImageData imageData, final BufferAllocator allocator) {
+    int width = imageData.getWidth();
+    int height = imageData.getHeight();
+    int alignedWidth = align(width);
+    int alignedHeight = align(height);
+    if (alignedWidth == width && alignedHeight == height) {
+      return imageData;
+    }
+
+    int perPixel = imageData.getBitsPerPixel() / 8;
+    int stride = width * perPixel;
+    int alignedStride = alignedWidth * perPixel;
+    ByteBuffer source = imageData.getData().duplicate();
+    ByteBuffer target = allocator.allocate(alignedStride * alignedHeight);
+    byte[] row = new byte[alignedStride];
+
+    // the rows only move towards the end so going from the last row up works in place as well
+    for (int y = alignedHeight - 1; y >= 0; y--) {
+      source.position(Math.min(y, height - 1) * stride);
+      source.get(row, 0, stride);
+      for (int x = width; x < alignedWidth; x++) {
+        System.arraycopy(row, (width - 1) * perPixel, row, x * perPixel, perPixel);
+      }
+      target.position(y * alignedStride);
+      target.put(row);
+    }
+    target.rewind();
+    imageData.release();
+
+    return new ImageData(
+        alignedWidth,
+        alignedHeight,
+        imageData.getOriginalWidth(),
+        imageData.getOriginalHeight(),
+        imageData.getBitsPerPixel(),
+        imageData.getPixelFormat(),
+        target,
+        allocator,
+        null,
+        null);
+  }
+
+  /**
+   * Create a new ImageData with all mipmap levels of the given image data compressed. The given imageData is released.
+   *
+   * @param imageData the RGB, RGBA or BGRA image data
+   * @param compression the format to encode into
+   * @param modeARGB true when the 32 bit data is stored as BGRA
+   * @param allocator the BufferAllocator to get the ByteBuffer for the compressed data from
+   * @return the new ImageData instance
+   */
+  static ImageData compress(
+      final ImageData imageData,
+      final BlockCompression compression,
+      final boolean modeARGB,
+      final BufferAllocator allocator) {
+    PixelFormat format = imageData.getPixelFormat();
+    if (format != PixelFormat.RGB && format != PixelFormat.RGBA && format != PixelFormat.BGRA) {
+      throw new IllegalArgumentException("Can't compress " + format + " image data");
+    }
+    int perPixel = format.getBitsPerPixel() / 8;
+
+    int levels = imageData.getMipmapCount();
+    byte[][] blocks = new byte[levels][];
+    int[] offsets = new int[levels];
+    int size = 0;
+    for (int level = 0; level < levels; level++) {
+      offsets[level] = size;
+      blocks[level] = encode(
+          imageData.getMipmapData(level),
+          imageData.getMipmapWidth(level),
+          imageData.getMipmapHeight(level),
+          perPixel,
+          modeARGB,
+          compression);
+      size += blocks[level].length;
+    }
+    imageData.release();
+
+    ByteBuffer data = allocator.allocate(size);
+    for (byte[] level : blocks) {
+      data.put(level);
+    }
+    data.rewind();
+
+    return new ImageData(
+        align(imageData.getWidth()),
+        align(imageData.getHeight()),
+        imageData.getOriginalWidth(),
+        imageData.getOriginalHeight(),
+        compression.getBitsPerPixel(),
+        format,
+        data,
+        allocator,
+        offsets,
+        compression);
+  }
+
+  private static byte[] encode(
+      final ByteBuffer source,
+      final int width,
+      final int height,
+      final int perPixel,
+      final boolean modeARGB,
+      final BlockCompression compression) {
+    Level level = new Level(source, width, height, perPixel, modeARGB, compression);
+    int blockRows = (height + 3) / 4;
+    if (blockRows <= BLOCK_ROWS_PER_TASK) {
+      // not worth handing small levels to other threads
+      level.encodeRows(0, blockRows);
+    } else {
+      ForkJoinPool.commonPool().invoke(new EncodeTask(level, 0, blockRows));
+    }
+    return level.blocks;
+  }
+
+  private static int align(final int value) {
+    return (value + 3) / 4 * 4;
+  }
+
+  /**
+   * Splits the block rows of a level until there are only a few left to encode.
+   */
+  private static class EncodeTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final Level level;
+    private final int start;
+    private final int end;
+
+    private EncodeTask(final Level level, final int start, final int end) {
+      this.level = level;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start <= BLOCK_ROWS_PER_TASK) {
+        level.encodeRows(start, end);
+        return;
+      }
+      int middle = (start + end) >>> 1;
+      invokeAll(new EncodeTask(level, start, middle), new EncodeTask(level, middle, end));
+    }
+  }
+
+  /**
+   * A single mipmap level. Each block row is only written by one task so they don't need to synchronize.
+   */
+  private static class Level {
+    private final ByteBuffer source;
+    private final int width;
+    private final int height;
+    private final int perPixel;
+    private final int redOffset;
+    private final int blueOffset;
+    private final BlockCompression compression;
+    private final int blocksPerRow;
+    private final byte[] blocks;
+
+    private Level(
+        final ByteBuffer source,
+        final int width,
+        final int height,
+        final int perPixel,
+        final boolean modeARGB,
+        final BlockCompression compression) {
+      this.source = source;
+      this.width = width;
+      this.height = height;
+      this.perPixel = perPixel;
+      // modeARGB only applies to 32 bit data
+      this.redOffset = modeARGB && perPixel == 4 ? 2 : 0;
+      this.blueOffset = modeARGB && perPixel == 4 ? 0 : 2;
+      this.compression = compression;
+      this.blocksPerRow = (width + 3) / 4;
+      this.blocks = new byte[compression.getSize(width, height)];
+    }
+
+    private void encodeRows(final int start, final int end) {
+      ByteBuffer in = source.duplicate();
+      int stride = width * perPixel;
+      byte[][] rows = new byte[4][stride];
+      Block block = new Block();
+
+      for (int blockRow = start; blockRow < end; blockRow++) {
+        for (int y = 0; y < 4; y++) {
+          // partial blocks at the edge repeat the last row and column
+          in.position(Math.min(blockRow * 4 + y, height - 1) * stride);
+          in.get(rows[y]);
+        }
+        for (int blockColumn = 0; blockColumn < blocksPerRow; blockColumn++) {
+          for (int i = 0; i < 16; i++) {
+            int p = Math.min(blockColumn * 4 + (i & 3), width - 1) * perPixel;
+            byte[] row = rows[i >> 2];
+            block.red[i] = row[p + redOffset] & 0xFF;
+            block.green[i] = row[p + 1] & 0xFF;
+            block.blue[i] = row[p + blueOffset] & 0xFF;
+            block.alpha[i] = perPixel == 4 ? row[p + 3] & 0xFF : 255;
+          }
+          int offset = (blockRow * blocksPerRow + blockColumn) * compression.getBlockSize();
+          if (compression == BlockCompression.BC3) {
+            block.encodeAlpha(blocks, offset);
+            block.encodeColor(blocks, offset + 8, false);
+          } else {
+            block.encodeColor(blocks, offset, true);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * The 16 pixels of a block and the encoding of their colors and alpha values.
+   */
+  private static class Block {
+    private final int[] red = new int[16];
+    private final int[] green = new int[16];
+    private final int[] blue = new int[16];
+    private final int[] alpha = new int[16];
+    private final boolean[] opaque = new boolean[16];
+    private final int[] palette = new int[4 * 3];
+
+    private void encodeColor(final byte[] target, final int offset, final boolean oneBitAlpha) {
+      boolean transparent = false;
+      int count = 0;
+      float meanRed = 0;
+      float meanGreen = 0;
+      float meanBlue = 0;
+      for (int i = 0; i < 16; i++) {
+        opaque[i] = !oneBitAlpha || alpha[i] >= TRANSPARENT_THRESHOLD;
+        if (opaque[i]) {
+          count++;
+          meanRed += red[i];
+          meanGreen += green[i];
+          meanBlue += blue[i];
+        } else {
+          transparent = true;
+        }
+      }
+      if (count == 0) {
+        // color0 <= color1 selects the three color mode and index 3 is transparent
+        writeColorBlock(target, offset, 0, 0, 0xFFFFFFFF);
+        return;
+      }
+      meanRed /= count;
+      meanGreen /= count;
+      meanBlue /= count;
+
+      float[] axis = principalAxis(meanRed, meanGreen, meanBlue);
+      float min = Float.MAX_VALUE;
+      float max = -Float.MAX_VALUE;
+      for (int i = 0; i < 16; i++) {
+        if (opaque[i]) {
+          float t = (red[i] - meanRed) * axis[0] + (green[i] - meanGreen) * axis[1] + (blue[i] - meanBlue) * axis[2];
+          min = Math.min(min, t);
+          max = Math.max(max, t);
+        }
+      }
+      int color0 = toRGB565(meanRed + axis[0] * max, meanGreen + axis[1] * max, meanBlue + axis[2] * max);
+      int color1 = toRGB565(meanRed + axis[0] * min, meanGreen + axis[1] * min, meanBlue + axis[2] * min);
+
+      // the order of the endpoints selects the mode of the block
+      if (transparent ? color0 > color1 : color0 < color1) {
+        int swap = color0;
+        color0 = color1;
+        color1 = swap;
+      }
+      if (color0 == color1 && !transparent) {
+        // both endpoints are the same color which is index 0 in either mode
+        writeColorBlock(target, offset, color0, color1, 0);
+        return;
+      }
+
+      fillPalette(color0, color1, transparent);
+      int colors = transparent ? 3 : 4;
+      int indices = 0;
+      for (int i = 15; i >= 0; i--) {
+        indices = (indices << 2) | (opaque[i] ? closestColor(i, colors) : 3);
+      }
+      writeColorBlock(target, offset, color0, color1, indices);
+    }
+
+    private void encodeAlpha(final byte[] target, final int offset) {
+      int alpha0 = 0;
+      int alpha1 = 255;
+      for (int i = 0; i < 16; i++) {
+        alpha0 = Math.max(alpha0, alpha[i]);
+        alpha1 = Math.min(alpha1, alpha[i]);
+      }
+      target[offset] = (byte) alpha0;
+      target[offset + 1] = (byte) alpha1;
+
+      long indices = 0;
+      if (alpha0 != alpha1) {
+        // alpha0 > alpha1 selects the eight value mode: the two endpoints and six values in between
+        int[] values = new int[8];
+        values[0] = alpha0;
+        values[1] = alpha1;
+        for (int i = 1; i < 7; i++) {
+          values[i + 1] = ((7 - i) * alpha0 + i * alpha1 + 3) / 7;
+        }
+        for (int i = 15; i >= 0; i--) {
+          int best = 0;
+          int bestError = Integer.MAX_VALUE;
+          for (int v = 0; v < 8; v++) {
+            int error = Math.abs(values[v] - alpha[i]);
+            if (error < bestError) {
+              bestError = error;
+              best = v;
+            }
+          }
+          indices = (indices << 3) | best;
+        }
+      }
+      for (int i = 0; i < 6; i++) {
+        target[offset + 2 + i] = (byte) (indices >>> (i * 8));
+      }
+    }
+
+    /**
+     * The direction in which the opaque colors spread the most, found by power iteration on their covariance matrix.
+     */
+    private float[] principalAxis(final float meanRed, final float meanGreen, final float meanBlue) {
+      float rr = 0;
+      float rg = 0;
+      float rb = 0;
+      float gg = 0;
+      float gb = 0;
+      float bb = 0;
+      for (int i = 0; i < 16; i++) {
+        if (opaque[i]) {
+          float r = red[i] - meanRed;
+          float g = green[i] - meanGreen;
+          float b = blue[i] - meanBlue;
+          rr += r * r;
+          rg += r * g;
+          rb += r * b;
+          gg += g * g;
+          gb += g * b;
+          bb += b * b;
+        }
+      }
+
+      // start with the row of the channel that varies the most so that the start isn't orthogonal to the axis
+      float[] axis;
+      if (rr >= gg && rr >= bb) {
+        axis = new float[] { rr, rg, rb };
+      } else if (gg >= bb) {
+        axis = new float[] { rg, gg, gb };
+      } else {
+        axis = new float[] { rb, gb, bb };
+      }
+      for (int i = 0; i < POWER_ITERATIONS; i++) {
+        float r = rr * axis[0] + rg * axis[1] + rb * axis[2];
+        float g = rg * axis[0] + gg * axis[1] + gb * axis[2];
+        float b = rb * axis[0] + gb * axis[1] + bb * axis[2];
+        float length = Math.max(Math.abs(r), Math.max(Math.abs(g), Math.abs(b)));
+        if (length == 0) {
+          break;
+        }
+        axis[0] = r / length;
+        axis[1] = g / length;
+        axis[2] = b / length;
+      }
+
+      float length = (float) Math.sqrt(axis[0] * axis[0] + axis[1] * axis[1] + axis[2] * axis[2]);
+      if (length > 0) {
+        axis[0] /= length;
+        axis[1] /= length;
+        axis[2] /= length;
+      }
+      return axis;
+    }
+
+    private void fillPalette(final int color0, final int color1, final boolean transparent) {
+      expand(color0, 0);
+      expand(color1, 3);
+      for (int c = 0; c < 3; c++) {
+        int c0 = palette[c];
+        int c1 = palette[3 + c];
+        if (transparent) {
+          palette[6 + c] = (c0 + c1) / 2;
+        } else {
+          palette[6 + c] = (2 * c0 + c1) / 3;
+          palette[9 + c] = (c0 + 2 * c1) / 3;
+        }
+      }
+    }
+
+    private void expand(final int color, final int offset) {
+      int r = color >> 11;
+      int g = (color >> 5) & 0x3F;
+      int b = color & 0x1F;
+      palette[offset] = (r << 3) | (r >> 2);
+      palette[offset + 1] = (g << 2) | (g >> 4);
+      palette[offset + 2] = (b << 3) | (b >> 2);
+    }
+
+    private int closestColor(final int pixel, final int colors) {
+      int best = 0;
+      int bestError = Integer.MAX_VALUE;
+      for (int i = 0; i < colors; i++) {
+        int r = palette[i * 3] - red[pixel];
+        int g = palette[i * 3 + 1] - green[pixel];
+        int b = palette[i * 3 + 2] - blue[pixel];
+        int error = r * r + g * g + b * b;
+        if (error < bestError) {
+          bestError = error;
+          best = i;
+        }
+      }
+      return best;
+    }
+
+    private int toRGB565(final float red, final float green, final float blue) {
+      int r = Math.round(clamp(red) * 31 / 255);
+      int g = Math.round(clamp(green) * 63 / 255);
+      int b = Math.round(clamp(blue) * 31 / 255);
+      return (r << 11) | (g << 5) | b;
+    }
+
+    private float clamp(final float value) {
+      return Math.max(0, Math.min(255, value));
+    }
+
+    private void writeColorBlock(
+        final byte[] target,
+        final int offset,
+        final int color0,
+        final int color1,
+        final int indices) {
+      target[offset] = (byte) color0;
+      target[offset + 1] = (byte) (color0 >> 8);
+      target[offset + 2] = (byte) color1;
+      target[offset + 3] = (byte) (color1 >> 8);
+      target[offset + 4] = (byte) indices;
+      target[offset + 5] = (byte) (indices >> 8);
+      target[offset + 6] = (byte) (indices >> 16);
+      target[offset + 7] = (byte) (indices >> 24);
+    }
+  }
+}
@@ -1,6 +1,9 @@
 package de.lessvoid.simpleimageloader;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import de.lessvoid.simpleimageloader.buffer.BufferAllocator;
 
 /**
  * The actual image data loaded.
@@ -12,7 +15,12 @@ public class ImageData {
   private final int originalWidth;
   private final int originalHeight;
   private final int bitsPerPixel;
+  private final PixelFormat pixelFormat;
   private final ByteBuffer data;
+  private final BufferAllocator allocator;
+  private final Runnable onRelease;
+  private final int[] mipmapOffsets;
+  private final BlockCompression blockCompression;
 
   /**
    * Create a new ImageData instance.
@@ -31,12 +39,153 @@ public class ImageData {
       final int originalHeight,
       final int bitsPerPixel,
       final ByteBuffer data) {
+    this(width, height, originalWidth, originalHeight, bitsPerPixel, data, null);
+  }
+
+  /**
+   * Create a new ImageData instance with data that has been retrieved from a BufferAllocator.
+   *
+   * @param width the width of the image data (possible corrected for power of two)
+   * @param height the height of the image data (possible corrected for power of two)
+   * @param originalWidth the original width of the image
+   * @param originalHeight the original height of the image
+   * @param bitsPerPixel number of bits per pixel (might be 24 or 32)
+   * @param data the ByteBuffer with the actual data
+   * @param allocator the BufferAllocator the data will be given back to on release() (might be null)
+   */
+  public ImageData(
+      final int width,
+      final int height,
+      final int originalWidth,
+      final int originalHeight,
+      final int bitsPerPixel,
+      final ByteBuffer data,
+      final BufferAllocator allocator) {
+    this(width, height, originalWidth, originalHeight, bitsPerPixel, data, allocator, null);
+  }
+
+  /**
+   * Create a new ImageData instance with a mipmap chain. All levels are stored one after another in data, each level
+   * half the width and height of the one before (but at least 1) down to 1x1.
+   *
+   * @param width the width of the image data (possible corrected for power of two)
+   * @param height the height of the image data (possible corrected for power of two)
+   * @param originalWidth the original width of the image
+   * @param originalHeight the original height of the image
+   * @param bitsPerPixel number of bits per pixel (24 or 32 for RGB or RGBA)
+   * @param data the ByteBuffer with the actual data
+   * @param allocator the BufferAllocator the data will be given back to on release() (might be null)
+   * @param mipmapOffsets the offset of each level in data starting with 0 for the full size image (null for no mipmaps)
+   */
+  public ImageData(
+      final int width,
+      final int height,
+      final int originalWidth,
+      final int originalHeight,
+      final int bitsPerPixel,
+      final ByteBuffer data,
+      final BufferAllocator allocator,
+      final int[] mipmapOffsets) {
+    this(
+        width,
+        height,
+        originalWidth,
+        originalHeight,
+        bitsPerPixel,
+        bitsPerPixel == 24 ? PixelFormat.RGB : bitsPerPixel == 32 ? PixelFormat.RGBA : null,
+        data,
+        allocator,
+        mipmapOffsets,
+        null);
+  }
+
+  /**
+   * Create a new ImageData instance with data in the given PixelFormat that has been retrieved from a
+   * BufferAllocator.
+   *
+   * @param width the width of the image data (possible corrected for power of two)
+   * @param height the height of the image data (possible corrected for power of two)
+   * @param originalWidth the original width of the image
+   * @param originalHeight the original height of the image
+   * @param pixelFormat the format of the pixels
+   * @param data the ByteBuffer with the actual data
+   * @param allocator the BufferAllocator the data will be given back to on release() (might be null)
+   */
+  public ImageData(
+      final int width,
+      final int height,
+      final int originalWidth,
+      final int originalHeight,
+      final PixelFormat pixelFormat,
+      final ByteBuffer data,
+      final BufferAllocator allocator) {
+    this(
+        width,
+        height,
+        originalWidth,
+        originalHeight,
+        pixelFormat.getBitsPerPixel(),
+        pixelFormat,
+        data,
+        allocator,
+        null,
+        null);
+  }
+
+  /**
+   * Create a new ImageData instance with everything there is. For block compressed data width and height are
+   * multiples of 4, each mipmap level is stored as a whole number of 4x4 blocks and pixelFormat is the format of the
+   * pixels before they have been compressed.
+   *
+   * @param width the width of the image data (possible corrected for power of two)
+   * @param height the height of the image data (possible corrected for power of two)
+   * @param originalWidth the original width of the image
+   * @param originalHeight the original height of the image
+   * @param bitsPerPixel number of bits per pixel (4 for BC1 and 8 for BC3)
+   * @param pixelFormat the format of the pixels (might be null when the format is unknown)
+   * @param data the ByteBuffer with the actual data
+   * @param allocator the BufferAllocator the data will be given back to on release() (might be null)
+   * @param mipmapOffsets the offset of each level in data starting with 0 for the full size image (null for no mipmaps)
+   * @param blockCompression the format of the data (null for uncompressed data)
+   */
+  public ImageData(
+      final int width,
+      final int height,
+      final int originalWidth,
+      final int originalHeight,
+      final int bitsPerPixel,
+      final PixelFormat pixelFormat,
+      final ByteBuffer data,
+      final BufferAllocator allocator,
+      final int[] mipmapOffsets,
+      final BlockCompression blockCompression) {
+    this(width, height, originalWidth, originalHeight, bitsPerPixel, pixelFormat, data, allocator, null, mipmapOffsets,
+        blockCompression);
+  }
+
+  private ImageData(
+      final int width,
+      final int height,
+      final int originalWidth,
+      final int originalHeight,
+      final int bitsPerPixel,
+      final PixelFormat pixelFormat,
+      final ByteBuffer data,
+      final BufferAllocator allocator,
+      final Runnable onRelease,
+      final int[] mipmapOffsets,
+      final BlockCompression blockCompression) {
     this.bitsPerPixel = bitsPerPixel;
+    this.pixelFormat = pixelFormat;
     this.width = width;
     this.height = height;
     this.originalWidth = originalWidth;
     this.originalHeight = originalHeight;
     this.data = data;
+    this.allocator = allocator;
+    this.onRelease = onRelease;
+    this.mipmapOffsets = mipmapOffsets == null ? new int[] { 0 } : mipmapOffsets.clone();
+    this.blockCompression = blockCompression;
   }
 
   /**
@@ -79,6 +228,23 @@ public class ImageData {
     return bitsPerPixel;
   }
 
+  /**
+   * The format of the pixels. For block compressed data this is the format the pixels had before they have been
+   * compressed.
+   * @return the PixelFormat or null when it is unknown (ImageData created with an unusual bitsPerPixel value)
+   */
+  public PixelFormat getPixelFormat() {
+    return pixelFormat;
+  }
+
+  /**
+   * The block compressed format of the data.
+   * @return the BlockCompression or null when the data is not compressed
+   */
+  public BlockCompression getBlockCompression() {
+    return blockCompression;
+  }
+
   /**
    * The actual bytes of the image data.
    * @return ByteBuffer with the actual image data
@@ -86,4 +252,99 @@ public class ImageData {
   public ByteBuffer getData() {
     return data;
   }
+
+  /**
+   * The number of mipmap levels in the data. This is 1 when the image has been loaded without mipmaps.
+   * @return the number of levels including the full size image
+   */
+  public int getMipmapCount() {
+    return mipmapOffsets.length;
+  }
+
+  /**
+   * The offset of the given mipmap level in the ByteBuffer returned by getData().
+   * @param level the level, 0 is the full size image
+   * @return the offset in bytes
+   */
+  public int getMipmapOffset(final int level) {
+    return mipmapOffsets[level];
+  }
+
+  /**
+   * The width of the given mipmap level.
+   * @param level the level, 0 is the full size image
+   * @return the width of the level
+   */
+  public int getMipmapWidth(final int level) {
+    return Math.max(1, width >> level);
+  }
+
+  /**
+   * The height of the given mipmap level.
+   * @param level the level, 0 is the full size image
+   * @return the height of the level
+   */
+  public int getMipmapHeight(final int level) {
+    return Math.max(1, height >> level);
+  }
+
+  /**
+   * A view of the data of the given mipmap level, e.g. for glTexImage2D().
+   * @param level the level, 0 is the full size image
+   * @return a ByteBuffer that shares its content with the data of this ImageData
+   */
+  public ByteBuffer getMipmapData(final int level) {
+    ByteBuffer view = data.duplicate();
+    int end = level + 1 < mipmapOffsets.length ? mipmapOffsets[level + 1] : data.limit();
+    view.limit(end).position(mipmapOffsets[level]);
+    return view.slice().order(data.order());
+  }
+
+  /**
+   * Give the ByteBuffer back to the BufferAllocator it has been allocated from so that it can be reused for another
+   * image. Call this once you're done with the data, e.g. after it has been uploaded to a texture. The ByteBuffer must
+   * not be accessed anymore afterwards. When the data has not been allocated from a BufferAllocator this does nothing.
+   */
+  public void release() {
+    if (allocator != null) {
+      allocator.release(data);
+    }
+    if (onRelease != null) {
+      onRelease.run();
+    }
+  }
+
+  /**
+   * Create an ImageData that shares the data of this one but can't modify it. Calling release() on the returned
+   * ImageData does nothing. This is used to hand out the same image data to several users, e.g. by the ImageCache.
+   *
+   * @return a new ImageData instance with a read only view of the data
+   */
+  public ImageData asReadOnly() {
+    return asReadOnly(null);
+  }
+
+  /**
+   * Create an ImageData that shares the data of this one but can't modify it. Calling release() on the returned
+   * ImageData runs onRelease instead of giving the data back, which allows the owner of the data to count the users of
+   * the data, e.g. the ImageCache.
+   *
+   * @param onRelease what release() of the view does (might be null)
+   * @return a new ImageData instance with a read only view of the data
+   */
+  public ImageData asReadOnly(final Runnable onRelease) {
+    ByteBuffer view = data.asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+    return new ImageData(
+        width,
+        height,
+        originalWidth,
+        originalHeight,
+        bitsPerPixel,
+        pixelFormat,
+        view,
+        null,
+        onRelease,
+        mipmapOffsets,
+        blockCompression);
+  }
 }
@@ -0,0 +1,91 @@
+package de.lessvoid.simpleimageloader;
+
+/**
+ * The basic properties of an image that can be read from its header without decoding the image data. See
+ * SimpleImageLoader.probe().
+ * @author void
+ */
+public class ImageInfo {
+  private final int width;
+  private final int height;
+  private final int bitsPerPixel;
+  private final boolean alpha;
+
+  /**
+   * Create a new ImageInfo instance.
+   *
+   * @param width the width of the image
+   * @param height the height of the image
+   * @param bitsPerPixel the number of bits per pixel in the image file
+   * @param alpha true when the image has an alpha channel or any other kind of transparency
+   */
+  public ImageInfo(final int width, final int height, final int bitsPerPixel, final boolean alpha) {
+    this.width = width;
+    this.height = height;
+    this.bitsPerPixel = bitsPerPixel;
+    this.alpha = alpha;
+  }
+
+  /**
+   * The width of the image.
+   * @return the width
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * The height of the image.
+   * @return the height
+   */
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * The number of bits per pixel in the image file, e.g. 8 for a palette image or 64 for a 16 bit RGBA PNG. The loaded
+   * ImageData always has 24 or 32 bits per pixel.
+   * @return the number of bits per pixel
+   */
+  public int getBitsPerPixel() {
+    return bitsPerPixel;
+  }
+
+  /**
+   * Returns true when the image has an alpha channel or any other kind of transparency. Such images are loaded as 32
+   * bit and all others as 24 bit (unless forceAlpha or a transparent color is configured).
+   * @return true when the image has alpha
+   */
+  public boolean hasAlpha() {
+    return alpha;
+  }
+
+  /**
+   * The width of the image data when it is loaded with powerOfTwoSupport.
+   * @return the power of two width
+   */
+  public int getPowerOfTwoWidth() {
+    return get2Fold(width);
+  }
+
+  /**
+   * The height of the image data when it is loaded with powerOfTwoSupport.
+   * @return the power of two height
+   */
+  public int getPowerOfTwoHeight() {
+    return get2Fold(height);
+  }
+
+  @Override
+  public String toString() {
+    return "ImageInfo[" + width + "x" + height + ", " + bitsPerPixel + " bpp, alpha=" + alpha + "]";
+  }
+
+  private int get2Fold(int fold) {
+    int ret = 2;
+    while (ret < fold) {
+      ret *= 2;
+    }
+    return ret;
+  }
+}
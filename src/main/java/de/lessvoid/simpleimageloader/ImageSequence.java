@@ -0,0 +1,306 @@
+package de.lessvoid.simpleimageloader;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import de.lessvoid.simpleimageloader.buffer.BufferAllocator;
+
+/**
+ * The frames of an animated image (GIF or APNG). Every frame is fully composited - the disposal and blending of the
+ * frames before it have been applied - and stored in its own slice of a single ByteBuffer, one slice after the other,
+ * so that getData() can be uploaded as a 2D array texture with glTexImage3D() and a depth of getFrameCount().
+ *
+ * The ByteBuffer is allocated when the sequence is loaded, but the frames are decoded on demand: getFrame() decodes
+ * the frames up to the requested one, getData() decodes all of them and decodeAsync() decodes the remaining frames in
+ * the background. Since each frame builds on the one before the frames are always decoded in order. All methods can
+ * be called from any thread. Interrupting a thread that decodes frames only aborts that call, a later call continues
+ * with the frame that has been interrupted.
+ *
+ * @author void
+ */
+public class ImageSequence {
+  private final int width;
+  private final int height;
+  private final int originalWidth;
+  private final int originalHeight;
+  private final PixelFormat pixelFormat;
+  private final int[] delays;
+  private final int playCount;
+  private final ByteBuffer data;
+  private final BufferAllocator allocator;
+  private final int frameSize;
+  private FrameDecoder decoder;
+  private int decodedFrames;
+  private IOException failure;
+  private boolean released;
+
+  /**
+   * Decodes the frames of an ImageSequence one after the other.
+   */
+  public interface FrameDecoder {
+
+    /**
+     * Decode the given frame into target. The frames are requested in order, starting with 0. A frame that has been
+     * aborted with an InterruptedIOException is requested again.
+     *
+     * @param frame the index of the frame
+     * @param target the slice of the frame, from position 0 to its limit
+     * @throws IOException
+     */
+    void decodeFrame(int frame, ByteBuffer target) throws IOException;
+
+    /**
+     * Free everything the decoder holds. This is called once all frames have been decoded, when decoding a frame
+     * failed or when the ImageSequence is released before.
+     */
+    void close();
+  }
+
+  /**
+   * Create a new ImageSequence.
+   *
+   * @param width the width of each frame in the data (possible corrected for power of two)
+   * @param height the height of each frame in the data (possible corrected for power of two)
+   * @param originalWidth the original width of the animation
+   * @param originalHeight the original height of the animation
+   * @param pixelFormat the format of the pixels
+   * @param delays the time each frame is shown in milliseconds, one entry per frame
+   * @param playCount how often the animation is played, 0 to play it forever
+   * @param data the ByteBuffer with room for all frames
+   * @param allocator the BufferAllocator the data will be given back to on release() (might be null)
+   * @param decoder the FrameDecoder that fills in the frames or null when data already contains all of them
+   */
+  public ImageSequence(
+      final int width,
+      final int height,
+      final int originalWidth,
+      final int originalHeight,
+      final PixelFormat pixelFormat,
+      final int[] delays,
+      final int playCount,
+      final ByteBuffer data,
+      final BufferAllocator allocator,
+      final FrameDecoder decoder) {
+    this.width = width;
+    this.height = height;
+    this.originalWidth = originalWidth;
+    this.originalHeight = originalHeight;
+    this.pixelFormat = pixelFormat;
+    this.delays = delays.clone();
+    this.playCount = playCount;
+    this.data = data;
+    this.allocator = allocator;
+    this.frameSize = width * height * pixelFormat.getBitsPerPixel() / 8;
+    this.decoder = decoder;
+    this.decodedFrames = decoder == null ? delays.length : 0;
+  }
+
+  /**
+   * The - possible adjusted for power of two - width of each frame. This is the width of the texture.
+   * @return the width of a frame
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * The - possible adjusted for power of two - height of each frame. This is the height of the texture.
+   * @return the height of a frame
+   */
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * The original width of the animation.
+   * @return the original width
+   */
+  public int getOriginalWidth() {
+    return originalWidth;
+  }
+
+  /**
+   * The original height of the animation.
+   * @return the original height
+   */
+  public int getOriginalHeight() {
+    return originalHeight;
+  }
+
+  /**
+   * The format of the pixels of all frames.
+   * @return the PixelFormat
+   */
+  public PixelFormat getPixelFormat() {
+    return pixelFormat;
+  }
+
+  /**
+   * Get bits per pixel.
+   * @return returns the number of bits per pixel
+   */
+  public int getBitsPerPixel() {
+    return pixelFormat.getBitsPerPixel();
+  }
+
+  /**
+   * The number of frames. This is the depth of the array texture.
+   * @return the number of frames
+   */
+  public int getFrameCount() {
+    return delays.length;
+  }
+
+  /**
+   * The number of bytes of each frame in the data.
+   * @return the size of a frame in bytes
+   */
+  public int getFrameSize() {
+    return frameSize;
+  }
+
+  /**
+   * The time the given frame is shown before the next one.
+   * @param frame the index of the frame
+   * @return the delay in milliseconds
+   */
+  public int getDelay(final int frame) {
+    return delays[frame];
+  }
+
+  /**
+   * How often the animation is played.
+   * @return the number of times the animation is played, 0 when it is played forever
+   */
+  public int getPlayCount() {
+    return playCount;
+  }
+
+  /**
+   * The number of frames that have been decoded so far. getFrame() returns frames below this without decoding.
+   * @return the number of decoded frames
+   */
+  public synchronized int getDecodedFrameCount() {
+    return decodedFrames;
+  }
+
+  /**
+   * Returns the given frame, decoding it and all frames before it first if that hasn't happened yet. The ImageData
+   * shares its data with this ImageSequence, calling release() on it has no effect.
+   *
+   * @param frame the index of the frame
+   * @return the ImageData of the frame
+   * @throws IOException when decoding the frame fails
+   */
+  public ImageData getFrame(final int frame) throws IOException {
+    if (frame < 0 || frame >= delays.length) {
+      throw new IndexOutOfBoundsException("Frame " + frame + " of " + delays.length + " frames");
+    }
+    decode(frame + 1);
+    return new ImageData(width, height, originalWidth, originalHeight, pixelFormat, slice(frame), null);
+  }
+
+  /**
+   * Returns the data of all frames, decoding the ones that haven't been decoded yet first.
+   *
+   * @return a ByteBuffer that shares its content with this ImageSequence
+   * @throws IOException when decoding a frame fails
+   */
+  public ByteBuffer getData() throws IOException {
+    decode(delays.length);
+    ByteBuffer view = data.duplicate();
+    view.limit(frameSize * delays.length).position(0);
+    return view.order(data.order());
+  }
+
+  /**
+   * Decode all remaining frames in the background. Each frame is decoded on its own, so getFrame() calls from other
+   * threads are served as soon as their frame is done. Cancelling the returned CompletableFuture stops decoding after
+   * the current frame.
+   *
+   * @param executor the Executor to decode the frames with
+   * @return a CompletableFuture that will be completed with this ImageSequence once all frames are decoded
+   */
+  public CompletableFuture<ImageSequence> decodeAsync(final Executor executor) {
+    final CompletableFuture<ImageSequence> future = new CompletableFuture<ImageSequence>();
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 1; i <= delays.length && !future.isDone(); i++) {
+              decode(i);
+            }
+            future.complete(ImageSequence.this);
+          } catch (Exception e) {
+            future.completeExceptionally(e);
+          }
+        }
+      });
+    } catch (RuntimeException e) {
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  /**
+   * Give the ByteBuffer back to the BufferAllocator and stop decoding. The frames and the data must not be accessed
+   * anymore afterwards.
+   */
+  public synchronized void release() {
+    if (released) {
+      return;
+    }
+    released = true;
+    close();
+    if (allocator != null) {
+      allocator.release(data);
+    }
+  }
+
+  private synchronized void decode(final int frames) throws IOException {
+    if (released) {
+      throw new IllegalStateException("The ImageSequence has been released");
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    try {
+      while (decodedFrames < frames) {
+        decoder.decodeFrame(decodedFrames, slice(decodedFrames));
+        decodedFrames++;
+      }
+    } catch (InterruptedIOException e) {
+      // only this call has been aborted, the next one continues with the same frame
+      throw e;
+    } catch (IOException e) {
+      failure = e;
+      close();
+      throw e;
+    } catch (RuntimeException e) {
+      // a decoder that chokes on broken data must not leave the sequence half decoded with the decoder still open
+      failure = new IOException("Decoding frame " + decodedFrames + " failed", e);
+      close();
+      throw failure;
+    }
+    if (decodedFrames == delays.length) {
+      close();
+    }
+  }
+
+  private void close() {
+    if (decoder != null) {
+      decoder.close();
+      decoder = null;
+    }
+  }
+
+  private ByteBuffer slice(final int frame) {
+    ByteBuffer view = data.duplicate();
+    view.limit((frame + 1) * frameSize).position(frame * frameSize);
+    return view.slice().order(data.order());
+  }
+}
@@ -0,0 +1,75 @@
+package de.lessvoid.simpleimageloader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * Describes where an image is loaded from: either a file or an InputStream together with the original filename.
+ * @author void
+ */
+public class ImageSource {
+  private final String filename;
+  private final Path path;
+  private final InputStream inputStream;
+
+  /**
+   * Create an ImageSource for a file.
+   * @param path the file to load the image data from
+   */
+  public ImageSource(final Path path) {
+    this.filename = path.getFileName().toString();
+    this.path = path;
+    this.inputStream = null;
+  }
+
+  /**
+   * Create an ImageSource for an InputStream. The InputStream will be closed once the image has been loaded.
+   * @param filename the original filename including the file extension
+   * @param inputStream the InputStream to load image data from
+   */
+  public ImageSource(final String filename, final InputStream inputStream) {
+    this.filename = filename;
+    this.path = null;
+    this.inputStream = inputStream;
+  }
+
+  /**
+   * The original filename including the file extension.
+   * @return the filename
+   */
+  public String getFilename() {
+    return filename;
+  }
+
+  /**
+   * The file to load the image data from.
+   * @return the file or null if this ImageSource is an InputStream
+   */
+  public Path getPath() {
+    return path;
+  }
+
+  /**
+   * The InputStream to load the image data from.
+   * @return the InputStream or null if this ImageSource is a file
+   */
+  public InputStream getInputStream() {
+    return inputStream;
+  }
+
+  /**
+   * Close the InputStream of this ImageSource (if any).
+   * @throws IOException
+   */
+  public void close() throws IOException {
+    if (inputStream != null) {
+      inputStream.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return path != null ? path.toString() : filename;
+  }
+}
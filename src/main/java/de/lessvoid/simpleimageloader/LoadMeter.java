@@ -0,0 +1,314 @@
+package de.lessvoid.simpleimageloader;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import de.lessvoid.simpleimageloader.buffer.BufferAllocator;
+import de.lessvoid.simpleimageloader.metrics.LoadEvent;
+import de.lessvoid.simpleimageloader.metrics.LoadListener;
+import de.lessvoid.simpleimageloader.type.ImageType;
+
+/**
+ * Measures a single load for the LoadListener of the SimpleImageLoader. The InputStream and the BufferAllocator of the
+ * load are wrapped so that the time spent in them is known, the decode and post process phases get the remaining time.
+ *
+ * Without a LoadListener nothing is wrapped or measured at all - every method simply does nothing then.
+ *
+ * @author void
+ */
+final class LoadMeter {
+  /**
+   * The LoadMeter for everything that isn't a load, e.g. probe().
+   */
+  static final LoadMeter NONE = new LoadMeter(null, null, null);
+
+  private final LoadListener listener;
+  private final String name;
+  private final SimpleImageLoaderConfig config;
+  private final long start;
+  private MeteredInputStream inputStream;
+  private MeteredBufferAllocator allocator;
+  private ImageType imageType;
+  private boolean fallback;
+  private boolean cached;
+  private long inputBytes;
+  private long decodeNanos;
+  private long postProcessNanos;
+  private long phaseStart;
+  private long phaseReadNanos;
+  private long phaseAllocateNanos;
+
+  /**
+   * @param listener the LoadListener to report to or null to not measure anything
+   * @param name the filename or path of the image
+   * @param config the SimpleImageLoaderConfig
+   */
+  LoadMeter(final LoadListener listener, final String name, final SimpleImageLoaderConfig config) {
+    this.listener = listener;
+    this.name = name;
+    this.config = config;
+    this.start = listener == null ? 0 : System.nanoTime();
+  }
+
+  /**
+   * Count the bytes read from the InputStream and the time spent reading.
+   *
+   * @param in the InputStream of the load
+   * @return the InputStream to use instead
+   */
+  InputStream meter(final InputStream in) {
+    if (listener == null) {
+      return in;
+    }
+    inputStream = new MeteredInputStream(in);
+    return inputStream;
+  }
+
+  /**
+   * Measure the time spent in the BufferAllocator.
+   *
+   * @param bufferAllocator the BufferAllocator of the load
+   * @return the BufferAllocator to use instead
+   */
+  BufferAllocator meter(final BufferAllocator bufferAllocator) {
+    if (listener == null) {
+      return bufferAllocator;
+    }
+    allocator = new MeteredBufferAllocator(bufferAllocator);
+    return allocator;
+  }
+
+  /**
+   * The ImageType that has been picked.
+   *
+   * @param type the ImageType
+   * @param isFallback true when the default ImageType has been picked
+   */
+  void imageType(final ImageType type, final boolean isFallback) {
+    if (listener != null) {
+      this.imageType = type;
+      this.fallback = isFallback;
+    }
+  }
+
+  /**
+   * The size of the encoded image when it isn't read through meter(InputStream).
+   *
+   * @param size the number of bytes
+   */
+  void inputBytes(final long size) {
+    if (listener != null) {
+      this.inputBytes = size;
+    }
+  }
+
+  /**
+   * Checks if the size of the encoded image is needed. Getting the size of a file is cheap but not free.
+   * @return true when inputBytes() should be called
+   */
+  boolean isMetering() {
+    return listener != null;
+  }
+
+  /**
+   * The image has been served from the DiskCache.
+   */
+  void cached() {
+    if (listener != null) {
+      this.cached = true;
+    }
+  }
+
+  /**
+   * The ImageType starts decoding.
+   */
+  void startDecode() {
+    startPhase();
+  }
+
+  /**
+   * The ImageType is done.
+   */
+  void endDecode() {
+    decodeNanos += endPhase();
+  }
+
+  /**
+   * Mipmaps and block compression start.
+   */
+  void startPostProcess() {
+    startPhase();
+  }
+
+  /**
+   * Mipmaps and block compression are done.
+   */
+  void endPostProcess() {
+    postProcessNanos += endPhase();
+  }
+
+  /**
+   * Report the loaded image to the LoadListener.
+   *
+   * @param imageData the loaded image
+   * @return imageData
+   */
+  ImageData loaded(final ImageData imageData) {
+    if (listener != null) {
+      listener.loaded(event(imageData.getData().remaining(), null));
+    }
+    return imageData;
+  }
+
+  /**
+   * Report the failed load to the LoadListener.
+   *
+   * @param exception the reason the load failed
+   */
+  void failed(final Exception exception) {
+    if (listener != null) {
+      listener.loaded(event(0, exception));
+    }
+  }
+
+  private LoadEvent event(final long outputBytes, final Exception exception) {
+    return new LoadEvent(
+        name,
+        imageType,
+        fallback,
+        cached,
+        config,
+        inputStream != null ? inputStream.bytes : inputBytes,
+        outputBytes,
+        readNanos(),
+        decodeNanos,
+        postProcessNanos,
+        allocateNanos(),
+        System.nanoTime() - start,
+        exception);
+  }
+
+  private void startPhase() {
+    if (listener != null) {
+      phaseReadNanos = readNanos();
+      phaseAllocateNanos = allocateNanos();
+      phaseStart = System.nanoTime();
+    }
+  }
+
+  private long endPhase() {
+    if (listener == null) {
+      return 0;
+    }
+    long nanos = System.nanoTime() - phaseStart;
+    return Math.max(0, nanos - (readNanos() - phaseReadNanos) - (allocateNanos() - phaseAllocateNanos));
+  }
+
+  private long readNanos() {
+    return inputStream != null ? inputStream.nanos : 0;
+  }
+
+  private long allocateNanos() {
+    return allocator != null ? allocator.nanos : 0;
+  }
+
+  /**
+   * Counts the bytes and the time of the reads. A reset() to a mark() takes the count back as well so that the header
+   * bytes peeked at by SimpleImageLoader are only counted once.
+   */
+  private static class MeteredInputStream extends FilterInputStream {
+    private long bytes;
+    private long markedBytes;
+    private long nanos;
+
+    private MeteredInputStream(final InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      long t = System.nanoTime();
+      try {
+        int value = in.read();
+        if (value >= 0) {
+          bytes++;
+        }
+        return value;
+      } finally {
+        nanos += System.nanoTime() - t;
+      }
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      long t = System.nanoTime();
+      try {
+        int count = in.read(b, off, len);
+        if (count > 0) {
+          bytes += count;
+        }
+        return count;
+      } finally {
+        nanos += System.nanoTime() - t;
+      }
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+      long t = System.nanoTime();
+      try {
+        long count = in.skip(n);
+        bytes += count;
+        return count;
+      } finally {
+        nanos += System.nanoTime() - t;
+      }
+    }
+
+    @Override
+    public synchronized void mark(final int readlimit) {
+      in.mark(readlimit);
+      markedBytes = bytes;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+      in.reset();
+      bytes = markedBytes;
+    }
+  }
+
+  /**
+   * Measures the time of allocate() and release().
+   */
+  private static class MeteredBufferAllocator implements BufferAllocator {
+    private final BufferAllocator allocator;
+    private long nanos;
+
+    private MeteredBufferAllocator(final BufferAllocator allocator) {
+      this.allocator = allocator;
+    }
+
+    @Override
+    public ByteBuffer allocate(final int size) {
+      long t = System.nanoTime();
+      try {
+        return allocator.allocate(size);
+      } finally {
+        nanos += System.nanoTime() - t;
+      }
+    }
+
+    @Override
+    public void release(final ByteBuffer buffer) {
+      long t = System.nanoTime();
+      try {
+        allocator.release(buffer);
+      } finally {
+        nanos += System.nanoTime() - t;
+      }
+    }
+  }
+}
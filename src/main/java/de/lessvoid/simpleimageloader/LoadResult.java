@@ -0,0 +1,57 @@
+package de.lessvoid.simpleimageloader;
+
+/**
+ * The outcome of loading a single image as part of SimpleImageLoader.loadAll(): either the ImageData or the
+ * Exception that prevented the image from being loaded.
+ * @author void
+ */
+public class LoadResult {
+  private final ImageSource source;
+  private final ImageData imageData;
+  private final Exception exception;
+
+  /**
+   * Create a new LoadResult.
+   *
+   * @param source the ImageSource that has been loaded
+   * @param imageData the loaded image data or null if loading failed
+   * @param exception the reason loading failed or null if the image has been loaded
+   */
+  public LoadResult(final ImageSource source, final ImageData imageData, final Exception exception) {
+    this.source = source;
+    this.imageData = imageData;
+    this.exception = exception;
+  }
+
+  /**
+   * The ImageSource this is the result for.
+   * @return the ImageSource
+   */
+  public ImageSource getSource() {
+    return source;
+  }
+
+  /**
+   * Returns true when the image has been loaded.
+   * @return true if the ImageData is available and false if loading failed
+   */
+  public boolean isSuccess() {
+    return exception == null;
+  }
+
+  /**
+   * The loaded image data.
+   * @return the ImageData or null if loading failed
+   */
+  public ImageData getImageData() {
+    return imageData;
+  }
+
+  /**
+   * The reason loading the image failed.
+   * @return the Exception or null if the image has been loaded
+   */
+  public Exception getException() {
+    return exception;
+  }
+}
@@ -0,0 +1,239 @@
+package de.lessvoid.simpleimageloader;
+
+import java.nio.ByteBuffer;
+
+import de.lessvoid.simpleimageloader.buffer.BufferAllocator;
+
+/**
+ * Calculates the mipmap chain of loaded image data with a 2x2 box filter.
+ *
+ * For 32 bit data the colors are weighted by their alpha so that the color of fully transparent pixels (which is
+ * black) doesn't bleed into the smaller levels. The alpha value is always at the fourth byte, no matter if the data
+ * is RGBA or BGRA (modeARGB), so both are handled the same. With sRGB enabled the colors are converted to linear
+ * space before they are averaged and converted back afterwards.
+ *
+ * Premultiplied colors already carry their alpha so they are simply averaged like the alpha value itself.
+ *
+ * The compact PixelFormats (everything but RGB, RGBA and BGRA) are unpacked into RGBA for filtering and packed again
+ * afterwards, so their colors are weighted by alpha as well.
+ *
+ * @author void
+ */
+final class MipmapGenerator {
+  private static final float[] SRGB_TO_LINEAR = new float[256];
+  private static final int LINEAR_STEPS = 4096;
+  private static final byte[] LINEAR_TO_SRGB = new byte[LINEAR_STEPS + 1];
+
+  static {
+    for (int i = 0; i < SRGB_TO_LINEAR.length; i++) {
+      float c = i / 255.f;
+      SRGB_TO_LINEAR[i] = c <= 0.04045f ? c / 12.92f : (float) Math.pow((c + 0.055f) / 1.055f, 2.4);
+    }
+    for (int i = 0; i < LINEAR_TO_SRGB.length; i++) {
+      double c = i / (double) LINEAR_STEPS;
+      double srgb = c <= 0.0031308 ? c * 12.92 : 1.055 * Math.pow(c, 1 / 2.4) - 0.055;
+      LINEAR_TO_SRGB[i] = (byte) Math.round(srgb * 255);
+    }
+  }
+
+  private MipmapGenerator() {
+  }
+
+  /**
+   * Create a new ImageData with the full mipmap chain of the given image data. The levels are stored one after another
+   * in a single ByteBuffer retrieved from allocator. The given imageData is released.
+   *
+   * @param imageData the full size image
+   * @param srgb true when the colors should be averaged in linear space
+   * @param allocator the BufferAllocator to get the ByteBuffer for the mipmap chain from
+   * @return the new ImageData instance
+   */
+  static ImageData generate(final ImageData imageData, final boolean srgb, final BufferAllocator allocator) {
+    return generate(imageData, srgb, false, allocator);
+  }
+
+  /**
+   * Create a new ImageData with the full mipmap chain of the given image data. The given imageData is released.
+   *
+   * @param imageData the full size image
+   * @param srgb true when the colors should be averaged in linear space
+   * @param premultiplied true when the colors have been premultiplied with alpha
+   * @param allocator the BufferAllocator to get the ByteBuffer for the mipmap chain from
+   * @return the new ImageData instance
+   */
+  static ImageData generate(
+      final ImageData imageData,
+      final boolean srgb,
+      final boolean premultiplied,
+      final BufferAllocator allocator) {
+    int width = imageData.getWidth();
+    int height = imageData.getHeight();
+    int perPixel = imageData.getBitsPerPixel() / 8;
+
+    int levels = 1;
+    while ((width >> levels) > 0 || (height >> levels) > 0) {
+      levels++;
+    }
+    int[] offsets = new int[levels];
+    int size = 0;
+    for (int level = 0; level < levels; level++) {
+      offsets[level] = size;
+      size += Math.max(1, width >> level) * Math.max(1, height >> level) * perPixel;
+    }
+
+    ByteBuffer source = imageData.getData().duplicate();
+    source.limit(width * height * perPixel).position(0);
+    ByteBuffer chain = allocator.allocate(size);
+    // with a DestinationBufferAllocator this is the same memory the image has been loaded into and nothing changes
+    chain.put(source);
+    imageData.release();
+
+    for (int level = 1; level < levels; level++) {
+      downsample(
+          chain,
+          offsets[level - 1],
+          Math.max(1, width >> (level - 1)),
+          Math.max(1, height >> (level - 1)),
+          offsets[level],
+          perPixel,
+          imageData.getPixelFormat(),
+          srgb,
+          premultiplied);
+    }
+    chain.rewind();
+
+    return new ImageData(
+        width,
+        height,
+        imageData.getOriginalWidth(),
+        imageData.getOriginalHeight(),
+        imageData.getBitsPerPixel(),
+        imageData.getPixelFormat(),
+        chain,
+        allocator,
+        offsets,
+        null);
+  }
+
+  private static void downsample(
+      final ByteBuffer data,
+      final int sourceOffset,
+      final int sourceWidth,
+      final int sourceHeight,
+      final int targetOffset,
+      final int perPixel,
+      final PixelFormat format,
+      final boolean srgb,
+      final boolean premultiplied) {
+    int targetWidth = Math.max(1, sourceWidth / 2);
+    int targetHeight = Math.max(1, sourceHeight / 2);
+    int sourceStride = sourceWidth * perPixel;
+    boolean unpack = isPacked(format);
+    int filterPerPixel = unpack ? 4 : perPixel;
+    byte[] source0 = new byte[sourceStride];
+    byte[] source1 = new byte[sourceStride];
+    byte[] row0 = unpack ? new byte[sourceWidth * 4] : source0;
+    byte[] row1 = unpack ? new byte[sourceWidth * 4] : source1;
+    byte[] target = new byte[targetWidth * filterPerPixel];
+    byte[] packed = unpack ? new byte[targetWidth * perPixel] : target;
+    ByteBuffer in = data.duplicate();
+    ByteBuffer out = data.duplicate();
+    out.position(targetOffset);
+
+    for (int y = 0; y < targetHeight; y++) {
+      // odd sizes drop the last row or column, a single row or column is used twice
+      int y0 = Math.min(2 * y, sourceHeight - 1);
+      int y1 = Math.min(2 * y + 1, sourceHeight - 1);
+      in.position(sourceOffset + y0 * sourceStride);
+      in.get(source0);
+      in.position(sourceOffset + y1 * sourceStride);
+      in.get(source1);
+      if (unpack) {
+        format.unpack(source0, 0, row0, sourceWidth);
+        format.unpack(source1, 0, row1, sourceWidth);
+      }
+
+      for (int x = 0; x < targetWidth; x++) {
+        int p0 = Math.min(2 * x, sourceWidth - 1) * filterPerPixel;
+        int p1 = Math.min(2 * x + 1, sourceWidth - 1) * filterPerPixel;
+        int t = x * filterPerPixel;
+        if (filterPerPixel == 4 && !premultiplied) {
+          filterAlpha(row0, row1, p0, p1, target, t, srgb);
+        } else {
+          filter(row0, row1, p0, p1, target, t, filterPerPixel, srgb);
+        }
+      }
+      if (unpack) {
+        format.pack(target, 0, packed, targetWidth, true);
+      }
+      out.put(packed);
+    }
+  }
+
+  private static void filter(
+      final byte[] row0,
+      final byte[] row1,
+      final int p0,
+      final int p1,
+      final byte[] target,
+      final int t,
+      final int perPixel,
+      final boolean srgb) {
+    for (int c = 0; c < perPixel; c++) {
+      // the alpha of premultiplied pixels is never sRGB
+      if (srgb && c < 3) {
+        float sum =
+            SRGB_TO_LINEAR[row0[p0 + c] & 0xFF] + SRGB_TO_LINEAR[row0[p1 + c] & 0xFF] +
+            SRGB_TO_LINEAR[row1[p0 + c] & 0xFF] + SRGB_TO_LINEAR[row1[p1 + c] & 0xFF];
+        target[t + c] = toSRGB(sum / 4);
+      } else {
+        int sum = (row0[p0 + c] & 0xFF) + (row0[p1 + c] & 0xFF) + (row1[p0 + c] & 0xFF) + (row1[p1 + c] & 0xFF);
+        target[t + c] = (byte) ((sum + 2) / 4);
+      }
+    }
+  }
+
+  private static void filterAlpha(
+      final byte[] row0,
+      final byte[] row1,
+      final int p0,
+      final int p1,
+      final byte[] target,
+      final int t,
+      final boolean srgb) {
+    int a00 = row0[p0 + 3] & 0xFF;
+    int a01 = row0[p1 + 3] & 0xFF;
+    int a10 = row1[p0 + 3] & 0xFF;
+    int a11 = row1[p1 + 3] & 0xFF;
+    int alpha = a00 + a01 + a10 + a11;
+    target[t + 3] = (byte) ((alpha + 2) / 4);
+    if (alpha == 0) {
+      // fully transparent pixels are black
+      target[t] = 0;
+      target[t + 1] = 0;
+      target[t + 2] = 0;
+      return;
+    }
+    for (int c = 0; c < 3; c++) {
+      if (srgb) {
+        float sum =
+            SRGB_TO_LINEAR[row0[p0 + c] & 0xFF] * a00 + SRGB_TO_LINEAR[row0[p1 + c] & 0xFF] * a01 +
+            SRGB_TO_LINEAR[row1[p0 + c] & 0xFF] * a10 + SRGB_TO_LINEAR[row1[p1 + c] & 0xFF] * a11;
+        target[t + c] = toSRGB(sum / alpha);
+      } else {
+        int sum =
+            (row0[p0 + c] & 0xFF) * a00 + (row0[p1 + c] & 0xFF) * a01 +
+            (row1[p0 + c] & 0xFF) * a10 + (row1[p1 + c] & 0xFF) * a11;
+        target[t + c] = (byte) ((sum + alpha / 2) / alpha);
+      }
+    }
+  }
+
+  private static boolean isPacked(final PixelFormat format) {
+    return format != null && format != PixelFormat.RGB && format != PixelFormat.RGBA && format != PixelFormat.BGRA;
+  }
+
+  private static byte toSRGB(final float linear) {
+    return LINEAR_TO_SRGB[Math.min(LINEAR_STEPS, Math.round(linear * LINEAR_STEPS))];
+  }
+}
@@ -0,0 +1,35 @@
+package de.lessvoid.simpleimageloader;
+
+/**
+ * What the pixels are filled with that are added to the right and below the image when the image data is larger than
+ * the image - with SimpleImageLoaderConfig.powerOfTwoSupport(), sizeMultipleOf() or rowAlignment(). See
+ * SimpleImageLoaderConfig.padding().
+ *
+ * @author void
+ */
+public enum Padding {
+
+  /**
+   * The rows below the image are not written at all, they contain whatever the ByteBuffer contained before. The pixels
+   * to the right of the image are 0 like with TRANSPARENT since they are part of the rows that are written anyway. This
+   * is the fastest mode for images whose padding is never sampled, but with a PooledBufferAllocator the rows below the
+   * image might show parts of another image.
+   */
+  NONE,
+
+  /**
+   * All padding bytes are 0 - transparent black for formats with alpha and black for the others. This is the default.
+   */
+  TRANSPARENT,
+
+  /**
+   * The last column and the last row of the image are repeated up to the edge of the image data, so that a texture
+   * that is sampled at the edge of the image with linear filtering doesn't pick up black.
+   */
+  CLAMP,
+
+  /**
+   * The image is repeated to the right and below, the padding continues with the first columns and rows of the image.
+   */
+  WRAP
+}
@@ -0,0 +1,255 @@
+package de.lessvoid.simpleimageloader;
+
+import java.nio.ByteOrder;
+
+/**
+ * The layout of the pixels in the ByteBuffer of an ImageData. Use SimpleImageLoaderConfig.pixelFormat() to have the
+ * decoders write one of the compact formats directly instead of 24 or 32 bit data.
+ *
+ * The 16 bit formats are stored as one unsigned short per pixel in native byte order, the way OpenGL expects them for
+ * GL_UNSIGNED_SHORT_5_6_5, GL_UNSIGNED_SHORT_4_4_4_4 and GL_UNSIGNED_SHORT_5_5_5_1. The luminance of the L formats
+ * is calculated from the colors with the Rec. 601 weights, which is exact for grayscale images.
+ *
+ * @author void
+ */
+public enum PixelFormat {
+
+  /**
+   * 8 bit red, green and blue - GL_RGB with GL_UNSIGNED_BYTE.
+   */
+  RGB(24),
+
+  /**
+   * 8 bit red, green, blue and alpha - GL_RGBA with GL_UNSIGNED_BYTE.
+   */
+  RGBA(32),
+
+  /**
+   * 8 bit blue, green, red and alpha - GL_BGRA with GL_UNSIGNED_BYTE. This is what SimpleImageLoaderConfig.modeARGB()
+   * returns for 32 bit images.
+   */
+  BGRA(32),
+
+  /**
+   * 5 bit red, 6 bit green and 5 bit blue in an unsigned short.
+   */
+  RGB565(16),
+
+  /**
+   * 4 bit red, green, blue and alpha in an unsigned short.
+   */
+  RGBA4444(16),
+
+  /**
+   * 5 bit red, green and blue and 1 bit alpha in an unsigned short. Alpha values below 128 become 0.
+   */
+  RGBA5551(16),
+
+  /**
+   * 8 bit luminance - GL_LUMINANCE or GL_RED.
+   */
+  L8(8),
+
+  /**
+   * 8 bit alpha - GL_ALPHA. Images without alpha (and without a transparent color) use their luminance as alpha so
+   * that grayscale masks can be loaded as A8 directly.
+   */
+  A8(8),
+
+  /**
+   * 8 bit luminance followed by 8 bit alpha - GL_LUMINANCE_ALPHA or GL_RG.
+   */
+  LA88(16);
+
+  private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+  private final int bitsPerPixel;
+
+  private PixelFormat(final int bitsPerPixel) {
+    this.bitsPerPixel = bitsPerPixel;
+  }
+
+  /**
+   * The number of bits of a single pixel.
+   * @return bits per pixel
+   */
+  public int getBitsPerPixel() {
+    return bitsPerPixel;
+  }
+
+  /**
+   * Convert a row of 8 bit RGBA pixels into this format.
+   *
+   * @param rgba the RGBA pixels
+   * @param offset the index of the first byte of the row in rgba
+   * @param target the array to write the converted row to (starting at index 0)
+   * @param width the number of pixels
+   * @param hasAlpha false when the alpha of the pixels is always 255 because the image doesn't have any (only A8
+   * cares about this)
+   */
+  public void pack(final byte[] rgba, final int offset, final byte[] target, final int width, final boolean hasAlpha) {
+    // one loop per format so that the format isn't checked again for every pixel
+    int end = offset + width * 4;
+    switch (this) {
+      case RGB:
+        for (int s = offset, t = 0; s < end; s += 4, t += 3) {
+          target[t] = rgba[s];
+          target[t + 1] = rgba[s + 1];
+          target[t + 2] = rgba[s + 2];
+        }
+        break;
+      case RGBA:
+        System.arraycopy(rgba, offset, target, 0, width * 4);
+        break;
+      case BGRA:
+        for (int s = offset, t = 0; s < end; s += 4, t += 4) {
+          target[t] = rgba[s + 2];
+          target[t + 1] = rgba[s + 1];
+          target[t + 2] = rgba[s];
+          target[t + 3] = rgba[s + 3];
+        }
+        break;
+      case RGB565:
+        for (int s = offset, x = 0; s < end; s += 4, x++) {
+          putShort(target, x, (scale(rgba[s], 31) << 11) | (scale(rgba[s + 1], 63) << 5) | scale(rgba[s + 2], 31));
+        }
+        break;
+      case RGBA4444:
+        for (int s = offset, x = 0; s < end; s += 4, x++) {
+          putShort(target, x,
+              (scale(rgba[s], 15) << 12) | (scale(rgba[s + 1], 15) << 8) | (scale(rgba[s + 2], 15) << 4) |
+              scale(rgba[s + 3], 15));
+        }
+        break;
+      case RGBA5551:
+        for (int s = offset, x = 0; s < end; s += 4, x++) {
+          putShort(target, x,
+              (scale(rgba[s], 31) << 11) | (scale(rgba[s + 1], 31) << 6) | (scale(rgba[s + 2], 31) << 1) |
+              ((rgba[s + 3] & 0xFF) >> 7));
+        }
+        break;
+      case L8:
+        for (int s = offset, t = 0; s < end; s += 4, t++) {
+          target[t] = luminance(rgba, s);
+        }
+        break;
+      case A8:
+        for (int s = offset, t = 0; s < end; s += 4, t++) {
+          target[t] = hasAlpha ? rgba[s + 3] : luminance(rgba, s);
+        }
+        break;
+      case LA88:
+        for (int s = offset, t = 0; s < end; s += 4, t += 2) {
+          target[t] = luminance(rgba, s);
+          target[t + 1] = rgba[s + 3];
+        }
+        break;
+    }
+  }
+
+  /**
+   * Convert a row of pixels in this format back into 8 bit RGBA. L8 and LA88 become gray, A8 becomes black with the
+   * alpha of the pixel.
+   *
+   * @param source the pixels in this format
+   * @param offset the index of the first byte of the row in source
+   * @param rgba the array to write the RGBA pixels to (starting at index 0)
+   * @param width the number of pixels
+   */
+  public void unpack(final byte[] source, final int offset, final byte[] rgba, final int width) {
+    for (int x = 0, t = 0; x < width; x++, t += 4) {
+      int red;
+      int green;
+      int blue;
+      int alpha = 255;
+      int p = offset + x * bitsPerPixel / 8;
+      switch (this) {
+        case RGB:
+          red = source[p] & 0xFF;
+          green = source[p + 1] & 0xFF;
+          blue = source[p + 2] & 0xFF;
+          break;
+        case RGBA:
+          red = source[p] & 0xFF;
+          green = source[p + 1] & 0xFF;
+          blue = source[p + 2] & 0xFF;
+          alpha = source[p + 3] & 0xFF;
+          break;
+        case BGRA:
+          red = source[p + 2] & 0xFF;
+          green = source[p + 1] & 0xFF;
+          blue = source[p] & 0xFF;
+          alpha = source[p + 3] & 0xFF;
+          break;
+        case RGB565: {
+          int pixel = getShort(source, p);
+          red = expand(pixel >> 11, 31);
+          green = expand((pixel >> 5) & 0x3F, 63);
+          blue = expand(pixel & 0x1F, 31);
+          break;
+        }
+        case RGBA4444: {
+          int pixel = getShort(source, p);
+          red = expand(pixel >> 12, 15);
+          green = expand((pixel >> 8) & 0xF, 15);
+          blue = expand((pixel >> 4) & 0xF, 15);
+          alpha = expand(pixel & 0xF, 15);
+          break;
+        }
+        case RGBA5551: {
+          int pixel = getShort(source, p);
+          red = expand(pixel >> 11, 31);
+          green = expand((pixel >> 6) & 0x1F, 31);
+          blue = expand((pixel >> 1) & 0x1F, 31);
+          alpha = (pixel & 1) * 255;
+          break;
+        }
+        case A8:
+          red = 0;
+          green = 0;
+          blue = 0;
+          alpha = source[p] & 0xFF;
+          break;
+        case LA88:
+          red = source[p] & 0xFF;
+          green = red;
+          blue = red;
+          alpha = source[p + 1] & 0xFF;
+          break;
+        default:
+          red = source[p] & 0xFF;
+          green = red;
+          blue = red;
+          break;
+      }
+      rgba[t] = (byte) red;
+      rgba[t + 1] = (byte) green;
+      rgba[t + 2] = (byte) blue;
+      rgba[t + 3] = (byte) alpha;
+    }
+  }
+
+  private static int scale(final byte value, final int max) {
+    return ((value & 0xFF) * max + 127) / 255;
+  }
+
+  private static int expand(final int value, final int max) {
+    return (value * 255 + max / 2) / max;
+  }
+
+  private static byte luminance(final byte[] rgba, final int offset) {
+    int sum = (rgba[offset] & 0xFF) * 77 + (rgba[offset + 1] & 0xFF) * 150 + (rgba[offset + 2] & 0xFF) * 29;
+    return (byte) ((sum + 128) >> 8);
+  }
+
+  private static void putShort(final byte[] target, final int index, final int value) {
+    target[index * 2] = (byte) (LITTLE_ENDIAN ? value : value >> 8);
+    target[index * 2 + 1] = (byte) (LITTLE_ENDIAN ? value >> 8 : value);
+  }
+
+  private static int getShort(final byte[] source, final int offset) {
+    int first = source[offset] & 0xFF;
+    int second = source[offset + 1] & 0xFF;
+    return LITTLE_ENDIAN ? first | (second << 8) : (first << 8) | second;
+  }
+}
@@ -0,0 +1,47 @@
+package de.lessvoid.simpleimageloader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the image data from SimpleImageLoader.stream() a band of rows at a time instead of the whole image at
+ * once. This allows to process images that are too large to keep in memory, e.g. by uploading each band with
+ * glTexSubImage2D or by writing it to a file.
+ *
+ * The rows have the format load() would return for the same SimpleImageLoaderConfig: RGB or RGBA (BGRA with
+ * modeARGB), a region is cut out and flipped decides about the row order. powerOfTwoSupport, mipmaps and
+ * blockCompression are ignored, the rows are exactly as wide and there are exactly as many rows as the image (or the
+ * region) has.
+ *
+ * @author void
+ */
+public interface ScanlineSink {
+
+  /**
+   * Called once before the first rows are delivered.
+   *
+   * @param width the width of each row in pixels
+   * @param height the number of rows that will be delivered
+   * @param bitsPerPixel the bits per pixel of the rows (24 or 32, or the size of the configured PixelFormat)
+   * @throws IOException
+   */
+  void start(int width, int height, int bitsPerPixel) throws IOException;
+
+  /**
+   * Called with each band of decoded rows. Together the bands cover all rows of the image exactly once, but not
+   * necessarily from top to bottom - a bottom up TGA delivers its last band first.
+   *
+   * @param rows the data of count rows of width * bitsPerPixel / 8 bytes each, from position to limit. The ByteBuffer
+   * is reused for the next band so it must not be kept after this method returns.
+   * @param y the index of the first of the rows in the image
+   * @param count the number of rows
+   * @throws IOException
+   */
+  void rows(ByteBuffer rows, int y, int count) throws IOException;
+
+  /**
+   * Called once after the last rows have been delivered.
+   * @throws IOException
+   */
+  void end() throws IOException;
+}
@@ -1,51 +1,153 @@
 package de.lessvoid.simpleimageloader;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import de.lessvoid.simpleimageloader.buffer.BufferAllocator;
+import de.lessvoid.simpleimageloader.buffer.DirectBufferAllocator;
+import de.lessvoid.simpleimageloader.cache.DiskCache;
+import de.lessvoid.simpleimageloader.metrics.LoadListener;
 import de.lessvoid.simpleimageloader.type.ImageType;
 import de.lessvoid.simpleimageloader.type.ImageTypeImageIO;
+import de.lessvoid.simpleimageloader.type.ImageTypePNG;
 import de.lessvoid.simpleimageloader.type.ImageTypeTGA;
 
 /**
  * The SimpleImageLoader just loads image data from an InputStream and returns the plain image data as a ByteBuffer.
+ *
+ * A single SimpleImageLoader can be shared by any number of threads. Loads don't lock anything and ImageTypes can be
+ * registered and the BufferAllocator and the DiskCache can be changed while other threads are loading - each load
+ * uses the setup that was current when it started. The decoders keep their scratch buffers per thread, so a worker
+ * thread that loads one image after the other doesn't allocate them again for every image.
+ *
  * @author void
  */
 public class SimpleImageLoader {
   private static final SimpleImageLoaderConfig defaultConfig = new SimpleImageLoaderConfig();
-  private final Map<String, ImageType> imageTypes = new HashMap<String, ImageType>();
-  private ImageType defaultImageType;
+  private static final int HEADER_SIZE = 32;
+  private volatile Registry registry = new Registry(
+      new LinkedHashMap<String, ImageType>(), new HashSet<ImageType>(), new ImageTypeImageIO());
+  private volatile BufferAllocator bufferAllocator = new DirectBufferAllocator();
+  private volatile DiskCache diskCache;
+  private volatile LoadListener loadListener;
 
   /**
    * Create a new SimpleImageLoader.
    */
   public SimpleImageLoader() {
-    defaultImageType = new ImageTypeImageIO();
     registerImageType("tga", new ImageTypeTGA());
+    registerImageType("png", new ImageTypePNG());
   }
 
   /**
    * Register a new file extension with the given ImageType. This allows support for new image types to be added.
+   * Extensions are not case sensitive.
+   *
+   * The ImageType is not only used for files with this extension. When the first bytes of an image are accepted by
+   * ImageType.canDecode() the image is decoded by it no matter what the file is called. The registered ImageTypes are
+   * asked in the order they have been registered, ImageIO is asked last. An ImageType that doesn't implement
+   * canDecode() is always used for its extension unless another registered ImageType claims the data.
+   *
    * @param extension the file extension, e.g. "tga"
    * @param type the ImageType to handle this extension
    */
-  public void registerImageType(final String extension, final ImageType type) {
-    imageTypes.put(extension, type);
+  public synchronized void registerImageType(final String extension, final ImageType type) {
+    Registry current = registry;
+    Map<String, ImageType> imageTypes = new LinkedHashMap<String, ImageType>(current.imageTypes);
+    imageTypes.put(extension.toLowerCase(Locale.ENGLISH), type);
+    Set<ImageType> sniffingImageTypes = new HashSet<ImageType>(current.sniffingImageTypes);
+    if (implementsCanDecode(type)) {
+      sniffingImageTypes.add(type);
+    }
+    registry = new Registry(imageTypes, sniffingImageTypes, current.defaultImageType);
   }
 
   /**
    * Change the default image type to a different ImageType. The default defaultImageType ;-) is ImageTypeImageIO();
    * @param defaultImageType the new default image type
    */
-  public void setDefaultImageType(final ImageType defaultImageType) {
-    this.defaultImageType = defaultImageType;
+  public synchronized void setDefaultImageType(final ImageType defaultImageType) {
+    Registry current = registry;
+    registry = new Registry(
+        new LinkedHashMap<String, ImageType>(current.imageTypes),
+        new HashSet<ImageType>(current.sniffingImageTypes),
+        defaultImageType);
+  }
+
+  /**
+   * Change the BufferAllocator that provides the ByteBuffers for the loaded image data. The default is a
+   * DirectBufferAllocator that allocates a new direct ByteBuffer for each image. Use a PooledBufferAllocator together
+   * with ImageData.release() to reuse the buffers.
+   * @param bufferAllocator the new BufferAllocator
+   */
+  public void setBufferAllocator(final BufferAllocator bufferAllocator) {
+    this.bufferAllocator = bufferAllocator;
+  }
+
+  /**
+   * The BufferAllocator that provides the ByteBuffers for the loaded image data.
+   * @return the current BufferAllocator
+   */
+  public BufferAllocator getBufferAllocator() {
+    return bufferAllocator;
+  }
+
+  /**
+   * Keep the loaded image data in the given DiskCache and load it from there when the same image is loaded with the
+   * same SimpleImageLoaderConfig again. Images served from the DiskCache are read only views of a memory mapped file.
+   * Loading into a destination ByteBuffer never uses the DiskCache. The default is no DiskCache (null).
+   * @param diskCache the DiskCache to use or null to disable it
+   */
+  public void setDiskCache(final DiskCache diskCache) {
+    this.diskCache = diskCache;
+  }
+
+  /**
+   * Report every load to the given LoadListener: how long reading, decoding, post processing and allocating took, how
+   * many bytes have been read and written and which ImageType has been used. Use a LoadRecorder to aggregate the loads
+   * or a JfrLoadListener to see them in a flight recording. probe() and stream() are not reported. The default is no
+   * LoadListener (null) which doesn't cost anything.
+   * @param loadListener the LoadListener to use or null to disable it
+   */
+  public void setLoadListener(final LoadListener loadListener) {
+    this.loadListener = loadListener;
   }
 
   /**
    * Load image date from the given inputStream. To easily allow the SimpleImageLoader to figure out the correct ImageType
-   * to use the original filename needs to be given.
+   * to use the original filename needs to be given. The inputStream is closed afterwards, whether the image is decoded
+   * or taken from the DiskCache.
    *
    * @param filename the original filename including the file extension.
    * @param inputStream the InputStream to load image data from
@@ -55,7 +157,7 @@ public class SimpleImageLoader {
   public ImageData load(
       final String filename,
       final InputStream inputStream) throws IOException {
-    return loadInternal(filename, inputStream, defaultConfig);
+    return load(filename, inputStream, defaultConfig);
   }
 
   /**
@@ -72,19 +174,656 @@ public class SimpleImageLoader {
       final String filename,
       final InputStream inputStream,
       final SimpleImageLoaderConfig config) throws IOException {
-    return loadInternal(filename, inputStream, config);
+    LoadMeter meter = new LoadMeter(loadListener, filename, config);
+    ImageData imageData;
+    try {
+      DiskCache cache = diskCache;
+      if (cache != null) {
+        imageData = loadCached(cache, filename, meter.meter(inputStream), config, meter);
+      } else {
+        imageData = loadInternal(filename, meter.meter(inputStream), config, meter.meter(bufferAllocator), meter);
+      }
+    } catch (IOException e) {
+      meter.failed(e);
+      throw e;
+    } catch (RuntimeException e) {
+      meter.failed(e);
+      throw e;
+    } finally {
+      inputStream.close();
+    }
+    return meter.loaded(imageData);
   }
 
-  private ImageData loadInternal(
+  /**
+   * @see load(String, InputStream, SimpleImageLoaderConfig) but the image data is written into the given destination
+   * ByteBuffer instead of a newly allocated one. The data starts at the current position of destination and the
+   * ByteBuffer returned by ImageData.getData() is a view of this part of destination. The position and limit of
+   * destination are not changed. The inputStream is closed afterwards.
+   *
+   * @param filename the original filename including the file extension.
+   * @param inputStream the InputStream to load image data from
+   * @param config a SimpleImageLoaderConfig instance that allows to configure details on how the image should be loaded
+   * @param destination the ByteBuffer to write the image data to
+   * @return a new ImageData instance that gives you access to the loaded image data
+   * @throws IOException
+   * @throws IllegalArgumentException when the remaining space in destination is too small for the image
+   */
+  public ImageData load(
+      final String filename,
+      final InputStream inputStream,
+      final SimpleImageLoaderConfig config,
+      final ByteBuffer destination) throws IOException {
+    LoadMeter meter = new LoadMeter(loadListener, filename, config);
+    ImageData imageData;
+    try {
+      imageData = loadInternal(
+          filename, meter.meter(inputStream), config, meter.meter(new DestinationBufferAllocator(destination)), meter);
+    } catch (IOException e) {
+      meter.failed(e);
+      throw e;
+    } catch (RuntimeException e) {
+      meter.failed(e);
+      throw e;
+    } finally {
+      inputStream.close();
+    }
+    return meter.loaded(imageData);
+  }
+
+  /**
+   * Load image data from the given file. The ImageType is selected by the first bytes of the file or by the file
+   * extension of path. Depending on the ImageType the file might be memory mapped which avoids copying the file
+   * content around. In some cases (see ImageTypeTGA) the returned data is even a read only view of the mapped file.
+   *
+   * @param path the file to load the image data from
+   * @return a new ImageData instance that gives you access to the loaded image data
+   * @throws IOException
+   */
+  public ImageData load(final Path path) throws IOException {
+    return load(path, defaultConfig);
+  }
+
+  /**
+   * @see load(Path) with the added possibility to configure how the image is loaded with an SimpleImageLoaderConfig
+   * instance.
+   *
+   * @param path the file to load the image data from
+   * @param config a SimpleImageLoaderConfig instance that allows to configure details on how the image should be loaded
+   * @return a new ImageData instance that gives you access to the loaded image data
+   * @throws IOException
+   */
+  public ImageData load(final Path path, final SimpleImageLoaderConfig config) throws IOException {
+    LoadMeter meter = new LoadMeter(loadListener, path.toString(), config);
+    ImageData imageData;
+    try {
+      DiskCache cache = diskCache;
+      if (cache != null) {
+        imageData = loadCached(cache, path, config, meter);
+      } else {
+        ImageType imageType = findImageType(path, meter);
+        if (meter.isMetering()) {
+          meter.inputBytes(Files.size(path));
+        }
+        imageData = decode(imageType, config, path, meter.meter(bufferAllocator), meter);
+      }
+    } catch (IOException e) {
+      meter.failed(e);
+      throw e;
+    } catch (RuntimeException e) {
+      meter.failed(e);
+      throw e;
+    }
+    return meter.loaded(imageData);
+  }
+
+  /**
+   * Read the size and pixel format of an image without decoding it. Only the header of the image is read (for TGA
+   * these are the first 18 bytes) and the InputStream is not closed.
+   *
+   * @param filename the original filename including the file extension.
+   * @param inputStream the InputStream to read the header from
+   * @return the ImageInfo of the image
+   * @throws IOException
+   */
+  public ImageInfo probe(final String filename, final InputStream inputStream) throws IOException {
+    InputStream in = rewindable(inputStream);
+    return findImageType(filename, peekHeader(in), LoadMeter.NONE).readInfo(in);
+  }
+
+  /**
+   * Read the size and pixel format of the image in the given file without decoding it.
+   *
+   * @param path the file to read the header from
+   * @return the ImageInfo of the image
+   * @throws IOException
+   */
+  public ImageInfo probe(final Path path) throws IOException {
+    return findImageType(path, LoadMeter.NONE).readInfo(path);
+  }
+
+  /**
+   * Decode an image and hand it to the given ScanlineSink in bands of rows instead of returning the whole image. TGA
+   * and PNG images are never completely kept in memory so this works for images that are too large to load at once.
+   * powerOfTwoSupport, mipmaps and blockCompression of the config are ignored, the disk cache is not used and the
+   * InputStream is not closed.
+   *
+   * @param filename the original filename including the file extension.
+   * @param inputStream the InputStream to load the image data from
+   * @param config a SimpleImageLoaderConfig instance that allows to configure details on how the image should be loaded
+   * @param sink the ScanlineSink that receives the rows
+   * @param bandHeight the number of rows to hand to the sink at once
+   * @throws IOException
+   */
+  public void stream(
+      final String filename,
+      final InputStream inputStream,
+      final SimpleImageLoaderConfig config,
+      final ScanlineSink sink,
+      final int bandHeight) throws IOException {
+    InputStream in = rewindable(inputStream);
+    findImageType(filename, peekHeader(in), LoadMeter.NONE).stream(config, in, sink, bandHeight);
+  }
+
+  /**
+   * Decode the image in the given file and hand it to the given ScanlineSink in bands of rows.
+   *
+   * @param path the file to load the image data from
+   * @param config a SimpleImageLoaderConfig instance that allows to configure details on how the image should be loaded
+   * @param sink the ScanlineSink that receives the rows
+   * @param bandHeight the number of rows to hand to the sink at once
+   * @throws IOException
+   */
+  public void stream(
+      final Path path,
+      final SimpleImageLoaderConfig config,
+      final ScanlineSink sink,
+      final int bandHeight) throws IOException {
+    findImageType(path, LoadMeter.NONE).stream(config, path, sink, bandHeight);
+  }
+
+  /**
+   * Load all frames of an animated image (GIF or APNG) into a single ByteBuffer, one fully composited frame after the
+   * other, e.g. for a 2D array texture. The encoded image is read right away but the frames are only decoded when the
+   * ImageSequence asks for them (see ImageSequence.getFrame() and decodeAsync()). Images that aren't animated are
+   * returned as a sequence with a single frame. region, subsampling, mipmaps and blockCompression of the config are
+   * ignored, the disk cache is not used and the InputStream is not closed.
+   *
+   * @param filename the original filename including the file extension.
+   * @param inputStream the InputStream to load the image from
+   * @param config a SimpleImageLoaderConfig instance that allows to configure details on how the frames should be loaded
+   * @return the ImageSequence with the frames
+   * @throws IOException
+   */
+  public ImageSequence loadSequence(
       final String filename,
       final InputStream inputStream,
       final SimpleImageLoaderConfig config) throws IOException {
-    String extension = extractExtension(filename);
-    ImageType source = imageTypes.get(extension);
-    if (source == null) {
-      source = defaultImageType;
+    InputStream in = rewindable(inputStream);
+    return findImageType(filename, peekHeader(in), LoadMeter.NONE).loadSequence(config, in, bufferAllocator);
+  }
+
+  /**
+   * Load all frames of the animated image in the given file.
+   *
+   * @see loadSequence(String, InputStream, SimpleImageLoaderConfig)
+   * @param path the file to load the image from
+   * @param config a SimpleImageLoaderConfig instance that allows to configure details on how the frames should be loaded
+   * @return the ImageSequence with the frames
+   * @throws IOException
+   */
+  public ImageSequence loadSequence(final Path path, final SimpleImageLoaderConfig config) throws IOException {
+    ImageType imageType = findImageType(path, LoadMeter.NONE);
+    InputStream inputStream = Files.newInputStream(path);
+    try {
+      return imageType.loadSequence(config, inputStream, bufferAllocator);
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  /**
+   * Load image data from the given ImageSource.
+   *
+   * @param source the ImageSource to load - an InputStream of the source will be closed afterwards
+   * @param config a SimpleImageLoaderConfig instance that allows to configure details on how the image should be loaded
+   * @return a new ImageData instance that gives you access to the loaded image data
+   * @throws IOException
+   */
+  public ImageData load(final ImageSource source, final SimpleImageLoaderConfig config) throws IOException {
+    if (source.getPath() != null) {
+      return load(source.getPath(), config);
+    }
+    try {
+      return load(source.getFilename(), source.getInputStream(), config);
+    } finally {
+      source.close();
+    }
+  }
+
+  /**
+   * Load all of the given images concurrently with at most one load per available processor at a time. The loads run
+   * on a thread pool of daemon threads that is shared by all SimpleImageLoaders and only used for this. The common
+   * ForkJoinPool is not used since this method blocks the calling thread - a caller that is a worker of that pool
+   * would wait for loads queued behind it and could starve the pool.
+   *
+   * @see loadAll(Collection, SimpleImageLoaderConfig, Executor, int)
+   * @param sources the images to load
+   * @param config a SimpleImageLoaderConfig instance that allows to configure details on how the images should be loaded
+   * @return a LoadResult for each source in the same order as the sources
+   * @throws InterruptedException when the current thread has been interrupted while waiting for the loads to finish
+   */
+  public List<LoadResult> loadAll(
+      final Collection<ImageSource> sources,
+      final SimpleImageLoaderConfig config) throws InterruptedException {
+    return loadAll(sources, config, LoadAllExecutor.INSTANCE);
+  }
+
+  /**
+   * Load all of the given images concurrently using the given Executor with at most one load per available processor
+   * at a time. The calling thread blocks until all loads are done, so it must not be a thread of the given Executor.
+   *
+   * @see loadAll(Collection, SimpleImageLoaderConfig, Executor, int)
+   * @param sources the images to load
+   * @param config a SimpleImageLoaderConfig instance that allows to configure details on how the images should be loaded
+   * @param executor the Executor to run the loads
+   * @return a LoadResult for each source in the same order as the sources
+   * @throws InterruptedException when the current thread has been interrupted while waiting for the loads to finish
+   */
+  public List<LoadResult> loadAll(
+      final Collection<ImageSource> sources,
+      final SimpleImageLoaderConfig config,
+      final Executor executor) throws InterruptedException {
+    return loadAll(sources, config, executor, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Load all of the given images concurrently using the given Executor. This method blocks until all images have been
+   * loaded. A failure to load one of the images does not stop the other loads - the LoadResult of the image contains
+   * the Exception instead.
+   *
+   * The number of loads running at the same time is limited by maxConcurrentLoads, no matter how many threads the
+   * Executor has. Since every running load holds the direct memory of its image this bounds the peak memory required.
+   * The calling thread waits for the loads, so it must not be a thread of the given Executor. When it is interrupted
+   * the sources that have not been started yet are closed and the loads already started keep running.
+   *
+   * @param sources the images to load
+   * @param config a SimpleImageLoaderConfig instance that allows to configure details on how the images should be loaded
+   * @param executor the Executor to run the loads
+   * @param maxConcurrentLoads the maximum number of images being loaded at the same time
+   * @return a LoadResult for each source in the same order as the sources
+   * @throws InterruptedException when the current thread has been interrupted while waiting for the loads to finish
+   */
+  public List<LoadResult> loadAll(
+      final Collection<ImageSource> sources,
+      final SimpleImageLoaderConfig config,
+      final Executor executor,
+      final int maxConcurrentLoads) throws InterruptedException {
+    if (maxConcurrentLoads < 1) {
+      throw new IllegalArgumentException("maxConcurrentLoads must be at least 1");
+    }
+    final LoadResult[] results = new LoadResult[sources.size()];
+    final Semaphore permits = new Semaphore(maxConcurrentLoads);
+    final CountDownLatch done = new CountDownLatch(results.length);
+
+    int index = 0;
+    Iterator<ImageSource> iterator = sources.iterator();
+    while (iterator.hasNext()) {
+      final ImageSource source = iterator.next();
+      final int resultIndex = index++;
+      try {
+        permits.acquire();
+      } catch (InterruptedException e) {
+        // nobody else will close the sources that haven't been started
+        closeQuietly(source);
+        while (iterator.hasNext()) {
+          closeQuietly(iterator.next());
+        }
+        throw e;
+      }
+      try {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              results[resultIndex] = loadResult(source, config);
+            } finally {
+              permits.release();
+              done.countDown();
+            }
+          }
+        });
+      } catch (RuntimeException e) {
+        // the Executor refused the task
+        results[resultIndex] = new LoadResult(source, null, e);
+        closeQuietly(source);
+        permits.release();
+        done.countDown();
+      }
     }
-    return source.load(config, inputStream);
+    done.await();
+    return new ArrayList<LoadResult>(Arrays.asList(results));
+  }
+
+  /**
+   * Load image data from the given inputStream in the background using the common ForkJoinPool.
+   *
+   * @see loadAsync(String, InputStream, SimpleImageLoaderConfig, Executor)
+   * @param filename the original filename including the file extension.
+   * @param inputStream the InputStream to load image data from - it will be closed once the image has been loaded
+   * @param config a SimpleImageLoaderConfig instance that allows to configure details on how the image should be loaded
+   * @return a CompletableFuture that will be completed with the ImageData
+   */
+  public CompletableFuture<ImageData> loadAsync(
+      final String filename,
+      final InputStream inputStream,
+      final SimpleImageLoaderConfig config) {
+    return loadAsync(filename, inputStream, config, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Load image data from the given inputStream in the background using the given Executor.
+   *
+   * Cancelling the returned CompletableFuture with cancel(true) stops the load, even if the image is being decoded
+   * right now - the decoders check for this between scanlines. Note that only the returned CompletableFuture itself can be cancelled
+   * this way, cancelling a dependent stage (e.g. the result of thenApply()) doesn't affect the load.
+   *
+   * @param filename the original filename including the file extension.
+   * @param inputStream the InputStream to load image data from - it will be closed once the image has been loaded
+   * @param config a SimpleImageLoaderConfig instance that allows to configure details on how the image should be loaded
+   * @param executor the Executor to load the image with
+   * @return a CompletableFuture that will be completed with the ImageData
+   */
+  public CompletableFuture<ImageData> loadAsync(
+      final String filename,
+      final InputStream inputStream,
+      final SimpleImageLoaderConfig config,
+      final Executor executor) {
+    return loadAsync(new ImageSource(filename, inputStream), config, executor);
+  }
+
+  /**
+   * Load image data from the given file in the background using the common ForkJoinPool.
+   *
+   * @see loadAsync(String, InputStream, SimpleImageLoaderConfig, Executor)
+   * @param path the file to load the image data from
+   * @param config a SimpleImageLoaderConfig instance that allows to configure details on how the image should be loaded
+   * @return a CompletableFuture that will be completed with the ImageData
+   */
+  public CompletableFuture<ImageData> loadAsync(final Path path, final SimpleImageLoaderConfig config) {
+    return loadAsync(path, config, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Load image data from the given file in the background using the given Executor.
+   *
+   * @see loadAsync(String, InputStream, SimpleImageLoaderConfig, Executor)
+   * @param path the file to load the image data from
+   * @param config a SimpleImageLoaderConfig instance that allows to configure details on how the image should be loaded
+   * @param executor the Executor to load the image with
+   * @return a CompletableFuture that will be completed with the ImageData
+   */
+  public CompletableFuture<ImageData> loadAsync(
+      final Path path,
+      final SimpleImageLoaderConfig config,
+      final Executor executor) {
+    return loadAsync(new ImageSource(path), config, executor);
+  }
+
+  /**
+   * Load image data from the given ImageSource in the background using the given Executor.
+   *
+   * @see loadAsync(String, InputStream, SimpleImageLoaderConfig, Executor)
+   * @param source the ImageSource to load
+   * @param config a SimpleImageLoaderConfig instance that allows to configure details on how the image should be loaded
+   * @param executor the Executor to load the image with
+   * @return a CompletableFuture that will be completed with the ImageData
+   */
+  public CompletableFuture<ImageData> loadAsync(
+      final ImageSource source,
+      final SimpleImageLoaderConfig config,
+      final Executor executor) {
+    LoadFuture future = new LoadFuture(source, config);
+    try {
+      executor.execute(future);
+    } catch (RuntimeException e) {
+      closeQuietly(source);
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  private LoadResult loadResult(final ImageSource source, final SimpleImageLoaderConfig config) {
+    try {
+      return new LoadResult(source, load(source, config), null);
+    } catch (Exception e) {
+      return new LoadResult(source, null, e);
+    }
+  }
+
+  private void closeQuietly(final ImageSource source) {
+    try {
+      source.close();
+    } catch (IOException e) {
+      // we're already reporting a failure for this source
+    }
+  }
+
+  private ImageData loadInternal(
+      final String filename,
+      final InputStream inputStream,
+      final SimpleImageLoaderConfig config,
+      final BufferAllocator allocator,
+      final LoadMeter meter) throws IOException {
+    InputStream in = rewindable(inputStream);
+    ImageType imageType = findImageType(filename, peekHeader(in), meter);
+    return decode(imageType, config, in, allocator, meter);
+  }
+
+  private ImageData decode(
+      final ImageType imageType,
+      final SimpleImageLoaderConfig config,
+      final InputStream inputStream,
+      final BufferAllocator allocator,
+      final LoadMeter meter) throws IOException {
+    meter.startDecode();
+    ImageData imageData = imageType.load(config, inputStream, allocator);
+    meter.endDecode();
+    return postProcess(imageData, config, allocator, meter);
+  }
+
+  private ImageData decode(
+      final ImageType imageType,
+      final SimpleImageLoaderConfig config,
+      final Path path,
+      final BufferAllocator allocator,
+      final LoadMeter meter) throws IOException {
+    meter.startDecode();
+    ImageData imageData = imageType.load(config, path, allocator);
+    meter.endDecode();
+    return postProcess(imageData, config, allocator, meter);
+  }
+
+  private ImageData loadCached(
+      final DiskCache cache,
+      final String filename,
+      final InputStream inputStream,
+      final SimpleImageLoaderConfig config,
+      final LoadMeter meter) throws IOException {
+    // we need the whole content for the key anyway
+    byte[] content = readFully(inputStream);
+    ImageType imageType =
+        findImageType(filename, Arrays.copyOf(content, Math.min(content.length, HEADER_SIZE)), meter);
+    String key = cache.key(ByteBuffer.wrap(content), imageType, config);
+    ImageData cached = cache.get(key);
+    if (cached != null) {
+      meter.cached();
+      return cached;
+    }
+    ImageData imageData =
+        decode(imageType, config, new ByteArrayInputStream(content), meter.meter(bufferAllocator), meter);
+    storeQuietly(cache, key, imageData);
+    return imageData;
+  }
+
+  private ImageData loadCached(
+      final DiskCache cache,
+      final Path path,
+      final SimpleImageLoaderConfig config,
+      final LoadMeter meter) throws IOException {
+    ByteBuffer content;
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      content = channel.map(MapMode.READ_ONLY, 0, channel.size());
+    } finally {
+      channel.close();
+    }
+    byte[] header = new byte[Math.min(content.remaining(), HEADER_SIZE)];
+    content.duplicate().get(header);
+    meter.inputBytes(content.remaining());
+    ImageType imageType = findImageType(path.getFileName().toString(), header, meter);
+    String key = cache.key(content, imageType, config);
+    ImageData cached = cache.get(key);
+    if (cached != null) {
+      meter.cached();
+      return cached;
+    }
+    ImageData imageData = decode(imageType, config, path, meter.meter(bufferAllocator), meter);
+    storeQuietly(cache, key, imageData);
+    return imageData;
+  }
+
+  /**
+   * Everything that is done to the image data independent of the ImageType.
+   */
+  private ImageData postProcess(
+      final ImageData imageData,
+      final SimpleImageLoaderConfig config,
+      final BufferAllocator allocator,
+      final LoadMeter meter) {
+    meter.startPostProcess();
+    ImageData result = imageData;
+    BlockCompression blockCompression = config.getBlockCompression();
+    if (blockCompression != null && config.isMipmaps()) {
+      // the levels have to be calculated from the padded size so that they match the compressed levels
+      result = BlockCompressor.align(result, allocator);
+    }
+    if (config.isMipmaps()) {
+      // colors that have already been converted to linear space must not be converted again
+      boolean srgb = config.isMipmapsSRGB() && !config.isSrgbToLinear();
+      result = MipmapGenerator.generate(result, srgb, config.isPremultipliedAlpha(), allocator);
+    }
+    if (blockCompression != null) {
+      result = BlockCompressor.compress(result, blockCompression, config.isModeARGB(), allocator);
+    }
+    meter.endPostProcess();
+    return result;
+  }
+
+  private void storeQuietly(final DiskCache cache, final String key, final ImageData imageData) {
+    try {
+      cache.put(key, imageData);
+    } catch (IOException e) {
+      // the image has been loaded fine - it just needs to be decoded again next time
+    }
+  }
+
+  private byte[] readFully(final InputStream inputStream) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, inputStream.available()));
+    byte[] buffer = new byte[8192];
+    int count;
+    while ((count = inputStream.read(buffer)) != -1) {
+      out.write(buffer, 0, count);
+    }
+    return out.toByteArray();
+  }
+
+  private ImageType findImageType(final Path path, final LoadMeter meter) throws IOException {
+    byte[] header = new byte[HEADER_SIZE];
+    InputStream inputStream = Files.newInputStream(path);
+    int read;
+    try {
+      read = readHeader(inputStream, header);
+    } finally {
+      inputStream.close();
+    }
+    return findImageType(path.getFileName().toString(), Arrays.copyOf(header, read), meter);
+  }
+
+  /**
+   * Returns an InputStream that allows to read the header twice. InputStreams that support mark() are used as they are
+   * so that only the bytes the ImageType needs are taken from them.
+   */
+  private InputStream rewindable(final InputStream inputStream) {
+    if (inputStream.markSupported()) {
+      return inputStream;
+    }
+    return new PushbackInputStream(inputStream, HEADER_SIZE);
+  }
+
+  private byte[] peekHeader(final InputStream in) throws IOException {
+    byte[] header = new byte[HEADER_SIZE];
+    int read;
+    if (in.markSupported()) {
+      in.mark(HEADER_SIZE);
+      read = readHeader(in, header);
+      in.reset();
+    } else {
+      read = readHeader(in, header);
+      ((PushbackInputStream) in).unread(header, 0, read);
+    }
+    return Arrays.copyOf(header, read);
+  }
+
+  /**
+   * The ImageType of the extension wins when it accepts the header. Otherwise the first ImageType that does is used so
+   * that mislabeled files still end up with the right decoder. ImageIO only takes over from the ImageType of the
+   * extension when that ImageType implements canDecode() - otherwise it can't tell us that it doesn't want the data.
+   */
+  private ImageType findImageType(final String filename, final byte[] header, final LoadMeter meter) {
+    // a single snapshot for the whole decision even when ImageTypes are registered meanwhile
+    Registry current = registry;
+    ImageType byExtension = current.imageTypes.get(extractExtension(filename));
+    ImageType result = byExtension;
+    if (byExtension == null || !byExtension.canDecode(header)) {
+      result = findOtherImageType(current, byExtension, header);
+    }
+    meter.imageType(result, result == current.defaultImageType);
+    return result;
+  }
+
+  private ImageType findOtherImageType(final Registry current, final ImageType byExtension, final byte[] header) {
+    for (ImageType imageType : current.imageTypes.values()) {
+      if (imageType != byExtension && imageType.canDecode(header)) {
+        return imageType;
+      }
+    }
+    ImageType defaultImageType = current.defaultImageType;
+    if (byExtension == null ||
+        (current.sniffingImageTypes.contains(byExtension) && defaultImageType.canDecode(header))) {
+      return defaultImageType;
+    }
+    return byExtension;
+  }
+
+  private static boolean implementsCanDecode(final ImageType type) {
+    try {
+      return type.getClass().getMethod("canDecode", byte[].class).getDeclaringClass() != ImageType.class;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  private int readHeader(final InputStream inputStream, final byte[] header) throws IOException {
+    int offset = 0;
+    while (offset < header.length) {
+      int count = inputStream.read(header, offset, header.length - offset);
+      if (count < 0) {
+        break;
+      }
+      offset += count;
+    }
+    return offset;
   }
 
   private String extractExtension(final String filename) {
@@ -95,6 +834,133 @@ public class SimpleImageLoader {
     if (lastIndexOf == filename.length()) {
       return null;
     }
-    return filename.substring(lastIndexOf + 1, filename.length());
+    return filename.substring(lastIndexOf + 1, filename.length()).toLowerCase(Locale.ENGLISH);
+  }
+
+  /**
+   * An immutable snapshot of the registered ImageTypes. registerImageType() and setDefaultImageType() replace the whole
+   * snapshot so that loads running on other threads at the same time never need a lock and always see a consistent
+   * set of ImageTypes.
+   */
+  private static class Registry {
+    private final Map<String, ImageType> imageTypes;
+    private final Set<ImageType> sniffingImageTypes;
+    private final ImageType defaultImageType;
+
+    private Registry(
+        final Map<String, ImageType> imageTypes,
+        final Set<ImageType> sniffingImageTypes,
+        final ImageType defaultImageType) {
+      this.imageTypes = Collections.unmodifiableMap(imageTypes);
+      this.sniffingImageTypes = Collections.unmodifiableSet(sniffingImageTypes);
+      this.defaultImageType = defaultImageType;
+    }
+  }
+
+  /**
+   * The default Executor of loadAll(). It is created when loadAll() is used for the first time and has one daemon
+   * thread per available processor. The threads end when they are idle for a while.
+   */
+  private static class LoadAllExecutor {
+    private static final ThreadPoolExecutor INSTANCE = create();
+
+    private static ThreadPoolExecutor create() {
+      final AtomicInteger count = new AtomicInteger();
+      int threads = Runtime.getRuntime().availableProcessors();
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(
+          threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+              Thread thread = new Thread(runnable, "SimpleImageLoader-loadAll-" + count.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+      executor.allowCoreThreadTimeOut(true);
+      return executor;
+    }
+  }
+
+  /**
+   * A BufferAllocator that hands out the part of a caller supplied ByteBuffer.
+   */
+  private static class DestinationBufferAllocator implements BufferAllocator {
+    private final ByteBuffer destination;
+
+    private DestinationBufferAllocator(final ByteBuffer destination) {
+      this.destination = destination;
+    }
+
+    @Override
+    public ByteBuffer allocate(final int size) {
+      if (destination.remaining() < size) {
+        throw new IllegalArgumentException(
+            "destination buffer too small: " + size + " bytes required but only " + destination.remaining() + " remaining");
+      }
+      ByteBuffer buffer = destination.slice();
+      buffer.limit(size);
+      buffer.order(ByteOrder.nativeOrder());
+      return buffer;
+    }
+
+    @Override
+    public void release(final ByteBuffer buffer) {
+    }
+  }
+
+  /**
+   * A CompletableFuture that loads the image itself when being run and interrupts the loading thread when cancelled.
+   */
+  private class LoadFuture extends CompletableFuture<ImageData> implements Runnable {
+    private final ImageSource source;
+    private final SimpleImageLoaderConfig config;
+    private Thread runner;
+    private boolean interrupted;
+
+    private LoadFuture(final ImageSource source, final SimpleImageLoaderConfig config) {
+      this.source = source;
+      this.config = config;
+    }
+
+    @Override
+    public void run() {
+      synchronized (this) {
+        if (isDone()) {
+          closeQuietly(source);
+          return;
+        }
+        runner = Thread.currentThread();
+      }
+      try {
+        ImageData imageData = load(source, config);
+        if (!complete(imageData)) {
+          // cancelled after the image has been loaded already
+          imageData.release();
+        }
+      } catch (Throwable e) {
+        completeExceptionally(e);
+      } finally {
+        synchronized (this) {
+          runner = null;
+          // don't leave the interrupt of cancel() behind in a thread of the Executor, but keep all others - e.g. the
+          // one of shutdownNow()
+          if (interrupted) {
+            Thread.interrupted();
+          }
+        }
+      }
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+      boolean cancelled = super.cancel(mayInterruptIfRunning);
+      synchronized (this) {
+        if (cancelled && mayInterruptIfRunning && runner != null) {
+          interrupted = true;
+          runner.interrupt();
+        }
+      }
+      return cancelled;
+    }
   }
 }
@@ -1,7 +1,14 @@
 package de.lessvoid.simpleimageloader;
 
+import java.util.Arrays;
+
 /**
  * Fluent API to configure loading of image data.
+ *
+ * Two instances are equal when they configure the same thing so that a SimpleImageLoaderConfig can be used as part
+ * of a cache key - as long as it isn't changed afterwards. toString() lists all options and is stable between runs so
+ * it can be used as part of a persistent key as well.
+ *
  * @author void
  */
 public class SimpleImageLoaderConfig {
@@ -10,6 +17,50 @@ public class SimpleImageLoaderConfig {
   private int[] transparent;
   private boolean powerOfTwoSupport;
   private boolean modeARGB;
+  private boolean mipmaps;
+  private boolean mipmapsSRGB;
+  private int[] region;
+  private BlockCompression blockCompression;
+  private PixelFormat pixelFormat;
+  private boolean premultipliedAlpha;
+  private boolean srgbToLinear;
+  private int subsample = 1;
+  private int maxDimension;
+  private boolean boxFilter;
+  private Padding padding = Padding.TRANSPARENT;
+  private int sizeMultiple = 1;
+  private int rowAlignment = 1;
+
+  /**
+   * Create a new SimpleImageLoaderConfig with all options disabled.
+   */
+  public SimpleImageLoaderConfig() {
+  }
+
+  /**
+   * Create a new SimpleImageLoaderConfig with the same options as the given one.
+   * @param config the SimpleImageLoaderConfig to copy
+   */
+  public SimpleImageLoaderConfig(final SimpleImageLoaderConfig config) {
+    this.flipped = config.flipped;
+    this.forceAlpha = config.forceAlpha;
+    this.transparent = config.transparent == null ? null : config.transparent.clone();
+    this.powerOfTwoSupport = config.powerOfTwoSupport;
+    this.modeARGB = config.modeARGB;
+    this.mipmaps = config.mipmaps;
+    this.mipmapsSRGB = config.mipmapsSRGB;
+    this.region = config.region == null ? null : config.region.clone();
+    this.blockCompression = config.blockCompression;
+    this.pixelFormat = config.pixelFormat;
+    this.premultipliedAlpha = config.premultipliedAlpha;
+    this.srgbToLinear = config.srgbToLinear;
+    this.subsample = config.subsample;
+    this.maxDimension = config.maxDimension;
+    this.boxFilter = config.boxFilter;
+    this.padding = config.padding;
+    this.sizeMultiple = config.sizeMultiple;
+    this.rowAlignment = config.rowAlignment;
+  }
 
   /**
    * When being called the returned image will be vertically flipped.
@@ -42,7 +93,8 @@ public class SimpleImageLoaderConfig {
 
   /**
    * When this is being set the returned image data will be automatically updated to a power of 2 size. This might be
-   * necessary to load textures for older hardware.
+   * necessary to load textures for older hardware. The image is placed in the upper left corner (the first rows and
+   * columns of the image data), padding() decides about the rest.
    * @return this
    */
   public SimpleImageLoaderConfig powerOfTwoSupport() {
@@ -59,6 +111,201 @@ public class SimpleImageLoaderConfig {
     return this;
   }
 
+  /**
+   * When being called the returned image data contains the complete mipmap chain down to 1x1. The levels are
+   * calculated with a box filter that weights the colors with their alpha so that transparent pixels don't darken the
+   * edges. See ImageData.getMipmapCount() and ImageData.getMipmapOffset().
+   * @return this
+   */
+  public SimpleImageLoaderConfig mipmaps() {
+    this.mipmaps = true;
+    return this;
+  }
+
+  /**
+   * Like mipmaps() but the colors are treated as sRGB and averaged in linear space which keeps the brightness of the
+   * smaller levels right. This is a bit slower.
+   * @return this
+   */
+  public SimpleImageLoaderConfig mipmapsSRGB() {
+    this.mipmaps = true;
+    this.mipmapsSRGB = true;
+    return this;
+  }
+
+  /**
+   * Only load the given rectangle of the image. The returned image data is the size of the region (before power of two
+   * support is applied) and all other options apply to the region as if it were the whole image. Depending on the
+   * ImageType the rest of the image isn't decoded at all (uncompressed TGA skips it, ImageIO formats use
+   * ImageReadParam.setSourceRegion()).
+   *
+   * @param x the left edge of the region in the image (0 is the left edge of the image)
+   * @param y the upper edge of the region in the image (0 is the top row of the image)
+   * @param width the width of the region
+   * @param height the height of the region
+   * @return this
+   */
+  public SimpleImageLoaderConfig region(final int x, final int y, final int width, final int height) {
+    this.region = new int[] { x, y, width, height };
+    return this;
+  }
+
+  /**
+   * Encode the image data into the given block compressed format. The returned image data is padded to a multiple of 4
+   * in both directions by repeating the last column and row and ImageData.getBlockCompression() returns the format.
+   * Mipmaps are calculated from the padded image and every level is compressed. The blocks are encoded in parallel
+   * with the common ForkJoinPool.
+   *
+   * Block compression needs the colors in RGB order, with modeARGB the red and blue bytes are swapped back before
+   * encoding.
+   *
+   * @param blockCompression the format to compress into
+   * @return this
+   */
+  public SimpleImageLoaderConfig blockCompression(final BlockCompression blockCompression) {
+    this.blockCompression = blockCompression;
+    return this;
+  }
+
+  /**
+   * Write the pixels in the given format instead of 24 bit RGB or 32 bit RGBA. The decoders convert each row while
+   * they decode it so the image data is never held in 32 bit in between. forceAlpha and modeARGB don't have any effect
+   * when a pixel format is set, the format decides the layout. A transparent color is applied before the pixels are
+   * converted.
+   *
+   * This is ignored when blockCompression() is set because the block compression needs the 24 or 32 bit colors.
+   *
+   * @param pixelFormat the format of the returned image data (null for the default RGB or RGBA)
+   * @return this
+   */
+  public SimpleImageLoaderConfig pixelFormat(final PixelFormat pixelFormat) {
+    this.pixelFormat = pixelFormat;
+    return this;
+  }
+
+  /**
+   * When being called the colors of the returned image data are multiplied with their alpha value, which is what the
+   * blend function GL_ONE, GL_ONE_MINUS_SRC_ALPHA expects. Images without alpha are not changed. Mipmaps of
+   * premultiplied image data are a plain average of the pixels.
+   * @return this
+   */
+  public SimpleImageLoaderConfig premultipliedAlpha() {
+    this.premultipliedAlpha = true;
+    return this;
+  }
+
+  /**
+   * When being called the colors are converted from sRGB to linear space while they are decoded (before they are
+   * premultiplied). The alpha value is not changed. Since the result is still 8 bit per channel the dark colors lose
+   * precision - prefer an sRGB texture format where that's available. mipmapsSRGB() has no effect on linear colors.
+   * @return this
+   */
+  public SimpleImageLoaderConfig srgbToLinear() {
+    this.srgbToLinear = true;
+    return this;
+  }
+
+  /**
+   * Only load every factor-th pixel of every factor-th row. The returned image data is factor times smaller in both
+   * directions (rounded up) and the image is never decoded at full size: ImageIO formats use
+   * ImageReadParam.setSourceSubsampling(), TGA and PNG drop the pixels while they read the scanlines. A region is
+   * applied first, the subsampling then applies to the region.
+   *
+   * @param factor the subsampling factor, 1 loads every pixel
+   * @return this
+   * @throws IllegalArgumentException when factor is smaller than 1
+   */
+  public SimpleImageLoaderConfig subsample(final int factor) {
+    if (factor < 1) {
+      throw new IllegalArgumentException("subsample factor must be at least 1 but is " + factor);
+    }
+    this.subsample = factor;
+    return this;
+  }
+
+  /**
+   * Subsample images that are larger than maxDimension in width or height with the smallest factor that makes them
+   * fit (see subsample()). When subsample() is set as well the larger factor is used.
+   *
+   * @param maxDimension the maximum width and height of the returned image data (before power of two support)
+   * @return this
+   * @throws IllegalArgumentException when maxDimension is smaller than 1
+   */
+  public SimpleImageLoaderConfig maxDimension(final int maxDimension) {
+    if (maxDimension < 1) {
+      throw new IllegalArgumentException("maxDimension must be at least 1 but is " + maxDimension);
+    }
+    this.maxDimension = maxDimension;
+    return this;
+  }
+
+  /**
+   * When being called subsampling averages the pixels of each factor x factor block instead of picking the upper left
+   * one, which avoids aliasing. TGA and PNG average all pixels while they read the scanlines, so the full size image is
+   * still never held in memory.
+   *
+   * Limitation: ImageIO formats only support the box filter for a factor of 2, which reads the image in full size.
+   * Larger factors are subsampled by the ImageReader without averaging, so they give different pixels than TGA and PNG.
+   * @return this
+   */
+  public SimpleImageLoaderConfig boxFilter() {
+    this.boxFilter = true;
+    return this;
+  }
+
+  /**
+   * Decide what the image data is padded with when it is larger than the image because of powerOfTwoSupport(),
+   * sizeMultipleOf() or rowAlignment(). The default is Padding.TRANSPARENT. The padding is written with bulk copies of
+   * whole rows, so CLAMP and WRAP cost about the same as clearing the padding.
+   *
+   * @param padding the Padding
+   * @return this
+   * @throws IllegalArgumentException when padding is null
+   */
+  public SimpleImageLoaderConfig padding(final Padding padding) {
+    if (padding == null) {
+      throw new IllegalArgumentException("padding must not be null");
+    }
+    this.padding = padding;
+    return this;
+  }
+
+  /**
+   * Pad the image data to a width and height that are multiples of the given value, e.g. 4 for block compressed
+   * textures. Unlike powerOfTwoSupport() this adds at most multiple - 1 pixels in each direction - a 1025 pixel wide
+   * image becomes 1028 pixels wide instead of 2048. Together with powerOfTwoSupport() the power of two size is rounded
+   * up to the multiple.
+   *
+   * @param multiple the multiple, 1 doesn't pad at all
+   * @return this
+   * @throws IllegalArgumentException when multiple is smaller than 1
+   */
+  public SimpleImageLoaderConfig sizeMultipleOf(final int multiple) {
+    if (multiple < 1) {
+      throw new IllegalArgumentException("size multiple must be at least 1 but is " + multiple);
+    }
+    this.sizeMultiple = multiple;
+    return this;
+  }
+
+  /**
+   * Pad the width of the image data so that each row is a multiple of the given number of bytes, e.g. 4 for the
+   * default GL_UNPACK_ALIGNMENT or 64 for a cache line. The rows are stored without gaps, so the aligned row length is
+   * reached by adding pixels to the right of the image (ImageData.getWidth() gets larger). padding() decides what
+   * these pixels contain. This is ignored together with blockCompression() which has its own layout.
+   *
+   * @param bytes the alignment in bytes, a power of two
+   * @return this
+   * @throws IllegalArgumentException when bytes is not a power of two
+   */
+  public SimpleImageLoaderConfig rowAlignment(final int bytes) {
+    if (bytes < 1 || Integer.bitCount(bytes) != 1) {
+      throw new IllegalArgumentException("row alignment must be a power of two but is " + bytes);
+    }
+    this.rowAlignment = bytes;
+    return this;
+  }
+
   /**
    * Returns if flipped is being set to true.
    * @return true when flipped is true
@@ -98,4 +345,183 @@ public class SimpleImageLoaderConfig {
   public boolean isModeARGB() {
     return modeARGB;
   }
+
+  /**
+   * Returns true when the mipmap chain should be generated.
+   * @return true when mipmaps are enabled
+   */
+  public boolean isMipmaps() {
+    return mipmaps;
+  }
+
+  /**
+   * Returns true when the mipmaps should be calculated in linear space for sRGB colors.
+   * @return true when sRGB mipmaps are enabled
+   */
+  public boolean isMipmapsSRGB() {
+    return mipmapsSRGB;
+  }
+
+  /**
+   * Returns the region of the image to load (x, y, width, height) or null to load the whole image.
+   * @return the region
+   */
+  public int[] getRegion() {
+    return region;
+  }
+
+  /**
+   * Returns the format to compress the image data into or null when the image data should not be compressed.
+   * @return the BlockCompression
+   */
+  public BlockCompression getBlockCompression() {
+    return blockCompression;
+  }
+
+  /**
+   * Returns the format the pixels should be written in or null for the default RGB or RGBA.
+   * @return the PixelFormat
+   */
+  public PixelFormat getPixelFormat() {
+    return pixelFormat;
+  }
+
+  /**
+   * Returns true when the colors should be premultiplied with alpha.
+   * @return true when premultiplied alpha is enabled
+   */
+  public boolean isPremultipliedAlpha() {
+    return premultipliedAlpha;
+  }
+
+  /**
+   * Returns true when the colors should be converted from sRGB to linear space.
+   * @return true when the conversion is enabled
+   */
+  public boolean isSrgbToLinear() {
+    return srgbToLinear;
+  }
+
+  /**
+   * Returns the subsampling factor (1 when every pixel should be loaded).
+   * @return the subsampling factor
+   */
+  public int getSubsample() {
+    return subsample;
+  }
+
+  /**
+   * Returns the maximum width and height of the loaded image or 0 when the size is not limited.
+   * @return the maximum dimension
+   */
+  public int getMaxDimension() {
+    return maxDimension;
+  }
+
+  /**
+   * Returns true when subsampling should average the pixels.
+   * @return true when the box filter is enabled
+   */
+  public boolean isBoxFilter() {
+    return boxFilter;
+  }
+
+  /**
+   * Returns what the image data is padded with.
+   * @return the Padding
+   */
+  public Padding getPadding() {
+    return padding;
+  }
+
+  /**
+   * Returns the multiple the width and height of the image data are padded to (1 when they are not padded).
+   * @return the size multiple
+   */
+  public int getSizeMultiple() {
+    return sizeMultiple;
+  }
+
+  /**
+   * Returns the number of bytes each row of the image data is aligned to (1 when the rows are not aligned).
+   * @return the row alignment in bytes
+   */
+  public int getRowAlignment() {
+    return rowAlignment;
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof SimpleImageLoaderConfig)) {
+      return false;
+    }
+    SimpleImageLoaderConfig other = (SimpleImageLoaderConfig) obj;
+    return flipped == other.flipped &&
+        forceAlpha == other.forceAlpha &&
+        Arrays.equals(transparent, other.transparent) &&
+        powerOfTwoSupport == other.powerOfTwoSupport &&
+        modeARGB == other.modeARGB &&
+        mipmaps == other.mipmaps &&
+        mipmapsSRGB == other.mipmapsSRGB &&
+        Arrays.equals(region, other.region) &&
+        blockCompression == other.blockCompression &&
+        pixelFormat == other.pixelFormat &&
+        premultipliedAlpha == other.premultipliedAlpha &&
+        srgbToLinear == other.srgbToLinear &&
+        subsample == other.subsample &&
+        maxDimension == other.maxDimension &&
+        boxFilter == other.boxFilter &&
+        padding == other.padding &&
+        sizeMultiple == other.sizeMultiple &&
+        rowAlignment == other.rowAlignment;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = flipped ? 1 : 0;
+    result = 31 * result + (forceAlpha ? 1 : 0);
+    result = 31 * result + Arrays.hashCode(transparent);
+    result = 31 * result + (powerOfTwoSupport ? 1 : 0);
+    result = 31 * result + (modeARGB ? 1 : 0);
+    result = 31 * result + (mipmaps ? 1 : 0);
+    result = 31 * result + (mipmapsSRGB ? 1 : 0);
+    result = 31 * result + Arrays.hashCode(region);
+    result = 31 * result + (blockCompression == null ? 0 : blockCompression.hashCode());
+    result = 31 * result + (pixelFormat == null ? 0 : pixelFormat.hashCode());
+    result = 31 * result + (premultipliedAlpha ? 1 : 0);
+    result = 31 * result + (srgbToLinear ? 1 : 0);
+    result = 31 * result + subsample;
+    result = 31 * result + maxDimension;
+    result = 31 * result + (boxFilter ? 1 : 0);
+    result = 31 * result + padding.hashCode();
+    result = 31 * result + sizeMultiple;
+    result = 31 * result + rowAlignment;
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "SimpleImageLoaderConfig[" +
+        "flipped=" + flipped +
+        ", forceAlpha=" + forceAlpha +
+        ", transparent=" + Arrays.toString(transparent) +
+        ", powerOfTwoSupport=" + powerOfTwoSupport +
+        ", modeARGB=" + modeARGB +
+        ", mipmaps=" + mipmaps +
+        ", mipmapsSRGB=" + mipmapsSRGB +
+        ", region=" + Arrays.toString(region) +
+        ", blockCompression=" + blockCompression +
+        ", pixelFormat=" + pixelFormat +
+        ", premultipliedAlpha=" + premultipliedAlpha +
+        ", srgbToLinear=" + srgbToLinear +
+        ", subsample=" + subsample +
+        ", maxDimension=" + maxDimension +
+        ", boxFilter=" + boxFilter +
+        ", padding=" + padding +
+        ", sizeMultiple=" + sizeMultiple +
+        ", rowAlignment=" + rowAlignment + "]";
+  }
 }
@@ -0,0 +1,41 @@
+package de.lessvoid.simpleimageloader.atlas;
+
+import java.util.Collections;
+import java.util.List;
+
+import de.lessvoid.simpleimageloader.ImageData;
+
+/**
+ * The result of an AtlasBuilder: one or more pages of image data and the region of each image on them.
+ * @author void
+ */
+public class Atlas {
+  private final List<ImageData> pages;
+  private final List<AtlasRegion> regions;
+
+  /**
+   * Create a new Atlas.
+   * @param pages the pages
+   * @param regions the regions of the images on the pages
+   */
+  public Atlas(final List<ImageData> pages, final List<AtlasRegion> regions) {
+    this.pages = Collections.unmodifiableList(pages);
+    this.regions = Collections.unmodifiableList(regions);
+  }
+
+  /**
+   * The pages of the atlas. Each page is a 32 bit image of the page size given to the AtlasBuilder.
+   * @return the pages
+   */
+  public List<ImageData> getPages() {
+    return pages;
+  }
+
+  /**
+   * The regions of the images in the same order as the ImageSources given to AtlasBuilder.build().
+   * @return the regions
+   */
+  public List<AtlasRegion> getRegions() {
+    return regions;
+  }
+}
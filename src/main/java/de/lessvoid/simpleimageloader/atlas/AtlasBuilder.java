@@ -0,0 +1,309 @@
+package de.lessvoid.simpleimageloader.atlas;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import de.lessvoid.simpleimageloader.ImageData;
+import de.lessvoid.simpleimageloader.ImageInfo;
+import de.lessvoid.simpleimageloader.ImageSource;
+import de.lessvoid.simpleimageloader.PixelFormat;
+import de.lessvoid.simpleimageloader.SimpleImageLoader;
+import de.lessvoid.simpleimageloader.SimpleImageLoaderConfig;
+import de.lessvoid.simpleimageloader.buffer.BufferAllocator;
+
+/**
+ * Loads many images into one or more pages of a fixed size so that they can be used as a single texture.
+ *
+ * The sizes of all images are read with SimpleImageLoader.probe() first and the images are packed with a skyline
+ * algorithm, largest first. Then each image is loaded into a staging buffer that is reused for all images and copied
+ * into its place on the page. The pages and the staging buffer are taken from the BufferAllocator of the
+ * SimpleImageLoader - the staging buffer is given back once all images are on their pages, the pages are given back
+ * with ImageData.release().
+ *
+ * The pages are always 32 bit. Of the SimpleImageLoaderConfig given to build() the transparent color, modeARGB and
+ * flipped are used - flipped flips the whole page. pixelFormat is ignored and so is powerOfTwoSupport, choose a power
+ * of two page size instead.
+ *
+ * @author void
+ */
+public class AtlasBuilder {
+  private static final byte[] ZEROS = new byte[8192];
+
+  private final SimpleImageLoader loader;
+  private final int pageWidth;
+  private final int pageHeight;
+  private int padding;
+  private boolean bleed;
+
+  /**
+   * Create a new AtlasBuilder.
+   *
+   * @param loader the SimpleImageLoader to load the images with
+   * @param pageWidth the width of each page
+   * @param pageHeight the height of each page
+   */
+  public AtlasBuilder(final SimpleImageLoader loader, final int pageWidth, final int pageHeight) {
+    this.loader = loader;
+    this.pageWidth = pageWidth;
+    this.pageHeight = pageHeight;
+  }
+
+  /**
+   * Keep the given number of pixels free around each image so that texture filtering doesn't pick up the neighbours.
+   * @param padding the number of pixels
+   * @return this
+   */
+  public AtlasBuilder padding(final int padding) {
+    this.padding = padding;
+    return this;
+  }
+
+  /**
+   * Fill the padding around each image with the pixels at the edge of the image instead of leaving it transparent.
+   * @return this
+   */
+  public AtlasBuilder bleed() {
+    this.bleed = true;
+    return this;
+  }
+
+  /**
+   * Load all of the given images into pages. InputStreams of the sources are closed.
+   *
+   * @param sources the images to load
+   * @param config a SimpleImageLoaderConfig instance that allows to configure details on how the images should be loaded
+   * @return the Atlas with the pages and the region of each image
+   * @throws IOException when an image can't be loaded or is larger than a page
+   */
+  public Atlas build(final List<ImageSource> sources, final SimpleImageLoaderConfig config) throws IOException {
+    List<Entry> entries = new ArrayList<Entry>();
+    try {
+      for (ImageSource source : sources) {
+        entries.add(probe(source));
+      }
+    } finally {
+      for (ImageSource source : sources) {
+        source.close();
+      }
+    }
+
+    int pageCount = pack(entries);
+
+    BufferAllocator allocator = loader.getBufferAllocator();
+    List<ImageData> pages = new ArrayList<ImageData>();
+    ByteBuffer staging = null;
+    boolean done = false;
+    try {
+      PixelFormat pixelFormat = config.isModeARGB() ? PixelFormat.BGRA : PixelFormat.RGBA;
+      for (int i = 0; i < pageCount; i++) {
+        ByteBuffer data = allocator.allocate(pageWidth * pageHeight * 4);
+        clear(data);
+        pages.add(new ImageData(pageWidth, pageHeight, pageWidth, pageHeight, pixelFormat, data, allocator));
+      }
+
+      int stagingSize = 0;
+      for (Entry entry : entries) {
+        stagingSize = Math.max(stagingSize, entry.info.getWidth() * entry.info.getHeight() * 4);
+      }
+      staging = allocator.allocate(stagingSize);
+      SimpleImageLoaderConfig imageConfig = imageConfig(config);
+
+      List<AtlasRegion> regions = new ArrayList<AtlasRegion>();
+      for (Entry entry : entries) {
+        int x = entry.x + padding;
+        int y = entry.y + padding;
+        int width = entry.info.getWidth();
+        int height = entry.info.getHeight();
+        if (config.isFlipped()) {
+          y = pageHeight - y - height;
+        }
+
+        ImageData imageData = load(entry, imageConfig, staging);
+        if (imageData.getWidth() != width || imageData.getHeight() != height) {
+          throw new IOException("Size of " + entry.source + " is different from what probe() returned");
+        }
+        copy(imageData.getData(), pages.get(entry.page).getData(), x, y, width, height);
+        regions.add(new AtlasRegion(entry.source, entry.page, x, y, width, height));
+      }
+      done = true;
+      return new Atlas(pages, regions);
+    } finally {
+      if (staging != null) {
+        allocator.release(staging);
+      }
+      if (!done) {
+        for (ImageData page : pages) {
+          page.release();
+        }
+      }
+    }
+  }
+
+  private Entry probe(final ImageSource source) throws IOException {
+    if (source.getPath() != null) {
+      return new Entry(source, null, loader.probe(source.getPath()));
+    }
+    // the InputStream can only be read once so we keep the content for loading the image later
+    byte[] content = readFully(source.getInputStream());
+    return new Entry(source, content, loader.probe(source.getFilename(), new ByteArrayInputStream(content)));
+  }
+
+  /**
+   * Places all entries on pages and returns the number of pages necessary.
+   */
+  private int pack(final List<Entry> entries) throws IOException {
+    List<Entry> largestFirst = new ArrayList<Entry>(entries);
+    Collections.sort(largestFirst, new Comparator<Entry>() {
+      @Override
+      public int compare(final Entry a, final Entry b) {
+        if (a.info.getHeight() != b.info.getHeight()) {
+          return b.info.getHeight() - a.info.getHeight();
+        }
+        return b.info.getWidth() - a.info.getWidth();
+      }
+    });
+
+    List<SkylinePacker> packers = new ArrayList<SkylinePacker>();
+    for (Entry entry : largestFirst) {
+      int width = entry.info.getWidth() + 2 * padding;
+      int height = entry.info.getHeight() + 2 * padding;
+      if (width > pageWidth || height > pageHeight) {
+        throw new IOException(
+            entry.source + " (" + width + "x" + height + " with padding) doesn't fit into a page of " +
+            pageWidth + "x" + pageHeight);
+      }
+      int[] position = null;
+      for (int i = 0; i < packers.size() && position == null; i++) {
+        position = packers.get(i).insert(width, height);
+        entry.page = i;
+      }
+      if (position == null) {
+        SkylinePacker packer = new SkylinePacker(pageWidth, pageHeight);
+        packers.add(packer);
+        position = packer.insert(width, height);
+        entry.page = packers.size() - 1;
+      }
+      entry.x = position[0];
+      entry.y = position[1];
+    }
+    return packers.size();
+  }
+
+  private SimpleImageLoaderConfig imageConfig(final SimpleImageLoaderConfig config) {
+    SimpleImageLoaderConfig imageConfig = new SimpleImageLoaderConfig().forceAlpha();
+    if (config.isFlipped()) {
+      imageConfig.flipped();
+    }
+    if (config.isModeARGB()) {
+      imageConfig.modeARGB();
+    }
+    if (config.getTransparent() != null) {
+      imageConfig.transparent(config.getTransparent());
+    }
+    return imageConfig;
+  }
+
+  private ImageData load(
+      final Entry entry,
+      final SimpleImageLoaderConfig imageConfig,
+      final ByteBuffer staging) throws IOException {
+    staging.clear();
+    InputStream inputStream = entry.content != null ?
+        new ByteArrayInputStream(entry.content) :
+        Files.newInputStream(entry.source.getPath());
+    try {
+      return loader.load(entry.source.getFilename(), inputStream, imageConfig, staging);
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  /**
+   * Copies the image row by row to its place on the page and fills the padding when bleeding is enabled.
+   */
+  private void copy(
+      final ByteBuffer image,
+      final ByteBuffer page,
+      final int x,
+      final int y,
+      final int width,
+      final int height) {
+    int border = bleed ? padding : 0;
+    int rowSize = width * 4;
+    byte[] row = new byte[rowSize + 2 * border * 4];
+    ByteBuffer source = image.duplicate();
+    ByteBuffer target = page.duplicate();
+
+    for (int i = 0; i < height; i++) {
+      source.position(i * rowSize);
+      source.get(row, border * 4, rowSize);
+      for (int b = 0; b < border; b++) {
+        System.arraycopy(row, border * 4, row, b * 4, 4);
+        System.arraycopy(row, border * 4 + rowSize - 4, row, (border + width + b) * 4, 4);
+      }
+      putRow(target, row, x - border, y + i);
+      if (i == 0) {
+        for (int b = 1; b <= border; b++) {
+          putRow(target, row, x - border, y - b);
+        }
+      }
+      if (i == height - 1) {
+        for (int b = 1; b <= border; b++) {
+          putRow(target, row, x - border, y + i + b);
+        }
+      }
+    }
+  }
+
+  /**
+   * Clear the page so that the free space and the padding is transparent black. Buffers of a BufferAllocator might
+   * contain the data of a previous image.
+   */
+  private void clear(final ByteBuffer page) {
+    ByteBuffer target = page.duplicate();
+    while (target.hasRemaining()) {
+      target.put(ZEROS, 0, Math.min(ZEROS.length, target.remaining()));
+    }
+  }
+
+  private void putRow(final ByteBuffer page, final byte[] row, final int x, final int y) {
+    page.position((y * pageWidth + x) * 4);
+    page.put(row);
+  }
+
+  private byte[] readFully(final InputStream inputStream) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, inputStream.available()));
+    byte[] buffer = new byte[8192];
+    int count;
+    while ((count = inputStream.read(buffer)) != -1) {
+      out.write(buffer, 0, count);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * An image of the atlas and its place while packing.
+   */
+  private static class Entry {
+    private final ImageSource source;
+    private final byte[] content;
+    private final ImageInfo info;
+    private int page;
+    private int x;
+    private int y;
+
+    private Entry(final ImageSource source, final byte[] content, final ImageInfo info) {
+      this.source = source;
+      this.content = content;
+      this.info = info;
+    }
+  }
+}
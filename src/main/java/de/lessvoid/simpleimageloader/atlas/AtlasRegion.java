@@ -0,0 +1,95 @@
+package de.lessvoid.simpleimageloader.atlas;
+
+import de.lessvoid.simpleimageloader.ImageSource;
+
+/**
+ * The place of a single image inside of an Atlas. The coordinates are pixels in the ByteBuffer of the page with 0/0
+ * being the first pixel of the data and they don't include the padding around the image.
+ * @author void
+ */
+public class AtlasRegion {
+  private final ImageSource source;
+  private final int page;
+  private final int x;
+  private final int y;
+  private final int width;
+  private final int height;
+
+  /**
+   * Create a new AtlasRegion.
+   *
+   * @param source the ImageSource of the image
+   * @param page the index of the page the image is on
+   * @param x the x position of the image on the page
+   * @param y the y position of the image on the page
+   * @param width the width of the image
+   * @param height the height of the image
+   */
+  public AtlasRegion(
+      final ImageSource source,
+      final int page,
+      final int x,
+      final int y,
+      final int width,
+      final int height) {
+    this.source = source;
+    this.page = page;
+    this.x = x;
+    this.y = y;
+    this.width = width;
+    this.height = height;
+  }
+
+  /**
+   * The ImageSource of the image.
+   * @return the ImageSource
+   */
+  public ImageSource getSource() {
+    return source;
+  }
+
+  /**
+   * The index of the page the image is on.
+   * @return the index into Atlas.getPages()
+   */
+  public int getPage() {
+    return page;
+  }
+
+  /**
+   * The x position of the image on the page.
+   * @return the x position in pixels
+   */
+  public int getX() {
+    return x;
+  }
+
+  /**
+   * The y position of the image on the page.
+   * @return the y position in pixels
+   */
+  public int getY() {
+    return y;
+  }
+
+  /**
+   * The width of the image.
+   * @return the width in pixels
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * The height of the image.
+   * @return the height in pixels
+   */
+  public int getHeight() {
+    return height;
+  }
+
+  @Override
+  public String toString() {
+    return source + " -> page " + page + " [" + x + ", " + y + ", " + width + "x" + height + "]";
+  }
+}
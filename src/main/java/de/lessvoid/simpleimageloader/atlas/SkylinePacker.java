@@ -0,0 +1,120 @@
+package de.lessvoid.simpleimageloader.atlas;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs rectangles into a single page with the skyline bottom left algorithm. The skyline is the list of segments
+ * that form the upper edge of the rectangles placed so far. A new rectangle is put on top of the skyline at the place
+ * where its bottom edge ends up lowest.
+ * @author void
+ */
+class SkylinePacker {
+  private final int width;
+  private final int height;
+  private final List<Segment> skyline = new ArrayList<Segment>();
+
+  SkylinePacker(final int width, final int height) {
+    this.width = width;
+    this.height = height;
+    skyline.add(new Segment(0, 0, width));
+  }
+
+  /**
+   * Find a place for a rectangle of the given size and mark it as used.
+   *
+   * @param rectWidth the width of the rectangle
+   * @param rectHeight the height of the rectangle
+   * @return the x and y position of the rectangle or null when it doesn't fit anymore
+   */
+  int[] insert(final int rectWidth, final int rectHeight) {
+    int bestIndex = -1;
+    int bestBottom = Integer.MAX_VALUE;
+    int bestWidth = Integer.MAX_VALUE;
+    int bestY = 0;
+    for (int i = 0; i < skyline.size(); i++) {
+      int y = fit(i, rectWidth, rectHeight);
+      if (y < 0) {
+        continue;
+      }
+      int bottom = y + rectHeight;
+      Segment segment = skyline.get(i);
+      if (bottom < bestBottom || (bottom == bestBottom && segment.width < bestWidth)) {
+        bestIndex = i;
+        bestBottom = bottom;
+        bestWidth = segment.width;
+        bestY = y;
+      }
+    }
+    if (bestIndex == -1) {
+      return null;
+    }
+    int x = skyline.get(bestIndex).x;
+    add(bestIndex, x, bestY + rectHeight, rectWidth);
+    return new int[] { x, bestY };
+  }
+
+  /**
+   * Returns the y position a rectangle starting at the segment with the given index would get or -1 if it doesn't fit.
+   */
+  private int fit(final int index, final int rectWidth, final int rectHeight) {
+    int x = skyline.get(index).x;
+    if (x + rectWidth > width) {
+      return -1;
+    }
+    int y = 0;
+    int widthLeft = rectWidth;
+    for (int i = index; widthLeft > 0; i++) {
+      Segment segment = skyline.get(i);
+      y = Math.max(y, segment.y);
+      if (y + rectHeight > height) {
+        return -1;
+      }
+      widthLeft -= segment.width;
+    }
+    return y;
+  }
+
+  private void add(final int index, final int x, final int y, final int segmentWidth) {
+    skyline.add(index, new Segment(x, y, segmentWidth));
+
+    // cut away what's now covered by the new segment
+    int end = x + segmentWidth;
+    while (index + 1 < skyline.size()) {
+      Segment next = skyline.get(index + 1);
+      if (next.x >= end) {
+        break;
+      }
+      int covered = end - next.x;
+      if (covered < next.width) {
+        next.x += covered;
+        next.width -= covered;
+        break;
+      }
+      skyline.remove(index + 1);
+    }
+
+    // merge neighbours of the same height
+    for (int i = 0; i < skyline.size() - 1; i++) {
+      Segment segment = skyline.get(i);
+      Segment next = skyline.get(i + 1);
+      if (segment.y == next.y) {
+        segment.width += next.width;
+        skyline.remove(i + 1);
+        i--;
+      }
+    }
+  }
+
+  private static class Segment {
+    private int x;
+    private final int y;
+    private int width;
+
+    private Segment(final int x, final int y, final int width) {
+      this.x = x;
+      this.y = y;
+      this.width = width;
+    }
+  }
+}
@@ -0,0 +1,27 @@
+package de.lessvoid.simpleimageloader.buffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Provides the ByteBuffers the loaded image data is written to. This allows the buffers to be reused instead of
+ * allocating a new direct ByteBuffer for each image.
+ * @author void
+ */
+public interface BufferAllocator {
+
+  /**
+   * Get a ByteBuffer with at least size bytes. The returned buffer uses the native byte order, is positioned at 0 and
+   * has its limit set to size. The content of the buffer is undefined - it might contain data of a previous image.
+   *
+   * @param size the number of bytes required
+   * @return the ByteBuffer
+   */
+  ByteBuffer allocate(int size);
+
+  /**
+   * Give a ByteBuffer back that has been returned by allocate() before. The buffer must not be used afterwards.
+   *
+   * @param buffer the ByteBuffer that is not used anymore
+   */
+  void release(ByteBuffer buffer);
+}
@@ -0,0 +1,21 @@
+package de.lessvoid.simpleimageloader.buffer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The default BufferAllocator. Each call to allocate() returns a new direct ByteBuffer and release() does nothing at
+ * all - the buffer will be freed by the garbage collector.
+ * @author void
+ */
+public class DirectBufferAllocator implements BufferAllocator {
+
+  @Override
+  public ByteBuffer allocate(final int size) {
+    return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+  }
+
+  @Override
+  public void release(final ByteBuffer buffer) {
+  }
+}
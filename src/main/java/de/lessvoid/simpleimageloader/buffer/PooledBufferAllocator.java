@@ -0,0 +1,186 @@
+package de.lessvoid.simpleimageloader.buffer;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A BufferAllocator that keeps released direct ByteBuffers around and hands them out again. Buffers are organized in
+ * power of two size classes, so a request for 3 MB is served by a 4 MB buffer. The total number of bytes kept in the
+ * pool is limited - buffers released while the pool is full are left to the garbage collector.
+ *
+ * This is meant for staging buffers that are only used for a short time, for instance until the image data has been
+ * uploaded to a texture. It's safe to use an instance from several threads at the same time.
+ *
+ * Only buffers that have been handed out by allocate() and not been released since are taken back. Releasing a buffer
+ * a second time or releasing a buffer of someone else does nothing, so two images never share the same memory.
+ * Handed out buffers are only referenced weakly - a buffer that is never released is left to the garbage collector.
+ *
+ * @author void
+ */
+public class PooledBufferAllocator implements BufferAllocator {
+  private static final int DEFAULT_MIN_SIZE = 4 * 1024;
+  private static final long DEFAULT_MAX_POOLED_BYTES = 64L * 1024 * 1024;
+  private static final int MAX_SIZE_CLASS = 30;
+
+  private final int minSize;
+  private final long maxPooledBytes;
+  private final Queue<ByteBuffer>[] pools;
+  private final AtomicLong pooledBytes = new AtomicLong();
+
+  // the handed out buffers by their identity hash code
+  private final Map<Integer, List<BufferReference>> handedOut = new HashMap<Integer, List<BufferReference>>();
+  private final ReferenceQueue<ByteBuffer> collected = new ReferenceQueue<ByteBuffer>();
+
+  /**
+   * Create a new PooledBufferAllocator that keeps up to 64 MB of buffers.
+   */
+  public PooledBufferAllocator() {
+    this(DEFAULT_MAX_POOLED_BYTES);
+  }
+
+  /**
+   * Create a new PooledBufferAllocator.
+   * @param maxPooledBytes the maximum number of bytes the released buffers kept in the pool may sum up to
+   */
+  public PooledBufferAllocator(final long maxPooledBytes) {
+    this(maxPooledBytes, DEFAULT_MIN_SIZE);
+  }
+
+  /**
+   * Create a new PooledBufferAllocator.
+   * @param maxPooledBytes the maximum number of bytes the released buffers kept in the pool may sum up to
+   * @param minSize the smallest buffer size handed out (will be rounded up to a power of two)
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  public PooledBufferAllocator(final long maxPooledBytes, final int minSize) {
+    this.maxPooledBytes = maxPooledBytes;
+    this.minSize = sizeClass(Math.max(1, minSize));
+    this.pools = new Queue[MAX_SIZE_CLASS + 1];
+    for (int i = 0; i < pools.length; i++) {
+      pools[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+    }
+  }
+
+  @Override
+  public ByteBuffer allocate(final int size) {
+    if (size > (1 << MAX_SIZE_CLASS)) {
+      return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+    }
+    int capacity = Math.max(minSize, sizeClass(size));
+    ByteBuffer buffer = pools[Integer.numberOfTrailingZeros(capacity)].poll();
+    if (buffer == null) {
+      buffer = ByteBuffer.allocateDirect(capacity);
+    } else {
+      pooledBytes.addAndGet(-capacity);
+    }
+    buffer.clear();
+    buffer.limit(size);
+    buffer.order(ByteOrder.nativeOrder());
+    track(buffer);
+    return buffer;
+  }
+
+  @Override
+  public void release(final ByteBuffer buffer) {
+    if (!untrack(buffer)) {
+      // not one of ours or already released
+      return;
+    }
+    int capacity = buffer.capacity();
+    if (pooledBytes.addAndGet(capacity) > maxPooledBytes) {
+      pooledBytes.addAndGet(-capacity);
+      return;
+    }
+    pools[Integer.numberOfTrailingZeros(capacity)].offer(buffer);
+  }
+
+  /**
+   * Drop all pooled buffers so that they can be garbage collected.
+   */
+  public void clear() {
+    for (Queue<ByteBuffer> pool : pools) {
+      ByteBuffer buffer;
+      while ((buffer = pool.poll()) != null) {
+        pooledBytes.addAndGet(-buffer.capacity());
+      }
+    }
+  }
+
+  /**
+   * The number of bytes currently kept in the pool.
+   * @return the sum of the capacities of all pooled buffers
+   */
+  public long getPooledBytes() {
+    return pooledBytes.get();
+  }
+
+  private synchronized void track(final ByteBuffer buffer) {
+    expungeCollected();
+    Integer key = System.identityHashCode(buffer);
+    List<BufferReference> references = handedOut.get(key);
+    if (references == null) {
+      references = new ArrayList<BufferReference>(1);
+      handedOut.put(key, references);
+    }
+    references.add(new BufferReference(buffer, key, collected));
+  }
+
+  private synchronized boolean untrack(final ByteBuffer buffer) {
+    expungeCollected();
+    Integer key = System.identityHashCode(buffer);
+    List<BufferReference> references = handedOut.get(key);
+    if (references == null) {
+      return false;
+    }
+    for (int i = 0; i < references.size(); i++) {
+      if (references.get(i).get() == buffer) {
+        remove(references.get(i));
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void expungeCollected() {
+    Reference<? extends ByteBuffer> reference;
+    while ((reference = collected.poll()) != null) {
+      remove((BufferReference) reference);
+    }
+  }
+
+  private void remove(final BufferReference reference) {
+    List<BufferReference> references = handedOut.get(reference.key);
+    if (references != null && references.remove(reference) && references.isEmpty()) {
+      handedOut.remove(reference.key);
+    }
+  }
+
+  private static int sizeClass(final int size) {
+    if (size <= 1) {
+      return 1;
+    }
+    return Integer.highestOneBit(size - 1) << 1;
+  }
+
+  /**
+   * A weak reference to a handed out buffer that remembers the key it is stored under.
+   */
+  private static class BufferReference extends WeakReference<ByteBuffer> {
+    private final Integer key;
+
+    private BufferReference(final ByteBuffer buffer, final Integer key, final ReferenceQueue<ByteBuffer> queue) {
+      super(buffer, queue);
+      this.key = key;
+    }
+  }
+}
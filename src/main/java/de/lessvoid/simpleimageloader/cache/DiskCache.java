@@ -0,0 +1,235 @@
+package de.lessvoid.simpleimageloader.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import de.lessvoid.simpleimageloader.BlockCompression;
+import de.lessvoid.simpleimageloader.ImageData;
+import de.lessvoid.simpleimageloader.PixelFormat;
+import de.lessvoid.simpleimageloader.SimpleImageLoaderConfig;
+import de.lessvoid.simpleimageloader.type.ImageType;
+
+/**
+ * Keeps the final image data - after flipping, power of two padding, ARGB and transparency handling - in files of a
+ * directory so that it doesn't need to be decoded again on the next run. Set it with
+ * SimpleImageLoader.setDiskCache().
+ *
+ * Entries are keyed by a hash of the content of the source image, the ImageType that decodes it and the
+ * SimpleImageLoaderConfig. When the source or the config changes the key changes as well and the image is decoded
+ * again. Entries that are not used anymore are never removed automatically - call clear() for that.
+ *
+ * Each entry is a small header (including the pixel format, the block compression and the mipmap offsets) followed
+ * by the raw image data. A hit memory maps the file and returns a read only view of the data without copying it.
+ *
+ * @author void
+ */
+public class DiskCache {
+  private static final String HASH_ALGORITHM = "SHA-1";
+  private static final String SUFFIX = ".sil";
+  private static final int MAGIC = 0x53494C43; // "SILC"
+  private static final int VERSION = 4;
+  private static final int MIN_HEADER_SIZE = 48;
+  private static final int HEADER_ALIGNMENT = 32;
+
+  private final Path directory;
+
+  /**
+   * Create a new DiskCache that keeps its files in the given directory. The directory is created when it doesn't
+   * exist.
+   * @param directory the directory for the cache files
+   * @throws IOException when the directory can't be created
+   */
+  public DiskCache(final Path directory) throws IOException {
+    this.directory = directory;
+    Files.createDirectories(directory);
+  }
+
+  /**
+   * Calculate the key of an image.
+   *
+   * @param content the complete content of the source image (position and limit are not changed)
+   * @param type the ImageType that decodes the image
+   * @param config the SimpleImageLoaderConfig the image is loaded with
+   * @return the key
+   */
+  public String key(final ByteBuffer content, final ImageType type, final SimpleImageLoaderConfig config) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance(HASH_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform is required to support SHA-1
+      throw new IllegalStateException(e);
+    }
+    digest.update(content.duplicate());
+    digest.update((VERSION + ":" + type.getClass().getName() + ":" + config).getBytes(StandardCharsets.UTF_8));
+
+    StringBuilder result = new StringBuilder();
+    for (byte b : digest.digest()) {
+      result.append(String.format("%02x", b));
+    }
+    return result.toString();
+  }
+
+  /**
+   * Get the image data for the given key.
+   *
+   * @param key the key
+   * @return a read only ImageData instance backed by the mapped cache file or null when there is no such entry
+   * @throws IOException
+   */
+  public ImageData get(final String key) throws IOException {
+    Path file = directory.resolve(key + SUFFIX);
+    FileChannel channel;
+    try {
+      channel = FileChannel.open(file, StandardOpenOption.READ);
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+
+    MappedByteBuffer mapped;
+    try {
+      if (channel.size() < MIN_HEADER_SIZE) {
+        mapped = null;
+      } else {
+        // the mapping stays valid after the channel has been closed
+        mapped = channel.map(MapMode.READ_ONLY, 0, channel.size());
+      }
+    } finally {
+      channel.close();
+    }
+
+    if (!isValid(mapped)) {
+      // written by someone else or not completely - forget about it
+      Files.deleteIfExists(file);
+      return null;
+    }
+
+    int compression = mapped.getInt(40);
+    int pixelFormat = mapped.getInt(44);
+    int[] mipmapOffsets = new int[mapped.getInt(36)];
+    for (int i = 0; i < mipmapOffsets.length; i++) {
+      mipmapOffsets[i] = mapped.getInt(MIN_HEADER_SIZE + i * 4);
+    }
+    mapped.position(mapped.getInt(8));
+    ByteBuffer data = mapped.slice().order(ByteOrder.nativeOrder());
+    return new ImageData(
+        mapped.getInt(12),
+        mapped.getInt(16),
+        mapped.getInt(20),
+        mapped.getInt(24),
+        mapped.getInt(28),
+        pixelFormat == 0 ? null : PixelFormat.values()[pixelFormat - 1],
+        data,
+        null,
+        mipmapOffsets,
+        compression == 0 ? null : BlockCompression.values()[compression - 1]);
+  }
+
+  /**
+   * Store the given image data for the given key. The data is first written to a temporary file that is then moved
+   * into place so that other processes never see a partially written entry.
+   *
+   * @param key the key
+   * @param imageData the image data to store (the position and limit of its ByteBuffer are not changed)
+   * @throws IOException
+   */
+  public void put(final String key, final ImageData imageData) throws IOException {
+    ByteBuffer data = imageData.getData().duplicate();
+    data.position(0);
+
+    int levels = imageData.getMipmapCount();
+    int headerSize = align(MIN_HEADER_SIZE + levels * 4);
+    ByteBuffer header = ByteBuffer.allocate(headerSize);
+    header.putInt(MAGIC);
+    header.putInt(VERSION);
+    header.putInt(headerSize);
+    header.putInt(imageData.getWidth());
+    header.putInt(imageData.getHeight());
+    header.putInt(imageData.getOriginalWidth());
+    header.putInt(imageData.getOriginalHeight());
+    header.putInt(imageData.getBitsPerPixel());
+    header.putInt(data.remaining());
+    header.putInt(levels);
+    BlockCompression compression = imageData.getBlockCompression();
+    header.putInt(compression == null ? 0 : compression.ordinal() + 1);
+    PixelFormat pixelFormat = imageData.getPixelFormat();
+    header.putInt(pixelFormat == null ? 0 : pixelFormat.ordinal() + 1);
+    for (int i = 0; i < levels; i++) {
+      header.putInt(imageData.getMipmapOffset(i));
+    }
+    header.clear();
+
+    Path temp = Files.createTempFile(directory, key, ".tmp");
+    try {
+      FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+      try {
+        while (header.hasRemaining()) {
+          channel.write(header);
+        }
+        while (data.hasRemaining()) {
+          channel.write(data);
+        }
+      } finally {
+        channel.close();
+      }
+      Path file = directory.resolve(key + SUFFIX);
+      try {
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Remove all entries.
+   * @throws IOException
+   */
+  public void clear() throws IOException {
+    DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX);
+    try {
+      for (Path file : files) {
+        Files.deleteIfExists(file);
+      }
+    } finally {
+      files.close();
+    }
+  }
+
+  private boolean isValid(final ByteBuffer mapped) {
+    if (mapped == null || mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+      return false;
+    }
+    int headerSize = mapped.getInt(8);
+    int levels = mapped.getInt(36);
+    int compression = mapped.getInt(40);
+    int pixelFormat = mapped.getInt(44);
+    // a 32 bit size doesn't need more than 32 levels
+    return levels > 0 && levels <= 32 &&
+        compression >= 0 && compression <= BlockCompression.values().length &&
+        pixelFormat >= 0 && pixelFormat <= PixelFormat.values().length &&
+        headerSize == align(MIN_HEADER_SIZE + levels * 4) &&
+        headerSize <= mapped.capacity() &&
+        mapped.getInt(32) == mapped.capacity() - headerSize;
+  }
+
+  private int align(final int size) {
+    return (size + HEADER_ALIGNMENT - 1) / HEADER_ALIGNMENT * HEADER_ALIGNMENT;
+  }
+}
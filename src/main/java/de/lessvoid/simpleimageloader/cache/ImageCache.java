@@ -0,0 +1,380 @@
+package de.lessvoid.simpleimageloader.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import de.lessvoid.simpleimageloader.ImageData;
+import de.lessvoid.simpleimageloader.ImageSource;
+import de.lessvoid.simpleimageloader.SimpleImageLoader;
+import de.lessvoid.simpleimageloader.SimpleImageLoaderConfig;
+
+/**
+ * Keeps loaded images in memory so that loading the same image with the same SimpleImageLoaderConfig again doesn't
+ * decode it again.
+ *
+ * Files are identified by their absolute path, last modification time and size - a file that has been changed is
+ * loaded again. InputStreams are identified by a hash of their content and the file extension. The cache holds at
+ * most maxBytes of image data - when this is exceeded the least recently used images are dropped.
+ *
+ * All cached images are shared: every load returns a read only view of the same data. When the same image is
+ * requested by several threads at the same time it is only decoded once.
+ *
+ * Call ImageData.release() on the returned images once you're done with them. The data of an image that has been
+ * dropped from the cache is given back to the BufferAllocator of the SimpleImageLoader - e.g. a PooledBufferAllocator
+ * - as soon as all images returned for it have been released. Releasing the returned images is optional otherwise:
+ * data that is still referenced by an unreleased image is never given back and left to the garbage collector instead.
+ *
+ * @author void
+ */
+public class ImageCache {
+  private static final String HASH_ALGORITHM = "SHA-1";
+
+  private final SimpleImageLoader loader;
+  private final long maxBytes;
+  private final Object lock = new Object();
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+  private final Map<Key, Pending> loading = new HashMap<Key, Pending>();
+  private long bytes;
+
+  /**
+   * Create a new ImageCache.
+   * @param loader the SimpleImageLoader to load images that are not in the cache
+   * @param maxBytes the maximum number of bytes of image data to keep
+   */
+  public ImageCache(final SimpleImageLoader loader, final long maxBytes) {
+    this.loader = loader;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Get the image from the given file from the cache or load it.
+   *
+   * @param path the file to load the image data from
+   * @param config a SimpleImageLoaderConfig instance that allows to configure details on how the image should be loaded
+   * @return a read only ImageData instance
+   * @throws IOException
+   */
+  public ImageData load(final Path path, final SimpleImageLoaderConfig config) throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    String identity =
+        path.toAbsolutePath().normalize() + ":" + attributes.lastModifiedTime().toMillis() + ":" + attributes.size();
+    return load(new Key(identity, config), new ImageSource(path));
+  }
+
+  /**
+   * Get the image with the content of the given InputStream from the cache or load it. The InputStream is always
+   * read completely (to calculate the hash of the content) and closed.
+   *
+   * @param filename the original filename including the file extension.
+   * @param inputStream the InputStream to load image data from
+   * @param config a SimpleImageLoaderConfig instance that allows to configure details on how the image should be loaded
+   * @return a read only ImageData instance
+   * @throws IOException
+   */
+  public ImageData load(
+      final String filename,
+      final InputStream inputStream,
+      final SimpleImageLoaderConfig config) throws IOException {
+    byte[] content;
+    try {
+      content = readFully(inputStream);
+    } finally {
+      inputStream.close();
+    }
+    String identity = hash(content) + ":" + extension(filename);
+    return load(new Key(identity, config), new ImageSource(filename, new ByteArrayInputStream(content)));
+  }
+
+  /**
+   * Get the image of the given ImageSource from the cache or load it.
+   *
+   * @param source the ImageSource to load
+   * @param config a SimpleImageLoaderConfig instance that allows to configure details on how the image should be loaded
+   * @return a read only ImageData instance
+   * @throws IOException
+   */
+  public ImageData load(final ImageSource source, final SimpleImageLoaderConfig config) throws IOException {
+    if (source.getPath() != null) {
+      return load(source.getPath(), config);
+    }
+    return load(source.getFilename(), source.getInputStream(), config);
+  }
+
+  /**
+   * Drop all cached images. Their data is given back once all images returned for them have been released.
+   */
+  public void clear() {
+    synchronized (lock) {
+      for (Entry entry : entries.values()) {
+        entry.evict();
+      }
+      entries.clear();
+      bytes = 0;
+    }
+  }
+
+  /**
+   * The number of bytes of image data currently kept in the cache.
+   * @return the number of bytes
+   */
+  public long getBytes() {
+    synchronized (lock) {
+      return bytes;
+    }
+  }
+
+  /**
+   * The number of images currently kept in the cache.
+   * @return the number of images
+   */
+  public int size() {
+    synchronized (lock) {
+      return entries.size();
+    }
+  }
+
+  private ImageData load(final Key key, final ImageSource source) throws IOException {
+    Pending pending;
+    boolean loadHere = false;
+    synchronized (lock) {
+      Entry cached = entries.get(key);
+      if (cached != null) {
+        closeQuietly(source);
+        cached.users++;
+        return cached.view();
+      }
+      pending = loading.get(key);
+      if (pending == null) {
+        pending = new Pending();
+        loading.put(key, pending);
+        loadHere = true;
+      } else {
+        // counted now so that the image can't be given back before this thread got its view
+        pending.waiters++;
+      }
+    }
+
+    if (!loadHere) {
+      closeQuietly(source);
+      return waitFor(pending).view();
+    }
+
+    try {
+      ImageData imageData = loader.load(source, key.config);
+      Entry entry;
+      synchronized (lock) {
+        loading.remove(key);
+        entry = new Entry(imageData, 1 + pending.waiters);
+        pending.entry = entry;
+        put(key, entry);
+      }
+      pending.future.complete(entry);
+      return entry.view();
+    } catch (IOException e) {
+      fail(key, pending, e);
+      throw e;
+    } catch (RuntimeException e) {
+      fail(key, pending, e);
+      throw e;
+    }
+  }
+
+  private void put(final Key key, final Entry entry) {
+    long size = entry.imageData.getData().capacity();
+    if (size > maxBytes) {
+      entry.evict();
+      return;
+    }
+    entries.put(key, entry);
+    bytes += size;
+    Iterator<Entry> eldest = entries.values().iterator();
+    while (bytes > maxBytes) {
+      Entry evicted = eldest.next();
+      bytes -= evicted.imageData.getData().capacity();
+      eldest.remove();
+      evicted.evict();
+    }
+  }
+
+  private void fail(final Key key, final Pending pending, final Exception e) {
+    synchronized (lock) {
+      loading.remove(key);
+    }
+    pending.future.completeExceptionally(e);
+  }
+
+  private Entry waitFor(final Pending pending) throws IOException {
+    try {
+      return pending.future.get();
+    } catch (InterruptedException e) {
+      synchronized (lock) {
+        // give back the view this thread has been counted for
+        if (pending.entry == null) {
+          pending.waiters--;
+        } else {
+          pending.entry.release();
+        }
+      }
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the image to be loaded");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  private void closeQuietly(final ImageSource source) {
+    try {
+      source.close();
+    } catch (IOException e) {
+      // we don't need the source anymore
+    }
+  }
+
+  private byte[] readFully(final InputStream inputStream) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, inputStream.available()));
+    byte[] buffer = new byte[8192];
+    int count;
+    while ((count = inputStream.read(buffer)) != -1) {
+      out.write(buffer, 0, count);
+    }
+    return out.toByteArray();
+  }
+
+  private String hash(final byte[] content) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance(HASH_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform is required to support SHA-1
+      throw new IllegalStateException(e);
+    }
+    StringBuilder result = new StringBuilder();
+    for (byte b : digest.digest(content)) {
+      result.append(String.format("%02x", b));
+    }
+    return result.toString();
+  }
+
+  private String extension(final String filename) {
+    int lastIndexOf = filename.lastIndexOf('.');
+    return lastIndexOf == -1 ? "" : filename.substring(lastIndexOf + 1).toLowerCase(Locale.ENGLISH);
+  }
+
+  /**
+   * A loaded image together with the number of views of it that have been handed out and not been released yet. The
+   * fields are guarded by the lock of the ImageCache. The data is given back once the image is not in the cache anymore
+   * and the last view has been released.
+   */
+  private class Entry {
+    private final ImageData imageData;
+    private int users;
+    private boolean evicted;
+
+    private Entry(final ImageData imageData, final int users) {
+      this.imageData = imageData;
+      this.users = users;
+    }
+
+    /**
+     * A new read only view for a user that has already been counted.
+     */
+    private ImageData view() {
+      return imageData.asReadOnly(new ViewRelease(this));
+    }
+
+    private void evict() {
+      evicted = true;
+      if (users == 0) {
+        imageData.release();
+      }
+    }
+
+    private void release() {
+      users--;
+      if (users == 0 && evicted) {
+        imageData.release();
+      }
+    }
+  }
+
+  /**
+   * The release() of a view: counts down the users of its Entry, only once per view.
+   */
+  private class ViewRelease implements Runnable {
+    private final Entry entry;
+    private boolean released;
+
+    private ViewRelease(final Entry entry) {
+      this.entry = entry;
+    }
+
+    @Override
+    public void run() {
+      synchronized (lock) {
+        if (!released) {
+          released = true;
+          entry.release();
+        }
+      }
+    }
+  }
+
+  /**
+   * An image that is being loaded and the number of other threads waiting for it.
+   */
+  private static class Pending {
+    private final CompletableFuture<Entry> future = new CompletableFuture<Entry>();
+    private int waiters;
+    private Entry entry;
+  }
+
+  /**
+   * The identity of a source together with the SimpleImageLoaderConfig it has been loaded with.
+   */
+  private static class Key {
+    private final String identity;
+    private final SimpleImageLoaderConfig config;
+
+    private Key(final String identity, final SimpleImageLoaderConfig config) {
+      this.identity = identity;
+      // the caller might change its config afterwards
+      this.config = new SimpleImageLoaderConfig(config);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return identity.equals(other.identity) && config.equals(other.config);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * identity.hashCode() + config.hashCode();
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package de.lessvoid.simpleimageloader.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts values (durations in nanoseconds or sizes in bytes) in power of two buckets. Bucket 0 counts the value 0 and
+ * bucket i counts the values from 2^(i-1) up to 2^i - 1, so percentiles are only accurate up to a factor of two -
+ * which is plenty to tell the 2 ms loads from the 200 ms ones. Recording is lock free and safe from several threads.
+ *
+ * @author void
+ */
+public class Histogram {
+  private static final int BUCKETS = 64;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Add a value. Negative values are counted as 0.
+   *
+   * @param value the value
+   */
+  public void record(final long value) {
+    long v = Math.max(0, value);
+    buckets.incrementAndGet(bucket(v));
+    count.increment();
+    sum.add(v);
+    long current = max.get();
+    while (v > current && !max.compareAndSet(current, v)) {
+      current = max.get();
+    }
+  }
+
+  /**
+   * The number of recorded values.
+   * @return count
+   */
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * The sum of all recorded values.
+   * @return sum
+   */
+  public long getSum() {
+    return sum.sum();
+  }
+
+  /**
+   * The largest recorded value.
+   * @return max or 0 if nothing has been recorded
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * The average of the recorded values.
+   * @return mean or 0 if nothing has been recorded
+   */
+  public double getMean() {
+    long n = getCount();
+    return n == 0 ? 0 : (double) getSum() / n;
+  }
+
+  /**
+   * An upper bound of the given percentile: at least the given fraction of the recorded values are smaller or equal.
+   *
+   * @param percentile the percentile between 0 and 1, e.g. 0.99
+   * @return the upper end of the bucket that contains the percentile (but never more than getMax())
+   */
+  public long getPercentile(final double percentile) {
+    if (percentile < 0 || percentile > 1) {
+      throw new IllegalArgumentException("percentile must be between 0 and 1: " + percentile);
+    }
+    long[] counts = getBuckets();
+    long total = 0;
+    for (long c : counts) {
+      total += c;
+    }
+    long wanted = Math.max(1, (long) Math.ceil(percentile * total));
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= wanted) {
+        return Math.min(upperBound(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /**
+   * A copy of the bucket counts, bucket i counts the values from 2^(i-1) up to 2^i - 1.
+   * @return the counts of the 64 buckets
+   */
+  public long[] getBuckets() {
+    long[] counts = new long[BUCKETS];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = buckets.get(i);
+    }
+    return counts;
+  }
+
+  @Override
+  public String toString() {
+    return "count=" + getCount() +
+        ", mean=" + Math.round(getMean()) +
+        ", p50=" + getPercentile(0.5) +
+        ", p90=" + getPercentile(0.9) +
+        ", p99=" + getPercentile(0.99) +
+        ", max=" + getMax();
+  }
+
+  private static int bucket(final long value) {
+    // values of 2^63 and more can't be recorded anyway since they'd be negative
+    return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+  }
+
+  private static long upperBound(final int bucket) {
+    return bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+  }
+}
@@ -0,0 +1,225 @@
+package de.lessvoid.simpleimageloader.metrics;
+
+import de.lessvoid.simpleimageloader.SimpleImageLoaderConfig;
+import de.lessvoid.simpleimageloader.type.ImageType;
+
+/**
+ * The details of a single load that are handed to a LoadListener.
+ *
+ * The time of a load is split into phases that don't overlap, so they sum up to (nearly) the total time:
+ * <ul>
+ * <li>read: the time spent in InputStream.read() - this includes the time waiting for the data to arrive</li>
+ * <li>decode: the time the ImageType needed to turn the data into pixels</li>
+ * <li>postProcess: mipmap generation and block compression</li>
+ * <li>allocate: the time spent getting the ByteBuffers from the BufferAllocator</li>
+ * </ul>
+ * Files loaded from a Path are read by the ImageType itself (TGA files are even memory mapped), so for them reading
+ * the file is part of the decode time. Images served from the DiskCache are not decoded at all.
+ *
+ * @author void
+ */
+public class LoadEvent {
+  private final String name;
+  private final ImageType imageType;
+  private final boolean fallback;
+  private final boolean cached;
+  private final SimpleImageLoaderConfig config;
+  private final long inputBytes;
+  private final long outputBytes;
+  private final long readNanos;
+  private final long decodeNanos;
+  private final long postProcessNanos;
+  private final long allocateNanos;
+  private final long totalNanos;
+  private final Exception exception;
+
+  /**
+   * Create a new LoadEvent.
+   *
+   * @param name the filename or path of the image
+   * @param imageType the ImageType that decoded the image or null if loading failed before it had been picked
+   * @param fallback true when none of the registered ImageTypes took the image and the default ImageType was used
+   * @param cached true when the image has been served from the DiskCache
+   * @param config the SimpleImageLoaderConfig the image has been loaded with
+   * @param inputBytes the number of bytes of the encoded image
+   * @param outputBytes the number of bytes of the loaded image data (0 if loading failed)
+   * @param readNanos the time spent reading the encoded image
+   * @param decodeNanos the time spent decoding
+   * @param postProcessNanos the time spent on mipmaps and block compression
+   * @param allocateNanos the time spent in the BufferAllocator
+   * @param totalNanos the time of the whole load
+   * @param exception the reason loading failed or null if the image has been loaded
+   */
+  public LoadEvent(
+      final String name,
+      final ImageType imageType,
+      final boolean fallback,
+      final boolean cached,
+      final SimpleImageLoaderConfig config,
+      final long inputBytes,
+      final long outputBytes,
+      final long readNanos,
+      final long decodeNanos,
+      final long postProcessNanos,
+      final long allocateNanos,
+      final long totalNanos,
+      final Exception exception) {
+    this.name = name;
+    this.imageType = imageType;
+    this.fallback = fallback;
+    this.cached = cached;
+    this.config = config;
+    this.inputBytes = inputBytes;
+    this.outputBytes = outputBytes;
+    this.readNanos = readNanos;
+    this.decodeNanos = decodeNanos;
+    this.postProcessNanos = postProcessNanos;
+    this.allocateNanos = allocateNanos;
+    this.totalNanos = totalNanos;
+    this.exception = exception;
+  }
+
+  /**
+   * The filename or path of the image.
+   * @return name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * The ImageType that has been picked for the image.
+   * @return the ImageType or null if loading failed before it had been picked
+   */
+  public ImageType getImageType() {
+    return imageType;
+  }
+
+  /**
+   * The name of the ImageType class, e.g. "ImageTypePNG". This is what LoadRecorder groups the loads by.
+   * @return the format or "unknown" if there is no ImageType
+   */
+  public String getFormat() {
+    if (imageType == null) {
+      return "unknown";
+    }
+    Class<?> type = imageType.getClass();
+    return type.getSimpleName().isEmpty() ? type.getName() : type.getSimpleName();
+  }
+
+  /**
+   * Returns true when none of the registered ImageTypes took the image and it was left to the default ImageType
+   * (ImageIO unless it has been changed).
+   * @return true if the default ImageType has been used
+   */
+  public boolean isFallback() {
+    return fallback;
+  }
+
+  /**
+   * Returns true when the image has been served from the DiskCache instead of being decoded.
+   * @return true if the image came from the DiskCache
+   */
+  public boolean isCached() {
+    return cached;
+  }
+
+  /**
+   * The SimpleImageLoaderConfig the image has been loaded with.
+   * @return config
+   */
+  public SimpleImageLoaderConfig getConfig() {
+    return config;
+  }
+
+  /**
+   * The number of bytes of the encoded image. For InputStreams these are the bytes that have actually been read.
+   * @return input bytes
+   */
+  public long getInputBytes() {
+    return inputBytes;
+  }
+
+  /**
+   * The number of bytes of the loaded image data including mipmaps.
+   * @return output bytes or 0 if loading failed
+   */
+  public long getOutputBytes() {
+    return outputBytes;
+  }
+
+  /**
+   * The time spent reading the encoded image from the InputStream.
+   * @return nanoseconds
+   */
+  public long getReadNanos() {
+    return readNanos;
+  }
+
+  /**
+   * The time spent decoding the image, without reading and allocating.
+   * @return nanoseconds
+   */
+  public long getDecodeNanos() {
+    return decodeNanos;
+  }
+
+  /**
+   * The time spent generating mipmaps and compressing the image, without allocating.
+   * @return nanoseconds
+   */
+  public long getPostProcessNanos() {
+    return postProcessNanos;
+  }
+
+  /**
+   * The time spent getting ByteBuffers from the BufferAllocator.
+   * @return nanoseconds
+   */
+  public long getAllocateNanos() {
+    return allocateNanos;
+  }
+
+  /**
+   * The time of the whole load.
+   * @return nanoseconds
+   */
+  public long getTotalNanos() {
+    return totalNanos;
+  }
+
+  /**
+   * Returns true when the image has been loaded.
+   * @return true if the image has been loaded and false if loading failed
+   */
+  public boolean isSuccess() {
+    return exception == null;
+  }
+
+  /**
+   * The reason loading the image failed.
+   * @return the Exception or null if the image has been loaded
+   */
+  public Exception getException() {
+    return exception;
+  }
+
+  @Override
+  public String toString() {
+    return "LoadEvent[" +
+        "name=" + name +
+        ", format=" + getFormat() +
+        ", fallback=" + fallback +
+        ", cached=" + cached +
+        ", inputBytes=" + inputBytes +
+        ", outputBytes=" + outputBytes +
+        ", readNanos=" + readNanos +
+        ", decodeNanos=" + decodeNanos +
+        ", postProcessNanos=" + postProcessNanos +
+        ", allocateNanos=" + allocateNanos +
+        ", totalNanos=" + totalNanos +
+        ", exception=" + exception +
+        ", config=" + config +
+        "]";
+  }
+}
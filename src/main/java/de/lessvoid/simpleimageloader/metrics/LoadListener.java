@@ -0,0 +1,20 @@
+package de.lessvoid.simpleimageloader.metrics;
+
+/**
+ * Gets notified by SimpleImageLoader about every image it loads - or fails to load - together with the time the
+ * phases of the load took and the number of bytes read and written. See SimpleImageLoader.setLoadListener().
+ *
+ * The listener is called on the thread that loaded the image, right before load() returns or throws. It has to be safe
+ * to call from several threads at the same time and should return quickly since it delays the load.
+ *
+ * @author void
+ */
+public interface LoadListener {
+
+  /**
+   * An image has been loaded or loading it failed (see LoadEvent.isSuccess()).
+   *
+   * @param event the details of the load
+   */
+  void loaded(LoadEvent event);
+}
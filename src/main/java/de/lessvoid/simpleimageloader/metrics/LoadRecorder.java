@@ -0,0 +1,144 @@
+package de.lessvoid.simpleimageloader.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A LoadListener that aggregates all loads into LoadStatistics - once for all loads together and once per format (the
+ * ImageType class, see LoadEvent.getFormat()). It additionally keeps the slowest loads so that the images that
+ * dominate the load time can be found by name.
+ *
+ *   LoadRecorder recorder = new LoadRecorder();
+ *   loader.setLoadListener(recorder);
+ *   // load the images ...
+ *   System.out.println(recorder);
+ *
+ * It's safe to use an instance from several threads at the same time.
+ *
+ * @author void
+ */
+public class LoadRecorder implements LoadListener {
+  private static final int DEFAULT_SLOWEST_COUNT = 10;
+
+  private static final Comparator<LoadEvent> byTotalNanos = new Comparator<LoadEvent>() {
+    @Override
+    public int compare(final LoadEvent o1, final LoadEvent o2) {
+      return Long.compare(o1.getTotalNanos(), o2.getTotalNanos());
+    }
+  };
+
+  private final LoadStatistics all = new LoadStatistics();
+  private final Map<String, LoadStatistics> formats = new ConcurrentHashMap<String, LoadStatistics>();
+  private final int slowestCount;
+  private final PriorityQueue<LoadEvent> slowest;
+
+  /**
+   * Create a new LoadRecorder that keeps the 10 slowest loads.
+   */
+  public LoadRecorder() {
+    this(DEFAULT_SLOWEST_COUNT);
+  }
+
+  /**
+   * Create a new LoadRecorder.
+   * @param slowestCount the number of slowest loads to keep
+   */
+  public LoadRecorder(final int slowestCount) {
+    if (slowestCount < 0) {
+      throw new IllegalArgumentException("slowestCount must not be negative");
+    }
+    this.slowestCount = slowestCount;
+    this.slowest = new PriorityQueue<LoadEvent>(Math.max(1, slowestCount), byTotalNanos);
+  }
+
+  @Override
+  public void loaded(final LoadEvent event) {
+    all.record(event);
+    statistics(event.getFormat()).record(event);
+    if (event.isSuccess() && slowestCount > 0) {
+      synchronized (slowest) {
+        if (slowest.size() < slowestCount) {
+          slowest.add(event);
+        } else if (event.getTotalNanos() > slowest.peek().getTotalNanos()) {
+          slowest.poll();
+          slowest.add(event);
+        }
+      }
+    }
+  }
+
+  /**
+   * The statistics of all loads.
+   * @return LoadStatistics
+   */
+  public LoadStatistics getAll() {
+    return all;
+  }
+
+  /**
+   * The formats that have been loaded so far.
+   * @return the formats in alphabetical order
+   */
+  public Set<String> getFormats() {
+    return new TreeSet<String>(formats.keySet());
+  }
+
+  /**
+   * The statistics of the loads of the given format.
+   *
+   * @param format the format, e.g. "ImageTypePNG"
+   * @return LoadStatistics or null if there hasn't been a load of this format
+   */
+  public LoadStatistics getStatistics(final String format) {
+    return formats.get(format);
+  }
+
+  /**
+   * The slowest successful loads so far.
+   * @return the LoadEvents, the slowest first
+   */
+  public List<LoadEvent> getSlowest() {
+    List<LoadEvent> result;
+    synchronized (slowest) {
+      result = new ArrayList<LoadEvent>(slowest);
+    }
+    Collections.sort(result, Collections.reverseOrder(byTotalNanos));
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder();
+    result.append("all: ").append(all);
+    for (String format : getFormats()) {
+      result.append("\n").append(format).append(": ").append(formats.get(format));
+    }
+    List<LoadEvent> events = getSlowest();
+    if (!events.isEmpty()) {
+      result.append("\nslowest:");
+      for (LoadEvent event : events) {
+        result.append("\n  ").append(event.getTotalNanos()).append(" ns ").append(event.getName());
+      }
+    }
+    return result.toString();
+  }
+
+  private LoadStatistics statistics(final String format) {
+    LoadStatistics statistics = formats.get(format);
+    if (statistics == null) {
+      LoadStatistics created = new LoadStatistics();
+      statistics = formats.putIfAbsent(format, created);
+      if (statistics == null) {
+        statistics = created;
+      }
+    }
+    return statistics;
+  }
+}
@@ -0,0 +1,151 @@
+package de.lessvoid.simpleimageloader.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The aggregated LoadEvents of a group of loads (e.g. all PNG images), kept by LoadRecorder. There is a Histogram for
+ * the total time and each phase of the loads and for the input and output sizes. Failed loads are only counted, they
+ * don't show up in the Histograms.
+ *
+ * @author void
+ */
+public class LoadStatistics {
+  private final LongAdder failures = new LongAdder();
+  private final LongAdder fallbacks = new LongAdder();
+  private final LongAdder cached = new LongAdder();
+  private final Histogram totalNanos = new Histogram();
+  private final Histogram readNanos = new Histogram();
+  private final Histogram decodeNanos = new Histogram();
+  private final Histogram postProcessNanos = new Histogram();
+  private final Histogram allocateNanos = new Histogram();
+  private final Histogram inputBytes = new Histogram();
+  private final Histogram outputBytes = new Histogram();
+
+  /**
+   * Add a LoadEvent.
+   *
+   * @param event the LoadEvent
+   */
+  public void record(final LoadEvent event) {
+    if (!event.isSuccess()) {
+      failures.increment();
+      return;
+    }
+    if (event.isFallback()) {
+      fallbacks.increment();
+    }
+    if (event.isCached()) {
+      cached.increment();
+    }
+    totalNanos.record(event.getTotalNanos());
+    readNanos.record(event.getReadNanos());
+    decodeNanos.record(event.getDecodeNanos());
+    postProcessNanos.record(event.getPostProcessNanos());
+    allocateNanos.record(event.getAllocateNanos());
+    inputBytes.record(event.getInputBytes());
+    outputBytes.record(event.getOutputBytes());
+  }
+
+  /**
+   * The number of images that have been loaded.
+   * @return count
+   */
+  public long getCount() {
+    return totalNanos.getCount();
+  }
+
+  /**
+   * The number of images that failed to load.
+   * @return failures
+   */
+  public long getFailures() {
+    return failures.sum();
+  }
+
+  /**
+   * The number of images that have been left to the default ImageType.
+   * @return fallbacks
+   */
+  public long getFallbacks() {
+    return fallbacks.sum();
+  }
+
+  /**
+   * The number of images that have been served from the DiskCache.
+   * @return cached
+   */
+  public long getCached() {
+    return cached.sum();
+  }
+
+  /**
+   * The total time of the loads.
+   * @return Histogram in nanoseconds
+   */
+  public Histogram getTotalNanos() {
+    return totalNanos;
+  }
+
+  /**
+   * The time spent reading.
+   * @return Histogram in nanoseconds
+   */
+  public Histogram getReadNanos() {
+    return readNanos;
+  }
+
+  /**
+   * The time spent decoding.
+   * @return Histogram in nanoseconds
+   */
+  public Histogram getDecodeNanos() {
+    return decodeNanos;
+  }
+
+  /**
+   * The time spent on mipmaps and block compression.
+   * @return Histogram in nanoseconds
+   */
+  public Histogram getPostProcessNanos() {
+    return postProcessNanos;
+  }
+
+  /**
+   * The time spent in the BufferAllocator.
+   * @return Histogram in nanoseconds
+   */
+  public Histogram getAllocateNanos() {
+    return allocateNanos;
+  }
+
+  /**
+   * The sizes of the encoded images.
+   * @return Histogram in bytes
+   */
+  public Histogram getInputBytes() {
+    return inputBytes;
+  }
+
+  /**
+   * The sizes of the loaded image data.
+   * @return Histogram in bytes
+   */
+  public Histogram getOutputBytes() {
+    return outputBytes;
+  }
+
+  @Override
+  public String toString() {
+    return "loads=" + getCount() +
+        ", failures=" + getFailures() +
+        ", fallbacks=" + getFallbacks() +
+        ", cached=" + getCached() +
+        "\n  total ns:        " + totalNanos +
+        "\n  read ns:         " + readNanos +
+        "\n  decode ns:       " + decodeNanos +
+        "\n  postProcess ns:  " + postProcessNanos +
+        "\n  allocate ns:     " + allocateNanos +
+        "\n  input bytes:     " + inputBytes +
+        "\n  output bytes:    " + outputBytes;
+  }
+}
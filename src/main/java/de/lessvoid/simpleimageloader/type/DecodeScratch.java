@@ -0,0 +1,80 @@
+package de.lessvoid.simpleimageloader.type;
+
+import java.util.Arrays;
+import java.util.zip.Inflater;
+
+/**
+ * The row buffers and the Inflater a decoder needs while it decodes a single image. They are kept per thread so that
+ * a worker thread that loads one image after the other doesn't allocate them again for every image.
+ *
+ * A decoder takes the scratch of the current thread with acquire() and gives it back with release() once the image
+ * is done. While it's taken another decode on the same thread (e.g. started from a ScanlineSink) simply gets a new
+ * one. The rows are kept in numbered slots and a row is only reused when it has exactly the size asked for, which is
+ * the common case of loading many images of the same size. Reused rows are cleared so that they look like new ones.
+ * Rows larger than MAX_KEPT_ROW_SIZE are never kept.
+ *
+ * @author void
+ */
+final class DecodeScratch {
+  private static final int SLOTS = 8;
+  private static final int MAX_KEPT_ROW_SIZE = 1024 * 1024;
+  private static final ThreadLocal<DecodeScratch> threadScratch = new ThreadLocal<DecodeScratch>();
+
+  private final byte[][] rows = new byte[SLOTS][];
+  private Inflater inflater;
+
+  private DecodeScratch() {
+  }
+
+  /**
+   * Take the scratch of the current thread.
+   * @return the DecodeScratch to use until release() is called
+   */
+  static DecodeScratch acquire() {
+    DecodeScratch scratch = threadScratch.get();
+    if (scratch == null) {
+      return new DecodeScratch();
+    }
+    threadScratch.set(null);
+    return scratch;
+  }
+
+  /**
+   * Give the scratch back to the current thread. None of the rows may be used afterwards.
+   */
+  void release() {
+    if (inflater != null) {
+      inflater.reset();
+    }
+    threadScratch.set(this);
+  }
+
+  /**
+   * Returns an all zero row of the given size.
+   *
+   * @param slot the slot of the row (0 to 7), each decoder uses its own numbering
+   * @param size the size of the row in bytes
+   * @return the row
+   */
+  byte[] row(final int slot, final int size) {
+    byte[] row = rows[slot];
+    if (row != null && row.length == size) {
+      Arrays.fill(row, (byte) 0);
+      return row;
+    }
+    row = new byte[size];
+    rows[slot] = size <= MAX_KEPT_ROW_SIZE ? row : null;
+    return row;
+  }
+
+  /**
+   * Returns the Inflater for zlib compressed data. It is reset when the scratch is released.
+   * @return the Inflater
+   */
+  Inflater inflater() {
+    if (inflater == null) {
+      inflater = new Inflater();
+    }
+    return inflater;
+  }
+}
@@ -0,0 +1,248 @@
+package de.lessvoid.simpleimageloader.type;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import de.lessvoid.simpleimageloader.PixelFormat;
+import de.lessvoid.simpleimageloader.SimpleImageLoaderConfig;
+
+/**
+ * Composites the frames of an animation on an RGBA canvas the size of the animation and writes the canvas through the
+ * PixelPipeline into the slice of each frame. GIF and APNG share the model: a frame covers a rectangle of the canvas,
+ * is either blended over the canvas or replaces it, and once it has been shown its rectangle is left as it is, cleared
+ * to transparent or restored to what it was before the frame.
+ *
+ * A frame is composited with begin(), one drawRow() for each of its rows and end(). The canvas is kept between the
+ * frames so a compositor lives as long as its ImageSequence and doesn't use DecodeScratch. begin() keeps a copy of the
+ * canvas so that a frame that has been interrupted before end() can simply be started again.
+ *
+ * @author void
+ */
+final class FrameCompositor {
+  static final int DISPOSE_NONE = 0;
+  static final int DISPOSE_BACKGROUND = 1;
+  static final int DISPOSE_PREVIOUS = 2;
+
+  private final SimpleImageLoaderConfig config;
+  private final int canvasWidth;
+  private final int canvasHeight;
+  private final PixelPipeline pipeline;
+  private final int width;
+  private final int height;
+  private final byte[] canvas;
+  private final byte[] row;
+  private byte[] saved;
+
+  // the frame of the last begin()
+  private int frameX;
+  private int frameY;
+  private int frameWidth;
+  private int frameHeight;
+  private int dispose = DISPOSE_NONE;
+  private boolean blend;
+
+  // the canvas and the frame before the last begin() while end() hasn't completed
+  private final byte[] before;
+  private int beforeX;
+  private int beforeY;
+  private int beforeWidth;
+  private int beforeHeight;
+  private int beforeDispose;
+  private boolean drawing;
+
+  /**
+   * Create the compositor for an animation. Frames always have alpha since the disposal can make any part of the
+   * canvas transparent.
+   *
+   * @param config the SimpleImageLoaderConfig
+   * @param canvasWidth the width of the animation
+   * @param canvasHeight the height of the animation
+   * @throws IOException when the frames are too large for a single ByteBuffer
+   */
+  FrameCompositor(
+      final SimpleImageLoaderConfig config,
+      final int canvasWidth,
+      final int canvasHeight) throws IOException {
+    if (canvasWidth <= 0 || canvasHeight <= 0) {
+      throw new IOException("Invalid animation dimensions: " + canvasWidth + "x" + canvasHeight);
+    }
+    this.config = config;
+    this.canvasWidth = canvasWidth;
+    this.canvasHeight = canvasHeight;
+    pipeline = new PixelPipeline(config, 4, false, true);
+    width = ImageTypeSupport.paddedWidth(config, canvasWidth, pipeline.getBitsPerPixel());
+    height = ImageTypeSupport.paddedHeight(config, canvasHeight);
+    canvas = new byte[canvasWidth * canvasHeight * 4];
+    before = new byte[canvas.length];
+    row = new byte[width * pipeline.getBitsPerPixel() / 8];
+  }
+
+  /**
+   * The width of each frame in the output.
+   * @return the padded width
+   */
+  int getWidth() {
+    return width;
+  }
+
+  /**
+   * The height of each frame in the output.
+   * @return the padded height
+   */
+  int getHeight() {
+    return height;
+  }
+
+  /**
+   * The format of the output.
+   * @return the PixelFormat
+   */
+  PixelFormat getPixelFormat() {
+    return pipeline.getPixelFormat();
+  }
+
+  /**
+   * Returns the size of the output of frameCount frames.
+   *
+   * @param frameCount the number of frames
+   * @return the size in bytes
+   * @throws IOException when the frames don't fit into a ByteBuffer
+   */
+  int getSize(final int frameCount) throws IOException {
+    long size = (long) row.length * height * frameCount;
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException(frameCount + " frames of " + width + "x" + height + " are too large");
+    }
+    return (int) size;
+  }
+
+  /**
+   * Start the next frame. The previous frame is disposed first. The rectangle is clipped to the canvas. When the
+   * last frame hasn't reached the end of end() it is undone, so this starts it again.
+   *
+   * @param x the left edge of the frame on the canvas
+   * @param y the top edge of the frame on the canvas
+   * @param frameWidth the width of the frame
+   * @param frameHeight the height of the frame
+   * @param disposeOp what happens to the rectangle after the frame has been shown (one of the DISPOSE constants)
+   * @param blendOp true to blend the frame over the canvas, false to replace the pixels of the canvas
+   */
+  void begin(
+      final int x,
+      final int y,
+      final int frameWidth,
+      final int frameHeight,
+      final int disposeOp,
+      final boolean blendOp) {
+    if (drawing) {
+      System.arraycopy(before, 0, canvas, 0, canvas.length);
+      frameX = beforeX;
+      frameY = beforeY;
+      this.frameWidth = beforeWidth;
+      this.frameHeight = beforeHeight;
+      dispose = beforeDispose;
+    } else {
+      System.arraycopy(canvas, 0, before, 0, canvas.length);
+      beforeX = frameX;
+      beforeY = frameY;
+      beforeWidth = this.frameWidth;
+      beforeHeight = this.frameHeight;
+      beforeDispose = dispose;
+      drawing = true;
+    }
+    if (dispose == DISPOSE_BACKGROUND) {
+      clear(frameX, frameY, this.frameWidth, this.frameHeight);
+    } else if (dispose == DISPOSE_PREVIOUS && saved != null) {
+      System.arraycopy(saved, 0, canvas, 0, canvas.length);
+    }
+    this.frameX = x;
+    this.frameY = y;
+    this.frameWidth = frameWidth;
+    this.frameHeight = frameHeight;
+    this.dispose = disposeOp;
+    this.blend = blendOp;
+    if (disposeOp == DISPOSE_PREVIOUS) {
+      if (saved == null) {
+        saved = new byte[canvas.length];
+      }
+      System.arraycopy(canvas, 0, saved, 0, canvas.length);
+    }
+  }
+
+  /**
+   * Put a row of the current frame on the canvas.
+   *
+   * @param rgba the pixels of the row as 8 bit RGBA
+   * @param offset the index of the first pixel of the frame in rgba
+   * @param index the row in the frame
+   */
+  void drawRow(final byte[] rgba, final int offset, final int index) {
+    int y = frameY + index;
+    if (y < 0 || y >= canvasHeight) {
+      return;
+    }
+    int start = Math.max(0, -frameX);
+    int end = Math.min(frameWidth, canvasWidth - frameX);
+    int t = (y * canvasWidth + frameX + start) * 4;
+    int s = offset + start * 4;
+    if (!blend) {
+      if (end > start) {
+        System.arraycopy(rgba, s, canvas, t, (end - start) * 4);
+      }
+      return;
+    }
+    for (int x = start; x < end; x++, s += 4, t += 4) {
+      int alpha = rgba[s + 3] & 0xFF;
+      if (alpha == 255) {
+        canvas[t] = rgba[s];
+        canvas[t + 1] = rgba[s + 1];
+        canvas[t + 2] = rgba[s + 2];
+        canvas[t + 3] = (byte) 255;
+      } else if (alpha != 0) {
+        over(rgba, s, alpha, t);
+      }
+    }
+  }
+
+  /**
+   * Write the canvas into the slice of the frame.
+   *
+   * @param target the slice of the frame
+   * @throws IOException when the loading thread has been interrupted
+   */
+  void end(final ByteBuffer target) throws IOException {
+    int perPixel = pipeline.getBitsPerPixel() / 8;
+    for (int y = 0; y < canvasHeight; y++) {
+      ImageTypeSupport.checkInterrupted();
+      pipeline.apply(canvas, y * canvasWidth * 4, row, canvasWidth);
+      ImageTypeSupport.padRow(config, row, canvasWidth, width, perPixel);
+      target.position(pipeline.targetRow(y, canvasHeight) * row.length);
+      target.put(row);
+    }
+    ImageTypeSupport.padRows(config, target, canvasHeight, height, row.length);
+    target.rewind();
+    drawing = false;
+  }
+
+  private void clear(final int x, final int y, final int clearWidth, final int clearHeight) {
+    int left = Math.max(0, x);
+    int right = Math.min(canvasWidth, x + clearWidth);
+    for (int i = Math.max(0, y), bottom = Math.min(canvasHeight, y + clearHeight); i < bottom && left < right; i++) {
+      Arrays.fill(canvas, (i * canvasWidth + left) * 4, (i * canvasWidth + right) * 4, (byte) 0);
+    }
+  }
+
+  /**
+   * The pixel at s blended over the canvas pixel at t, both not premultiplied.
+   */
+  private void over(final byte[] rgba, final int s, final int alpha, final int t) {
+    int canvasAlpha = (canvas[t + 3] & 0xFF) * (255 - alpha) / 255;
+    int outAlpha = alpha + canvasAlpha;
+    for (int c = 0; c < 3; c++) {
+      int color = (rgba[s + c] & 0xFF) * alpha + (canvas[t + c] & 0xFF) * canvasAlpha;
+      canvas[t + c] = (byte) ((color + outAlpha / 2) / outAlpha);
+    }
+    canvas[t + 3] = (byte) outAlpha;
+  }
+}
@@ -2,9 +2,16 @@ package de.lessvoid.simpleimageloader.type;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import de.lessvoid.simpleimageloader.ImageData;
+import de.lessvoid.simpleimageloader.ImageInfo;
+import de.lessvoid.simpleimageloader.ImageSequence;
+import de.lessvoid.simpleimageloader.ScanlineSink;
 import de.lessvoid.simpleimageloader.SimpleImageLoaderConfig;
+import de.lessvoid.simpleimageloader.buffer.BufferAllocator;
 
 /**
  * The interface to load image data from an InputStream and convert it into a ImageData instance.
@@ -12,6 +19,20 @@ import de.lessvoid.simpleimageloader.SimpleImageLoaderConfig;
  */
 public interface ImageType {
 
+  /**
+   * Check if the data starting with the given bytes looks like an image of this type. SimpleImageLoader uses this to
+   * pick the ImageType by the content instead of the file extension, so that files with a wrong or missing extension
+   * are still decoded by the right ImageType.
+   *
+   * The default implementation returns false, which means that the ImageType is only selected by its file extension.
+   *
+   * @param header the first bytes of the data (at most 32, fewer when the data is shorter)
+   * @return true when the data can be decoded by this ImageType
+   */
+  default boolean canDecode(final byte[] header) {
+    return false;
+  }
+
   /**
    * Load image data from the given InputStream taking the SimpleImageLoaderConfig into account and return an ImageData
    * instance.
@@ -22,4 +43,174 @@ public interface ImageType {
    * @throws IOException
    */
   ImageData load(SimpleImageLoaderConfig config, InputStream inputStream) throws IOException;
+
+  /**
+   * Load image data from the given InputStream into a ByteBuffer retrieved from the given BufferAllocator.
+   *
+   * The default implementation loads the image with load(SimpleImageLoaderConfig, InputStream) and copies the data.
+   * ImageType implementations should override this to write into the allocated buffer directly.
+   *
+   * @param config the SimpleImageLoaderConfig
+   * @param inputStream the actual InputStream to load data from
+   * @param allocator the BufferAllocator to get the ByteBuffer for the image data from
+   * @return the ImageData instance with the image data
+   * @throws IOException
+   */
+  default ImageData load(
+      final SimpleImageLoaderConfig config,
+      final InputStream inputStream,
+      final BufferAllocator allocator) throws IOException {
+    ImageData imageData = load(config, inputStream);
+    ByteBuffer source = imageData.getData().duplicate();
+    ByteBuffer data = allocator.allocate(source.remaining());
+    data.put(source);
+    data.flip();
+    return new ImageData(
+        imageData.getWidth(),
+        imageData.getHeight(),
+        imageData.getOriginalWidth(),
+        imageData.getOriginalHeight(),
+        imageData.getBitsPerPixel(),
+        imageData.getPixelFormat(),
+        data,
+        allocator,
+        null,
+        null);
+  }
+
+  /**
+   * Load image data from the given file into a ByteBuffer retrieved from the given BufferAllocator.
+   *
+   * The default implementation simply reads the file with an InputStream. ImageType implementations can override
+   * this to access the file more efficiently, e.g. by memory mapping it.
+   *
+   * @param config the SimpleImageLoaderConfig
+   * @param path the file to load the image data from
+   * @param allocator the BufferAllocator to get the ByteBuffer for the image data from
+   * @return the ImageData instance with the image data
+   * @throws IOException
+   */
+  default ImageData load(
+      final SimpleImageLoaderConfig config,
+      final Path path,
+      final BufferAllocator allocator) throws IOException {
+    InputStream inputStream = Files.newInputStream(path);
+    try {
+      return load(config, inputStream, allocator);
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  /**
+   * Load all frames of an animated image from the given InputStream into a single ByteBuffer retrieved from the given
+   * BufferAllocator. Region, subsampling, mipmaps and block compression of the SimpleImageLoaderConfig are ignored.
+   * The InputStream is not closed.
+   *
+   * The default implementation loads the image with load(SimpleImageLoaderConfig, InputStream, BufferAllocator) and
+   * returns it as a sequence with a single frame. ImageType implementations of animated formats should override this.
+   *
+   * @param config the SimpleImageLoaderConfig
+   * @param inputStream the actual InputStream to load data from
+   * @param allocator the BufferAllocator to get the ByteBuffer for the frames from
+   * @return the ImageSequence with the frames
+   * @throws IOException
+   */
+  default ImageSequence loadSequence(
+      final SimpleImageLoaderConfig config,
+      final InputStream inputStream,
+      final BufferAllocator allocator) throws IOException {
+    ImageData imageData = load(config, inputStream, allocator);
+    return new ImageSequence(
+        imageData.getWidth(),
+        imageData.getHeight(),
+        imageData.getOriginalWidth(),
+        imageData.getOriginalHeight(),
+        imageData.getPixelFormat(),
+        new int[] { 0 },
+        1,
+        imageData.getData(),
+        allocator,
+        null);
+  }
+
+  /**
+   * Decode the image from the given InputStream and deliver it to the given ScanlineSink in bands of bandHeight rows.
+   * powerOfTwoSupport of the SimpleImageLoaderConfig is ignored. The InputStream is not closed.
+   *
+   * The default implementation loads the whole image with load(SimpleImageLoaderConfig, InputStream) and delivers it
+   * afterwards. ImageType implementations should override this to deliver each band as soon as it is decoded so that
+   * the whole image is never kept in memory.
+   *
+   * @param config the SimpleImageLoaderConfig
+   * @param inputStream the actual InputStream to load data from
+   * @param sink the ScanlineSink that receives the rows
+   * @param bandHeight the number of rows to deliver at once
+   * @throws IOException
+   */
+  default void stream(
+      final SimpleImageLoaderConfig config,
+      final InputStream inputStream,
+      final ScanlineSink sink,
+      final int bandHeight) throws IOException {
+    ImageData imageData = load(config, inputStream);
+    try {
+      ImageTypeSupport.stream(imageData, sink, bandHeight);
+    } finally {
+      imageData.release();
+    }
+  }
+
+  /**
+   * Decode the image in the given file and deliver it to the given ScanlineSink in bands of bandHeight rows.
+   *
+   * @param config the SimpleImageLoaderConfig
+   * @param path the file to load the image data from
+   * @param sink the ScanlineSink that receives the rows
+   * @param bandHeight the number of rows to deliver at once
+   * @throws IOException
+   */
+  default void stream(
+      final SimpleImageLoaderConfig config,
+      final Path path,
+      final ScanlineSink sink,
+      final int bandHeight) throws IOException {
+    InputStream inputStream = Files.newInputStream(path);
+    try {
+      stream(config, inputStream, sink, bandHeight);
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  /**
+   * Read the size and pixel format of the image from the given InputStream without decoding the image data. Only as
+   * much of the InputStream is read as necessary and it is not closed.
+   *
+   * The default implementation asks the ImageIO ImageReader for the image. ImageType implementations should override
+   * this to read the header of their format directly.
+   *
+   * @param inputStream the actual InputStream to read the header from
+   * @return the ImageInfo of the image
+   * @throws IOException
+   */
+  default ImageInfo readInfo(final InputStream inputStream) throws IOException {
+    return ImageTypeSupport.readInfoImageIO(inputStream);
+  }
+
+  /**
+   * Read the size and pixel format of the image in the given file without decoding the image data.
+   *
+   * @param path the file to read the header from
+   * @return the ImageInfo of the image
+   * @throws IOException
+   */
+  default ImageInfo readInfo(final Path path) throws IOException {
+    InputStream inputStream = Files.newInputStream(path);
+    try {
+      return readInfo(inputStream);
+    } finally {
+      inputStream.close();
+    }
+  }
 }
@@ -2,42 +2,64 @@ package de.lessvoid.simpleimageloader.type;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.ComponentColorModel;
 import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.PixelInterleavedSampleModel;
 import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
 import java.util.Hashtable;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+import org.w3c.dom.Node;
 
 import de.lessvoid.simpleimageloader.ImageData;
+import de.lessvoid.simpleimageloader.ImageSequence;
 import de.lessvoid.simpleimageloader.SimpleImageLoaderConfig;
+import de.lessvoid.simpleimageloader.buffer.BufferAllocator;
+import de.lessvoid.simpleimageloader.buffer.DirectBufferAllocator;
 
 /**
  * An image data provider that uses ImageIO to retrieve image data in a format
  * suitable for creating OpenGL textures. This implementation is used when
  * formats not natively supported by the library are required.
  *
+ * The pixels of the common BufferedImage types ImageIO returns (TYPE_3BYTE_BGR, TYPE_4BYTE_ABGR, TYPE_INT_RGB,
+ * TYPE_INT_ARGB and TYPE_BYTE_GRAY) are read from the DataBuffer directly and converted row by row. All other images
+ * are drawn into an RGB or RGBA BufferedImage using Java2D. Either way the rows are run through the PixelPipeline
+ * while they are copied into the ByteBuffer.
+ *
  * Refitted into the simple image loader framework and cleaning up by void.
  *
  * @author kevin
  * @author void
  */
 public class ImageTypeImageIO implements ImageType {
-  private static final int COLOR_COMPONENT_COUNT = 3;
-  private static final int COLOR_PALETTE_SIZE = 256;
   private static final int COMPONENTS_PER_PIXEL_3 = 3;
   private static final int COMPONENTS_PER_PIXEL_4 = 4;
-  private static final int BIT_DEPTH_24 = 24;
-  private static final int BIT_DEPTH_32 = 32;
+  private static final int SLOT_ROW = 0;
+  private static final int SLOT_DECODED = 1;
 
   private static final ColorModel GL_ALPHA_COLOR_MODEL =
       new ComponentColorModel(
@@ -57,87 +79,388 @@ public class ImageTypeImageIO implements ImageType {
           ComponentColorModel.OPAQUE,
           DataBuffer.TYPE_BYTE);
 
+  // the color of a translucent pixel after Java2D has drawn it, indexed by alpha << 8 | color
+  private static final byte[] JAVA2D_COLORS = java2dColors();
+
   public ImageData load(final SimpleImageLoaderConfig config, final InputStream inputStream) throws IOException {
-    return loadInternal(config, ImageIO.read(inputStream));
+    return load(config, inputStream, new DirectBufferAllocator());
   }
 
-  private ImageData loadInternal(final SimpleImageLoaderConfig config, final BufferedImage image) {
-    int imageWidth = powerOfTwoSupport(image.getWidth(), config.isPowerOfTwoSupport());
-    int imageHeight = powerOfTwoSupport(image.getHeight(), config.isPowerOfTwoSupport());
+  public ImageData load(
+      final SimpleImageLoaderConfig config,
+      final InputStream inputStream,
+      final BufferAllocator allocator) throws IOException {
+    return loadInternal(config, read(config, inputStream), allocator);
+  }
 
-    // create a raster that can be used by OpenGL as a source for a texture
-    int depth;
-    WritableRaster raster;
-    BufferedImage texImage;
+  public ImageData load(
+      final SimpleImageLoaderConfig config,
+      final Path path,
+      final BufferAllocator allocator) throws IOException {
+    if (path.getFileSystem() != FileSystems.getDefault()) {
+      return ImageType.super.load(config, path, allocator);
+    }
+    // reading from a File allows ImageIO to use random access instead of caching the stream
+    return loadInternal(config, read(config, path.toFile()), allocator);
+  }
 
-    boolean useAlpha = image.getColorModel().hasAlpha() || config.isForceAlpha();
-    if (useAlpha) {
-      depth = BIT_DEPTH_32;
-      raster = Raster.createInterleavedRaster(DataBuffer.TYPE_BYTE, imageWidth, imageHeight, COMPONENTS_PER_PIXEL_4, null);
-      texImage = new BufferedImage(GL_ALPHA_COLOR_MODEL, raster, false, new Hashtable<String, Object>());
-    } else {
-      depth = BIT_DEPTH_24;
-      raster = Raster.createInterleavedRaster(DataBuffer.TYPE_BYTE, imageWidth, imageHeight, COMPONENTS_PER_PIXEL_3, null);
-      texImage = new BufferedImage(GL_COLOR_MODEL, raster, false, new Hashtable<String, Object>());
+  /**
+   * Reads all images of the data as the frames of an animation. The position, delay and disposal of the frames of
+   * animated GIFs are taken from their metadata, the images of other formats (e.g. the pages of a TIFF) are shown one
+   * after the other in the upper left corner. The frames are read when the ImageSequence asks for them, the
+   * ImageReader is kept until the last one is done.
+   */
+  public ImageSequence loadSequence(
+      final SimpleImageLoaderConfig config,
+      final InputStream inputStream,
+      final BufferAllocator allocator) throws IOException {
+    FrameReader frames = new FrameReader(config, ImageTypeSupport.readFully(inputStream));
+    FrameCompositor compositor = frames.compositor;
+    ByteBuffer data;
+    try {
+      data = allocator.allocate(compositor.getSize(frames.delays.length));
+    } catch (IOException e) {
+      frames.close();
+      throw e;
+    }
+    return new ImageSequence(
+        compositor.getWidth(),
+        compositor.getHeight(),
+        frames.canvasWidth,
+        frames.canvasHeight,
+        compositor.getPixelFormat(),
+        frames.delays,
+        frames.playCount,
+        data,
+        allocator,
+        frames);
+  }
+
+  /**
+   * Accepts the data of the formats ImageTypeSupport.imageIOFormat() detects, as long as ImageIO has an ImageReader
+   * for it.
+   */
+  public boolean canDecode(final byte[] header) {
+    return ImageTypeSupport.readerProvider(ImageTypeSupport.imageIOFormat(header, header.length)) != null;
+  }
+
+  /**
+   * Reads the image with ImageIO. The ImageReader is selected by the magic bytes of the data (see
+   * ImageTypeSupport.imageReader()) instead of asking every registered ImageReader like ImageIO.read() does. When a
+   * region is configured only that part of the image is read.
+   *
+   * Subsampling is done by the ImageReader so the image is never decoded in its full size. The box filter is only
+   * applied to a factor of 2: the image is read in full size and averaged over 2x2 blocks like TGA and PNG do. Larger
+   * factors are subsampled by the ImageReader without the box filter.
+   *
+   * @param config the SimpleImageLoaderConfig
+   * @param input a File or an InputStream
+   */
+  private Decoded read(final SimpleImageLoaderConfig config, final Object input) throws IOException {
+    ImageInputStream imageInputStream = ImageIO.createImageInputStream(input);
+    if (imageInputStream == null) {
+      throw new IOException("Can't create an ImageInputStream");
+    }
+    try {
+      ImageReader reader = ImageTypeSupport.imageReader(imageInputStream);
+      try {
+        reader.setInput(imageInputStream, true, true);
+        ImageReadParam param = reader.getDefaultReadParam();
+        int boxFactor = 1;
+        if (config.getRegion() != null || config.getSubsample() != 1 || config.getMaxDimension() != 0) {
+          int[] region = ImageTypeSupport.region(config, reader.getWidth(0), reader.getHeight(0));
+          param.setSourceRegion(new Rectangle(region[0], region[1], region[2], region[3]));
+          int factor = ImageTypeSupport.subsampling(config, region[2], region[3]);
+          if (config.isBoxFilter() && factor == 2) {
+            boxFactor = 2;
+          }
+          int readFactor = factor / boxFactor;
+          if (readFactor > 1) {
+            param.setSourceSubsampling(readFactor, readFactor, 0, 0);
+          }
+        }
+        return new Decoded(reader.read(0, param), boxFactor);
+      } finally {
+        ImageTypeSupport.releaseImageReader(reader);
+      }
+    } finally {
+      imageInputStream.close();
+    }
+  }
+
+  /**
+   * Convert an image that has already been read. Sub images and the types not listed in the class comment are drawn
+   * with Java2D, all others are read from their DataBuffer.
+   *
+   * @param config the SimpleImageLoaderConfig
+   * @param image the BufferedImage
+   * @param allocator the BufferAllocator the ByteBuffer is taken from
+   * @return the ImageData
+   * @throws IOException when the loading thread has been interrupted
+   */
+  ImageData load(
+      final SimpleImageLoaderConfig config,
+      final BufferedImage image,
+      final BufferAllocator allocator) throws IOException {
+    return loadInternal(config, new Decoded(image, 1), allocator);
+  }
+
+  private ImageData loadInternal(
+      final SimpleImageLoaderConfig config,
+      final Decoded decoded,
+      final BufferAllocator allocator) throws IOException {
+    DecodeScratch scratch = DecodeScratch.acquire();
+    try {
+      return convert(config, decoded, scratch, allocator);
+    } finally {
+      scratch.release();
+    }
+  }
+
+  private ImageData convert(
+      final SimpleImageLoaderConfig config,
+      final Decoded decoded,
+      final DecodeScratch scratch,
+      final BufferAllocator allocator) throws IOException {
+    // ImageIO has already decoded the whole image but we can still skip the conversion
+    ImageTypeSupport.checkInterrupted();
+
+    BufferedImage image = decoded.image;
+    int width = image.getWidth();
+    int height = image.getHeight();
+    boolean hasAlpha = image.getColorModel().hasAlpha();
+    int inputPerPixel = hasAlpha ? COMPONENTS_PER_PIXEL_4 : COMPONENTS_PER_PIXEL_3;
+    Subsampler subsampler = null;
+    if (decoded.boxFactor > 1) {
+      subsampler = new Subsampler(decoded.boxFactor, true, inputPerPixel, width, height);
+    }
+    int outputWidth = subsampler == null ? width : subsampler.getWidth();
+    int outputHeight = subsampler == null ? height : subsampler.getHeight();
+    PixelPipeline pipeline = new PixelPipeline(config, inputPerPixel, false, hasAlpha);
+    int imageWidth = ImageTypeSupport.paddedWidth(config, outputWidth, pipeline.getBitsPerPixel());
+    int imageHeight = ImageTypeSupport.paddedHeight(config, outputHeight);
+
+    if (hasDirectAccess(image)) {
+      return loadRaster(
+          config, image, imageWidth, imageHeight, inputPerPixel, pipeline, subsampler, scratch, allocator);
     }
 
-    // copy the source image into the produced image
+    // draw the image into a raster with RGB or RGBA bytes
+    WritableRaster raster = Raster.createInterleavedRaster(DataBuffer.TYPE_BYTE, width, height, inputPerPixel, null);
+    ColorModel colorModel = hasAlpha ? GL_ALPHA_COLOR_MODEL : GL_COLOR_MODEL;
+    BufferedImage texImage = new BufferedImage(colorModel, raster, false, new Hashtable<String, Object>());
     Graphics2D g = (Graphics2D) texImage.getGraphics();
 
     // only need to blank the image for mac compatibility if we're using alpha
-    processUseAlpha(imageWidth, imageHeight, useAlpha, g);
-    processFlipped(image, config.isFlipped(), g, image.getHeight());
-
-    // build a byte buffer from the temporary image
-    // that be used by OpenGL to produce a texture.
-    byte[] data = ((DataBufferByte) texImage.getRaster().getDataBuffer()).getData();
-    processTransparent(config.getTransparent(), data);
-    processModeARGB(config.isModeARGB(), data);
-
-    ByteBuffer imageBuffer = ByteBuffer.allocateDirect(data.length);
-    imageBuffer.order(ByteOrder.nativeOrder());
-    imageBuffer.put(data, 0, data.length);
-    imageBuffer.flip();
+    processUseAlpha(width, height, hasAlpha, g);
+    processFlipped(image, config.isFlipped(), g, height);
     g.dispose();
 
-    return new ImageData(imageWidth, imageHeight, image.getWidth(), image.getHeight(), depth, imageBuffer);
-  }
+    // the rows are run through the pipeline while they are copied into the buffer
+    byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+    int perPixel = pipeline.getBitsPerPixel() / 8;
+    int stride = imageWidth * perPixel;
+    ByteBuffer imageBuffer = allocator.allocate(stride * imageHeight);
+    byte[] row = scratch.row(SLOT_ROW, stride);
+    boolean done = false;
+    try {
+      for (int y = 0; y < height; y++) {
+        if (subsampler == null) {
+          pipeline.apply(data, y * width * inputPerPixel, row, width);
+          ImageTypeSupport.padRow(config, row, width, imageWidth, perPixel);
+          imageBuffer.put(row);
+        } else if (subsampler.add(data, y * width * inputPerPixel, config.isFlipped() ? height - 1 - y : y)) {
+          // the raster is already flipped so the subsampled rows are in the right order as well
+          pipeline.apply(subsampler.getRow(), 0, row, outputWidth);
+          ImageTypeSupport.padRow(config, row, outputWidth, imageWidth, perPixel);
+          imageBuffer.put(row);
+        }
+      }
+      ImageTypeSupport.padRows(config, imageBuffer, outputHeight, imageHeight, stride);
+      imageBuffer.rewind();
 
-  private void processModeARGB(final boolean modeARGB, final byte[] data) {
-    if (!modeARGB) {
-      return;
+      ImageData imageData = new ImageData(
+          imageWidth, imageHeight, outputWidth, outputHeight, pipeline.getPixelFormat(), imageBuffer, allocator);
+      done = true;
+      return imageData;
+    } finally {
+      ImageTypeSupport.releaseUnlessDone(done, allocator, imageBuffer);
     }
+  }
 
-    for (int i = 0; i < data.length; i += 4) {
-      byte rr = data[i + 0];
-      byte gg = data[i + 1];
-      byte bb = data[i + 2];
-      byte aa = data[i + 3];
-      data[i + 0] = bb;
-      data[i + 1] = gg;
-      data[i + 2] = rr;
-      data[i + 3] = aa;
+  /**
+   * Returns true when the pixels of the image can be read from its DataBuffer by loadRaster().
+   */
+  private boolean hasDirectAccess(final BufferedImage image) {
+    switch (image.getType()) {
+      case BufferedImage.TYPE_3BYTE_BGR:
+      case BufferedImage.TYPE_4BYTE_ABGR:
+      case BufferedImage.TYPE_BYTE_GRAY:
+      case BufferedImage.TYPE_INT_RGB:
+      case BufferedImage.TYPE_INT_ARGB:
+        break;
+      default:
+        return false;
     }
+    // sub images share the DataBuffer of their parent and start somewhere in the middle
+    Raster raster = image.getRaster();
+    return raster.getSampleModelTranslateX() == 0 &&
+        raster.getSampleModelTranslateY() == 0 &&
+        raster.getDataBuffer().getNumBanks() == 1 &&
+        raster.getDataBuffer().getOffset() == 0;
   }
 
-  private void processTransparent(final int[] transparent, final byte[] data) {
-    if (transparent == null) {
-      return;
+  private ImageData loadRaster(
+      final SimpleImageLoaderConfig config,
+      final BufferedImage image,
+      final int imageWidth,
+      final int imageHeight,
+      final int perPixel,
+      final PixelPipeline pipeline,
+      final Subsampler subsampler,
+      final DecodeScratch scratch,
+      final BufferAllocator allocator) throws IOException {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int outputWidth = subsampler == null ? width : subsampler.getWidth();
+    int outputHeight = subsampler == null ? height : subsampler.getHeight();
+    int outputPerPixel = pipeline.getBitsPerPixel() / 8;
+    int stride = imageWidth * outputPerPixel;
+
+    Raster raster = image.getRaster();
+    SampleModel sampleModel = raster.getSampleModel();
+    DataBuffer dataBuffer = raster.getDataBuffer();
+    byte[] bytes = null;
+    int[] ints = null;
+    int scanlineStride;
+    if (sampleModel instanceof SinglePixelPackedSampleModel) {
+      ints = ((DataBufferInt) dataBuffer).getData();
+      scanlineStride = ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride();
+    } else {
+      bytes = ((DataBufferByte) dataBuffer).getData();
+      scanlineStride = ((PixelInterleavedSampleModel) sampleModel).getScanlineStride();
     }
 
-    for (int i = 0; i < data.length; i += 4) {
-      boolean match = true;
-      for (int c = 0; c < COLOR_COMPONENT_COUNT; c++) {
-        int value = data[i + c] < 0 ? COLOR_PALETTE_SIZE + data[i + c] : data[i + c];
-        if (value != transparent[c]) {
-          match = false;
+    ByteBuffer imageBuffer = allocator.allocate(stride * imageHeight);
+
+    // the parts of the row behind width stay zero unless the padding says otherwise
+    byte[] row = scratch.row(SLOT_ROW, stride);
+    byte[] decoded = scratch.row(SLOT_DECODED, width * perPixel);
+    boolean done = false;
+    try {
+      for (int y = 0; y < height; y++) {
+        ImageTypeSupport.checkInterrupted();
+        int offset = y * scanlineStride;
+        switch (image.getType()) {
+          case BufferedImage.TYPE_3BYTE_BGR:
+            convertBGR(bytes, offset, decoded, width, perPixel);
+            break;
+          case BufferedImage.TYPE_4BYTE_ABGR:
+            convertABGR(bytes, offset, decoded, width);
+            break;
+          case BufferedImage.TYPE_BYTE_GRAY:
+            convertGray(bytes, offset, decoded, width, perPixel);
+            break;
+          default:
+            convertInt(ints, offset, decoded, width, perPixel, image.getType() == BufferedImage.TYPE_INT_ARGB);
+            break;
         }
+        if (subsampler == null) {
+          pipeline.apply(decoded, 0, row, width);
+          ImageTypeSupport.padRow(config, row, width, imageWidth, outputPerPixel);
+          imageBuffer.position(pipeline.targetRow(y, height) * stride);
+          imageBuffer.put(row);
+        } else if (subsampler.add(decoded, 0, y)) {
+          pipeline.apply(subsampler.getRow(), 0, row, outputWidth);
+          ImageTypeSupport.padRow(config, row, outputWidth, imageWidth, outputPerPixel);
+          imageBuffer.position(pipeline.targetRow(y / subsampler.getFactor(), outputHeight) * stride);
+          imageBuffer.put(row);
+        }
+      }
+
+      ImageTypeSupport.padRows(config, imageBuffer, outputHeight, imageHeight, stride);
+      imageBuffer.rewind();
+
+      ImageData imageData = new ImageData(
+          imageWidth, imageHeight, outputWidth, outputHeight, pipeline.getPixelFormat(), imageBuffer, allocator);
+      done = true;
+      return imageData;
+    } finally {
+      ImageTypeSupport.releaseUnlessDone(done, allocator, imageBuffer);
+    }
+  }
+
+  private void convertBGR(final byte[] source, final int offset, final byte[] target, final int width, final int perPixel) {
+    for (int s = offset, t = 0; t < width * perPixel; s += 3, t += perPixel) {
+      target[t] = source[s + 2];
+      target[t + 1] = source[s + 1];
+      target[t + 2] = source[s];
+      if (perPixel == COMPONENTS_PER_PIXEL_4) {
+        target[t + 3] = (byte) 0xFF;
+      }
+    }
+  }
+
+  private void convertABGR(final byte[] source, final int offset, final byte[] target, final int width) {
+    for (int s = offset, t = 0; t < width * 4; s += 4, t += 4) {
+      int alpha = source[s] & 0xFF;
+      target[t] = java2dColor(source[s + 3], alpha);
+      target[t + 1] = java2dColor(source[s + 2], alpha);
+      target[t + 2] = java2dColor(source[s + 1], alpha);
+      target[t + 3] = (byte) alpha;
+    }
+  }
+
+  private void convertGray(final byte[] source, final int offset, final byte[] target, final int width, final int perPixel) {
+    for (int s = offset, t = 0; t < width * perPixel; s++, t += perPixel) {
+      byte gray = source[s];
+      target[t] = gray;
+      target[t + 1] = gray;
+      target[t + 2] = gray;
+      if (perPixel == COMPONENTS_PER_PIXEL_4) {
+        target[t + 3] = (byte) 0xFF;
+      }
+    }
+  }
+
+  private void convertInt(
+      final int[] source,
+      final int offset,
+      final byte[] target,
+      final int width,
+      final int perPixel,
+      final boolean hasAlpha) {
+    for (int s = offset, t = 0; t < width * perPixel; s++, t += perPixel) {
+      int pixel = source[s];
+      int alpha = hasAlpha ? pixel >>> 24 : 0xFF;
+      target[t] = java2dColor((byte) (pixel >> 16), alpha);
+      target[t + 1] = java2dColor((byte) (pixel >> 8), alpha);
+      target[t + 2] = java2dColor((byte) pixel, alpha);
+      if (perPixel == COMPONENTS_PER_PIXEL_4) {
+        target[t + 3] = (byte) alpha;
       }
+    }
+  }
+
+  private static byte java2dColor(final byte color, final int alpha) {
+    return alpha == 0xFF ? color : JAVA2D_COLORS[alpha << 8 | color & 0xFF];
+  }
 
-      if (match) {
-        data[i + 3] = 0;
+  /**
+   * Java2D draws translucent pixels into the non premultiplied RGBA raster by premultiplying and dividing them again
+   * with 8 bit precision (the mul8table and div8table of its native loops). The direct path reads the same colors the
+   * Java2D path would have drawn from this table, so both deliver the same bytes.
+   */
+  private static byte[] java2dColors() {
+    byte[] colors = new byte[256 * 256];
+    for (int alpha = 1; alpha < 255; alpha++) {
+      int divide = (int) ((0xFF000000L + alpha / 2) / alpha);
+      for (int color = 0; color < 256; color++) {
+        int premultiplied = (alpha * 0x10101 * color + 0x800000) >>> 24;
+        colors[alpha << 8 | color] = (byte) Math.min(0xFF, (premultiplied * divide + 0x800000) >>> 24);
       }
     }
+    return colors;
   }
 
   private void processFlipped(final BufferedImage image, final boolean flipped, final Graphics2D g, final int height) {
@@ -158,14 +481,204 @@ public class ImageTypeImageIO implements ImageType {
     g.fillRect(0, 0, imageWidth, imageHeight);
   }
 
-  private int powerOfTwoSupport(final int originalValue, final boolean powerOfTwoSupport) {
-    if (!powerOfTwoSupport) {
-      return originalValue;
+  /**
+   * The image read by ImageIO and the factor it still has to be shrunk by with the box filter.
+   */
+  private static class Decoded {
+    private final BufferedImage image;
+    private final int boxFactor;
+
+    private Decoded(final BufferedImage image, final int boxFactor) {
+      this.image = image;
+      this.boxFactor = boxFactor;
+    }
+  }
+
+  /**
+   * Reads the frames of an ImageSequence with an ImageReader. The metadata of all frames is read up front, which for
+   * GIF skips over the image data without decoding it, the images themselves are read one at a time by decodeFrame().
+   */
+  private static class FrameReader implements ImageSequence.FrameDecoder {
+    private static final String GIF_STREAM_METADATA = "javax_imageio_gif_stream_1.0";
+    private static final String GIF_IMAGE_METADATA = "javax_imageio_gif_image_1.0";
+
+    private final ImageInputStream imageInputStream;
+    private final ImageReader reader;
+    private FrameCompositor compositor;
+    private boolean gif;
+    private int canvasWidth;
+    private int canvasHeight;
+    private int[] positions;
+    private int[] disposal;
+    private int[] delays;
+    private int playCount = 1;
+    private int[] argb = new int[0];
+    private byte[] rgba = new byte[0];
+
+    private FrameReader(final SimpleImageLoaderConfig config, final byte[] encoded) throws IOException {
+      // a memory cache explicitly since ImageIO.createImageInputStream() might cache the stream in a temporary file
+      imageInputStream = new MemoryCacheImageInputStream(new ByteArrayInputStream(encoded));
+      ImageReader imageReader;
+      try {
+        imageReader = ImageTypeSupport.imageReader(imageInputStream);
+      } catch (IOException e) {
+        imageInputStream.close();
+        throw e;
+      }
+      reader = imageReader;
+      try {
+        reader.setInput(imageInputStream, false, false);
+        readMetadata();
+        compositor = new FrameCompositor(config, canvasWidth, canvasHeight);
+      } catch (IOException e) {
+        close();
+        throw e;
+      }
+    }
+
+    @Override
+    public void decodeFrame(final int frame, final ByteBuffer target) throws IOException {
+      BufferedImage image = reader.read(frame);
+      int width = image.getWidth();
+      int height = image.getHeight();
+      if (argb.length < width) {
+        argb = new int[width];
+        rgba = new byte[width * 4];
+      }
+      // GIF frames are blended so that their transparent pixels show the frames before, other images replace them
+      compositor.begin(positions[frame * 2], positions[frame * 2 + 1], width, height, disposal[frame], gif);
+      ColorModel colorModel = image.getColorModel();
+      int[] palette = null;
+      if (colorModel instanceof IndexColorModel) {
+        IndexColorModel indexColorModel = (IndexColorModel) colorModel;
+        palette = new int[Math.max(indexColorModel.getMapSize(), 1 << indexColorModel.getPixelSize())];
+        indexColorModel.getRGBs(palette);
+      }
+      Raster raster = image.getRaster();
+      for (int y = 0; y < height; y++) {
+        ImageTypeSupport.checkInterrupted();
+        if (palette != null) {
+          raster.getSamples(0, y, width, 1, 0, argb);
+          for (int x = 0; x < width; x++) {
+            argb[x] = palette[argb[x]];
+          }
+        } else {
+          image.getRGB(0, y, width, 1, argb, 0, width);
+        }
+        for (int x = 0, t = 0; x < width; x++, t += 4) {
+          int pixel = argb[x];
+          rgba[t] = (byte) (pixel >> 16);
+          rgba[t + 1] = (byte) (pixel >> 8);
+          rgba[t + 2] = (byte) pixel;
+          rgba[t + 3] = (byte) (pixel >>> 24);
+        }
+        compositor.drawRow(rgba, 0, y);
+      }
+      compositor.end(target);
+    }
+
+    @Override
+    public void close() {
+      ImageTypeSupport.releaseImageReader(reader);
+      try {
+        imageInputStream.close();
+      } catch (IOException e) {
+        // it's only memory
+      }
+    }
+
+    private void readMetadata() throws IOException {
+      int count = reader.getNumImages(true);
+      if (count <= 0) {
+        throw new IOException("The image doesn't contain any frames");
+      }
+      canvasWidth = reader.getWidth(0);
+      canvasHeight = reader.getHeight(0);
+      IIOMetadata streamMetadata = reader.getStreamMetadata();
+      gif = streamMetadata != null && GIF_STREAM_METADATA.equals(streamMetadata.getNativeMetadataFormatName());
+      if (gif) {
+        Node screen = child(streamMetadata.getAsTree(GIF_STREAM_METADATA), "LogicalScreenDescriptor");
+        if (screen != null && intAttribute(screen, "logicalScreenWidth") > 0 &&
+            intAttribute(screen, "logicalScreenHeight") > 0) {
+          canvasWidth = intAttribute(screen, "logicalScreenWidth");
+          canvasHeight = intAttribute(screen, "logicalScreenHeight");
+        }
+      }
+
+      positions = new int[count * 2];
+      disposal = new int[count];
+      delays = new int[count];
+      for (int i = 0; i < count; i++) {
+        if (!gif) {
+          disposal[i] = FrameCompositor.DISPOSE_BACKGROUND;
+          continue;
+        }
+        Node image = reader.getImageMetadata(i).getAsTree(GIF_IMAGE_METADATA);
+        Node descriptor = child(image, "ImageDescriptor");
+        if (descriptor != null) {
+          positions[i * 2] = intAttribute(descriptor, "imageLeftPosition");
+          positions[i * 2 + 1] = intAttribute(descriptor, "imageTopPosition");
+        }
+        Node control = child(image, "GraphicControlExtension");
+        if (control != null) {
+          // the delay is given in hundredths of a second
+          delays[i] = intAttribute(control, "delayTime") * 10;
+          String method = attribute(control, "disposalMethod");
+          if ("restoreToBackgroundColor".equals(method)) {
+            disposal[i] = FrameCompositor.DISPOSE_BACKGROUND;
+          } else if ("restoreToPrevious".equals(method)) {
+            disposal[i] = FrameCompositor.DISPOSE_PREVIOUS;
+          }
+        }
+        if (i == 0) {
+          readPlayCount(child(image, "ApplicationExtensions"));
+        }
+      }
     }
-    int value = 2;
-    while (value < originalValue) {
-      value *= 2;
+
+    /**
+     * The NETSCAPE2.0 extension tells how often the animation is repeated after it has been played once, 0 repeats it
+     * forever. Without it the animation is played once.
+     */
+    private void readPlayCount(final Node extensions) {
+      for (Node node = extensions == null ? null : extensions.getFirstChild(); node != null;
+          node = node.getNextSibling()) {
+        if (!"NETSCAPE".equals(attribute(node, "applicationID")) || !(node instanceof IIOMetadataNode)) {
+          continue;
+        }
+        Object userObject = ((IIOMetadataNode) node).getUserObject();
+        if (userObject instanceof byte[] && ((byte[]) userObject).length >= 3 && ((byte[]) userObject)[0] == 1) {
+          byte[] loop = (byte[]) userObject;
+          int repeat = (loop[1] & 0xFF) | (loop[2] & 0xFF) << 8;
+          playCount = repeat == 0 ? 0 : repeat + 1;
+        }
+      }
+    }
+
+    private Node child(final Node parent, final String name) {
+      for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+        if (name.equals(node.getNodeName())) {
+          return node;
+        }
+      }
+      return null;
+    }
+
+    private String attribute(final Node node, final String name) {
+      Node attribute = node.getAttributes() == null ? null : node.getAttributes().getNamedItem(name);
+      return attribute == null ? null : attribute.getNodeValue();
+    }
+
+    private int intAttribute(final Node node, final String name) {
+      String value = attribute(node, name);
+      if (value == null) {
+        return 0;
+      }
+      try {
+        return Integer.parseInt(value);
+      } catch (NumberFormatException e) {
+        return 0;
+      }
     }
-    return value;
   }
 }
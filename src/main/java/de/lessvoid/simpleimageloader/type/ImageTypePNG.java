@@ -0,0 +1,947 @@
+package de.lessvoid.simpleimageloader.type;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import de.lessvoid.simpleimageloader.ImageData;
+import de.lessvoid.simpleimageloader.ImageInfo;
+import de.lessvoid.simpleimageloader.ImageSequence;
+import de.lessvoid.simpleimageloader.ScanlineSink;
+import de.lessvoid.simpleimageloader.SimpleImageLoaderConfig;
+import de.lessvoid.simpleimageloader.buffer.BufferAllocator;
+import de.lessvoid.simpleimageloader.buffer.DirectBufferAllocator;
+
+/**
+ * A PNG loader that doesn't need ImageIO or Java2D. The compressed image data is inflated one scanline at a time,
+ * unfiltered and converted by the PixelPipeline into the output row that is written to the ByteBuffer right away.
+ *
+ * All color types and bit depths are supported. Interlaced images and data that doesn't start with the PNG signature
+ * are handed over to ImageTypeImageIO. Gamma, color profiles and CRCs are ignored.
+ *
+ * The result is the same as with ImageTypeImageIO: images with alpha (including tRNS transparency) are returned as
+ * 32 bit, all others as 24 bit, 16 bit samples are reduced to 8 bit and fully transparent pixels are black. When a
+ * transparent color is set the image is always returned as 32 bit.
+ *
+ * When only a region of the image is requested the rows in front of it still need to be inflated and unfiltered (each
+ * row depends on the one before) but they are not converted and decoding stops after the last row of the region.
+ *
+ * stream() uses the same decoder but hands the rows to the ScanlineSink as they are decoded, so apart from the band
+ * only two scanlines of the image are kept in memory.
+ *
+ * loadSequence() decodes the frames of animated PNGs (APNG). Each frame has its own zlib stream in the fdAT chunks,
+ * which the decoder inflates directly from the encoded data.
+ *
+ * @author void
+ */
+public class ImageTypePNG implements ImageType {
+  private static final byte[] SIGNATURE = new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+  private static final int IHDR_SIZE = 13;
+  private static final int ACTL_SIZE = 8;
+  private static final int FCTL_SIZE = 26;
+  private static final int CHUNK_IHDR = chunkType("IHDR");
+  private static final int CHUNK_PLTE = chunkType("PLTE");
+  private static final int CHUNK_TRNS = chunkType("tRNS");
+  private static final int CHUNK_IDAT = chunkType("IDAT");
+  private static final int CHUNK_IEND = chunkType("IEND");
+  private static final int CHUNK_ACTL = chunkType("acTL");
+  private static final int CHUNK_FCTL = chunkType("fcTL");
+  private static final int CHUNK_FDAT = chunkType("fdAT");
+
+  private static final int COLOR_GRAY = 0;
+  private static final int COLOR_RGB = 2;
+  private static final int COLOR_PALETTE = 3;
+  private static final int COLOR_GRAY_ALPHA = 4;
+  private static final int COLOR_RGBA = 6;
+
+  private static final int FILTER_NONE = 0;
+  private static final int FILTER_SUB = 1;
+  private static final int FILTER_UP = 2;
+  private static final int FILTER_AVERAGE = 3;
+  private static final int FILTER_PAETH = 4;
+
+  private static final int INPUT_BUFFER_SIZE = 16 * 1024;
+
+  private static final int SLOT_INPUT = 0;
+  private static final int SLOT_CURRENT = 1;
+  private static final int SLOT_PREVIOUS = 2;
+  private static final int SLOT_RGBA = 3;
+  private static final int SLOT_ROW = 4;
+  private static final int SLOT_PALETTE = 5;
+  private static final int SLOT_PALETTE_ALPHA = 6;
+
+  private final ImageType fallback = new ImageTypeImageIO();
+
+  public ImageData load(final SimpleImageLoaderConfig config, final InputStream inputStream) throws IOException {
+    return load(config, inputStream, new DirectBufferAllocator());
+  }
+
+  public ImageData load(
+      final SimpleImageLoaderConfig config,
+      final InputStream inputStream,
+      final BufferAllocator allocator) throws IOException {
+    // the signature and the IHDR chunk are all we need to decide if we can handle the image ourself
+    int headerSize = SIGNATURE.length + 8 + IHDR_SIZE;
+    PushbackInputStream in = new PushbackInputStream(inputStream, headerSize);
+    byte[] header = new byte[headerSize];
+    int read = readFully(in, header);
+    in.unread(header, 0, read);
+    if (!canDecodeNative(header, read)) {
+      return fallback.load(config, in, allocator);
+    }
+    return new Decoder(config, new DataInputStream(in)).decode(allocator);
+  }
+
+  public void stream(
+      final SimpleImageLoaderConfig config,
+      final InputStream inputStream,
+      final ScanlineSink sink,
+      final int bandHeight) throws IOException {
+    int headerSize = SIGNATURE.length + 8 + IHDR_SIZE;
+    PushbackInputStream in = new PushbackInputStream(inputStream, headerSize);
+    byte[] header = new byte[headerSize];
+    int read = readFully(in, header);
+    in.unread(header, 0, read);
+    if (!canDecodeNative(header, read)) {
+      fallback.stream(config, in, sink, bandHeight);
+      return;
+    }
+    new Decoder(config, new DataInputStream(in)).stream(sink, bandHeight);
+  }
+
+  /**
+   * Reads the frames of an APNG. A PNG without animation control chunk is returned as a sequence with its image as
+   * the only frame, interlaced PNGs are handed to ImageTypeImageIO which only knows the default image of an APNG.
+   */
+  public ImageSequence loadSequence(
+      final SimpleImageLoaderConfig config,
+      final InputStream inputStream,
+      final BufferAllocator allocator) throws IOException {
+    byte[] png = ImageTypeSupport.readFully(inputStream);
+    int headerSize = SIGNATURE.length + 8 + IHDR_SIZE;
+    if (!canDecodeNative(Arrays.copyOf(png, headerSize), Math.min(png.length, headerSize))) {
+      return fallback.loadSequence(config, new ByteArrayInputStream(png), allocator);
+    }
+    Animation animation = new Animation(config, png);
+    FrameCompositor compositor = animation.compositor;
+    int[] delays = new int[animation.frames.length];
+    for (int i = 0; i < delays.length; i++) {
+      delays[i] = animation.frames[i].delay;
+    }
+    return new ImageSequence(
+        compositor.getWidth(),
+        compositor.getHeight(),
+        animation.canvasWidth,
+        animation.canvasHeight,
+        compositor.getPixelFormat(),
+        delays,
+        animation.playCount,
+        allocator.allocate(compositor.getSize(delays.length)),
+        allocator,
+        animation);
+  }
+
+  /**
+   * Reads the IHDR chunk and skips the chunks up to the image data to look for a tRNS chunk.
+   */
+  public ImageInfo readInfo(final InputStream inputStream) throws IOException {
+    PushbackInputStream in = new PushbackInputStream(inputStream, SIGNATURE.length);
+    byte[] signature = new byte[SIGNATURE.length];
+    int read = readFully(in, signature);
+    if (read < SIGNATURE.length || !Arrays.equals(signature, SIGNATURE)) {
+      in.unread(signature, 0, read);
+      return fallback.readInfo(in);
+    }
+
+    DataInputStream data = new DataInputStream(in);
+    if (data.readInt() != IHDR_SIZE || data.readInt() != CHUNK_IHDR) {
+      throw new IOException("Invalid PNG header");
+    }
+    int width = data.readInt();
+    int height = data.readInt();
+    int bitDepth = data.readUnsignedByte();
+    int colorType = data.readUnsignedByte();
+    skipFully(data, 3 + 4);
+
+    int channels;
+    switch (colorType) {
+      case COLOR_GRAY:
+      case COLOR_PALETTE:
+        channels = 1;
+        break;
+      case COLOR_RGB:
+        channels = 3;
+        break;
+      case COLOR_GRAY_ALPHA:
+        channels = 2;
+        break;
+      case COLOR_RGBA:
+        channels = 4;
+        break;
+      default:
+        throw new IOException("Unsupported PNG color type: " + colorType);
+    }
+
+    boolean alpha = colorType == COLOR_GRAY_ALPHA || colorType == COLOR_RGBA;
+    while (!alpha) {
+      int length = data.readInt();
+      int type = data.readInt();
+      if (type == CHUNK_IDAT || type == CHUNK_IEND) {
+        break;
+      }
+      alpha = type == CHUNK_TRNS;
+      // chunk data and CRC
+      skipFully(data, length + 4);
+    }
+    return new ImageInfo(width, height, bitDepth * channels, alpha);
+  }
+
+  /**
+   * Accepts everything that starts with the PNG signature. Interlaced images are accepted as well, they are handed to
+   * ImageIO by load().
+   */
+  public boolean canDecode(final byte[] header) {
+    return header.length >= SIGNATURE.length && Arrays.equals(Arrays.copyOf(header, SIGNATURE.length), SIGNATURE);
+  }
+
+  private boolean canDecodeNative(final byte[] header, final int length) {
+    if (length < header.length) {
+      return false;
+    }
+    for (int i = 0; i < SIGNATURE.length; i++) {
+      if (header[i] != SIGNATURE[i]) {
+        return false;
+      }
+    }
+    int interlace = header[header.length - 1];
+    return interlace == 0;
+  }
+
+  private static int readFully(final InputStream in, final byte[] data) throws IOException {
+    int offset = 0;
+    while (offset < data.length) {
+      int count = in.read(data, offset, data.length - offset);
+      if (count < 0) {
+        break;
+      }
+      offset += count;
+    }
+    return offset;
+  }
+
+  private static void skipFully(final DataInputStream in, final int count) throws IOException {
+    int remaining = count;
+    while (remaining > 0) {
+      int skipped = in.skipBytes(remaining);
+      if (skipped <= 0) {
+        throw new EOFException();
+      }
+      remaining -= skipped;
+    }
+  }
+
+  private static int chunkType(final String name) {
+    return (name.charAt(0) << 24) | (name.charAt(1) << 16) | (name.charAt(2) << 8) | name.charAt(3);
+  }
+
+  private static int readInt(final byte[] data, final int offset) {
+    return (data[offset] & 0xFF) << 24 |
+        (data[offset + 1] & 0xFF) << 16 |
+        (data[offset + 2] & 0xFF) << 8 |
+        (data[offset + 3] & 0xFF);
+  }
+
+  private static int readShort(final byte[] data, final int offset) {
+    return (data[offset] & 0xFF) << 8 | (data[offset + 1] & 0xFF);
+  }
+
+  /**
+   * The frames of an APNG. The chunks are walked once up front to find the frame control chunks and the image data of
+   * each frame, decodeFrame() then decodes a single frame with a Decoder of its own.
+   */
+  private static class Animation implements ImageSequence.FrameDecoder {
+    private final SimpleImageLoaderConfig config;
+    private final byte[] png;
+    private final FrameCompositor compositor;
+    private final Frame[] frames;
+    private int canvasWidth;
+    private int canvasHeight;
+    private int playCount = 1;
+
+    private Animation(final SimpleImageLoaderConfig config, final byte[] png) throws IOException {
+      this.config = config;
+      this.png = png;
+      this.frames = readFrames();
+      this.compositor = new FrameCompositor(config, canvasWidth, canvasHeight);
+    }
+
+    @Override
+    public void decodeFrame(final int frame, final ByteBuffer target) throws IOException {
+      Decoder decoder = new Decoder(config, new DataInputStream(new ByteArrayInputStream(png)));
+      decoder.decodeFrame(png, frames[frame], compositor);
+      compositor.end(target);
+    }
+
+    @Override
+    public void close() {
+      // there is nothing but the encoded data which goes away together with the ImageSequence
+    }
+
+    private Frame[] readFrames() throws IOException {
+      List<Frame> result = new ArrayList<Frame>();
+      boolean animated = false;
+      boolean frameData = false;
+      int offset = SIGNATURE.length;
+      while (offset + 8 <= png.length) {
+        int length = readInt(png, offset);
+        int type = readInt(png, offset + 4);
+        int data = offset + 8;
+        if (length < 0 || data + length > png.length) {
+          throw new EOFException("Unexpected end of PNG data");
+        }
+        if (type == CHUNK_IHDR) {
+          checkChunkLength("IHDR", length, IHDR_SIZE);
+          canvasWidth = readInt(png, data);
+          canvasHeight = readInt(png, data + 4);
+        } else if (type == CHUNK_ACTL) {
+          checkChunkLength("acTL", length, ACTL_SIZE);
+          animated = true;
+          playCount = readInt(png, data + 4);
+        } else if (type == CHUNK_FCTL && animated) {
+          checkChunkLength("fcTL", length, FCTL_SIZE);
+          result.add(new Frame(png, data));
+        } else if (type == CHUNK_IDAT) {
+          if (!animated && result.isEmpty()) {
+            result.add(new Frame(canvasWidth, canvasHeight));
+          }
+          // the default image is only the first frame when its frame control chunk comes before the image data
+          if (result.size() == 1 && !frameData) {
+            result.get(0).addChunk(data, length);
+          }
+        } else if (type == CHUNK_FDAT && !result.isEmpty() && length > 4) {
+          // fdAT chunks start with a sequence number
+          frameData = true;
+          result.get(result.size() - 1).addChunk(data + 4, length - 4);
+        } else if (type == CHUNK_IEND) {
+          break;
+        }
+        // chunk data and CRC
+        offset = data + length + 4;
+      }
+      if (result.isEmpty()) {
+        throw new IOException("PNG without image data");
+      }
+      return result.toArray(new Frame[result.size()]);
+    }
+
+    private void checkChunkLength(final String chunk, final int length, final int required) throws IOException {
+      if (length < required) {
+        throw new IOException("Invalid " + chunk + " chunk: " + length + " bytes instead of " + required);
+      }
+    }
+  }
+
+  /**
+   * The frame control chunk of a frame and where its image data is.
+   */
+  private static class Frame {
+    private final int width;
+    private final int height;
+    private final int x;
+    private final int y;
+    private final int delay;
+    private final int dispose;
+    private final boolean blend;
+    private int[] chunks = new int[8];
+    private int chunkCount;
+
+    /**
+     * The whole image as the only frame of a PNG without animation.
+     */
+    private Frame(final int width, final int height) {
+      this.width = width;
+      this.height = height;
+      this.x = 0;
+      this.y = 0;
+      this.delay = 0;
+      this.dispose = FrameCompositor.DISPOSE_NONE;
+      this.blend = false;
+    }
+
+    /**
+     * The frame described by the fcTL chunk data starting at offset.
+     */
+    private Frame(final byte[] png, final int offset) {
+      width = readInt(png, offset + 4);
+      height = readInt(png, offset + 8);
+      x = readInt(png, offset + 12);
+      y = readInt(png, offset + 16);
+      // the delay is a fraction of a second, a denominator of 0 means hundredths
+      int numerator = readShort(png, offset + 20);
+      int denominator = readShort(png, offset + 22);
+      delay = numerator * 1000 / (denominator == 0 ? 100 : denominator);
+      switch (png[offset + 24]) {
+        case 1:
+          dispose = FrameCompositor.DISPOSE_BACKGROUND;
+          break;
+        case 2:
+          dispose = FrameCompositor.DISPOSE_PREVIOUS;
+          break;
+        default:
+          dispose = FrameCompositor.DISPOSE_NONE;
+          break;
+      }
+      blend = png[offset + 25] == 1;
+    }
+
+    private void addChunk(final int offset, final int length) {
+      if (chunkCount * 2 == chunks.length) {
+        chunks = Arrays.copyOf(chunks, chunks.length * 2);
+      }
+      chunks[chunkCount * 2] = offset;
+      chunks[chunkCount * 2 + 1] = length;
+      chunkCount++;
+    }
+  }
+
+  /**
+   * The state of a single decode.
+   */
+  private static class Decoder {
+    private final SimpleImageLoaderConfig config;
+    private final DataInputStream in;
+    private final DecodeScratch scratch;
+    private final Inflater inflater;
+    private final byte[] input;
+    private int chunkRemaining;
+
+    // the image data of an APNG frame is inflated from the encoded data directly
+    private byte[] source;
+    private Frame frame;
+    private int frameChunk;
+
+    private int width;
+    private int height;
+    private int bitDepth;
+    private int colorType;
+    private int channels;
+
+    private final byte[] palette;
+    private final byte[] paletteAlpha;
+    private boolean hasTransparentColor;
+    private int transparentGray;
+    private int transparentRed;
+    private int transparentGreen;
+    private int transparentBlue;
+
+    // set up by startImageData() for reading the rows
+    private PixelPipeline pipeline;
+    private boolean direct;
+    private int depth;
+    private int[] region;
+    private Subsampler subsampler;
+    private int outputWidth;
+    private int outputHeight;
+    private int regionRow;
+    private int bytesPerPixel;
+    private int rowBytes;
+    private byte[] current;
+    private byte[] previous;
+    private byte[] rgba;
+
+    private Decoder(final SimpleImageLoaderConfig config, final DataInputStream in) {
+      this.config = config;
+      this.in = in;
+      scratch = DecodeScratch.acquire();
+      inflater = scratch.inflater();
+      input = scratch.row(SLOT_INPUT, INPUT_BUFFER_SIZE);
+      palette = scratch.row(SLOT_PALETTE, 256 * 3);
+      paletteAlpha = scratch.row(SLOT_PALETTE_ALPHA, 256);
+      Arrays.fill(paletteAlpha, (byte) 255);
+    }
+
+    private ImageData decode(final BufferAllocator allocator) throws IOException {
+      try {
+        readChunks();
+        return decodeImageData(allocator);
+      } finally {
+        scratch.release();
+      }
+    }
+
+    /**
+     * Decodes an APNG frame onto the canvas of the compositor. The chunks in front of the image data are read for the
+     * header and the palette, the image data of the frame is taken from png.
+     */
+    private void decodeFrame(final byte[] png, final Frame animationFrame, final FrameCompositor compositor)
+        throws IOException {
+      try {
+        readChunks();
+        if (animationFrame.width <= 0 || animationFrame.height <= 0) {
+          throw new IOException("Invalid APNG frame dimensions: " + animationFrame.width + "x" + animationFrame.height);
+        }
+        source = png;
+        frame = animationFrame;
+        width = animationFrame.width;
+        height = animationFrame.height;
+        bytesPerPixel = Math.max(1, channels * bitDepth / 8);
+        rowBytes = (width * channels * bitDepth + 7) / 8;
+        current = scratch.row(SLOT_CURRENT, rowBytes + 1);
+        previous = scratch.row(SLOT_PREVIOUS, rowBytes + 1);
+        rgba = scratch.row(SLOT_RGBA, width * 4);
+
+        compositor.begin(frame.x, frame.y, width, height, frame.dispose, frame.blend);
+        for (int i = 0; i < height; i++) {
+          ImageTypeSupport.checkInterrupted();
+          nextRow();
+          toRGBA(previous, rgba);
+          compositor.drawRow(rgba, 0, i);
+        }
+      } finally {
+        scratch.release();
+      }
+    }
+
+    private void stream(final ScanlineSink sink, final int bandHeight) throws IOException {
+      try {
+        readChunks();
+        startImageData();
+        int perPixel = depth / 8;
+        byte[] row = scratch.row(SLOT_ROW, width * perPixel);
+        ScanlineBand band =
+            new ScanlineBand(sink, outputWidth * perPixel, outputHeight, bandHeight, config.isFlipped());
+
+        sink.start(outputWidth, outputHeight, depth);
+        skipToRegion();
+        for (int i = 0; i < outputHeight; i++) {
+          readRow(row);
+          band.put(row, i);
+        }
+        sink.end();
+      } finally {
+        scratch.release();
+      }
+    }
+
+    /**
+     * Reads the chunks in front of the image data.
+     */
+    private void readChunks() throws IOException {
+      skipFully(SIGNATURE.length);
+      while (true) {
+        int length = in.readInt();
+        int type = in.readInt();
+        if (type == CHUNK_IDAT) {
+          chunkRemaining = length;
+          return;
+        }
+        if (type == CHUNK_IEND) {
+          throw new IOException("PNG without image data");
+        }
+        if (type == CHUNK_IHDR) {
+          readHeader(length);
+        } else if (type == CHUNK_PLTE) {
+          readPalette(length);
+        } else if (type == CHUNK_TRNS) {
+          readTransparency(length);
+        } else {
+          skipFully(length);
+        }
+        // CRC
+        skipFully(4);
+      }
+    }
+
+    private void readHeader(final int length) throws IOException {
+      if (length != IHDR_SIZE) {
+        throw new IOException("Invalid PNG header");
+      }
+      width = in.readInt();
+      height = in.readInt();
+      bitDepth = in.readUnsignedByte();
+      colorType = in.readUnsignedByte();
+      int compression = in.readUnsignedByte();
+      int filter = in.readUnsignedByte();
+      in.readUnsignedByte();
+      if (compression != 0 || filter != 0) {
+        throw new IOException("Unsupported PNG compression or filter method");
+      }
+      switch (colorType) {
+        case COLOR_GRAY:
+          channels = 1;
+          checkBitDepth(bitDepth == 1 || bitDepth == 2 || bitDepth == 4 || bitDepth == 8 || bitDepth == 16);
+          break;
+        case COLOR_RGB:
+          channels = 3;
+          checkBitDepth(bitDepth == 8 || bitDepth == 16);
+          break;
+        case COLOR_PALETTE:
+          channels = 1;
+          checkBitDepth(bitDepth == 1 || bitDepth == 2 || bitDepth == 4 || bitDepth == 8);
+          break;
+        case COLOR_GRAY_ALPHA:
+          channels = 2;
+          checkBitDepth(bitDepth == 8 || bitDepth == 16);
+          break;
+        case COLOR_RGBA:
+          channels = 4;
+          checkBitDepth(bitDepth == 8 || bitDepth == 16);
+          break;
+        default:
+          throw new IOException("Unsupported PNG color type: " + colorType);
+      }
+    }
+
+    private void checkBitDepth(final boolean valid) throws IOException {
+      if (!valid) {
+        throw new IOException("Unsupported PNG bit depth " + bitDepth + " for color type " + colorType);
+      }
+    }
+
+    private void readPalette(final int length) throws IOException {
+      if (length > palette.length || length % 3 != 0) {
+        throw new IOException("Invalid PNG palette");
+      }
+      in.readFully(palette, 0, length);
+    }
+
+    private void readTransparency(final int length) throws IOException {
+      if (colorType == COLOR_PALETTE) {
+        if (length > paletteAlpha.length) {
+          throw new IOException("Invalid PNG transparency");
+        }
+        in.readFully(paletteAlpha, 0, length);
+      } else if (colorType == COLOR_GRAY && length == 2) {
+        hasTransparentColor = true;
+        transparentGray = in.readUnsignedShort();
+      } else if (colorType == COLOR_RGB && length == 6) {
+        hasTransparentColor = true;
+        transparentRed = in.readUnsignedShort();
+        transparentGreen = in.readUnsignedShort();
+        transparentBlue = in.readUnsignedShort();
+      } else {
+        skipFully(length);
+      }
+    }
+
+    private ImageData decodeImageData(final BufferAllocator allocator) throws IOException {
+      startImageData();
+      int perPixel = depth / 8;
+      int texWidth = ImageTypeSupport.paddedWidth(config, outputWidth, depth);
+      int texHeight = ImageTypeSupport.paddedHeight(config, outputHeight);
+      int stride = texWidth * perPixel;
+      ByteBuffer data = allocator.allocate(stride * texHeight);
+
+      // the parts of the row behind the region stay zero unless the padding says otherwise
+      byte[] row = scratch.row(SLOT_ROW, stride);
+
+      boolean done = false;
+      try {
+        skipToRegion();
+        for (int i = 0; i < outputHeight; i++) {
+          readRow(row);
+          ImageTypeSupport.padRow(config, row, outputWidth, texWidth, perPixel);
+          int y = pipeline.targetRow(i, outputHeight);
+          data.position(y * stride);
+          data.put(row, 0, stride);
+        }
+
+        ImageTypeSupport.padRows(config, data, outputHeight, texHeight, stride);
+        data.rewind();
+
+        ImageData imageData = new ImageData(
+            texWidth, texHeight, outputWidth, outputHeight, pipeline.getPixelFormat(), data, allocator);
+        done = true;
+        return imageData;
+      } finally {
+        ImageTypeSupport.releaseUnlessDone(done, allocator, data);
+      }
+    }
+
+    /**
+     * Decides about the output format and sets up the buffers for readRow().
+     */
+    private void startImageData() throws IOException {
+      if (width <= 0 || height <= 0) {
+        throw new IOException("Invalid PNG dimensions: " + width + "x" + height);
+      }
+      boolean hasAlpha =
+          colorType == COLOR_GRAY_ALPHA ||
+          colorType == COLOR_RGBA ||
+          colorType == COLOR_PALETTE && hasPaletteAlpha() ||
+          hasTransparentColor;
+      // 8 bit RGB and RGBA rows are handed to the pipeline as they are, everything else is converted to RGBA first -
+      // including RGB with a tRNS color key which only toRGBA() makes transparent
+      direct = bitDepth == 8 && (colorType == COLOR_RGBA || colorType == COLOR_RGB && !hasTransparentColor);
+      pipeline = new PixelPipeline(config, direct ? channels : 4, false, hasAlpha);
+      depth = pipeline.getBitsPerPixel();
+      region = ImageTypeSupport.region(config, width, height);
+      subsampler = ImageTypeSupport.subsampler(config, region[2], region[3], direct ? channels : 4);
+      outputWidth = subsampler == null ? region[2] : subsampler.getWidth();
+      outputHeight = subsampler == null ? region[3] : subsampler.getHeight();
+
+      bytesPerPixel = Math.max(1, channels * bitDepth / 8);
+      rowBytes = (width * channels * bitDepth + 7) / 8;
+
+      // both rows start with the filter type byte, previous is all zero for the first row
+      current = scratch.row(SLOT_CURRENT, rowBytes + 1);
+      previous = scratch.row(SLOT_PREVIOUS, rowBytes + 1);
+      rgba = scratch.row(SLOT_RGBA, width * 4);
+    }
+
+    /**
+     * Inflates and unfilters the rows in front of the region without converting them.
+     */
+    private void skipToRegion() throws IOException {
+      for (int i = 0; i < region[1]; i++) {
+        ImageTypeSupport.checkInterrupted();
+        nextRow();
+      }
+    }
+
+    /**
+     * Reads the next row of the region and converts it into the first outputWidth pixels of row. A subsampled row
+     * takes as many rows of the region as needed to complete it. Every row still has to be inflated and unfiltered
+     * because it's the base of the next one, but rows that are dropped by the subsampling are not converted.
+     */
+    private void readRow(final byte[] row) throws IOException {
+      while (true) {
+        ImageTypeSupport.checkInterrupted();
+        nextRow();
+        int index = regionRow++;
+        if (subsampler != null && !subsampler.isNeeded(index)) {
+          continue;
+        }
+
+        byte[] source = previous;
+        int offset = 1 + region[0] * channels;
+        if (!direct) {
+          toRGBA(previous, rgba);
+          source = rgba;
+          offset = region[0] * 4;
+        }
+        if (subsampler == null) {
+          pipeline.apply(source, offset, row, outputWidth);
+          return;
+        }
+        if (subsampler.add(source, offset, index)) {
+          pipeline.apply(subsampler.getRow(), 0, row, outputWidth);
+          return;
+        }
+      }
+    }
+
+    /**
+     * Inflates and unfilters the next row into previous (the row before is kept in current until the next call).
+     */
+    private void nextRow() throws IOException {
+      inflateRow(current);
+      unfilter(current, previous, bytesPerPixel);
+
+      byte[] swap = previous;
+      previous = current;
+      current = swap;
+    }
+
+    private boolean hasPaletteAlpha() {
+      for (int i = 0; i < paletteAlpha.length; i++) {
+        if (paletteAlpha[i] != (byte) 255) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private void inflateRow(final byte[] row) throws IOException {
+      try {
+        int offset = 0;
+        while (offset < row.length) {
+          int count = inflater.inflate(row, offset, row.length - offset);
+          if (count == 0) {
+            if (inflater.finished() || inflater.needsDictionary()) {
+              throw new EOFException("Unexpected end of PNG image data");
+            }
+            if (inflater.needsInput()) {
+              fillInflater();
+            }
+          }
+          offset += count;
+        }
+      } catch (DataFormatException e) {
+        throw new IOException("Corrupt PNG image data", e);
+      }
+    }
+
+    private void fillInflater() throws IOException {
+      if (frame != null) {
+        if (frameChunk == frame.chunkCount) {
+          throw new EOFException("Unexpected end of APNG frame data");
+        }
+        inflater.setInput(source, frame.chunks[frameChunk * 2], frame.chunks[frameChunk * 2 + 1]);
+        frameChunk++;
+        return;
+      }
+      // image data might be split into several consecutive IDAT chunks
+      while (chunkRemaining == 0) {
+        skipFully(4);
+        chunkRemaining = in.readInt();
+        if (in.readInt() != CHUNK_IDAT) {
+          throw new EOFException("Unexpected end of PNG image data");
+        }
+      }
+      int count = Math.min(chunkRemaining, input.length);
+      in.readFully(input, 0, count);
+      chunkRemaining -= count;
+      inflater.setInput(input, 0, count);
+    }
+
+    private void unfilter(final byte[] current, final byte[] previous, final int bytesPerPixel) throws IOException {
+      int length = current.length;
+      switch (current[0]) {
+        case FILTER_NONE:
+          break;
+        case FILTER_SUB:
+          for (int i = 1 + bytesPerPixel; i < length; i++) {
+            current[i] += current[i - bytesPerPixel];
+          }
+          break;
+        case FILTER_UP:
+          for (int i = 1; i < length; i++) {
+            current[i] += previous[i];
+          }
+          break;
+        case FILTER_AVERAGE:
+          for (int i = 1; i < 1 + bytesPerPixel; i++) {
+            current[i] += (previous[i] & 0xFF) >>> 1;
+          }
+          for (int i = 1 + bytesPerPixel; i < length; i++) {
+            current[i] += ((current[i - bytesPerPixel] & 0xFF) + (previous[i] & 0xFF)) >>> 1;
+          }
+          break;
+        case FILTER_PAETH:
+          for (int i = 1; i < 1 + bytesPerPixel; i++) {
+            current[i] += previous[i];
+          }
+          for (int i = 1 + bytesPerPixel; i < length; i++) {
+            int a = current[i - bytesPerPixel] & 0xFF;
+            int b = previous[i] & 0xFF;
+            int c = previous[i - bytesPerPixel] & 0xFF;
+            int p = a + b - c;
+            int pa = Math.abs(p - a);
+            int pb = Math.abs(p - b);
+            int pc = Math.abs(p - c);
+            if (pa <= pb && pa <= pc) {
+              current[i] += a;
+            } else if (pb <= pc) {
+              current[i] += b;
+            } else {
+              current[i] += c;
+            }
+          }
+          break;
+        default:
+          throw new IOException("Invalid PNG filter type: " + current[0]);
+      }
+    }
+
+    /**
+     * Convert the unfiltered row (starting after the filter type byte) into 8 bit RGBA.
+     */
+    private void toRGBA(final byte[] source, final byte[] target) {
+      int t = 0;
+      switch (colorType) {
+        case COLOR_GRAY:
+          int scale = bitDepth < 8 ? 255 / ((1 << bitDepth) - 1) : 1;
+          for (int x = 0; x < width; x++, t += 4) {
+            int sample = sample(source, x);
+            byte gray = (byte) (bitDepth == 16 ? sample >>> 8 : sample * scale);
+            target[t] = gray;
+            target[t + 1] = gray;
+            target[t + 2] = gray;
+            target[t + 3] = hasTransparentColor && sample == transparentGray ? 0 : (byte) 255;
+          }
+          break;
+        case COLOR_PALETTE:
+          for (int x = 0; x < width; x++, t += 4) {
+            int index = sample(source, x);
+            target[t] = palette[index * 3];
+            target[t + 1] = palette[index * 3 + 1];
+            target[t + 2] = palette[index * 3 + 2];
+            target[t + 3] = paletteAlpha[index];
+          }
+          break;
+        case COLOR_RGB:
+          for (int x = 0, s = 0; x < width; x++, t += 4, s += 3) {
+            int red = sample(source, s);
+            int green = sample(source, s + 1);
+            int blue = sample(source, s + 2);
+            target[t] = reduce(red);
+            target[t + 1] = reduce(green);
+            target[t + 2] = reduce(blue);
+            target[t + 3] = hasTransparentColor &&
+                red == transparentRed &&
+                green == transparentGreen &&
+                blue == transparentBlue ? 0 : (byte) 255;
+          }
+          break;
+        case COLOR_GRAY_ALPHA:
+          for (int x = 0, s = 0; x < width; x++, t += 4, s += 2) {
+            byte gray = reduce(sample(source, s));
+            target[t] = gray;
+            target[t + 1] = gray;
+            target[t + 2] = gray;
+            target[t + 3] = reduce(sample(source, s + 1));
+          }
+          break;
+        case COLOR_RGBA:
+          for (int x = 0, s = 0; x < width; x++, t += 4, s += 4) {
+            target[t] = reduce(sample(source, s));
+            target[t + 1] = reduce(sample(source, s + 1));
+            target[t + 2] = reduce(sample(source, s + 2));
+            target[t + 3] = reduce(sample(source, s + 3));
+          }
+          break;
+      }
+    }
+
+    /**
+     * Get the sample with the given index of the unfiltered row as an unsigned value of bitDepth bits.
+     */
+    private int sample(final byte[] source, final int index) {
+      switch (bitDepth) {
+        case 8:
+          return source[1 + index] & 0xFF;
+        case 16:
+          return ((source[1 + index * 2] & 0xFF) << 8) | (source[2 + index * 2] & 0xFF);
+        default:
+          int bit = index * bitDepth;
+          int shift = 8 - bitDepth - (bit & 7);
+          return ((source[1 + (bit >> 3)] & 0xFF) >> shift) & ((1 << bitDepth) - 1);
+      }
+    }
+
+    private byte reduce(final int sample) {
+      return (byte) (bitDepth == 16 ? sample >>> 8 : sample);
+    }
+
+    private void skipFully(final int count) throws IOException {
+      int remaining = count;
+      while (remaining > 0) {
+        int skipped = in.skipBytes(remaining);
+        if (skipped <= 0) {
+          throw new EOFException();
+        }
+        remaining -= skipped;
+      }
+    }
+  }
+}
@@ -0,0 +1,501 @@
+package de.lessvoid.simpleimageloader.type;
+
+import java.awt.image.ColorModel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.ImageInputStream;
+
+import de.lessvoid.simpleimageloader.ImageData;
+import de.lessvoid.simpleimageloader.ImageInfo;
+import de.lessvoid.simpleimageloader.Padding;
+import de.lessvoid.simpleimageloader.PixelFormat;
+import de.lessvoid.simpleimageloader.ScanlineSink;
+import de.lessvoid.simpleimageloader.SimpleImageLoaderConfig;
+import de.lessvoid.simpleimageloader.buffer.BufferAllocator;
+
+/**
+ * Helper methods shared by the ImageType implementations.
+ * @author void
+ */
+final class ImageTypeSupport {
+  private static final int MAGIC_SIZE = 4;
+  private static final byte[] ZEROS = new byte[8192];
+  private static final ConcurrentHashMap<String, ImageReaderSpi> readerProviders =
+      new ConcurrentHashMap<String, ImageReaderSpi>();
+  private static final ThreadLocal<Map<ImageReaderSpi, ImageReader>> threadReaders =
+      new ThreadLocal<Map<ImageReaderSpi, ImageReader>>() {
+        @Override
+        protected Map<ImageReaderSpi, ImageReader> initialValue() {
+          return new HashMap<ImageReaderSpi, ImageReader>();
+        }
+      };
+
+  private ImageTypeSupport() {
+  }
+
+  /**
+   * Decoders call this between scanlines so that a load can be aborted by interrupting the loading thread, e.g. by
+   * cancelling the CompletableFuture returned from SimpleImageLoader.loadAsync().
+   *
+   * @throws InterruptedIOException when the current thread has been interrupted
+   */
+  static void checkInterrupted() throws InterruptedIOException {
+    if (Thread.currentThread().isInterrupted()) {
+      throw new InterruptedIOException("Loading the image has been interrupted");
+    }
+  }
+
+  /**
+   * Returns the region of the image that should be loaded.
+   *
+   * @param config the SimpleImageLoaderConfig
+   * @param width the width of the image
+   * @param height the height of the image
+   * @return x, y, width and height of the configured region or of the whole image if no region has been configured
+   * @throws IOException when the region isn't inside of the image
+   */
+  static int[] region(final SimpleImageLoaderConfig config, final int width, final int height) throws IOException {
+    int[] region = config.getRegion();
+    if (region == null) {
+      return new int[] { 0, 0, width, height };
+    }
+    if (region[0] < 0 || region[1] < 0 || region[2] <= 0 || region[3] <= 0 ||
+        region[0] + region[2] > width || region[1] + region[3] > height) {
+      throw new IOException("Region " + Arrays.toString(region) + " is outside of the " + width + "x" + height +
+          " image");
+    }
+    return region;
+  }
+
+  /**
+   * Returns the factor the image should be subsampled with, taking subsample() and maxDimension() of the config into
+   * account.
+   *
+   * @param config the SimpleImageLoaderConfig
+   * @param width the width of the image (or the region)
+   * @param height the height of the image (or the region)
+   * @return the subsampling factor, 1 when the image should be loaded in its full size
+   */
+  static int subsampling(final SimpleImageLoaderConfig config, final int width, final int height) {
+    int factor = config.getSubsample();
+    int maxDimension = config.getMaxDimension();
+    if (maxDimension > 0) {
+      factor = Math.max(factor, (Math.max(width, height) + maxDimension - 1) / maxDimension);
+    }
+    return factor;
+  }
+
+  /**
+   * Returns the Subsampler for the decoded rows of an image or null when the image should be loaded in its full size.
+   *
+   * @param config the SimpleImageLoaderConfig
+   * @param width the width of the image (or the region)
+   * @param height the height of the image (or the region)
+   * @param perPixel the number of bytes per pixel of the decoded rows
+   * @return the Subsampler or null
+   */
+  static Subsampler subsampler(
+      final SimpleImageLoaderConfig config,
+      final int width,
+      final int height,
+      final int perPixel) {
+    int factor = subsampling(config, width, height);
+    if (factor == 1) {
+      return null;
+    }
+    return new Subsampler(factor, config.isBoxFilter(), perPixel, width, height);
+  }
+
+  /**
+   * Returns the width of the image data for an image (or region) of the given width, taking powerOfTwoSupport(),
+   * sizeMultipleOf() and rowAlignment() of the config into account.
+   *
+   * @param config the SimpleImageLoaderConfig
+   * @param width the width of the image
+   * @param bitsPerPixel the bits per pixel of the image data
+   * @return the padded width
+   */
+  static int paddedWidth(final SimpleImageLoaderConfig config, final int width, final int bitsPerPixel) {
+    int result = paddedSize(config, width);
+    int alignment = config.getRowAlignment();
+    if (alignment > 1 && config.getBlockCompression() == null) {
+      // the alignment is a power of two so the rows are aligned once the width is a multiple of what's left of it
+      // after dividing by the power of two part of the bytes per pixel
+      int bytesPerPixel = bitsPerPixel / 8;
+      int pixels = alignment / Math.min(alignment, Integer.lowestOneBit(bytesPerPixel));
+      result = roundUp(result, pixels);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the height of the image data for an image (or region) of the given height, taking powerOfTwoSupport()
+   * and sizeMultipleOf() of the config into account.
+   *
+   * @param config the SimpleImageLoaderConfig
+   * @param height the height of the image
+   * @return the padded height
+   */
+  static int paddedHeight(final SimpleImageLoaderConfig config, final int height) {
+    return paddedSize(config, height);
+  }
+
+  /**
+   * Fill the pixels of the row behind width up to paddedWidth according to the Padding of the config. The row has to
+   * be zero behind width already (which is how the rows come from DecodeScratch) so TRANSPARENT and NONE don't need
+   * to do anything. The pixels are copied with System.arraycopy() in blocks that double in size.
+   *
+   * @param config the SimpleImageLoaderConfig
+   * @param row the row with width pixels at the start
+   * @param width the width of the image
+   * @param paddedWidth the width of the image data
+   * @param perPixel the bytes per pixel
+   */
+  static void padRow(
+      final SimpleImageLoaderConfig config,
+      final byte[] row,
+      final int width,
+      final int paddedWidth,
+      final int perPixel) {
+    Padding padding = config.getPadding();
+    int filled = width * perPixel;
+    int end = paddedWidth * perPixel;
+    if (filled == end || padding == Padding.NONE || padding == Padding.TRANSPARENT) {
+      return;
+    }
+    int first = 0;
+    if (padding == Padding.CLAMP) {
+      first = filled;
+      System.arraycopy(row, first - perPixel, row, first, perPixel);
+      filled += perPixel;
+    }
+    while (filled < end) {
+      int count = Math.min(filled - first, end - filled);
+      System.arraycopy(row, first, row, filled, count);
+      filled += count;
+    }
+  }
+
+  /**
+   * Fill the rows of the image data from height up to paddedHeight according to the Padding of the config. The rows
+   * are copied with bulk ByteBuffer copies in blocks that double in size. The position of data is not changed.
+   *
+   * @param config the SimpleImageLoaderConfig
+   * @param data the image data with height rows at the start
+   * @param height the height of the image
+   * @param paddedHeight the height of the image data
+   * @param stride the bytes per row
+   */
+  static void padRows(
+      final SimpleImageLoaderConfig config,
+      final ByteBuffer data,
+      final int height,
+      final int paddedHeight,
+      final int stride) {
+    Padding padding = config.getPadding();
+    if (height == paddedHeight || padding == Padding.NONE) {
+      return;
+    }
+    int filled = height * stride;
+    int end = paddedHeight * stride;
+    int first = 0;
+    if (padding == Padding.TRANSPARENT) {
+      // the buffer might have been used before so the rows below the image need to be cleared explicitly
+      first = filled;
+      ByteBuffer target = data.duplicate();
+      target.position(first);
+      for (int i = 0; i < stride; i += ZEROS.length) {
+        target.put(ZEROS, 0, Math.min(ZEROS.length, stride - i));
+      }
+      filled += stride;
+    } else if (padding == Padding.CLAMP) {
+      first = filled;
+      copy(data, first - stride, first, stride);
+      filled += stride;
+    }
+    while (filled < end) {
+      int count = Math.min(filled - first, end - filled);
+      copy(data, first, filled, count);
+      filled += count;
+    }
+  }
+
+  /**
+   * Give the buffer of an image back to the allocator when decoding the image did not succeed. Decoders call this in a
+   * finally block: until the ImageData has been created nobody else will give the buffer back, no matter if decoding
+   * failed with an IOException or e.g. an ArrayIndexOutOfBoundsException because of a malformed header.
+   *
+   * @param success true when the ImageData has been created
+   * @param allocator the BufferAllocator the buffer has been allocated from
+   * @param buffer the buffer of the image
+   */
+  static void releaseUnlessDone(final boolean success, final BufferAllocator allocator, final ByteBuffer buffer) {
+    if (!success) {
+      allocator.release(buffer);
+    }
+  }
+
+  /**
+   * Returns the PixelFormat the decoders should convert their RGBA rows into or null when they should write the
+   * default RGB, RGBA or BGRA layout themselves. Block compression needs the default layout so the configured format is
+   * ignored then.
+   *
+   * @param config the SimpleImageLoaderConfig
+   * @return the PixelFormat to pack the rows into or null
+   */
+  static PixelFormat packedFormat(final SimpleImageLoaderConfig config) {
+    if (config.getBlockCompression() != null) {
+      return null;
+    }
+    return config.getPixelFormat();
+  }
+
+  /**
+   * Returns the format of the image data a decoder returns.
+   *
+   * @param config the SimpleImageLoaderConfig
+   * @param bitsPerPixel the bits per pixel of the image data (24 or 32 when no PixelFormat is configured)
+   * @return the PixelFormat of the image data
+   */
+  static PixelFormat pixelFormat(final SimpleImageLoaderConfig config, final int bitsPerPixel) {
+    PixelFormat format = packedFormat(config);
+    if (format != null) {
+      return format;
+    }
+    if (bitsPerPixel == 24) {
+      return PixelFormat.RGB;
+    }
+    return config.isModeARGB() ? PixelFormat.BGRA : PixelFormat.RGBA;
+  }
+
+  /**
+   * Deliver already loaded image data to a ScanlineSink. Only the original size of the image is delivered, the power
+   * of two padding is left out.
+   *
+   * @param imageData the loaded image data
+   * @param sink the ScanlineSink
+   * @param bandHeight the number of rows to deliver at once
+   * @throws IOException
+   */
+  static void stream(final ImageData imageData, final ScanlineSink sink, final int bandHeight) throws IOException {
+    int width = imageData.getOriginalWidth();
+    int height = imageData.getOriginalHeight();
+    int perPixel = imageData.getBitsPerPixel() / 8;
+    int stride = imageData.getWidth() * perPixel;
+    ScanlineBand band = new ScanlineBand(sink, width * perPixel, height, bandHeight, false);
+    ByteBuffer data = imageData.getData().duplicate();
+    byte[] row = new byte[width * perPixel];
+
+    sink.start(width, height, imageData.getBitsPerPixel());
+    for (int y = 0; y < height; y++) {
+      data.position(y * stride);
+      data.get(row);
+      band.put(row, y);
+    }
+    sink.end();
+  }
+
+  /**
+   * Read the rest of the InputStream into a byte array, e.g. for decoders that keep the encoded data around after the
+   * load returned. The InputStream is not closed.
+   *
+   * @param inputStream the InputStream
+   * @return the bytes read
+   * @throws IOException
+   */
+  static byte[] readFully(final InputStream inputStream) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, inputStream.available()));
+    byte[] buffer = new byte[8192];
+    int count;
+    while ((count = inputStream.read(buffer)) != -1) {
+      out.write(buffer, 0, count);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Read the ImageInfo with the ImageIO ImageReader for the data without reading the image data itself.
+   *
+   * @param inputStream the InputStream to read from (it is not closed)
+   * @return the ImageInfo
+   * @throws IOException when the format isn't supported by ImageIO or the header can't be read
+   */
+  static ImageInfo readInfoImageIO(final InputStream inputStream) throws IOException {
+    ImageInputStream imageInputStream = ImageIO.createImageInputStream(inputStream);
+    if (imageInputStream == null) {
+      throw new IOException("Can't create an ImageInputStream");
+    }
+    try {
+      ImageReader reader = imageReader(imageInputStream);
+      try {
+        reader.setInput(imageInputStream, true, true);
+        ImageTypeSpecifier type = reader.getRawImageType(0);
+        if (type == null) {
+          type = reader.getImageTypes(0).next();
+        }
+        ColorModel colorModel = type.getColorModel();
+        return new ImageInfo(reader.getWidth(0), reader.getHeight(0), colorModel.getPixelSize(), colorModel.hasAlpha());
+      } finally {
+        releaseImageReader(reader);
+      }
+    } finally {
+      // this doesn't close the InputStream
+      imageInputStream.close();
+    }
+  }
+
+  /**
+   * Returns the name of the ImageIO format the data starts with or null when the magic bytes aren't known. Only the
+   * formats the JDK has an ImageReader for are detected (JPEG, PNG, GIF, BMP and TIFF).
+   *
+   * @param header the first bytes of the data
+   * @param length the number of valid bytes in header
+   * @return the format name or null
+   */
+  static String imageIOFormat(final byte[] header, final int length) {
+    if (length < MAGIC_SIZE) {
+      return null;
+    }
+    int b0 = header[0] & 0xFF;
+    int b1 = header[1] & 0xFF;
+    int b2 = header[2] & 0xFF;
+    int b3 = header[3] & 0xFF;
+    if (b0 == 0xFF && b1 == 0xD8 && b2 == 0xFF) {
+      return "jpeg";
+    }
+    if (b0 == 0x89 && b1 == 'P' && b2 == 'N' && b3 == 'G') {
+      return "png";
+    }
+    if (b0 == 'G' && b1 == 'I' && b2 == 'F' && b3 == '8') {
+      return "gif";
+    }
+    if (b0 == 'B' && b1 == 'M') {
+      return "bmp";
+    }
+    if ((b0 == 'I' && b1 == 'I' && b2 == 42 && b3 == 0) || (b0 == 'M' && b1 == 'M' && b2 == 0 && b3 == 42)) {
+      return "tiff";
+    }
+    return null;
+  }
+
+  /**
+   * Returns the ImageReaderSpi of the given ImageIO format or null when there is no ImageReader for it. The providers
+   * are looked up once per format and kept.
+   *
+   * @param format the format name or null
+   * @return the ImageReaderSpi or null
+   */
+  static ImageReaderSpi readerProvider(final String format) {
+    if (format == null) {
+      return null;
+    }
+    ImageReaderSpi provider = readerProviders.get(format);
+    if (provider == null) {
+      Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName(format);
+      if (!readers.hasNext()) {
+        return null;
+      }
+      ImageReader reader = readers.next();
+      provider = reader.getOriginatingProvider();
+      reader.dispose();
+      if (provider == null) {
+        return null;
+      }
+      readerProviders.putIfAbsent(format, provider);
+    }
+    return provider;
+  }
+
+  /**
+   * Returns the ImageReader for the data of the ImageInputStream. The magic bytes of the common formats select the
+   * ImageReader directly. Only for other data every registered ImageReader is asked if it can decode the data, which
+   * is what ImageIO.read() always does.
+   *
+   * The ImageReaders of the common formats are kept per thread and reused for the next image, which saves setting up
+   * the native state of the JPEG reader for every image.
+   *
+   * @param imageInputStream the ImageInputStream, its position is not changed
+   * @return the ImageReader that has to be given back with releaseImageReader()
+   * @throws IOException when there is no ImageReader for the data
+   */
+  static ImageReader imageReader(final ImageInputStream imageInputStream) throws IOException {
+    byte[] header = new byte[MAGIC_SIZE];
+    imageInputStream.mark();
+    int length = 0;
+    try {
+      while (length < MAGIC_SIZE) {
+        int count = imageInputStream.read(header, length, MAGIC_SIZE - length);
+        if (count < 0) {
+          break;
+        }
+        length += count;
+      }
+    } finally {
+      imageInputStream.reset();
+    }
+    ImageReaderSpi provider = readerProvider(imageIOFormat(header, length));
+    if (provider != null) {
+      // taken out of the map while it is in use in case another image is loaded on this thread meanwhile
+      ImageReader reader = threadReaders.get().remove(provider);
+      return reader != null ? reader : provider.createReaderInstance();
+    }
+    Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInputStream);
+    if (!readers.hasNext()) {
+      throw new IOException("Unsupported image format");
+    }
+    return readers.next();
+  }
+
+  /**
+   * Give back an ImageReader returned by imageReader(). ImageReaders of the common formats are reset and kept for the
+   * next image loaded on the current thread, all others are disposed.
+   *
+   * @param reader the ImageReader
+   */
+  static void releaseImageReader(final ImageReader reader) {
+    ImageReaderSpi provider = reader.getOriginatingProvider();
+    Map<ImageReaderSpi, ImageReader> readers = threadReaders.get();
+    if (provider == null || !readerProviders.containsValue(provider) || readers.containsKey(provider)) {
+      reader.dispose();
+      return;
+    }
+    reader.reset();
+    readers.put(provider, reader);
+  }
+
+  private static int paddedSize(final SimpleImageLoaderConfig config, final int size) {
+    int result = size;
+    if (config.isPowerOfTwoSupport()) {
+      result = 2;
+      while (result < size) {
+        result *= 2;
+      }
+    }
+    return roundUp(result, config.getSizeMultiple());
+  }
+
+  private static int roundUp(final int value, final int multiple) {
+    return (value + multiple - 1) / multiple * multiple;
+  }
+
+  private static void copy(final ByteBuffer data, final int from, final int to, final int count) {
+    ByteBuffer source = data.duplicate();
+    source.limit(from + count).position(from);
+    ByteBuffer target = data.duplicate();
+    target.position(to);
+    target.put(source);
+  }
+}
@@ -1,14 +1,24 @@
 package de.lessvoid.simpleimageloader.type;
 
-import java.io.BufferedInputStream;
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 import de.lessvoid.simpleimageloader.ImageData;
+import de.lessvoid.simpleimageloader.ImageInfo;
+import de.lessvoid.simpleimageloader.PixelFormat;
+import de.lessvoid.simpleimageloader.ScanlineSink;
 import de.lessvoid.simpleimageloader.SimpleImageLoaderConfig;
+import de.lessvoid.simpleimageloader.buffer.BufferAllocator;
+import de.lessvoid.simpleimageloader.buffer.DirectBufferAllocator;
 
 /**
  * A utility to load TGAs.
@@ -19,226 +29,447 @@ import de.lessvoid.simpleimageloader.SimpleImageLoaderConfig;
  *
  * Refitted into the simple image loader framework and cleaning up by void.
  *
+ * The pixel data is read a whole scanline at a time and the PixelPipeline swizzles it from BGR(A) to the output
+ * layout into a single row array that is then written straight into the direct ByteBuffer. There is no intermediate
+ * array for the whole image anymore.
+ *
+ * Uncompressed (type 2) and run length encoded (type 10) true color images are supported. Runs are expanded with bulk
+ * array copies into the scanline. A color map in front of the pixel data is skipped. All other image types are rejected
+ * right after reading the header.
+ *
+ * When only a region of the image is requested the rows in front of it are skipped. For uncompressed images the
+ * columns and the rows behind it are not read either. Subsampled images are shrunk scanline by scanline while they
+ * are read, rows that are dropped completely are skipped in uncompressed images as well.
+ *
+ * Files are memory mapped when loaded from a Path. When the mapped pixel data already has the requested layout - a
+ * 32 bit top down image loaded with modeARGB (which is BGRA in memory, just like TGA), no flip, no padding and no
+ * color key - the returned ImageData is a read only view of the mapped file and no copy happens at all.
+ *
  * @author Kevin Glass
  * @author void
  */
 public class ImageTypeTGA implements ImageType {
+  private static final int HEADER_SIZE = 18;
+  private static final int TYPE_TRUECOLOR = 2;
+  private static final int TYPE_TRUECOLOR_RLE = 10;
+  private static final int RLE_REPEAT = 0x80;
   private static final int PIXEL_DEPTH_24 = 24;
   private static final int PIXEL_DEPTH_32 = 32;
   private static final int IMAGE_DESCRIPTOR_MASK = 0x0020;
+  private static final int ALPHA_MASK_32 = 0xFF000000;
+  private static final int SLOT_ROW = 0;
+  private static final int SLOT_SOURCE_ROW = 1;
+  private static final int SLOT_FULL_ROW = 2;
 
   public ImageData load(final SimpleImageLoaderConfig config, final InputStream inputStream) throws IOException {
-    return loadInternal(config, inputStream);
+    return load(config, inputStream, new DirectBufferAllocator());
   }
 
-  private short flipEndian(final short signedShort) {
-    int input = signedShort & 0xFFFF;
-    return (short) (input << 8 | (input & 0xFF00) >>> 8);
+  public ImageData load(
+      final SimpleImageLoaderConfig config,
+      final InputStream inputStream,
+      final BufferAllocator allocator) throws IOException {
+    try {
+      return loadInternal(config, inputStream, allocator);
+    } finally {
+      inputStream.close();
+    }
   }
 
-  private ImageData loadInternal(final SimpleImageLoaderConfig config, final InputStream inputStream ) throws IOException {
-    boolean forceAlpha = config.isForceAlpha();
-    if (config.getTransparent() != null) {
-      forceAlpha = true;
+  public ImageData load(
+      final SimpleImageLoaderConfig config,
+      final Path path,
+      final BufferAllocator allocator) throws IOException {
+    MappedByteBuffer mapped;
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      // the mapping stays valid after the channel has been closed
+      mapped = channel.map(MapMode.READ_ONLY, 0, channel.size());
+    } finally {
+      channel.close();
     }
 
-    byte red = 0;
-    byte green = 0;
-    byte blue = 0;
-    byte alpha = 0;
+    ImageData view = loadView(config, mapped);
+    if (view != null) {
+      return view;
+    }
+    return load(config, new ByteBufferInputStream(mapped), allocator);
+  }
+
+  public void stream(
+      final SimpleImageLoaderConfig config,
+      final InputStream inputStream,
+      final ScanlineSink sink,
+      final int bandHeight) throws IOException {
+    DecodeScratch scratch = DecodeScratch.acquire();
+    try {
+      RowReader reader = new RowReader(config, new DataInputStream(inputStream), scratch);
+      int rowSize = reader.width * reader.pixelDepth / 8;
+      ScanlineBand band = new ScanlineBand(sink, rowSize, reader.height, bandHeight, reader.targetRow(0) != 0);
+      byte[] row = scratch.row(SLOT_ROW, rowSize);
 
-    BufferedInputStream bis = new BufferedInputStream(inputStream, 100000);
-    DataInputStream dis = new DataInputStream(bis);
+      sink.start(reader.width, reader.height, reader.pixelDepth);
+      reader.skipToRegion();
+      for (int i = 0; i < reader.height; i++) {
+        reader.readRow(row, i);
+        band.put(row, i);
+      }
+      sink.end();
+    } finally {
+      scratch.release();
+    }
+  }
 
-    // Read in the Header
-    short idLength = (short) dis.read();
-    /*short colorMapType = (short) */dis.read();
-    /*short imageType = (short) */dis.read();
-    /*short cMapStart = */flipEndian(dis.readShort());
-    /*short cMapLength = */flipEndian(dis.readShort());
-    /*short cMapDepth = (short) */dis.read();
-    /*short xOffset = */flipEndian(dis.readShort());
-    /*short yOffset = */flipEndian(dis.readShort());
+  public ImageInfo readInfo(final InputStream inputStream) throws IOException {
+    byte[] header = new byte[HEADER_SIZE];
+    new DataInputStream(inputStream).readFully(header);
+    int pixelDepth = header[16] & 0xFF;
+    checkSupported(header[2] & 0xFF, pixelDepth);
+    return new ImageInfo(readShortLE(header, 12), readShortLE(header, 14), pixelDepth, pixelDepth == PIXEL_DEPTH_32);
+  }
 
-    int width = flipEndian(dis.readShort());
-    int height = flipEndian(dis.readShort());
-    int pixelDepth = (short) dis.read();
-    if (pixelDepth == 32) {
-      forceAlpha = false;
+  /**
+   * TGA files don't have a signature so the header is checked for plausible values instead: no or a normal color map,
+   * a supported image type and pixel depth and a size that isn't zero.
+   */
+  public boolean canDecode(final byte[] header) {
+    if (header.length < HEADER_SIZE) {
+      return false;
     }
+    int colorMapType = header[1] & 0xFF;
+    int imageType = header[2] & 0xFF;
+    int pixelDepth = header[16] & 0xFF;
+    return (colorMapType == 0 || colorMapType == 1) &&
+        (imageType == TYPE_TRUECOLOR || imageType == TYPE_TRUECOLOR_RLE) &&
+        (pixelDepth == PIXEL_DEPTH_24 || pixelDepth == PIXEL_DEPTH_32) &&
+        readShortLE(header, 12) > 0 && readShortLE(header, 14) > 0;
+  }
 
-    int texWidth = width;
-    int texHeight = height;
-    if (config.isPowerOfTwoSupport()) {
-      texWidth = get2Fold(width);
-      texHeight = get2Fold(height);
+  /**
+   * Returns the pixel data of the mapped file as ImageData without copying it or null if that's not possible for
+   * the file and the config given.
+   */
+  private ImageData loadView(final SimpleImageLoaderConfig config, final ByteBuffer mapped) {
+    if (mapped.remaining() < HEADER_SIZE) {
+      return null;
     }
+    ByteBuffer file = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    int idLength = file.get(0) & 0xFF;
+    int imageType = file.get(2) & 0xFF;
+    int colorMapSize = colorMapSize(file.get(1) & 0xFF, file.getShort(5) & 0xFFFF, file.get(7) & 0xFF);
+    int width = file.getShort(12) & 0xFFFF;
+    int height = file.getShort(14) & 0xFFFF;
+    int pixelDepth = file.get(16) & 0xFF;
+    int imageDescriptor = file.get(17) & 0xFF;
 
     boolean flipped = config.isFlipped();
-    short imageDescriptor = (short) dis.read();
     if ((imageDescriptor & IMAGE_DESCRIPTOR_MASK) == 0) {
       flipped = !flipped;
     }
+    boolean padded = ImageTypeSupport.paddedWidth(config, width, PIXEL_DEPTH_32) != width ||
+        ImageTypeSupport.paddedHeight(config, height) != height;
+    boolean bgra = ImageTypeSupport.pixelFormat(config, PIXEL_DEPTH_32) == PixelFormat.BGRA;
+    if (imageType != TYPE_TRUECOLOR || pixelDepth != PIXEL_DEPTH_32 || !bgra || flipped || padded ||
+        config.getTransparent() != null || config.getRegion() != null || config.isPremultipliedAlpha() ||
+        config.isSrgbToLinear() || ImageTypeSupport.subsampling(config, width, height) != 1) {
+      return null;
+    }
+
+    int start = HEADER_SIZE + idLength + colorMapSize;
+    int size = width * height * 4;
+    if (file.capacity() - start < size) {
+      return null;
+    }
+    file.limit(start + size).position(start);
+    ByteBuffer pixels = file.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+    // fully transparent pixels need to be black - if there are any others we can't use the data as is
+    for (int i = 0; i < size; i += 4) {
+      int pixel = pixels.getInt(i);
+      if ((pixel & ALPHA_MASK_32) == 0 && pixel != 0) {
+        return null;
+      }
+    }
+    return new ImageData(width, height, width, height, PixelFormat.BGRA, pixels.order(ByteOrder.nativeOrder()), null);
+  }
+
+  private ImageData loadInternal(
+      final SimpleImageLoaderConfig config,
+      final InputStream inputStream,
+      final BufferAllocator allocator) throws IOException {
+    DecodeScratch scratch = DecodeScratch.acquire();
+    try {
+      return loadInternal(config, new RowReader(config, new DataInputStream(inputStream), scratch), scratch, allocator);
+    } finally {
+      scratch.release();
+    }
+  }
+
+  private ImageData loadInternal(
+      final SimpleImageLoaderConfig config,
+      final RowReader reader,
+      final DecodeScratch decodeScratch,
+      final BufferAllocator allocator) throws IOException {
+    int width = reader.width;
+    int height = reader.height;
+    int pixelDepth = reader.pixelDepth;
+
+    int texWidth = ImageTypeSupport.paddedWidth(config, width, pixelDepth);
+    int texHeight = ImageTypeSupport.paddedHeight(config, height);
+
+    int perPixel = pixelDepth / 8;
+    int stride = texWidth * perPixel;
+    ByteBuffer scratch = allocator.allocate(stride * texHeight);
+
+    // the parts of the row behind width stay zero unless the padding says otherwise
+    byte[] row = decodeScratch.row(SLOT_ROW, stride);
+
+    boolean done = false;
+    try {
+      reader.skipToRegion();
+      for (int i = 0; i < height; i++) {
+        reader.readRow(row, i);
+        ImageTypeSupport.padRow(config, row, width, texWidth, perPixel);
+        scratch.position(reader.targetRow(i) * stride);
+        scratch.put(row);
+      }
 
-    // Skip image ID
-    if (idLength > 0) {
-      bis.skip(idLength);
+      ImageTypeSupport.padRows(config, scratch, height, texHeight, stride);
+      scratch.rewind();
+
+      ImageData imageData = new ImageData(texWidth, texHeight, width, height, reader.pixelFormat, scratch, allocator);
+      done = true;
+      return imageData;
+    } finally {
+      ImageTypeSupport.releaseUnlessDone(done, allocator, scratch);
     }
+  }
 
-    byte[] rawData = null;
-    if ((pixelDepth == PIXEL_DEPTH_32) || (forceAlpha)) {
-      pixelDepth = PIXEL_DEPTH_32;
-      rawData = new byte[texWidth * texHeight * 4];
-    } else if (pixelDepth == PIXEL_DEPTH_24) {
-      rawData = new byte[texWidth * texHeight * 3];
-    } else {
+  private void checkSupported(final int imageType, final int pixelDepth) throws IOException {
+    if (imageType != TYPE_TRUECOLOR && imageType != TYPE_TRUECOLOR_RLE) {
+      throw new IOException("Only uncompressed and run length encoded true color TGAs are supported (type " +
+          imageType + ")");
+    }
+    if (pixelDepth != PIXEL_DEPTH_24 && pixelDepth != PIXEL_DEPTH_32) {
       throw new IOException("Only 24 and 32 bit TGAs are supported");
     }
+  }
+
+  private int colorMapSize(final int colorMapType, final int colorMapLength, final int colorMapEntrySize) {
+    if (colorMapType == 0) {
+      return 0;
+    }
+    return colorMapLength * ((colorMapEntrySize + 7) / 8);
+  }
 
-    if (pixelDepth == PIXEL_DEPTH_24) {
-      if (flipped) {
-        for (int i = height - 1; i >= 0; i--) {
-          for (int j = 0; j < width; j++) {
-            blue = dis.readByte();
-            green = dis.readByte();
-            red = dis.readByte();
+  private int readShortLE(final byte[] data, final int offset) {
+    return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8);
+  }
 
-            int ofs = ((j + (i * texWidth)) * 3);
-            rawData[ofs] = red;
-            rawData[ofs + 1] = green;
-            rawData[ofs + 2] = blue;
-          }
-        }
+  private void skipFully(final DataInputStream dis, final long count) throws IOException {
+    long remaining = count;
+    while (remaining > 0) {
+      int skipped = dis.skipBytes((int) Math.min(remaining, Integer.MAX_VALUE));
+      if (skipped <= 0) {
+        throw new EOFException();
+      }
+      remaining -= skipped;
+    }
+  }
+
+  /**
+   * Reads the header and then the rows of the requested region one after another, swizzled into the output format.
+   */
+  private class RowReader {
+    private final DataInputStream dis;
+    private final PixelPipeline pipeline;
+    private final int sourceWidth;
+    private final int sourceDepth;
+    private final int sourcePerPixel;
+    private final int regionHeight;
+    private final Subsampler subsampler;
+    private final int width;
+    private final int height;
+    private final int pixelDepth;
+    private final PixelFormat pixelFormat;
+    private final boolean bottomUp;
+    private final int firstRow;
+    private final int skipLeft;
+    private final int skipRight;
+    private final byte[] sourceRow;
+    private final RunLengthDecoder runLengthDecoder;
+    private final byte[] fullRow;
+    private int sourceIndex;
+
+    private RowReader(
+        final SimpleImageLoaderConfig config,
+        final DataInputStream dis,
+        final DecodeScratch scratch) throws IOException {
+      this.dis = dis;
+
+      // Read in the Header - we only need the ID length, the image type, the size of the color map, the dimensions,
+      // the pixel depth and the image descriptor
+      byte[] header = new byte[HEADER_SIZE];
+      dis.readFully(header);
+      int idLength = header[0] & 0xFF;
+      int imageType = header[2] & 0xFF;
+      int colorMapSize = colorMapSize(header[1] & 0xFF, readShortLE(header, 5), header[7] & 0xFF);
+      sourceWidth = readShortLE(header, 12);
+      int sourceHeight = readShortLE(header, 14);
+      sourceDepth = header[16] & 0xFF;
+      int imageDescriptor = header[17] & 0xFF;
+
+      checkSupported(imageType, sourceDepth);
+      int[] region = ImageTypeSupport.region(config, sourceWidth, sourceHeight);
+      int regionWidth = region[2];
+      regionHeight = region[3];
+      subsampler = ImageTypeSupport.subsampler(config, regionWidth, regionHeight, sourceDepth / 8);
+      width = subsampler == null ? regionWidth : subsampler.getWidth();
+      height = subsampler == null ? regionHeight : subsampler.getHeight();
+
+      // with modeARGB the 32 bit data is stored as BGRA which is an ARGB int in little endian byte order
+      pipeline = new PixelPipeline(config, sourceDepth / 8, true, sourceDepth == PIXEL_DEPTH_32);
+      pixelDepth = pipeline.getBitsPerPixel();
+      pixelFormat = pipeline.getPixelFormat();
+
+      // the rows are stored bottom up unless the descriptor says otherwise
+      bottomUp = (imageDescriptor & IMAGE_DESCRIPTOR_MASK) == 0;
+      firstRow = bottomUp ? sourceHeight - region[1] - regionHeight : region[1];
+
+      // Skip image ID and the color map that true color images don't need
+      skipFully(dis, idLength + colorMapSize);
+
+      sourcePerPixel = sourceDepth / 8;
+      sourceRow = scratch.row(SLOT_SOURCE_ROW, regionWidth * sourcePerPixel);
+      skipLeft = region[0] * sourcePerPixel;
+      skipRight = (sourceWidth - region[0] - regionWidth) * sourcePerPixel;
+      if (imageType == TYPE_TRUECOLOR_RLE) {
+        runLengthDecoder = new RunLengthDecoder(dis, sourcePerPixel);
+        fullRow = scratch.row(SLOT_FULL_ROW, sourceWidth * sourcePerPixel);
       } else {
-        for (int i = 0; i < height; i++) {
-          for (int j = 0; j < width; j++) {
-            blue = dis.readByte();
-            green = dis.readByte();
-            red = dis.readByte();
-
-            int ofs = ((j + (i * texWidth)) * 3);
-            rawData[ofs] = red;
-            rawData[ofs + 1] = green;
-            rawData[ofs + 2] = blue;
-          }
-        }
+        runLengthDecoder = null;
+        fullRow = null;
       }
-    } else if (pixelDepth == 32) {
-      if (flipped) {
-        for (int i = height - 1; i >= 0; i--) {
-          for (int j = 0; j < width; j++) {
-            blue = dis.readByte();
-            green = dis.readByte();
-            red = dis.readByte();
-            if (forceAlpha) {
-              alpha = (byte) 255;
-            } else {
-              alpha = dis.readByte();
-            }
-
-            int ofs = ((j + (i * texWidth)) * 4);
-
-            rawData[ofs] = red;
-            rawData[ofs + 1] = green;
-            rawData[ofs + 2] = blue;
-            rawData[ofs + 3] = alpha;
-
-            if (alpha == 0) {
-              rawData[ofs + 2] = (byte) 0;
-              rawData[ofs + 1] = (byte) 0;
-              rawData[ofs] = (byte) 0;
-            }
-          }
+    }
+
+    /**
+     * Skips the rows in front of the region.
+     */
+    private void skipToRegion() throws IOException {
+      if (runLengthDecoder != null) {
+        for (int i = 0; i < firstRow; i++) {
+          ImageTypeSupport.checkInterrupted();
+          runLengthDecoder.readRow(fullRow);
         }
       } else {
-        for (int i = 0; i < height; i++) {
-          for (int j = 0; j < width; j++) {
-            blue = dis.readByte();
-            green = dis.readByte();
-            red = dis.readByte();
-            if (forceAlpha) {
-              alpha = (byte) 255;
-            } else {
-              alpha = dis.readByte();
-            }
-
-            int ofs = ((j + (i * texWidth)) * 4);
-
-            if (ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN) {
-              rawData[ofs] = red;
-              rawData[ofs + 1] = green;
-              rawData[ofs + 2] = blue;
-              rawData[ofs + 3] = alpha;
-            } else {
-              rawData[ofs] = red;
-              rawData[ofs + 1] = green;
-              rawData[ofs + 2] = blue;
-              rawData[ofs + 3] = alpha;
-            }
-
-            if (alpha == 0) {
-              rawData[ofs + 2] = 0;
-              rawData[ofs + 1] = 0;
-              rawData[ofs] = 0;
-            }
-          }
-        }
+        skipFully(dis, (long) firstRow * sourceWidth * sourcePerPixel);
       }
     }
-    inputStream.close();
 
-    if (config.getTransparent() != null) {
-      for (int i = 0; i < rawData.length; i += 4) {
-        boolean match = true;
-        for (int c = 0; c < 3; c++) {
-          if (rawData[i + c] != config.getTransparent()[c]) {
-            match = false;
-          }
+    /**
+     * Reads the next row of the region into the first width pixels of row. When the image is subsampled as many rows
+     * of the region are read as it takes to complete the next subsampled row. The rows that are dropped by the
+     * subsampling are skipped without converting them.
+     */
+    private void readRow(final byte[] row, final int index) throws IOException {
+      if (subsampler == null) {
+        ImageTypeSupport.checkInterrupted();
+        readSourceRow(index, true);
+        pipeline.apply(sourceRow, 0, row, width);
+        return;
+      }
+      while (true) {
+        ImageTypeSupport.checkInterrupted();
+        int regionRow = bottomUp ? regionHeight - 1 - sourceIndex : sourceIndex;
+        boolean needed = subsampler.isNeeded(regionRow);
+        readSourceRow(sourceIndex++, needed);
+        if (needed && subsampler.add(sourceRow, 0, regionRow)) {
+          pipeline.apply(subsampler.getRow(), 0, row, width);
+          return;
         }
+      }
+    }
 
-        if (match) {
-          rawData[i + 3] = 0;
+    private void readSourceRow(final int index, final boolean needed) throws IOException {
+      if (runLengthDecoder != null) {
+        runLengthDecoder.readRow(fullRow);
+        if (needed) {
+          System.arraycopy(fullRow, skipLeft, sourceRow, 0, sourceRow.length);
         }
+        return;
+      }
+      if (needed) {
+        skipFully(dis, skipLeft);
+        dis.readFully(sourceRow);
+      } else {
+        skipFully(dis, skipLeft + sourceRow.length);
+      }
+      // there is nothing behind the last row of the region that we need
+      if (index < regionHeight - 1) {
+        skipFully(dis, skipRight);
       }
     }
 
-    // Get a pointer to the image memory
-    ByteBuffer scratch = createByteBuffer(rawData.length);
-    scratch.put(rawData);
+    /**
+     * The row in the returned image data of the row with the given index.
+     */
+    private int targetRow(final int index) {
+      // the row of the region counted from the top
+      int regionRow = bottomUp ? height - 1 - index : index;
+      return pipeline.targetRow(regionRow, height);
+    }
+  }
 
-    int perPixel = pixelDepth / 8;
-    if (height < texHeight - 1) {
-      int topOffset = (texHeight - 1) * (texWidth * perPixel);
-      int bottomOffset = (height - 1) * (texWidth * perPixel);
-      for (int x = 0; x < texWidth * perPixel; x++) {
-        scratch.put(topOffset + x, scratch.get(x));
-        scratch.put(bottomOffset + (texWidth * perPixel) + x, scratch.get((texWidth * perPixel) + x));
-      }
+  /**
+   * Expands the run length encoded pixel data one scanline at a time. Packets may continue in the next scanline.
+   */
+  private static class RunLengthDecoder {
+    private final DataInputStream in;
+    private final int perPixel;
+    private final byte[] pixel;
+    private int remaining;
+    private boolean repeat;
+
+    private RunLengthDecoder(final DataInputStream in, final int perPixel) {
+      this.in = in;
+      this.perPixel = perPixel;
+      this.pixel = new byte[perPixel];
     }
-    if (width < texWidth - 1) {
-      for (int y = 0; y < texHeight; y++) {
-        for (int i = 0; i < perPixel; i++) {
-          scratch.put(((y + 1) * (texWidth * perPixel)) - perPixel + i, scratch.get(y * (texWidth * perPixel) + i));
-          scratch.put((y * (texWidth * perPixel)) + (width * perPixel) + i,
-              scratch.get((y * (texWidth * perPixel)) + ((width - 1) * perPixel) + i));
+
+    private void readRow(final byte[] row) throws IOException {
+      int offset = 0;
+      while (offset < row.length) {
+        if (remaining == 0) {
+          int packet = in.readUnsignedByte();
+          remaining = (packet & ~RLE_REPEAT) + 1;
+          repeat = (packet & RLE_REPEAT) != 0;
+          if (repeat) {
+            in.readFully(pixel);
+          }
+        }
+        int count = Math.min(remaining, (row.length - offset) / perPixel);
+        int size = count * perPixel;
+        if (repeat) {
+          fill(row, offset, size);
+        } else {
+          in.readFully(row, offset, size);
         }
+        offset += size;
+        remaining -= count;
       }
     }
 
-    scratch.flip();
-
-    return new ImageData(texWidth, texHeight, width, height, pixelDepth, scratch);
-  }
-
-  private int get2Fold(int fold) {
-    int ret = 2;
-    while (ret < fold) {
-      ret *= 2;
+    /**
+     * Fills the range with the repeated pixel by doubling the part that's already filled with each copy.
+     */
+    private void fill(final byte[] row, final int offset, final int size) {
+      System.arraycopy(pixel, 0, row, offset, perPixel);
+      int filled = perPixel;
+      while (filled < size) {
+        int count = Math.min(filled, size - filled);
+        System.arraycopy(row, offset, row, offset + filled, count);
+        filled += count;
+      }
     }
-    return ret;
-  }
-
-  private ByteBuffer createByteBuffer(int size) {
-    return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
   }
 }
@@ -0,0 +1,167 @@
+package de.lessvoid.simpleimageloader.type;
+
+import de.lessvoid.simpleimageloader.PixelFormat;
+import de.lessvoid.simpleimageloader.SimpleImageLoaderConfig;
+
+/**
+ * Everything the SimpleImageLoaderConfig asks to be done with the decoded pixels, applied in a single pass while a
+ * decoded row is written into the output row.
+ *
+ * The steps for each pixel are, in this order: fully transparent pixels become black, the transparent color gets alpha
+ * 0, sRGB colors are converted to linear, the colors are premultiplied with alpha and finally the channels are written
+ * in the output layout (RGB, RGBA, BGRA with modeARGB or packed into the configured PixelFormat). Each step is only
+ * done when it's enabled. RGB rows that need nothing at all are simply copied.
+ *
+ * Flipping doesn't touch the pixels at all, it only changes the row a decoded row ends up in (see targetRow()).
+ *
+ * The decoders create one instance per image since it keeps a scratch row for packed formats.
+ *
+ * @author void
+ */
+final class PixelPipeline {
+  private static final byte[] SRGB_TO_LINEAR = new byte[256];
+
+  static {
+    for (int i = 0; i < SRGB_TO_LINEAR.length; i++) {
+      double c = i / 255.;
+      double linear = c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4);
+      SRGB_TO_LINEAR[i] = (byte) Math.round(linear * 255);
+    }
+  }
+
+  private final int inputPerPixel;
+  private final int inputRed;
+  private final int inputBlue;
+  private final boolean hasAlpha;
+  private final PixelFormat pixelFormat;
+  private final PixelFormat packedFormat;
+  private final int outputPerPixel;
+  private final int outputRed;
+  private final int outputBlue;
+  private final int[] transparent;
+  private final boolean linear;
+  private final boolean premultiply;
+  private final boolean flipped;
+  private final boolean copy;
+  private byte[] scratch;
+
+  /**
+   * Create the pipeline for an image.
+   *
+   * @param config the SimpleImageLoaderConfig
+   * @param inputPerPixel the number of bytes per pixel of the decoded rows (3 or 4 with alpha in the fourth byte)
+   * @param inputBGR true when the decoded rows store blue first (BGR or BGRA), false for RGB or RGBA
+   * @param hasAlpha true when the image has alpha or transparency (a configured transparent color counts as well)
+   */
+  PixelPipeline(
+      final SimpleImageLoaderConfig config,
+      final int inputPerPixel,
+      final boolean inputBGR,
+      final boolean hasAlpha) {
+    this.inputPerPixel = inputPerPixel;
+    this.inputRed = inputBGR ? 2 : 0;
+    this.inputBlue = inputBGR ? 0 : 2;
+    this.hasAlpha = hasAlpha || config.getTransparent() != null;
+    this.transparent = config.getTransparent();
+    this.linear = config.isSrgbToLinear();
+    this.premultiply = config.isPremultipliedAlpha();
+    this.flipped = config.isFlipped();
+
+    packedFormat = ImageTypeSupport.packedFormat(config);
+    boolean useAlpha = this.hasAlpha || config.isForceAlpha() || packedFormat != null;
+    pixelFormat = ImageTypeSupport.pixelFormat(config, useAlpha ? 32 : 24);
+    outputPerPixel = useAlpha ? 4 : 3;
+    // packed formats are converted from an RGBA scratch row
+    boolean bgra = packedFormat == null && pixelFormat == PixelFormat.BGRA;
+    outputRed = bgra ? 2 : 0;
+    outputBlue = bgra ? 0 : 2;
+
+    // rows with alpha always need the fully transparent pixels to be cleared
+    copy =
+        inputPerPixel == 3 && outputPerPixel == 3 && inputRed == outputRed && !linear && packedFormat == null;
+  }
+
+  /**
+   * The format of the output rows.
+   * @return the PixelFormat
+   */
+  PixelFormat getPixelFormat() {
+    return pixelFormat;
+  }
+
+  /**
+   * The number of bits per pixel of the output rows.
+   * @return bits per pixel
+   */
+  int getBitsPerPixel() {
+    return pixelFormat.getBitsPerPixel();
+  }
+
+  /**
+   * The row in the output a decoded row ends up in.
+   *
+   * @param index the index of the decoded row counted from the top of the image
+   * @param height the number of rows of the output
+   * @return the index of the row in the output
+   */
+  int targetRow(final int index, final int height) {
+    return flipped ? height - 1 - index : index;
+  }
+
+  /**
+   * Process width pixels of the decoded row starting at offset and write them to the start of target.
+   *
+   * @param source the decoded row
+   * @param offset the index of the first byte to process in source
+   * @param target the output row
+   * @param width the number of pixels
+   */
+  void apply(final byte[] source, final int offset, final byte[] target, final int width) {
+    if (copy) {
+      System.arraycopy(source, offset, target, 0, width * 3);
+      return;
+    }
+    byte[] out = target;
+    if (packedFormat != null) {
+      if (scratch == null || scratch.length < width * 4) {
+        scratch = new byte[width * 4];
+      }
+      out = scratch;
+    }
+
+    for (int s = offset, t = 0, end = offset + width * inputPerPixel; s < end; s += inputPerPixel) {
+      int red = source[s + inputRed] & 0xFF;
+      int green = source[s + 1] & 0xFF;
+      int blue = source[s + inputBlue] & 0xFF;
+      int alpha = inputPerPixel == 4 ? source[s + 3] & 0xFF : 255;
+      if (alpha == 0) {
+        red = 0;
+        green = 0;
+        blue = 0;
+      } else if (transparent != null && red == transparent[0] && green == transparent[1] && blue == transparent[2]) {
+        alpha = 0;
+      }
+      if (linear) {
+        red = SRGB_TO_LINEAR[red] & 0xFF;
+        green = SRGB_TO_LINEAR[green] & 0xFF;
+        blue = SRGB_TO_LINEAR[blue] & 0xFF;
+      }
+      if (premultiply && alpha != 255) {
+        red = (red * alpha + 127) / 255;
+        green = (green * alpha + 127) / 255;
+        blue = (blue * alpha + 127) / 255;
+      }
+      out[t + outputRed] = (byte) red;
+      out[t + 1] = (byte) green;
+      out[t + outputBlue] = (byte) blue;
+      if (outputPerPixel == 4) {
+        out[t + 3] = (byte) alpha;
+      }
+      t += outputPerPixel;
+    }
+
+    if (packedFormat != null) {
+      packedFormat.pack(scratch, 0, target, width, hasAlpha);
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package de.lessvoid.simpleimageloader.type;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import de.lessvoid.simpleimageloader.ScanlineSink;
+
+/**
+ * Collects the rows a decoder produces into bands of a fixed number of rows and hands each complete band to a
+ * ScanlineSink. Decoders that produce the rows from the bottom up (descending) get their rows put into each band in
+ * reverse so that the sink always receives the rows of a band from top to bottom.
+ *
+ * @author void
+ */
+final class ScanlineBand {
+  private final ScanlineSink sink;
+  private final int rowSize;
+  private final int height;
+  private final int bandHeight;
+  private final boolean descending;
+  private final ByteBuffer band;
+
+  /**
+   * @param sink the ScanlineSink to deliver the bands to
+   * @param rowSize the size of a single row in bytes
+   * @param height the number of rows of the image
+   * @param bandHeight the number of rows of each band (the last band might be smaller)
+   * @param descending true when the decoder produces the rows from the last row of the image to the first
+   */
+  ScanlineBand(
+      final ScanlineSink sink,
+      final int rowSize,
+      final int height,
+      final int bandHeight,
+      final boolean descending) {
+    if (bandHeight < 1) {
+      throw new IllegalArgumentException("bandHeight must be at least 1 but is " + bandHeight);
+    }
+    this.sink = sink;
+    this.rowSize = rowSize;
+    this.height = height;
+    this.bandHeight = Math.min(bandHeight, Math.max(1, height));
+    this.descending = descending;
+    this.band = ByteBuffer.allocateDirect(rowSize * this.bandHeight).order(ByteOrder.nativeOrder());
+  }
+
+  /**
+   * Add the next row and deliver the band when it is complete.
+   *
+   * @param row the row data (only the first rowSize bytes are used)
+   * @param index the index of the row in the order the decoder produces the rows
+   * @throws IOException
+   */
+  void put(final byte[] row, final int index) throws IOException {
+    int bandStart = index / bandHeight * bandHeight;
+    int count = Math.min(bandHeight, height - bandStart);
+    int slot = index - bandStart;
+    band.position((descending ? count - 1 - slot : slot) * rowSize);
+    band.put(row, 0, rowSize);
+
+    if (slot == count - 1) {
+      band.position(0).limit(count * rowSize);
+      sink.rows(band, descending ? height - bandStart - count : bandStart, count);
+      band.clear();
+    }
+  }
+}
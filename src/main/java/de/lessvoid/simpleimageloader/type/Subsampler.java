@@ -0,0 +1,166 @@
+package de.lessvoid.simpleimageloader.type;
+
+/**
+ * Shrinks decoded rows by an integer factor while they are read so that the decoders never need the image in its
+ * full size. Without the box filter only every factor-th pixel of every factor-th row is kept. With the box filter all
+ * pixels of a factor x factor block are summed up and the average becomes the pixel of the smaller image - blocks at
+ * the right and bottom edge might be smaller. Rows with 4 bytes per pixel carry alpha in the last byte - like the
+ * mipmaps their colors are weighted by alpha so that the color of transparent pixels doesn't bleed into the block.
+ *
+ * The rows have to be added in order, either from top to bottom or from bottom to top. The subsampled rows keep the
+ * layout of the decoded rows so that they can be run through the PixelPipeline afterwards.
+ *
+ * @author void
+ */
+final class Subsampler {
+  private final int factor;
+  private final boolean box;
+  private final int perPixel;
+  private final int sourceWidth;
+  private final int sourceHeight;
+  private final int width;
+  private final int height;
+  private final byte[] row;
+  private final boolean alpha;
+  private final long[] sums;
+  private int rowsAdded;
+
+  /**
+   * @param factor the subsampling factor
+   * @param box true to average the blocks instead of picking the upper left pixel
+   * @param perPixel the number of bytes per pixel of the decoded rows
+   * @param sourceWidth the width of the decoded rows
+   * @param sourceHeight the number of decoded rows
+   */
+  Subsampler(
+      final int factor,
+      final boolean box,
+      final int perPixel,
+      final int sourceWidth,
+      final int sourceHeight) {
+    this.factor = factor;
+    this.box = box;
+    this.perPixel = perPixel;
+    this.sourceWidth = sourceWidth;
+    this.sourceHeight = sourceHeight;
+    this.width = (sourceWidth + factor - 1) / factor;
+    this.height = (sourceHeight + factor - 1) / factor;
+    this.row = new byte[width * perPixel];
+    this.alpha = perPixel == 4;
+    this.sums = box ? new long[width * perPixel] : null;
+  }
+
+  /**
+   * The subsampling factor.
+   * @return factor
+   */
+  int getFactor() {
+    return factor;
+  }
+
+  /**
+   * The width of the subsampled image.
+   * @return width
+   */
+  int getWidth() {
+    return width;
+  }
+
+  /**
+   * The height of the subsampled image.
+   * @return height
+   */
+  int getHeight() {
+    return height;
+  }
+
+  /**
+   * The subsampled row that add() has completed last.
+   * @return the row with getWidth() pixels
+   */
+  byte[] getRow() {
+    return row;
+  }
+
+  /**
+   * Check if the decoded row contributes to the subsampled image at all. Rows that don't don't need to be converted
+   * (or even read) by the decoder.
+   *
+   * @param sourceRow the index of the decoded row counted from the top
+   * @return true when the row has to be added
+   */
+  boolean isNeeded(final int sourceRow) {
+    return box || sourceRow % factor == 0;
+  }
+
+  /**
+   * Add the next decoded row. Rows that are not needed (see isNeeded()) may be added as well, they are ignored.
+   *
+   * @param source the decoded row
+   * @param offset the index of the first byte of the row in source
+   * @param sourceRow the index of the decoded row counted from the top
+   * @return true when a row of the subsampled image is complete and can be retrieved with getRow()
+   */
+  boolean add(final byte[] source, final int offset, final int sourceRow) {
+    if (!box) {
+      if (sourceRow % factor != 0) {
+        return false;
+      }
+      int step = factor * perPixel;
+      for (int s = offset, t = 0; t < row.length; s += step, t += perPixel) {
+        for (int c = 0; c < perPixel; c++) {
+          row[t + c] = source[s + c];
+        }
+      }
+      return true;
+    }
+
+    for (int x = 0, s = offset; x < sourceWidth; x++, s += perPixel) {
+      int t = x / factor * perPixel;
+      if (alpha) {
+        int a = source[s + 3] & 0xFF;
+        sums[t] += (source[s] & 0xFF) * a;
+        sums[t + 1] += (source[s + 1] & 0xFF) * a;
+        sums[t + 2] += (source[s + 2] & 0xFF) * a;
+        sums[t + 3] += a;
+      } else {
+        for (int c = 0; c < perPixel; c++) {
+          sums[t + c] += source[s + c] & 0xFF;
+        }
+      }
+    }
+    rowsAdded++;
+    int blockRow = sourceRow / factor;
+    int blockHeight = Math.min(factor, sourceHeight - blockRow * factor);
+    if (rowsAdded < blockHeight) {
+      return false;
+    }
+
+    for (int x = 0, t = 0; x < width; x++, t += perPixel) {
+      int count = Math.min(factor, sourceWidth - x * factor) * blockHeight;
+      if (alpha) {
+        average(t, count);
+      } else {
+        for (int c = 0; c < perPixel; c++) {
+          row[t + c] = (byte) ((sums[t + c] + count / 2) / count);
+          sums[t + c] = 0;
+        }
+      }
+    }
+    rowsAdded = 0;
+    return true;
+  }
+
+  /**
+   * Average the alpha weighted sums of the block at t - fully transparent blocks are black.
+   */
+  private void average(final int t, final int count) {
+    long alphaSum = sums[t + 3];
+    for (int c = 0; c < 3; c++) {
+      row[t + c] = alphaSum == 0 ? 0 : (byte) ((sums[t + c] + alphaSum / 2) / alphaSum);
+      sums[t + c] = 0;
+    }
+    row[t + 3] = (byte) ((alphaSum + count / 2) / count);
+    sums[t + 3] = 0;
+  }
+}
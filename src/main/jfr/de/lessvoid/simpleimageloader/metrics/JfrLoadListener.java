@@ -0,0 +1,113 @@
+package de.lessvoid.simpleimageloader.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A LoadListener that emits a JDK Flight Recorder event "de.lessvoid.simpleimageloader.Load" for every load, so that
+ * the loads show up in a flight recording next to GC pauses and CPU samples. The event is only created when a
+ * recording has it enabled. Another LoadListener, e.g. a LoadRecorder, can be passed in to get the LoadEvents as well.
+ *
+ * This needs a JVM with Flight Recorder (Java 11 or OpenJDK 8u262 and later), nothing else in SimpleImageLoader does.
+ *
+ * @author void
+ */
+public class JfrLoadListener implements LoadListener {
+  private final LoadListener next;
+
+  /**
+   * Create a new JfrLoadListener.
+   */
+  public JfrLoadListener() {
+    this(null);
+  }
+
+  /**
+   * Create a new JfrLoadListener that passes the LoadEvents on.
+   * @param next the LoadListener to call after the event has been emitted or null
+   */
+  public JfrLoadListener(final LoadListener next) {
+    this.next = next;
+  }
+
+  @Override
+  public void loaded(final LoadEvent event) {
+    LoadJfrEvent jfrEvent = new LoadJfrEvent();
+    if (jfrEvent.shouldCommit()) {
+      jfrEvent.name = event.getName();
+      jfrEvent.format = event.getFormat();
+      jfrEvent.fallback = event.isFallback();
+      jfrEvent.cached = event.isCached();
+      jfrEvent.success = event.isSuccess();
+      jfrEvent.config = String.valueOf(event.getConfig());
+      jfrEvent.inputBytes = event.getInputBytes();
+      jfrEvent.outputBytes = event.getOutputBytes();
+      jfrEvent.readTime = event.getReadNanos();
+      jfrEvent.decodeTime = event.getDecodeNanos();
+      jfrEvent.postProcessTime = event.getPostProcessNanos();
+      jfrEvent.allocateTime = event.getAllocateNanos();
+      jfrEvent.totalTime = event.getTotalNanos();
+      jfrEvent.commit();
+    }
+    if (next != null) {
+      next.loaded(event);
+    }
+  }
+
+  @Name("de.lessvoid.simpleimageloader.Load")
+  @Label("Image Load")
+  @Category("SimpleImageLoader")
+  @Description("An image loaded by SimpleImageLoader")
+  static final class LoadJfrEvent extends Event {
+    @Label("Name")
+    String name;
+
+    @Label("Format")
+    String format;
+
+    @Label("Fallback")
+    boolean fallback;
+
+    @Label("Cached")
+    boolean cached;
+
+    @Label("Success")
+    boolean success;
+
+    @Label("Config")
+    String config;
+
+    @Label("Input Bytes")
+    @DataAmount
+    long inputBytes;
+
+    @Label("Output Bytes")
+    @DataAmount
+    long outputBytes;
+
+    @Label("Read Time")
+    @Timespan
+    long readTime;
+
+    @Label("Decode Time")
+    @Timespan
+    long decodeTime;
+
+    @Label("Post Process Time")
+    @Timespan
+    long postProcessTime;
+
+    @Label("Allocate Time")
+    @Timespan
+    long allocateTime;
+
+    @Label("Total Time")
+    @Timespan
+    long totalTime;
+  }
+}
@@ -0,0 +1,261 @@
+package de.lessvoid.simpleimageloader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lessvoid.simpleimageloader.buffer.DirectBufferAllocator;
+
+/**
+ * Decodes the compressed blocks again and compares them with the source pixels.
+ */
+public class BlockCompressorTest {
+
+  @Test
+  public void testBC1Gradient() {
+    byte[] pixels = gradient(64, 32, 3);
+    ImageData compressed = compress(image(64, 32, 24, pixels), BlockCompression.BC1, false);
+    assertEquals(BlockCompression.BC1, compressed.getBlockCompression());
+    assertEquals(4, compressed.getBitsPerPixel());
+    assertEquals(64 * 32 / 2, compressed.getData().limit());
+    assertMaxError(pixels, 3, decode(compressed, 0), 64, 32, 12, 255);
+  }
+
+  @Test
+  public void testBC1Transparency() {
+    byte[] pixels = new byte[8 * 4 * 4];
+    for (int i = 0; i < 8 * 4; i++) {
+      boolean transparent = i % 3 == 0;
+      pixels[i * 4] = (byte) (transparent ? 0 : 200);
+      pixels[i * 4 + 1] = (byte) (transparent ? 0 : i % 8 * 8);
+      pixels[i * 4 + 2] = (byte) (transparent ? 0 : 40);
+      pixels[i * 4 + 3] = (byte) (transparent ? 0 : 255);
+    }
+    byte[] decoded = decode(compress(image(8, 4, 32, pixels), BlockCompression.BC1, false), 0);
+    for (int i = 0; i < 8 * 4; i++) {
+      assertEquals("alpha of pixel " + i, pixels[i * 4 + 3] & 0xFF, decoded[i * 4 + 3] & 0xFF);
+    }
+    assertMaxError(pixels, 4, decoded, 8, 4, 20, 0);
+  }
+
+  @Test
+  public void testBC3Alpha() {
+    byte[] pixels = gradient(16, 16, 4);
+    ImageData compressed = compress(image(16, 16, 32, pixels), BlockCompression.BC3, false);
+    assertEquals(8, compressed.getBitsPerPixel());
+    assertEquals(16 * 16, compressed.getData().limit());
+    assertMaxError(pixels, 4, decode(compressed, 0), 16, 16, 12, 4);
+  }
+
+  @Test
+  public void testModeARGBAndSolidColor() {
+    byte[] pixels = new byte[4 * 4 * 4];
+    for (int i = 0; i < 16; i++) {
+      // BGRA
+      pixels[i * 4] = 10;
+      pixels[i * 4 + 1] = 100;
+      pixels[i * 4 + 2] = (byte) 250;
+      pixels[i * 4 + 3] = (byte) 255;
+    }
+    byte[] decoded = decode(compress(image(4, 4, 32, pixels), BlockCompression.BC3, true), 0);
+    for (int i = 0; i < 16; i++) {
+      assertTrue(Math.abs((decoded[i * 4] & 0xFF) - 250) <= 4);
+      assertTrue(Math.abs((decoded[i * 4 + 1] & 0xFF) - 100) <= 2);
+      assertTrue(Math.abs((decoded[i * 4 + 2] & 0xFF) - 10) <= 4);
+      assertEquals(255, decoded[i * 4 + 3] & 0xFF);
+    }
+  }
+
+  @Test
+  public void testUnalignedSizeWithMipmaps() throws Exception {
+    SimpleImageLoader loader = new SimpleImageLoader();
+    SimpleImageLoaderConfig config = new SimpleImageLoaderConfig().mipmaps().blockCompression(BlockCompression.BC1);
+    ImageData imageData = loader.load("demo.png", BlockCompressorTest.class.getResourceAsStream("/demo.png"), config);
+
+    // 11x5 is padded to 12x8 and the levels are 6x4, 3x2 and 1x1
+    assertEquals(12, imageData.getWidth());
+    assertEquals(8, imageData.getHeight());
+    assertEquals(11, imageData.getOriginalWidth());
+    assertEquals(4, imageData.getMipmapCount());
+    assertEquals(0, imageData.getMipmapOffset(0));
+    assertEquals(3 * 2 * 8, imageData.getMipmapOffset(1));
+    assertEquals(3 * 2 * 8 + 2 * 8, imageData.getMipmapOffset(2));
+    assertEquals(3 * 2 * 8 + 2 * 8 + 8, imageData.getMipmapOffset(3));
+    assertEquals(3 * 2 * 8 + 2 * 8 + 8 + 8, imageData.getData().limit());
+
+    // an image without alpha never uses the transparent color
+    for (int level = 0; level < 4; level++) {
+      byte[] decoded = decode(imageData, level);
+      for (int i = 3; i < decoded.length; i += 4) {
+        assertEquals(255, decoded[i] & 0xFF);
+      }
+    }
+  }
+
+  @Test
+  public void testLargeImageIsEncodedInParallel() {
+    byte[] pixels = gradient(256, 256, 4);
+    Random random = new Random(256);
+    for (int i = 3; i < pixels.length; i += 4) {
+      pixels[i] = (byte) (random.nextBoolean() ? 255 : 0);
+    }
+    ImageData compressed = compress(image(256, 256, 32, pixels), BlockCompression.BC1, false);
+    byte[] decoded = decode(compressed, 0);
+    for (int i = 0; i < 256 * 256; i++) {
+      assertEquals(pixels[i * 4 + 3], decoded[i * 4 + 3]);
+    }
+  }
+
+  private ImageData compress(final ImageData imageData, final BlockCompression compression, final boolean modeARGB) {
+    return BlockCompressor.compress(imageData, compression, modeARGB, new DirectBufferAllocator());
+  }
+
+  /**
+   * A smooth diagonal ramp - the colors of each block lie on a line which a block can represent well.
+   */
+  private byte[] gradient(final int width, final int height, final int perPixel) {
+    byte[] pixels = new byte[width * height * perPixel];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int p = (y * width + x) * perPixel;
+        int t = (x + y) * 255 / (width + height);
+        pixels[p] = (byte) t;
+        pixels[p + 1] = (byte) (255 - t);
+        pixels[p + 2] = (byte) (t / 2);
+        if (perPixel == 4) {
+          pixels[p + 3] = (byte) (255 - x * 255 / width);
+        }
+      }
+    }
+    return pixels;
+  }
+
+  /**
+   * Checks the color channels against maxColorError and the alpha of 32 bit sources against maxAlphaError. Pixels that
+   * are transparent in the source are not checked.
+   */
+  private void assertMaxError(
+      final byte[] source,
+      final int perPixel,
+      final byte[] decoded,
+      final int width,
+      final int height,
+      final int maxColorError,
+      final int maxAlphaError) {
+    for (int i = 0; i < width * height; i++) {
+      if (perPixel == 4 && source[i * 4 + 3] == 0) {
+        continue;
+      }
+      for (int c = 0; c < 3; c++) {
+        int error = Math.abs((source[i * perPixel + c] & 0xFF) - (decoded[i * 4 + c] & 0xFF));
+        assertTrue("pixel " + i + " channel " + c + " error " + error, error <= maxColorError);
+      }
+      if (perPixel == 4) {
+        int error = Math.abs((source[i * 4 + 3] & 0xFF) - (decoded[i * 4 + 3] & 0xFF));
+        assertTrue("pixel " + i + " alpha error " + error, error <= maxAlphaError);
+      }
+    }
+  }
+
+  /**
+   * Decodes a mipmap level into RGBA the way the graphics card does.
+   */
+  private byte[] decode(final ImageData imageData, final int level) {
+    int width = imageData.getMipmapWidth(level);
+    int height = imageData.getMipmapHeight(level);
+    int blocksPerRow = (width + 3) / 4;
+    int blockRows = (height + 3) / 4;
+    ByteBuffer data = imageData.getMipmapData(level).order(ByteOrder.LITTLE_ENDIAN);
+    BlockCompression compression = imageData.getBlockCompression();
+    byte[] result = new byte[blocksPerRow * 4 * blockRows * 4 * 4];
+    int stride = blocksPerRow * 4 * 4;
+
+    for (int by = 0; by < blockRows; by++) {
+      for (int bx = 0; bx < blocksPerRow; bx++) {
+        int offset = (by * blocksPerRow + bx) * compression.getBlockSize();
+        int[] alpha = null;
+        if (compression == BlockCompression.BC3) {
+          alpha = decodeAlpha(data, offset);
+          offset += 8;
+        }
+        int color0 = data.getShort(offset) & 0xFFFF;
+        int color1 = data.getShort(offset + 2) & 0xFFFF;
+        int indices = data.getInt(offset + 4);
+        int[][] palette = new int[4][];
+        palette[0] = expand(color0);
+        palette[1] = expand(color1);
+        boolean fourColors = color0 > color1 || compression == BlockCompression.BC3;
+        palette[2] = new int[4];
+        palette[3] = new int[4];
+        for (int c = 0; c < 3; c++) {
+          if (fourColors) {
+            palette[2][c] = (2 * palette[0][c] + palette[1][c]) / 3;
+            palette[3][c] = (palette[0][c] + 2 * palette[1][c]) / 3;
+          } else {
+            palette[2][c] = (palette[0][c] + palette[1][c]) / 2;
+          }
+        }
+        palette[2][3] = 255;
+        palette[3][3] = fourColors ? 255 : 0;
+
+        for (int i = 0; i < 16; i++) {
+          int[] color = palette[(indices >>> (2 * i)) & 3];
+          int p = (by * 4 + (i >> 2)) * stride + (bx * 4 + (i & 3)) * 4;
+          for (int c = 0; c < 4; c++) {
+            result[p + c] = (byte) color[c];
+          }
+          if (alpha != null) {
+            result[p + 3] = (byte) alpha[i];
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  private int[] decodeAlpha(final ByteBuffer data, final int offset) {
+    int alpha0 = data.get(offset) & 0xFF;
+    int alpha1 = data.get(offset + 1) & 0xFF;
+    int[] values = new int[8];
+    values[0] = alpha0;
+    values[1] = alpha1;
+    if (alpha0 > alpha1) {
+      for (int i = 1; i < 7; i++) {
+        values[i + 1] = ((7 - i) * alpha0 + i * alpha1) / 7;
+      }
+    } else {
+      for (int i = 1; i < 5; i++) {
+        values[i + 1] = ((5 - i) * alpha0 + i * alpha1) / 5;
+      }
+      values[6] = 0;
+      values[7] = 255;
+    }
+    long bits = 0;
+    for (int i = 5; i >= 0; i--) {
+      bits = (bits << 8) | (data.get(offset + 2 + i) & 0xFF);
+    }
+    int[] alpha = new int[16];
+    for (int i = 0; i < 16; i++) {
+      alpha[i] = values[(int) ((bits >>> (3 * i)) & 7)];
+    }
+    return alpha;
+  }
+
+  private int[] expand(final int color) {
+    int r = color >> 11;
+    int g = (color >> 5) & 0x3F;
+    int b = color & 0x1F;
+    return new int[] { (r << 3) | (r >> 2), (g << 2) | (g >> 4), (b << 3) | (b >> 2), 255 };
+  }
+
+  private ImageData image(final int width, final int height, final int bitsPerPixel, final byte[] pixels) {
+    ByteBuffer data = ByteBuffer.allocateDirect(pixels.length).order(ByteOrder.nativeOrder());
+    data.put(pixels).flip();
+    return new ImageData(width, height, width, height, bitsPerPixel, data);
+  }
+}
@@ -0,0 +1,475 @@
+package de.lessvoid.simpleimageloader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.junit.Test;
+
+public class ImageSequenceTest {
+  private static final String GIF_IMAGE_METADATA = "javax_imageio_gif_image_1.0";
+  private static final int RED = 1;
+  private static final int GREEN = 2;
+  private static final int BLUE = 3;
+  private static final int WHITE = 4;
+  private static final int[][] COLORS = {
+      { 0, 0, 0, 0 }, { 255, 0, 0, 255 }, { 0, 255, 0, 255 }, { 0, 0, 255, 255 }, { 255, 255, 255, 255 } };
+
+  @Test
+  public void testGif() throws Exception {
+    ImageSequence sequence = new SimpleImageLoader().loadSequence("anim.gif", new ByteArrayInputStream(gif()),
+        new SimpleImageLoaderConfig());
+    assertEquals(4, sequence.getFrameCount());
+    assertEquals(8, sequence.getWidth());
+    assertEquals(6, sequence.getHeight());
+    assertEquals(PixelFormat.RGBA, sequence.getPixelFormat());
+    assertEquals(8 * 6 * 4, sequence.getFrameSize());
+    assertEquals(0, sequence.getPlayCount());
+    assertEquals(100, sequence.getDelay(0));
+    assertEquals(50, sequence.getDelay(1));
+    assertEquals(20, sequence.getDelay(2));
+    assertEquals(30, sequence.getDelay(3));
+    assertEquals(0, sequence.getDecodedFrameCount());
+
+    int[][] canvas = fill(8, 6, RED);
+    assertFrame(canvas, sequence.getFrame(0));
+    assertEquals(1, sequence.getDecodedFrameCount());
+
+    // frame 1 has a transparent pixel and is restored to the previous canvas afterwards
+    int[][] frame1 = copy(canvas);
+    fill(frame1, 1, 1, 3, 3, BLUE);
+    frame1[1][2] = RED;
+    assertFrame(frame1, sequence.getFrame(1));
+
+    // frame 2 is cleared to transparent afterwards
+    int[][] frame2 = copy(canvas);
+    fill(frame2, 4, 2, 3, 3, GREEN);
+    assertFrame(frame2, sequence.getFrame(2));
+
+    int[][] frame3 = copy(canvas);
+    fill(frame3, 4, 2, 3, 3, 0);
+    frame3[0][0] = WHITE;
+    assertFrame(frame3, sequence.getFrame(3));
+    assertEquals(4, sequence.getDecodedFrameCount());
+
+    ByteBuffer data = sequence.getData();
+    assertEquals(4 * sequence.getFrameSize(), data.remaining());
+    byte[] slice = new byte[sequence.getFrameSize()];
+    data.position(2 * sequence.getFrameSize());
+    data.get(slice);
+    assertArrayEquals(data(sequence.getFrame(2)), slice);
+    sequence.release();
+  }
+
+  @Test
+  public void testApng() throws Exception {
+    byte[] png = apng();
+    ImageSequence sequence = new SimpleImageLoader().loadSequence("anim.png", new ByteArrayInputStream(png),
+        new SimpleImageLoaderConfig());
+    assertEquals(3, sequence.getFrameCount());
+    assertEquals(4, sequence.getOriginalWidth());
+    assertEquals(3, sequence.getOriginalHeight());
+    assertEquals(2, sequence.getPlayCount());
+    assertEquals(100, sequence.getDelay(0));
+    assertEquals(0, sequence.getDelay(1));
+    assertEquals(250, sequence.getDelay(2));
+
+    // the default image is the first frame
+    ImageData image = new SimpleImageLoader().load("anim.png", new ByteArrayInputStream(png));
+    byte[] frame0 = data(sequence.getFrame(0));
+    assertArrayEquals(data(image), frame0);
+
+    byte[] frame1 = frame0.clone();
+    put(frame1, 4, 1, 1, 0, 0, 255, 255);
+    // 50% green blended over (200, 100, 50)
+    put(frame1, 4, 2, 1, 100, 178, 25, 255);
+    assertArrayEquals(frame1, data(sequence.getFrame(1)));
+
+    byte[] frame2 = frame0.clone();
+    put(frame2, 4, 1, 1, 0, 0, 0, 0);
+    put(frame2, 4, 2, 1, 0, 0, 0, 0);
+    put(frame2, 4, 3, 2, 9, 9, 9, 255);
+    assertArrayEquals(frame2, data(sequence.getFrame(2)));
+  }
+
+  @Test
+  public void testConfig() throws Exception {
+    SimpleImageLoaderConfig config = new SimpleImageLoaderConfig().flipped().powerOfTwoSupport().padding(Padding.CLAMP);
+    ImageSequence sequence = new SimpleImageLoader().loadSequence("anim.gif", new ByteArrayInputStream(gif()), config);
+    assertEquals(8, sequence.getWidth());
+    assertEquals(8, sequence.getHeight());
+    assertEquals(8, sequence.getOriginalWidth());
+    assertEquals(6, sequence.getOriginalHeight());
+
+    // frame 3 has the white pixel in the top left corner which is the last row of the flipped image and clamped down
+    byte[] frame = data(sequence.getFrame(3));
+    for (int y = 5; y < 8; y++) {
+      assertEquals((byte) 255, frame[y * 8 * 4 + 1]);
+    }
+    assertEquals(0, frame[4 * 8 * 4 + 1]);
+  }
+
+  @Test
+  public void testDecodeAsync() throws Exception {
+    ImageSequence sequence = new SimpleImageLoader().loadSequence("anim.png", new ByteArrayInputStream(apng()),
+        new SimpleImageLoaderConfig());
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      assertEquals(sequence, sequence.decodeAsync(executor).get());
+      assertEquals(3, sequence.getDecodedFrameCount());
+    } finally {
+      executor.shutdown();
+    }
+    sequence.release();
+    try {
+      sequence.getFrame(0);
+      fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testSingleImage() throws Exception {
+    SimpleImageLoader loader = new SimpleImageLoader();
+    ImageSequence sequence = loader.loadSequence(
+        "demo.tga", ImageSequenceTest.class.getResourceAsStream("/demo.tga"), new SimpleImageLoaderConfig());
+    ImageData image = loader.load("demo.tga", ImageSequenceTest.class.getResourceAsStream("/demo.tga"));
+    assertEquals(1, sequence.getFrameCount());
+    assertEquals(1, sequence.getDecodedFrameCount());
+    assertEquals(image.getPixelFormat(), sequence.getPixelFormat());
+    assertArrayEquals(data(image), data(sequence.getFrame(0)));
+  }
+
+  @Test(expected = IOException.class)
+  public void testTruncatedApng() throws Exception {
+    byte[] png = apng();
+    new SimpleImageLoader().loadSequence("anim.png", new ByteArrayInputStream(png, 0, png.length - 40),
+        new SimpleImageLoaderConfig()).getData();
+  }
+
+  @Test
+  public void testInterruptedFramesAreDecodedAgain() throws Exception {
+    for (byte[] image : new byte[][] { gif(), apng() }) {
+      ImageSequence expected = new SimpleImageLoader().loadSequence("anim", new ByteArrayInputStream(image),
+          new SimpleImageLoaderConfig());
+      ImageSequence sequence = new SimpleImageLoader().loadSequence("anim", new ByteArrayInputStream(image),
+          new SimpleImageLoaderConfig());
+      for (int i = 0; i < sequence.getFrameCount(); i++) {
+        Thread.currentThread().interrupt();
+        try {
+          sequence.getFrame(i);
+          fail();
+        } catch (InterruptedIOException e) {
+          assertTrue(Thread.interrupted());
+        }
+        assertEquals(i, sequence.getDecodedFrameCount());
+        assertArrayEquals(data(expected.getFrame(i)), data(sequence.getFrame(i)));
+      }
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testShortFrameControlChunk() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    DataOutputStream data = new DataOutputStream(out);
+    data.write(new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' });
+    chunk(data, "IHDR", ints(4, 3), new byte[] { 8, 6, 0, 0, 0 });
+    chunk(data, "acTL", ints(1, 0));
+    // the fcTL data ends at the sequence number, the rest of the frame control would be read from the CRC and beyond
+    chunk(data, "fcTL", ints(0));
+    new SimpleImageLoader().loadSequence("anim.png", new ByteArrayInputStream(out.toByteArray()),
+        new SimpleImageLoaderConfig());
+  }
+
+  @Test
+  public void testDecoderRuntimeException() throws Exception {
+    final AtomicBoolean closed = new AtomicBoolean();
+    ImageSequence sequence = new ImageSequence(1, 1, 1, 1, PixelFormat.RGBA, new int[] { 0, 0 }, 1,
+        ByteBuffer.allocate(8), null, new ImageSequence.FrameDecoder() {
+          @Override
+          public void decodeFrame(final int frame, final ByteBuffer target) {
+            throw new ArrayIndexOutOfBoundsException(frame);
+          }
+
+          @Override
+          public void close() {
+            closed.set(true);
+          }
+        });
+    for (int i = 0; i < 2; i++) {
+      try {
+        sequence.getFrame(0);
+        fail();
+      } catch (IOException e) {
+        assertTrue(e.getCause() instanceof ArrayIndexOutOfBoundsException);
+      }
+    }
+    assertTrue(closed.get());
+  }
+
+  private void assertFrame(final int[][] expected, final ImageData frame) {
+    byte[] data = data(frame);
+    for (int y = 0; y < expected.length; y++) {
+      for (int x = 0; x < expected[y].length; x++) {
+        for (int c = 0; c < 4; c++) {
+          assertEquals(
+              x + "," + y, COLORS[expected[y][x]][c], data[(y * frame.getWidth() + x) * 4 + c] & 0xFF);
+        }
+      }
+    }
+  }
+
+  private int[][] fill(final int width, final int height, final int color) {
+    int[][] result = new int[height][width];
+    for (int[] row : result) {
+      Arrays.fill(row, color);
+    }
+    return result;
+  }
+
+  private void fill(
+      final int[][] canvas,
+      final int x,
+      final int y,
+      final int width,
+      final int height,
+      final int color) {
+    for (int i = y; i < y + height; i++) {
+      Arrays.fill(canvas[i], x, x + width, color);
+    }
+  }
+
+  private int[][] copy(final int[][] canvas) {
+    int[][] result = new int[canvas.length][];
+    for (int i = 0; i < canvas.length; i++) {
+      result[i] = canvas[i].clone();
+    }
+    return result;
+  }
+
+  private void put(
+      final byte[] data,
+      final int width,
+      final int x,
+      final int y,
+      final int red,
+      final int green,
+      final int blue,
+      final int alpha) {
+    int i = (y * width + x) * 4;
+    data[i] = (byte) red;
+    data[i + 1] = (byte) green;
+    data[i + 2] = (byte) blue;
+    data[i + 3] = (byte) alpha;
+  }
+
+  /**
+   * Four frames on an 8x6 canvas: red everywhere, blue with a transparent pixel that is restored to the previous
+   * canvas, green that is cleared to the background and a single white pixel.
+   */
+  private byte[] gif() throws Exception {
+    ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageOutputStream imageOut = ImageIO.createImageOutputStream(out);
+    try {
+      writer.setOutput(imageOut);
+      writer.prepareWriteSequence(null);
+      writeFrame(writer, frame(8, 6, RED, -1), 0, 0, "none", 10, true);
+      writeFrame(writer, frame(3, 3, BLUE, 1), 1, 1, "restoreToPrevious", 5, false);
+      writeFrame(writer, frame(3, 3, GREEN, -1), 4, 2, "restoreToBackgroundColor", 2, false);
+      writeFrame(writer, frame(1, 1, WHITE, -1), 0, 0, "none", 3, false);
+      writer.endWriteSequence();
+    } finally {
+      imageOut.close();
+      writer.dispose();
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * An indexed image of the given color where the pixel at transparentX of the first row is transparent.
+   */
+  private BufferedImage frame(final int width, final int height, final int color, final int transparentX) {
+    // GIF color tables have a power of two size
+    byte[] red = new byte[8];
+    byte[] green = new byte[8];
+    byte[] blue = new byte[8];
+    for (int i = 0; i < COLORS.length; i++) {
+      red[i] = (byte) COLORS[i][0];
+      green[i] = (byte) COLORS[i][1];
+      blue[i] = (byte) COLORS[i][2];
+    }
+    IndexColorModel colorModel = new IndexColorModel(8, red.length, red, green, blue, 0);
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, colorModel);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        image.getRaster().setSample(x, y, 0, y == 0 && x == transparentX ? 0 : color);
+      }
+    }
+    return image;
+  }
+
+  private void writeFrame(
+      final ImageWriter writer,
+      final BufferedImage image,
+      final int x,
+      final int y,
+      final String disposal,
+      final int delay,
+      final boolean loop) throws Exception {
+    // the writer loses the last pass of small interlaced frames
+    ImageWriteParam param = writer.getDefaultWriteParam();
+    param.setProgressiveMode(ImageWriteParam.MODE_DISABLED);
+    IIOMetadata metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image), param);
+    IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(GIF_IMAGE_METADATA);
+
+    IIOMetadataNode descriptor = child(root, "ImageDescriptor");
+    descriptor.setAttribute("imageLeftPosition", Integer.toString(x));
+    descriptor.setAttribute("imageTopPosition", Integer.toString(y));
+
+    IIOMetadataNode control = child(root, "GraphicControlExtension");
+    control.setAttribute("disposalMethod", disposal);
+    control.setAttribute("userInputFlag", "FALSE");
+    control.setAttribute("transparentColorFlag", "TRUE");
+    control.setAttribute("delayTime", Integer.toString(delay));
+    control.setAttribute("transparentColorIndex", "0");
+
+    // without a local color table the writer maps the pixels to its default global one
+    IndexColorModel colorModel = (IndexColorModel) image.getColorModel();
+    IIOMetadataNode colorTable = child(root, "LocalColorTable");
+    while (colorTable.hasChildNodes()) {
+      colorTable.removeChild(colorTable.getFirstChild());
+    }
+    colorTable.setAttribute("sizeOfLocalColorTable", Integer.toString(colorModel.getMapSize()));
+    colorTable.setAttribute("sortFlag", "FALSE");
+    for (int i = 0; i < colorModel.getMapSize(); i++) {
+      IIOMetadataNode entry = new IIOMetadataNode("ColorTableEntry");
+      entry.setAttribute("index", Integer.toString(i));
+      entry.setAttribute("red", Integer.toString(colorModel.getRed(i)));
+      entry.setAttribute("green", Integer.toString(colorModel.getGreen(i)));
+      entry.setAttribute("blue", Integer.toString(colorModel.getBlue(i)));
+      colorTable.appendChild(entry);
+    }
+
+    if (loop) {
+      IIOMetadataNode extension = new IIOMetadataNode("ApplicationExtension");
+      extension.setAttribute("applicationID", "NETSCAPE");
+      extension.setAttribute("authenticationCode", "2.0");
+      extension.setUserObject(new byte[] { 1, 0, 0 });
+      child(root, "ApplicationExtensions").appendChild(extension);
+    }
+    metadata.setFromTree(GIF_IMAGE_METADATA, root);
+    writer.writeToSequence(new IIOImage(image, null, metadata), param);
+  }
+
+  private IIOMetadataNode child(final IIOMetadataNode parent, final String name) {
+    for (int i = 0; i < parent.getLength(); i++) {
+      if (parent.item(i).getNodeName().equals(name)) {
+        return (IIOMetadataNode) parent.item(i);
+      }
+    }
+    IIOMetadataNode node = new IIOMetadataNode(name);
+    parent.appendChild(node);
+    return node;
+  }
+
+  /**
+   * Three frames on a 4x3 RGBA canvas. The default image is the first frame, the second one blends a blue and a half
+   * transparent green pixel over it and is cleared afterwards, the third one replaces a single pixel.
+   */
+  private byte[] apng() throws Exception {
+    byte[] pixels = new byte[4 * 3 * 4];
+    for (int i = 0; i < 4 * 3; i++) {
+      pixels[i * 4] = (byte) 200;
+      pixels[i * 4 + 1] = (byte) 100;
+      pixels[i * 4 + 2] = (byte) 50;
+      pixels[i * 4 + 3] = (byte) 255;
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    DataOutputStream data = new DataOutputStream(out);
+    data.write(new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' });
+    chunk(data, "IHDR", ints(4, 3), new byte[] { 8, 6, 0, 0, 0 });
+    chunk(data, "acTL", ints(3, 2));
+    chunk(data, "fcTL", ints(0, 4, 3, 0, 0), frameControl(1, 10, 0, 0));
+    chunk(data, "IDAT", compress(pixels, 4, 3));
+    chunk(data, "fcTL", ints(1, 2, 1, 1, 1), frameControl(0, 0, 1, 1));
+    chunk(data, "fdAT", ints(2), compress(new byte[] { 0, 0, (byte) 255, (byte) 255, 0, (byte) 255, 0, (byte) 128 }, 2, 1));
+    chunk(data, "fcTL", ints(3, 1, 1, 3, 2), frameControl(1, 4, 0, 0));
+    chunk(data, "fdAT", ints(4), compress(new byte[] { 9, 9, 9, (byte) 255 }, 1, 1));
+    chunk(data, "IEND");
+    return out.toByteArray();
+  }
+
+  private byte[] frameControl(final int numerator, final int denominator, final int dispose, final int blend) {
+    return new byte[] { 0, (byte) numerator, 0, (byte) denominator, (byte) dispose, (byte) blend };
+  }
+
+  private byte[] ints(final int... values) {
+    ByteBuffer buffer = ByteBuffer.allocate(values.length * 4);
+    for (int value : values) {
+      buffer.putInt(value);
+    }
+    return buffer.array();
+  }
+
+  private void chunk(final DataOutputStream out, final String type, final byte[]... parts) throws IOException {
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    content.write(type.getBytes("US-ASCII"));
+    for (byte[] part : parts) {
+      content.write(part);
+    }
+    byte[] bytes = content.toByteArray();
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    out.writeInt(bytes.length - 4);
+    out.write(bytes);
+    out.writeInt((int) crc.getValue());
+  }
+
+  private byte[] compress(final byte[] rgba, final int width, final int height) {
+    byte[] raw = new byte[height * (1 + width * 4)];
+    for (int y = 0; y < height; y++) {
+      System.arraycopy(rgba, y * width * 4, raw, y * (1 + width * 4) + 1, width * 4);
+    }
+    Deflater deflater = new Deflater();
+    deflater.setInput(raw);
+    deflater.finish();
+    byte[] buffer = new byte[raw.length + 64];
+    int length = deflater.deflate(buffer);
+    deflater.end();
+    return Arrays.copyOf(buffer, length);
+  }
+
+  private byte[] data(final ImageData imageData) {
+    byte[] data = new byte[imageData.getData().remaining()];
+    imageData.getData().duplicate().get(data);
+    return data;
+  }
+}
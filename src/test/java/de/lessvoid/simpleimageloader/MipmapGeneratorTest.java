@@ -0,0 +1,115 @@
+package de.lessvoid.simpleimageloader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+import de.lessvoid.simpleimageloader.buffer.DirectBufferAllocator;
+
+public class MipmapGeneratorTest {
+
+  @Test
+  public void testAlphaWeightedChain() {
+    byte r = (byte) 0xFF;
+    byte[] pixels = new byte[] {
+        r, 0, 0, r,    0, 0, 0, 0,    0, r, 0, r,    0, r, 0, r,
+        r, 0, 0, r,    0, 0, 0, 0,    0, 0, r, r,    0, 0, r, r };
+    ImageData mipmaps = MipmapGenerator.generate(image(4, 2, 32, pixels), false, new DirectBufferAllocator());
+
+    assertEquals(3, mipmaps.getMipmapCount());
+    assertEquals(0, mipmaps.getMipmapOffset(0));
+    assertEquals(32, mipmaps.getMipmapOffset(1));
+    assertEquals(40, mipmaps.getMipmapOffset(2));
+    assertEquals(44, mipmaps.getData().limit());
+    assertEquals(2, mipmaps.getMipmapWidth(1));
+    assertEquals(1, mipmaps.getMipmapHeight(1));
+
+    assertArrayEquals(pixels, data(mipmaps.getMipmapData(0)));
+    // the transparent pixels don't darken the red
+    assertArrayEquals(new byte[] { r, 0, 0, (byte) 128, 0, (byte) 128, (byte) 128, r }, data(mipmaps.getMipmapData(1)));
+    assertArrayEquals(new byte[] { 85, 85, 85, (byte) 192 }, data(mipmaps.getMipmapData(2)));
+  }
+
+  @Test
+  public void testPremultiplied() {
+    byte h = (byte) 128;
+    byte[] pixels = new byte[] { h, 0, 0, h,    0, 0, 0, 0,    h, 0, 0, h,    0, 0, 0, 0 };
+    ImageData mipmaps = MipmapGenerator.generate(image(2, 2, 32, pixels), true, true, new DirectBufferAllocator());
+    // not weighted by alpha - the colors are averaged in linear space and the alpha value as it is
+    assertArrayEquals(new byte[] { 92, 0, 0, 64 }, data(mipmaps.getMipmapData(1)));
+  }
+
+  @Test
+  public void testOddSize24() {
+    byte[] pixels = new byte[3 * 3 * 3];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = (byte) (i * 8);
+    }
+    ImageData mipmaps = MipmapGenerator.generate(image(3, 3, 24, pixels), false, new DirectBufferAllocator());
+    assertEquals(2, mipmaps.getMipmapCount());
+    // the average of the upper left 2x2 pixels
+    assertArrayEquals(new byte[] { 48, 56, 64 }, data(mipmaps.getMipmapData(1)));
+  }
+
+  @Test
+  public void testSRGB() {
+    byte w = (byte) 0xFF;
+    byte[] pixels = new byte[] { 0, 0, 0,    w, w, w,    0, 0, 0,    w, w, w };
+    ImageData linear = MipmapGenerator.generate(image(2, 2, 24, pixels), false, new DirectBufferAllocator());
+    ImageData srgb = MipmapGenerator.generate(image(2, 2, 24, pixels), true, new DirectBufferAllocator());
+    assertArrayEquals(new byte[] { (byte) 128, (byte) 128, (byte) 128 }, data(linear.getMipmapData(1)));
+    assertArrayEquals(new byte[] { (byte) 188, (byte) 188, (byte) 188 }, data(srgb.getMipmapData(1)));
+  }
+
+  @Test
+  public void testPackedFormat() {
+    byte r = (byte) 0xFF;
+    byte[] rgba = new byte[] {
+        r, 0, 0, r,    0, 0, 0, 0,
+        r, 0, 0, r,    0, 0, 0, 0 };
+    byte[] pixels = new byte[4 * 2];
+    PixelFormat.RGBA4444.pack(rgba, 0, pixels, 4, true);
+    ByteBuffer data = ByteBuffer.allocateDirect(pixels.length).order(ByteOrder.nativeOrder());
+    data.put(pixels).flip();
+    ImageData image = new ImageData(2, 2, 2, 2, PixelFormat.RGBA4444, data, null);
+    ImageData mipmaps = MipmapGenerator.generate(image, false, new DirectBufferAllocator());
+
+    assertEquals(PixelFormat.RGBA4444, mipmaps.getPixelFormat());
+    assertEquals(2, mipmaps.getMipmapCount());
+    assertEquals(8, mipmaps.getMipmapOffset(1));
+    // filtered in RGBA and weighted by alpha - the red isn't darkened, the alpha of 128 becomes 8 of 15
+    byte[] level = new byte[4];
+    PixelFormat.RGBA4444.unpack(data(mipmaps.getMipmapData(1)), 0, level, 1);
+    assertArrayEquals(new byte[] { r, 0, 0, (byte) 136 }, level);
+  }
+
+  @Test
+  public void testLoadWithMipmaps() throws Exception {
+    ImageData imageData = new SimpleImageLoader().load(
+        "demo.png", MipmapGeneratorTest.class.getResourceAsStream("/demo.png"), new SimpleImageLoaderConfig().mipmaps());
+    ImageData plain = new SimpleImageLoader().load(
+        "demo.png", MipmapGeneratorTest.class.getResourceAsStream("/demo.png"), new SimpleImageLoaderConfig());
+
+    // 11x5, 5x2, 2x1, 1x1
+    assertEquals(4, imageData.getMipmapCount());
+    assertEquals(11 * 5 * 3, imageData.getMipmapOffset(1));
+    assertEquals((11 * 5 + 5 * 2 + 2 + 1) * 3, imageData.getData().limit());
+    assertEquals(plain.getData(), imageData.getMipmapData(0));
+  }
+
+  private ImageData image(final int width, final int height, final int bpp, final byte[] pixels) {
+    ByteBuffer data = ByteBuffer.allocateDirect(pixels.length).order(ByteOrder.nativeOrder());
+    data.put(pixels).flip();
+    return new ImageData(width, height, width, height, bpp, data);
+  }
+
+  private byte[] data(final ByteBuffer buffer) {
+    byte[] data = new byte[buffer.remaining()];
+    buffer.duplicate().get(data);
+    return data;
+  }
+}
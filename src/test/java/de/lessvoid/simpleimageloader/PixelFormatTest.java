@@ -0,0 +1,93 @@
+package de.lessvoid.simpleimageloader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+public class PixelFormatTest {
+  private static final byte[] PIXELS = new byte[] {
+      (byte) 255, 0, 0, (byte) 255,
+      0, (byte) 255, 0, (byte) 128,
+      0, 0, (byte) 255, 0,
+      (byte) 200, (byte) 200, (byte) 200, (byte) 255,
+      (byte) 17, (byte) 99, (byte) 180, (byte) 60 };
+
+  @Test
+  public void testSizes() {
+    for (PixelFormat format : PixelFormat.values()) {
+      byte[] packed = new byte[5 * format.getBitsPerPixel() / 8];
+      // the target is exactly as large as the format needs
+      format.pack(PIXELS, 0, packed, 5, true);
+    }
+    assertEquals(16, PixelFormat.RGB565.getBitsPerPixel());
+    assertEquals(8, PixelFormat.A8.getBitsPerPixel());
+  }
+
+  @Test
+  public void testRGB565() {
+    byte[] packed = new byte[2 * 2];
+    PixelFormat.RGB565.pack(PIXELS, 0, packed, 2, true);
+    ByteBuffer buffer = ByteBuffer.wrap(packed).order(ByteOrder.nativeOrder());
+    assertEquals(0xF800, buffer.getShort(0) & 0xFFFF);
+    assertEquals(0x07E0, buffer.getShort(2) & 0xFFFF);
+  }
+
+  @Test
+  public void testRoundTrip() {
+    for (PixelFormat format : PixelFormat.values()) {
+      byte[] packed = new byte[5 * format.getBitsPerPixel() / 8];
+      byte[] rgba = new byte[5 * 4];
+      byte[] again = new byte[packed.length];
+      format.pack(PIXELS, 0, packed, 5, true);
+      format.unpack(packed, 0, rgba, 5);
+      format.pack(rgba, 0, again, 5, true);
+      assertArrayEquals(format.name(), packed, again);
+    }
+  }
+
+  @Test
+  public void testPrecision() {
+    byte[] packed = new byte[5 * 2];
+    byte[] rgba = new byte[5 * 4];
+    PixelFormat.RGBA4444.pack(PIXELS, 0, packed, 5, true);
+    PixelFormat.RGBA4444.unpack(packed, 0, rgba, 5);
+    for (int i = 0; i < rgba.length; i++) {
+      assertTrue(Math.abs((PIXELS[i] & 0xFF) - (rgba[i] & 0xFF)) <= 8);
+    }
+  }
+
+  @Test
+  public void testLuminanceAndAlpha() {
+    byte[] packed = new byte[5 * 2];
+    PixelFormat.LA88.pack(PIXELS, 0, packed, 5, true);
+    // gray stays the same and alpha is copied
+    assertEquals(200, packed[6] & 0xFF);
+    assertEquals(255, packed[7] & 0xFF);
+    assertEquals(60, packed[9] & 0xFF);
+
+    byte[] alpha = new byte[5];
+    PixelFormat.A8.pack(PIXELS, 0, alpha, 5, true);
+    assertArrayEquals(new byte[] { (byte) 255, (byte) 128, 0, (byte) 255, 60 }, alpha);
+
+    // without alpha in the image the luminance becomes the alpha
+    PixelFormat.A8.pack(PIXELS, 12, alpha, 1, false);
+    assertEquals(200, alpha[0] & 0xFF);
+  }
+
+  @Test
+  public void testOneBitAlpha() {
+    byte[] packed = new byte[5 * 2];
+    byte[] rgba = new byte[5 * 4];
+    PixelFormat.RGBA5551.pack(PIXELS, 0, packed, 5, true);
+    PixelFormat.RGBA5551.unpack(packed, 0, rgba, 5);
+    assertEquals(255, rgba[3] & 0xFF);
+    assertEquals(255, rgba[7] & 0xFF);
+    assertEquals(0, rgba[11] & 0xFF);
+    assertEquals(0, rgba[19] & 0xFF);
+  }
+}
@@ -0,0 +1,57 @@
+package de.lessvoid.simpleimageloader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+public class SimpleImageLoaderConfigTest {
+
+  @Test
+  public void testEqualConfigs() {
+    SimpleImageLoaderConfig a = new SimpleImageLoaderConfig().flipped().transparent(new int[] { 1, 2, 3 });
+    SimpleImageLoaderConfig b = new SimpleImageLoaderConfig().transparent(new int[] { 1, 2, 3 }).flipped();
+    assertEquals(a, b);
+    assertEquals(a.hashCode(), b.hashCode());
+  }
+
+  @Test
+  public void testDifferentConfigs() {
+    assertFalse(new SimpleImageLoaderConfig().equals(new SimpleImageLoaderConfig().modeARGB()));
+    assertFalse(new SimpleImageLoaderConfig().transparent(new int[] { 1, 2, 3 }).equals(
+        new SimpleImageLoaderConfig().transparent(new int[] { 1, 2, 4 })));
+    assertFalse(new SimpleImageLoaderConfig().blockCompression(BlockCompression.BC1).equals(
+        new SimpleImageLoaderConfig().blockCompression(BlockCompression.BC3)));
+    assertFalse(new SimpleImageLoaderConfig().equals(new SimpleImageLoaderConfig().pixelFormat(PixelFormat.RGB565)));
+    assertFalse(new SimpleImageLoaderConfig().premultipliedAlpha().equals(new SimpleImageLoaderConfig().srgbToLinear()));
+    assertFalse(new SimpleImageLoaderConfig().subsample(2).equals(new SimpleImageLoaderConfig().maxDimension(2)));
+    assertFalse(new SimpleImageLoaderConfig().subsample(2).equals(new SimpleImageLoaderConfig().subsample(2).boxFilter()));
+    assertFalse(new SimpleImageLoaderConfig().equals(new SimpleImageLoaderConfig().padding(Padding.CLAMP)));
+    assertFalse(new SimpleImageLoaderConfig().sizeMultipleOf(4).equals(new SimpleImageLoaderConfig().rowAlignment(4)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSizeMultipleMustBePositive() {
+    new SimpleImageLoaderConfig().sizeMultipleOf(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRowAlignmentMustBePowerOfTwo() {
+    new SimpleImageLoaderConfig().rowAlignment(12);
+  }
+
+  @Test
+  public void testCopyIsIndependent() {
+    int[] transparent = new int[] { 1, 2, 3 };
+    SimpleImageLoaderConfig config =
+        new SimpleImageLoaderConfig().powerOfTwoSupport().transparent(transparent).padding(Padding.WRAP);
+    SimpleImageLoaderConfig copy = new SimpleImageLoaderConfig(config);
+    assertEquals(config, copy);
+
+    transparent[0] = 9;
+    config.forceAlpha();
+    assertEquals(
+        new SimpleImageLoaderConfig().powerOfTwoSupport().transparent(new int[] { 1, 2, 3 }).padding(Padding.WRAP),
+        copy);
+  }
+}
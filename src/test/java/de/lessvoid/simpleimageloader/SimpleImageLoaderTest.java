@@ -2,13 +2,57 @@ package de.lessvoid.simpleimageloader;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.imageio.ImageIO;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.lessvoid.simpleimageloader.buffer.PooledBufferAllocator;
+import de.lessvoid.simpleimageloader.metrics.LoadEvent;
+import de.lessvoid.simpleimageloader.metrics.LoadListener;
+import de.lessvoid.simpleimageloader.type.ImageType;
+import de.lessvoid.simpleimageloader.type.ImageTypeImageIO;
+import de.lessvoid.simpleimageloader.type.ImageTypeTGA;
 
 public class SimpleImageLoaderTest {
   private SimpleImageLoader loader;
 
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   // the 24 bit image data
   private byte[] expectedImageData24 = new byte[] {
       (byte)0xF1, (byte)0xFB, (byte)0x3D, (byte)0x08, (byte)0x00, (byte)0x00, (byte)0x06, (byte)0x02, 
@@ -91,6 +135,487 @@ public class SimpleImageLoaderTest {
     assertImage(32, expectedImageData32, loader.load("demo.tga", SimpleImageLoaderTest.class.getResourceAsStream("/demo.tga"), new SimpleImageLoaderConfig().forceAlpha()));
   }
 
+  @Test
+  public void testLoadTGATransparent() throws Exception {
+    byte[] expected = expectedImageData32.clone();
+    expected[3] = 0;
+    assertImage(32, expected, loader.load("demo.tga", SimpleImageLoaderTest.class.getResourceAsStream("/demo.tga"), new SimpleImageLoaderConfig().transparent(new int[] { 0xF1, 0xFB, 0x3D })));
+  }
+
+  @Test
+  public void testLoadImageIOTransparent() throws Exception {
+    byte[] expected = expectedImageData32.clone();
+    expected[3] = 0;
+    loader.registerImageType("png", new ImageTypeImageIO());
+    assertImage(32, expected, loader.load("demo.png", SimpleImageLoaderTest.class.getResourceAsStream("/demo.png"), new SimpleImageLoaderConfig().transparent(new int[] { 0xF1, 0xFB, 0x3D })));
+  }
+
+  @Test
+  public void testLoadTGAIntoDestination() throws Exception {
+    ByteBuffer destination = ByteBuffer.allocateDirect(expectedImageData32.length + 10);
+    destination.position(10);
+    ImageData image = loader.load("demo.tga", SimpleImageLoaderTest.class.getResourceAsStream("/demo.tga"), new SimpleImageLoaderConfig().forceAlpha(), destination);
+    assertImage(32, expectedImageData32, image);
+    assertEquals(10, destination.position());
+    assertEquals(expectedImageData32[0], destination.get(10));
+  }
+
+  @Test
+  public void testLoadPNGIntoDestination() throws Exception {
+    ByteBuffer destination = ByteBuffer.allocateDirect(expectedImageData24.length);
+    assertImage(24, expectedImageData24, loader.load("demo.png", SimpleImageLoaderTest.class.getResourceAsStream("/demo.png"), new SimpleImageLoaderConfig(), destination));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testLoadIntoTooSmallDestination() throws Exception {
+    loader.load("demo.tga", SimpleImageLoaderTest.class.getResourceAsStream("/demo.tga"), new SimpleImageLoaderConfig(), ByteBuffer.allocateDirect(10));
+  }
+
+  @Test
+  public void testLoadWithPooledBufferAllocator() throws Exception {
+    loader.setBufferAllocator(new PooledBufferAllocator());
+    ImageData first = loader.load("demo.tga", SimpleImageLoaderTest.class.getResourceAsStream("/demo.tga"), new SimpleImageLoaderConfig().forceAlpha());
+    ByteBuffer firstData = first.getData();
+    first.release();
+
+    ImageData second = loader.load("demo.tga", SimpleImageLoaderTest.class.getResourceAsStream("/demo.tga"));
+    assertSame(firstData, second.getData());
+    assertImage(24, expectedImageData24, second);
+  }
+
+  @Test
+  public void testFailedLoadGivesBufferBack() throws Exception {
+    PooledBufferAllocator allocator = new PooledBufferAllocator();
+    loader.setBufferAllocator(allocator);
+    byte[] tga = Files.readAllBytes(resourcePath("/demo.tga"));
+    try {
+      loader.load("demo.tga", new ByteArrayInputStream(Arrays.copyOf(tga, tga.length / 2)));
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+    assertTrue(allocator.getPooledBytes() > 0);
+  }
+
+  @Test
+  public void testLoadTGAFromPath() throws Exception {
+    assertImage(24, expectedImageData24, loader.load(resourcePath("/demo.tga")));
+    assertImage(32, expectedImageData32, loader.load(resourcePath("/demo.tga"), new SimpleImageLoaderConfig().forceAlpha()));
+  }
+
+  @Test
+  public void testLoadPNGFromPath() throws Exception {
+    assertImage(24, expectedImageData24, loader.load(resourcePath("/demo.png")));
+  }
+
+  @Test
+  public void testLoadTGAModeARGB() throws Exception {
+    byte[] expected = expectedImageData32.clone();
+    for (int i = 0; i < expected.length; i += 4) {
+      expected[i] = expectedImageData32[i + 2];
+      expected[i + 2] = expectedImageData32[i];
+    }
+    SimpleImageLoaderConfig config = new SimpleImageLoaderConfig().forceAlpha().modeARGB();
+    assertImage(32, expected, loader.load("demo.tga", SimpleImageLoaderTest.class.getResourceAsStream("/demo.tga"), config));
+    assertImage(32, expected, loader.load("demo.png", SimpleImageLoaderTest.class.getResourceAsStream("/demo.png"), config));
+  }
+
+  @Test
+  public void testLoadMappedTGAWithoutCopy() throws Exception {
+    byte[] pixels = new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 0, 0, 0, 0 };
+    File file = writeTGA32TopDown(2, 2, pixels);
+
+    ImageData view = loader.load(file.toPath(), new SimpleImageLoaderConfig().modeARGB());
+    assertTrue(view.getData().isReadOnly());
+    assertData(pixels, view);
+
+    ImageData copy = loader.load(file.toPath(), new SimpleImageLoaderConfig());
+    assertFalse(copy.getData().isReadOnly());
+    assertData(new byte[] { 3, 2, 1, 4, 7, 6, 5, 8, 11, 10, 9, 12, 0, 0, 0, 0 }, copy);
+  }
+
+  @Test
+  public void testLoadMappedTGAWithTransparentPixels() throws Exception {
+    // fully transparent pixels must be black which forces a copy
+    File file = writeTGA32TopDown(1, 2, new byte[] { 1, 2, 3, 4, 5, 6, 7, 0 });
+    ImageData image = loader.load(file.toPath(), new SimpleImageLoaderConfig().modeARGB());
+    assertFalse(image.getData().isReadOnly());
+    assertData(new byte[] { 1, 2, 3, 4, 0, 0, 0, 0 }, image);
+  }
+
+  @Test
+  public void testProbeTGA() throws Exception {
+    InputStream inputStream = SimpleImageLoaderTest.class.getResourceAsStream("/demo.tga");
+    try {
+      assertInfo(11, 5, 24, false, loader.probe("demo.tga", inputStream));
+      // just the header has been read
+      assertEquals(209 - 18, inputStream.available());
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  @Test
+  public void testProbe() throws Exception {
+    assertInfo(11, 5, 24, false, loader.probe(resourcePath("/demo.png")));
+    assertInfo(11, 5, 24, false, loader.probe(resourcePath("/demo.tga")));
+
+    File tga = writeTGA32TopDown(3, 5, new byte[3 * 5 * 4]);
+    ImageInfo info = loader.probe(tga.toPath());
+    assertInfo(3, 5, 32, true, info);
+    assertEquals(4, info.getPowerOfTwoWidth());
+    assertEquals(8, info.getPowerOfTwoHeight());
+
+    ByteArrayOutputStream bmp = new ByteArrayOutputStream();
+    ImageIO.write(new BufferedImage(17, 3, BufferedImage.TYPE_3BYTE_BGR), "bmp", bmp);
+    assertInfo(17, 3, 24, false, loader.probe("image.bmp", new ByteArrayInputStream(bmp.toByteArray())));
+  }
+
+  @Test
+  public void testExtensionIsNotCaseSensitive() throws Exception {
+    assertImage(24, expectedImageData24, loader.load("DEMO.TGA", SimpleImageLoaderTest.class.getResourceAsStream("/demo.tga")));
+    assertImage(24, expectedImageData24, loader.load("Demo.Png", SimpleImageLoaderTest.class.getResourceAsStream("/demo.png")));
+  }
+
+  @Test
+  public void testTypeIsDetectedFromContent() throws Exception {
+    assertImage(24, expectedImageData24, loader.load("demo.png", SimpleImageLoaderTest.class.getResourceAsStream("/demo.tga")));
+    assertImage(24, expectedImageData24, loader.load("demo.tga", SimpleImageLoaderTest.class.getResourceAsStream("/demo.png")));
+    assertImage(24, expectedImageData24, loader.load("demo", SimpleImageLoaderTest.class.getResourceAsStream("/demo.tga")));
+    assertInfo(11, 5, 24, false, loader.probe("demo.jpg", SimpleImageLoaderTest.class.getResourceAsStream("/demo.tga")));
+
+    // a mislabeled BMP is left to ImageIO instead of failing in the TGA decoder
+    ByteArrayOutputStream bmp = new ByteArrayOutputStream();
+    ImageIO.write(new BufferedImage(17, 3, BufferedImage.TYPE_3BYTE_BGR), "bmp", bmp);
+    ImageData image = loader.load("image.tga", new ByteArrayInputStream(bmp.toByteArray()));
+    assertEquals(17, image.getWidth());
+    assertEquals(3, image.getHeight());
+
+    // data that isn't recognized at all still works with a non mark supporting InputStream
+    InputStream tga = new FilterInputStream(SimpleImageLoaderTest.class.getResourceAsStream("/demo.tga")) {
+      @Override
+      public boolean markSupported() {
+        return false;
+      }
+    };
+    assertImage(24, expectedImageData24, loader.load("demo.tga", tga));
+  }
+
+  @Test
+  public void testImageTypeWithoutCanDecodeIsUsedForItsExtension() throws Exception {
+    final AtomicInteger loads = new AtomicInteger();
+    loader.registerImageType("PNG", new ImageType() {
+      @Override
+      public ImageData load(final SimpleImageLoaderConfig config, final InputStream inputStream) throws IOException {
+        loads.incrementAndGet();
+        return new ImageTypeImageIO().load(config, inputStream);
+      }
+    });
+    assertImage(24, expectedImageData24, loader.load("demo.png", SimpleImageLoaderTest.class.getResourceAsStream("/demo.png")));
+    assertEquals(1, loads.get());
+
+    // but the content still wins when another ImageType claims it
+    assertImage(24, expectedImageData24, loader.load("demo.png", SimpleImageLoaderTest.class.getResourceAsStream("/demo.tga")));
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void testUnsupportedFormat() throws Exception {
+    try {
+      loader.load("unknown.xyz", new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }));
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("Unsupported"));
+      return;
+    }
+    throw new AssertionError("unknown data should fail");
+  }
+
+  @Test
+  public void testMaxDimensionWithImageIO() throws Exception {
+    ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+    ImageIO.write(new BufferedImage(40, 20, BufferedImage.TYPE_3BYTE_BGR), "jpeg", jpeg);
+    // the second load reuses the ImageReader of the first one
+    for (int i = 0; i < 2; i++) {
+      ImageData image = loader.load("image.jpg", new ByteArrayInputStream(jpeg.toByteArray()), new SimpleImageLoaderConfig().maxDimension(10));
+      assertEquals(10, image.getWidth());
+      assertEquals(5, image.getHeight());
+    }
+    ImageData image = loader.load("image.jpg", new ByteArrayInputStream(jpeg.toByteArray()), new SimpleImageLoaderConfig().subsample(3).boxFilter());
+    assertEquals(14, image.getWidth());
+    assertEquals(7, image.getHeight());
+  }
+
+  @Test
+  public void testLoadAll() throws Exception {
+    List<ImageSource> sources = new ArrayList<ImageSource>();
+    sources.add(new ImageSource("demo.tga", SimpleImageLoaderTest.class.getResourceAsStream("/demo.tga")));
+    sources.add(new ImageSource("broken.tga", new ByteArrayInputStream(new byte[] { 1, 2, 3 })));
+    sources.add(new ImageSource(resourcePath("/demo.png")));
+
+    List<LoadResult> results = loader.loadAll(sources, new SimpleImageLoaderConfig());
+    assertEquals(3, results.size());
+    assertImage(24, expectedImageData24, results.get(0).getImageData());
+    assertFalse(results.get(1).isSuccess());
+    assertNull(results.get(1).getImageData());
+    assertTrue(results.get(1).getException() instanceof IOException);
+    assertSame(sources.get(2), results.get(2).getSource());
+    assertImage(24, expectedImageData24, results.get(2).getImageData());
+  }
+
+  @Test
+  public void testLoadAllLimitsConcurrentLoads() throws Exception {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    loader.registerImageType("slow", new ImageType() {
+      @Override
+      public ImageData load(final SimpleImageLoaderConfig config, final InputStream inputStream) throws IOException {
+        int now = running.incrementAndGet();
+        maxRunning.accumulateAndGet(now, Math::max);
+        try {
+          Thread.sleep(20);
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        } finally {
+          running.decrementAndGet();
+        }
+        return new ImageData(1, 1, 1, 1, 32, ByteBuffer.allocateDirect(4));
+      }
+    });
+
+    List<ImageSource> sources = new ArrayList<ImageSource>();
+    for (int i = 0; i < 12; i++) {
+      sources.add(new ImageSource("image.slow", new ByteArrayInputStream(new byte[0])));
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<LoadResult> results = loader.loadAll(sources, new SimpleImageLoaderConfig(), executor, 2);
+      for (LoadResult result : results) {
+        assertTrue(result.isSuccess());
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertTrue(maxRunning.get() <= 2);
+  }
+
+  @Test
+  public void testLoadAllClosesSourcesWhenInterrupted() throws Exception {
+    final AtomicInteger closed = new AtomicInteger();
+    List<ImageSource> sources = new ArrayList<ImageSource>();
+    for (int i = 0; i < 3; i++) {
+      sources.add(new ImageSource("demo.tga", new FilterInputStream(new ByteArrayInputStream(new byte[0])) {
+        @Override
+        public void close() throws IOException {
+          closed.incrementAndGet();
+          super.close();
+        }
+      }));
+    }
+    Thread.currentThread().interrupt();
+    try {
+      loader.loadAll(sources, new SimpleImageLoaderConfig());
+      fail();
+    } catch (InterruptedException e) {
+      // expected
+    }
+    assertEquals(3, closed.get());
+  }
+
+  @Test
+  public void testLoadAsync() throws Exception {
+    CompletableFuture<ImageData> tga = loader.loadAsync("demo.tga", SimpleImageLoaderTest.class.getResourceAsStream("/demo.tga"), new SimpleImageLoaderConfig());
+    CompletableFuture<ImageData> png = loader.loadAsync(resourcePath("/demo.png"), new SimpleImageLoaderConfig());
+    assertImage(24, expectedImageData24, tga.get());
+    assertImage(24, expectedImageData24, png.get());
+  }
+
+  @Test
+  public void testLoadAsyncCancelStopsDecoding() throws Exception {
+    final int width = 64;
+    final int height = 256;
+    final byte[] header = new byte[] { 0, 0, 2, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte) width, 0, (byte) height, 1, 24, 0 };
+    final CountDownLatch started = new CountDownLatch(1);
+    final AtomicInteger rowsRead = new AtomicInteger();
+
+    // a slow TGA that hands out one scanline per read
+    InputStream slowTGA = new InputStream() {
+      private int position;
+
+      @Override
+      public int read() {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public int read(final byte[] b, final int off, final int len) {
+        if (position < header.length) {
+          int count = Math.min(len, header.length - position);
+          System.arraycopy(header, position, b, off, count);
+          position += count;
+          return count;
+        }
+        started.countDown();
+        rowsRead.incrementAndGet();
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+        return Math.min(len, width * 3);
+      }
+    };
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      CompletableFuture<ImageData> future = loader.loadAsync("slow.tga", slowTGA, new SimpleImageLoaderConfig(), executor);
+      started.await();
+      assertTrue(future.cancel(true));
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+      assertTrue(future.isCancelled());
+      assertTrue(rowsRead.get() < height);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testLoadAsyncKeepsOtherInterrupts() throws Exception {
+    final AtomicBoolean interrupted = new AtomicBoolean();
+    loader.loadAsync(
+        "demo.tga", SimpleImageLoaderTest.class.getResourceAsStream("/demo.tga"), new SimpleImageLoaderConfig(),
+        new Executor() {
+          @Override
+          public void execute(final Runnable command) {
+            // like shutdownNow() of the Executor while the load is running
+            Thread.currentThread().interrupt();
+            command.run();
+            interrupted.set(Thread.interrupted());
+          }
+        });
+    assertTrue(interrupted.get());
+  }
+
+  @Test
+  public void testSharedLoaderWhileRegisteringImageTypes() throws Exception {
+    ByteArrayOutputStream bmp = new ByteArrayOutputStream();
+    ImageIO.write(new BufferedImage(17, 3, BufferedImage.TYPE_3BYTE_BGR), "bmp", bmp);
+    final byte[] bmpData = bmp.toByteArray();
+    final AtomicInteger failures = new AtomicInteger();
+    final CountDownLatch done = new CountDownLatch(4);
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      for (int t = 0; t < 4; t++) {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              for (int i = 0; i < 50; i++) {
+                assertImage(24, expectedImageData24, loader.load("demo.tga", SimpleImageLoaderTest.class.getResourceAsStream("/demo.tga")));
+                assertImage(24, expectedImageData24, loader.load("demo.png", SimpleImageLoaderTest.class.getResourceAsStream("/demo.png")));
+                assertEquals(17, loader.load("image.bmp", new ByteArrayInputStream(bmpData)).getWidth());
+              }
+            } catch (Throwable e) {
+              failures.incrementAndGet();
+            } finally {
+              done.countDown();
+            }
+          }
+        });
+      }
+      for (int i = 0; !done.await(1, TimeUnit.MILLISECONDS); i++) {
+        loader.registerImageType("other" + i, new ImageTypeImageIO());
+        loader.setDefaultImageType(new ImageTypeImageIO());
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(0, failures.get());
+  }
+
+  @Test
+  public void testLoadListener() throws Exception {
+    final List<LoadEvent> events = new ArrayList<LoadEvent>();
+    loader.setLoadListener(new LoadListener() {
+      @Override
+      public void loaded(final LoadEvent event) {
+        events.add(event);
+      }
+    });
+    SimpleImageLoaderConfig config = new SimpleImageLoaderConfig().mipmaps();
+    ImageData mipmapped = loader.load("demo.tga", SimpleImageLoaderTest.class.getResourceAsStream("/demo.tga"), config);
+    loader.load(resourcePath("/demo.png"));
+    ByteArrayOutputStream bmp = new ByteArrayOutputStream();
+    ImageIO.write(new BufferedImage(17, 3, BufferedImage.TYPE_3BYTE_BGR), "bmp", bmp);
+    loader.load("image.bmp", new ByteArrayInputStream(bmp.toByteArray()));
+    try {
+      loader.load("broken.tga", new ByteArrayInputStream(new byte[] { 1, 2, 3 }));
+    } catch (IOException e) {
+      // expected
+    }
+
+    assertEquals(4, events.size());
+    LoadEvent tga = events.get(0);
+    assertTrue(tga.isSuccess());
+    assertEquals("demo.tga", tga.getName());
+    assertTrue(tga.getImageType() instanceof ImageTypeTGA);
+    assertFalse(tga.isFallback());
+    assertFalse(tga.isCached());
+    assertSame(config, tga.getConfig());
+    // the header and the pixels, the footer at the end of the file is never read
+    assertEquals(18 + 11 * 5 * 3, tga.getInputBytes());
+    assertEquals(mipmapped.getData().remaining(), tga.getOutputBytes());
+    assertTrue(tga.getOutputBytes() > 11 * 5 * 3);
+    assertTrue(tga.getTotalNanos() >= tga.getReadNanos() + tga.getDecodeNanos() + tga.getPostProcessNanos());
+
+    LoadEvent png = events.get(1);
+    assertEquals("ImageTypePNG", png.getFormat());
+    assertEquals(new File(resourcePath("/demo.png").toString()).length(), png.getInputBytes());
+    assertEquals(11 * 5 * 3, png.getOutputBytes());
+    assertEquals(0, png.getReadNanos());
+
+    LoadEvent imageIO = events.get(2);
+    assertTrue(imageIO.isFallback());
+    // ImageIO stops reading once it has all the pixels
+    assertTrue(imageIO.getInputBytes() > 0 && imageIO.getInputBytes() <= bmp.size());
+
+    LoadEvent broken = events.get(3);
+    assertFalse(broken.isSuccess());
+    assertTrue(broken.getException() instanceof IOException);
+    assertEquals(0, broken.getOutputBytes());
+
+    loader.setLoadListener(null);
+    loader.load("demo.tga", SimpleImageLoaderTest.class.getResourceAsStream("/demo.tga"));
+    assertEquals(4, events.size());
+  }
+
+  private Path resourcePath(final String name) throws Exception {
+    return Paths.get(SimpleImageLoaderTest.class.getResource(name).toURI());
+  }
+
+  private File writeTGA32TopDown(final int width, final int height, final byte[] pixels) throws Exception {
+    byte[] header = new byte[] { 0, 0, 2, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte) width, 0, (byte) height, 0, 32, 0x28 };
+    File file = temporaryFolder.newFile("image.tga");
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(header);
+      out.write(pixels);
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  private void assertInfo(final int width, final int height, final int bpp, final boolean alpha, final ImageInfo info) {
+    assertEquals(width, info.getWidth());
+    assertEquals(height, info.getHeight());
+    assertEquals(bpp, info.getBitsPerPixel());
+    assertEquals(alpha, info.hasAlpha());
+  }
+
+  private void assertData(final byte[] expectedData, final ImageData image) {
+    byte[] data = new byte[image.getData().limit()];
+    image.getData().get(data);
+    assertArrayEquals(expectedData, data);
+  }
+
   private void assertImage(final int bpp, final byte[] expectedData, final ImageData image) {
     assertEquals(11, image.getWidth());
     assertEquals(5, image.getHeight());
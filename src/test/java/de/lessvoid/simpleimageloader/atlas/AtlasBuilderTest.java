@@ -0,0 +1,173 @@
+package de.lessvoid.simpleimageloader.atlas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import de.lessvoid.simpleimageloader.ImageData;
+import de.lessvoid.simpleimageloader.ImageSource;
+import de.lessvoid.simpleimageloader.SimpleImageLoader;
+import de.lessvoid.simpleimageloader.SimpleImageLoaderConfig;
+import de.lessvoid.simpleimageloader.buffer.PooledBufferAllocator;
+
+public class AtlasBuilderTest {
+  private final SimpleImageLoader loader = new SimpleImageLoader();
+  private final List<byte[]> images = new ArrayList<byte[]>();
+
+  @Test
+  public void testImagesAreCopiedToTheirRegions() throws Exception {
+    createImages(20, 5, 17);
+    Atlas atlas = new AtlasBuilder(loader, 64, 64).build(sources(), new SimpleImageLoaderConfig());
+    assertEquals(1, atlas.getPages().size());
+    assertRegions(atlas, new SimpleImageLoaderConfig(), 0);
+  }
+
+  @Test
+  public void testFlippedModeARGB() throws Exception {
+    createImages(20, 5, 17);
+    SimpleImageLoaderConfig config = new SimpleImageLoaderConfig().flipped().modeARGB();
+    Atlas atlas = new AtlasBuilder(loader, 64, 64).padding(1).build(sources(), config);
+    assertRegions(atlas, config, 1);
+  }
+
+  @Test
+  public void testFullPagesStartNewPages() throws Exception {
+    createImages(12, 16, 16);
+    Atlas atlas = new AtlasBuilder(loader, 32, 32).padding(2).build(sources(), new SimpleImageLoaderConfig());
+    // the first image is 20x20 with padding and gets a page of its own
+    assertTrue(atlas.getPages().size() > 1);
+    assertEquals(0, atlas.getRegions().get(0).getPage());
+    assertRegions(atlas, new SimpleImageLoaderConfig(), 2);
+  }
+
+  @Test
+  public void testBleed() throws Exception {
+    createImages(1, 3, 2);
+    Atlas atlas = new AtlasBuilder(loader, 16, 16).padding(2).bleed().build(sources(), new SimpleImageLoaderConfig());
+    AtlasRegion region = atlas.getRegions().get(0);
+    ByteBuffer page = atlas.getPages().get(0).getData();
+    int x = region.getX();
+    int y = region.getY();
+    for (int b = 1; b <= 2; b++) {
+      assertEquals(pixel(page, 16, x, y), pixel(page, 16, x - b, y));
+      assertEquals(pixel(page, 16, x + 2, y + 1), pixel(page, 16, x + 2 + b, y + 1));
+      assertEquals(pixel(page, 16, x + 1, y), pixel(page, 16, x + 1, y - b));
+      assertEquals(pixel(page, 16, x + 2, y + 1), pixel(page, 16, x + 2 + b, y + 1 + b));
+    }
+  }
+
+  @Test
+  public void testBuffersComeFromTheAllocator() throws Exception {
+    PooledBufferAllocator allocator = new PooledBufferAllocator();
+    loader.setBufferAllocator(allocator);
+    // leave a dirty buffer of the page size in the pool
+    ByteBuffer dirty = allocator.allocate(64 * 64 * 4);
+    while (dirty.hasRemaining()) {
+      dirty.put((byte) 0xFF);
+    }
+    allocator.release(dirty);
+
+    createImages(5, 5, 17);
+    Atlas atlas = new AtlasBuilder(loader, 64, 64).padding(1).build(sources(), new SimpleImageLoaderConfig());
+    ImageData page = atlas.getPages().get(0);
+    assertEquals(0, pixel(page.getData(), 64, 63, 63));
+    for (AtlasRegion region : atlas.getRegions()) {
+      assertEquals(0, pixel(page.getData(), 64, region.getX() - 1, region.getY() - 1));
+    }
+
+    // only the staging buffer is back in the pool
+    long staging = allocator.getPooledBytes();
+    assertTrue(staging > 0);
+    page.release();
+    assertEquals(staging + 64 * 64 * 4, allocator.getPooledBytes());
+  }
+
+  @Test(expected = IOException.class)
+  public void testImageLargerThanPage() throws Exception {
+    createImages(1, 40, 10);
+    new AtlasBuilder(loader, 32, 32).build(sources(), new SimpleImageLoaderConfig());
+  }
+
+  private void assertRegions(final Atlas atlas, final SimpleImageLoaderConfig config, final int padding) throws Exception {
+    SimpleImageLoaderConfig imageConfig = new SimpleImageLoaderConfig().forceAlpha();
+    if (config.isFlipped()) {
+      imageConfig.flipped();
+    }
+    if (config.isModeARGB()) {
+      imageConfig.modeARGB();
+    }
+    List<AtlasRegion> regions = atlas.getRegions();
+    assertEquals(images.size(), regions.size());
+    for (int i = 0; i < regions.size(); i++) {
+      AtlasRegion region = regions.get(i);
+      ImageData expected = loader.load("image.png", new ByteArrayInputStream(images.get(i)), imageConfig);
+      ImageData page = atlas.getPages().get(region.getPage());
+      assertEquals(expected.getWidth(), region.getWidth());
+      assertEquals(expected.getHeight(), region.getHeight());
+      assertTrue(region.getX() >= padding && region.getX() + region.getWidth() + padding <= page.getWidth());
+      assertTrue(region.getY() >= padding && region.getY() + region.getHeight() + padding <= page.getHeight());
+      for (int y = 0; y < region.getHeight(); y++) {
+        for (int x = 0; x < region.getWidth(); x++) {
+          assertEquals(
+              pixel(expected.getData(), region.getWidth(), x, y),
+              pixel(page.getData(), page.getWidth(), region.getX() + x, region.getY() + y));
+        }
+      }
+      for (int j = 0; j < i; j++) {
+        assertFalse(overlap(regions.get(j), region, padding));
+      }
+    }
+  }
+
+  private boolean overlap(final AtlasRegion a, final AtlasRegion b, final int padding) {
+    return a.getPage() == b.getPage() &&
+        a.getX() - padding < b.getX() + b.getWidth() + padding &&
+        b.getX() - padding < a.getX() + a.getWidth() + padding &&
+        a.getY() - padding < b.getY() + b.getHeight() + padding &&
+        b.getY() - padding < a.getY() + a.getHeight() + padding;
+  }
+
+  private int pixel(final ByteBuffer data, final int width, final int x, final int y) {
+    return data.getInt((y * width + x) * 4);
+  }
+
+  private void createImages(final int count, final int maxWidth, final int maxHeight) throws Exception {
+    Random random = new Random(count);
+    for (int i = 0; i < count; i++) {
+      BufferedImage image = new BufferedImage(
+          1 + random.nextInt(maxWidth), 1 + random.nextInt(maxHeight), BufferedImage.TYPE_INT_RGB);
+      if (i == 0) {
+        image = new BufferedImage(maxWidth, maxHeight, BufferedImage.TYPE_INT_RGB);
+      }
+      for (int y = 0; y < image.getHeight(); y++) {
+        for (int x = 0; x < image.getWidth(); x++) {
+          image.setRGB(x, y, random.nextInt());
+        }
+      }
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ImageIO.write(image, "png", out);
+      images.add(out.toByteArray());
+    }
+  }
+
+  private List<ImageSource> sources() {
+    List<ImageSource> sources = new ArrayList<ImageSource>();
+    for (byte[] image : images) {
+      sources.add(new ImageSource("image.png", new ByteArrayInputStream(image)));
+    }
+    return sources;
+  }
+}
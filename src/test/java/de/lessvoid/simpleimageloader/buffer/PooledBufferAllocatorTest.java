@@ -0,0 +1,94 @@
+package de.lessvoid.simpleimageloader.buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+public class PooledBufferAllocatorTest {
+
+  @Test
+  public void testAllocateRoundsUpToSizeClass() {
+    ByteBuffer buffer = new PooledBufferAllocator(1024 * 1024, 16).allocate(100);
+    assertTrue(buffer.isDirect());
+    assertEquals(ByteOrder.nativeOrder(), buffer.order());
+    assertEquals(128, buffer.capacity());
+    assertEquals(0, buffer.position());
+    assertEquals(100, buffer.limit());
+  }
+
+  @Test
+  public void testReleasedBufferIsReused() {
+    PooledBufferAllocator allocator = new PooledBufferAllocator(1024 * 1024, 16);
+    ByteBuffer buffer = allocator.allocate(100);
+    buffer.position(50);
+    allocator.release(buffer);
+    assertEquals(128, allocator.getPooledBytes());
+
+    ByteBuffer reused = allocator.allocate(120);
+    assertSame(buffer, reused);
+    assertEquals(0, reused.position());
+    assertEquals(120, reused.limit());
+    assertEquals(0, allocator.getPooledBytes());
+  }
+
+  @Test
+  public void testDifferentSizeClassIsNotReused() {
+    PooledBufferAllocator allocator = new PooledBufferAllocator(1024 * 1024, 16);
+    ByteBuffer buffer = allocator.allocate(100);
+    allocator.release(buffer);
+    assertNotSame(buffer, allocator.allocate(200));
+  }
+
+  @Test
+  public void testPoolLimit() {
+    PooledBufferAllocator allocator = new PooledBufferAllocator(256, 16);
+    allocator.release(allocator.allocate(256));
+    allocator.release(allocator.allocate(128));
+    assertEquals(256, allocator.getPooledBytes());
+  }
+
+  @Test
+  public void testForeignBuffersAreIgnored() {
+    PooledBufferAllocator allocator = new PooledBufferAllocator(1024 * 1024, 16);
+    allocator.release(ByteBuffer.allocate(128));
+    allocator.release(ByteBuffer.allocateDirect(100));
+    allocator.release(ByteBuffer.allocateDirect(128));
+    assertEquals(0, allocator.getPooledBytes());
+  }
+
+  @Test
+  public void testSecondReleaseIsIgnored() {
+    PooledBufferAllocator allocator = new PooledBufferAllocator(1024 * 1024, 16);
+    ByteBuffer buffer = allocator.allocate(100);
+    allocator.release(buffer);
+    allocator.release(buffer);
+    assertEquals(128, allocator.getPooledBytes());
+
+    // the buffer must only be handed out once
+    assertSame(buffer, allocator.allocate(100));
+    assertNotSame(buffer, allocator.allocate(100));
+  }
+
+  @Test
+  public void testReleaseAfterReuse() {
+    PooledBufferAllocator allocator = new PooledBufferAllocator(1024 * 1024, 16);
+    ByteBuffer buffer = allocator.allocate(100);
+    allocator.release(buffer);
+    allocator.release(allocator.allocate(100));
+    assertEquals(128, allocator.getPooledBytes());
+  }
+
+  @Test
+  public void testClear() {
+    PooledBufferAllocator allocator = new PooledBufferAllocator(1024 * 1024, 16);
+    allocator.release(allocator.allocate(100));
+    allocator.clear();
+    assertEquals(0, allocator.getPooledBytes());
+  }
+}
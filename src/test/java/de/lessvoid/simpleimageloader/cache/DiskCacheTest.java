@@ -0,0 +1,175 @@
+package de.lessvoid.simpleimageloader.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.lessvoid.simpleimageloader.BlockCompression;
+import de.lessvoid.simpleimageloader.ImageData;
+import de.lessvoid.simpleimageloader.PixelFormat;
+import de.lessvoid.simpleimageloader.SimpleImageLoader;
+import de.lessvoid.simpleimageloader.SimpleImageLoaderConfig;
+import de.lessvoid.simpleimageloader.type.ImageType;
+import de.lessvoid.simpleimageloader.type.ImageTypePNG;
+
+public class DiskCacheTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final AtomicInteger decodes = new AtomicInteger();
+  private Path directory;
+  private SimpleImageLoader loader;
+
+  @Before
+  public void before() throws Exception {
+    directory = temporaryFolder.newFolder("cache").toPath();
+    loader = new SimpleImageLoader();
+    loader.setDiskCache(new DiskCache(directory));
+    loader.registerImageType("png", new ImageType() {
+      @Override
+      public ImageData load(final SimpleImageLoaderConfig config, final InputStream inputStream) throws IOException {
+        decodes.incrementAndGet();
+        return new ImageTypePNG().load(config, inputStream);
+      }
+    });
+  }
+
+  @Test
+  public void testSecondLoadIsServedFromCache() throws Exception {
+    SimpleImageLoaderConfig config = new SimpleImageLoaderConfig().flipped().forceAlpha().powerOfTwoSupport();
+    ImageData decoded = loader.load(resourcePath("/demo.png"), config);
+    ImageData cached = loader.load(resourcePath("/demo.png"), config);
+    assertEquals(1, decodes.get());
+    assertTrue(cached.getData().isReadOnly());
+    assertSameImage(decoded, cached);
+
+    // a fresh loader (the next run) finds the entry as well
+    SimpleImageLoader next = new SimpleImageLoader();
+    next.setDiskCache(new DiskCache(directory));
+    assertSameImage(decoded, next.load("demo.png", DiskCacheTest.class.getResourceAsStream("/demo.png"), config));
+  }
+
+  @Test
+  public void testInputStreamIsClosedOnMissAndHit() throws Exception {
+    for (int i = 0; i < 2; i++) {
+      final AtomicBoolean closed = new AtomicBoolean();
+      InputStream inputStream = new FilterInputStream(DiskCacheTest.class.getResourceAsStream("/demo.png")) {
+        @Override
+        public void close() throws IOException {
+          closed.set(true);
+          super.close();
+        }
+      };
+      loader.load("demo.png", inputStream, new SimpleImageLoaderConfig());
+      assertTrue(closed.get());
+    }
+    assertEquals(1, decodes.get());
+  }
+
+  @Test
+  public void testBlockCompressedEntry() throws Exception {
+    SimpleImageLoaderConfig config = new SimpleImageLoaderConfig().mipmaps().blockCompression(BlockCompression.BC3);
+    ImageData decoded = loader.load(resourcePath("/demo.png"), config);
+    ImageData cached = loader.load(resourcePath("/demo.png"), config);
+    assertEquals(1, decodes.get());
+    assertEquals(BlockCompression.BC3, cached.getBlockCompression());
+    assertSameImage(decoded, cached);
+  }
+
+  @Test
+  public void testPixelFormatEntry() throws Exception {
+    SimpleImageLoaderConfig config = new SimpleImageLoaderConfig().mipmaps().pixelFormat(PixelFormat.RGBA5551);
+    ImageData decoded = loader.load(resourcePath("/demo.png"), config);
+    ImageData cached = loader.load(resourcePath("/demo.png"), config);
+    assertEquals(1, decodes.get());
+    assertEquals(PixelFormat.RGBA5551, cached.getPixelFormat());
+    assertSameImage(decoded, cached);
+  }
+
+  @Test
+  public void testChangedConfigOrContentIsDecodedAgain() throws Exception {
+    byte[] content = Files.readAllBytes(resourcePath("/demo.png"));
+    loader.load("demo.png", new ByteArrayInputStream(content), new SimpleImageLoaderConfig());
+    loader.load("demo.png", new ByteArrayInputStream(content), new SimpleImageLoaderConfig().modeARGB());
+    assertEquals(2, decodes.get());
+
+    // an additional chunk after IEND doesn't change the pixels but the content
+    byte[] changed = new byte[content.length + 1];
+    System.arraycopy(content, 0, changed, 0, content.length);
+    loader.load("demo.png", new ByteArrayInputStream(changed), new SimpleImageLoaderConfig());
+    assertEquals(3, decodes.get());
+
+    loader.load("demo.png", new ByteArrayInputStream(content), new SimpleImageLoaderConfig());
+    assertEquals(3, decodes.get());
+  }
+
+  @Test
+  public void testBrokenEntryIsIgnored() throws Exception {
+    DiskCache cache = new DiskCache(directory);
+    ByteBuffer content = ByteBuffer.wrap(new byte[] { 1, 2, 3 });
+    String key = cache.key(content, new ImageTypePNG(), new SimpleImageLoaderConfig());
+    cache.put(key, new ImageData(1, 1, 1, 1, 32, ByteBuffer.allocateDirect(4)));
+    assertNotNull(cache.get(key));
+
+    Path file = directory.resolve(key + ".sil");
+    byte[] truncated = Files.readAllBytes(file);
+    Files.write(file, Arrays.copyOf(truncated, truncated.length - 1));
+    assertNull(cache.get(key));
+    assertFalse(Files.exists(file));
+  }
+
+  @Test
+  public void testMipmaps() throws Exception {
+    SimpleImageLoaderConfig config = new SimpleImageLoaderConfig().forceAlpha().mipmaps();
+    ImageData decoded = loader.load(resourcePath("/demo.png"), config);
+    ImageData cached = loader.load(resourcePath("/demo.png"), config);
+    assertEquals(1, decodes.get());
+    assertSameImage(decoded, cached);
+    assertEquals(decoded.getMipmapCount(), cached.getMipmapCount());
+    for (int i = 0; i < decoded.getMipmapCount(); i++) {
+      assertEquals(decoded.getMipmapOffset(i), cached.getMipmapOffset(i));
+    }
+  }
+
+  @Test
+  public void testClear() throws Exception {
+    DiskCache cache = new DiskCache(directory);
+    loader.load(resourcePath("/demo.png"), new SimpleImageLoaderConfig());
+    cache.clear();
+    loader.load(resourcePath("/demo.png"), new SimpleImageLoaderConfig());
+    assertEquals(2, decodes.get());
+  }
+
+  private void assertSameImage(final ImageData expected, final ImageData actual) {
+    assertEquals(expected.getWidth(), actual.getWidth());
+    assertEquals(expected.getHeight(), actual.getHeight());
+    assertEquals(expected.getOriginalWidth(), actual.getOriginalWidth());
+    assertEquals(expected.getOriginalHeight(), actual.getOriginalHeight());
+    assertEquals(expected.getBitsPerPixel(), actual.getBitsPerPixel());
+    assertEquals(expected.getPixelFormat(), actual.getPixelFormat());
+    assertEquals(expected.getData(), actual.getData());
+  }
+
+  private Path resourcePath(final String name) throws Exception {
+    return Paths.get(DiskCacheTest.class.getResource(name).toURI());
+  }
+}
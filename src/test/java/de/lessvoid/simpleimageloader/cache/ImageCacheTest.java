@@ -0,0 +1,248 @@
+package de.lessvoid.simpleimageloader.cache;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.lessvoid.simpleimageloader.ImageData;
+import de.lessvoid.simpleimageloader.SimpleImageLoader;
+import de.lessvoid.simpleimageloader.SimpleImageLoaderConfig;
+import de.lessvoid.simpleimageloader.buffer.BufferAllocator;
+import de.lessvoid.simpleimageloader.type.ImageType;
+
+public class ImageCacheTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final AtomicInteger decodes = new AtomicInteger();
+  private final AtomicInteger releases = new AtomicInteger();
+  private final BufferAllocator allocator = new BufferAllocator() {
+    @Override
+    public ByteBuffer allocate(final int size) {
+      return ByteBuffer.allocateDirect(size);
+    }
+
+    @Override
+    public void release(final ByteBuffer buffer) {
+      releases.incrementAndGet();
+    }
+  };
+  private volatile CountDownLatch decodeStarted = new CountDownLatch(0);
+  private volatile CountDownLatch decodeGate = new CountDownLatch(0);
+  private SimpleImageLoader loader;
+
+  @Before
+  public void before() {
+    loader = new SimpleImageLoader();
+    // the decoded data is copied into a buffer of this allocator
+    loader.setBufferAllocator(allocator);
+    // decodes to a 1 x n image of 4 bytes per byte of input
+    loader.registerImageType("count", new ImageType() {
+      @Override
+      public ImageData load(final SimpleImageLoaderConfig config, final InputStream inputStream) throws IOException {
+        decodes.incrementAndGet();
+        decodeStarted.countDown();
+        try {
+          decodeGate.await();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        int size = 0;
+        while (inputStream.read() != -1) {
+          size++;
+        }
+        ByteBuffer data = ByteBuffer.allocateDirect(size * 4);
+        return new ImageData(1, size, 1, size, 32, data);
+      }
+    });
+  }
+
+  @Test
+  public void testSameContentIsDecodedOnce() throws Exception {
+    ImageCache cache = new ImageCache(loader, 1024);
+    ImageData first = cache.load("a.count", stream(4), new SimpleImageLoaderConfig());
+    ImageData second = cache.load("b.count", stream(4), new SimpleImageLoaderConfig());
+    assertEquals(1, decodes.get());
+    assertEquals(4, second.getHeight());
+    assertEquals(16, cache.getBytes());
+    assertEquals(1, cache.size());
+
+    // both share the same data but can't change it or give it away
+    first.release();
+    assertEquals(16, second.getData().remaining());
+    try {
+      second.getData().put(0, (byte) 1);
+    } catch (ReadOnlyBufferException e) {
+      return;
+    }
+    throw new AssertionError("cached data should be read only");
+  }
+
+  @Test
+  public void testExtensionIsNotCaseSensitive() throws Exception {
+    ImageCache cache = new ImageCache(loader, 1024);
+    cache.load("a.count", stream(4), new SimpleImageLoaderConfig());
+    cache.load("a.COUNT", stream(4), new SimpleImageLoaderConfig());
+    assertEquals(1, decodes.get());
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testDifferentConfigIsDecodedAgain() throws Exception {
+    ImageCache cache = new ImageCache(loader, 1024);
+    SimpleImageLoaderConfig config = new SimpleImageLoaderConfig();
+    cache.load("a.count", stream(4), config);
+    config.flipped();
+    cache.load("a.count", stream(4), config);
+    cache.load("a.count", stream(4), new SimpleImageLoaderConfig().flipped());
+    assertEquals(2, decodes.get());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedIsEvicted() throws Exception {
+    ImageCache cache = new ImageCache(loader, 40);
+    cache.load("a.count", stream(4), new SimpleImageLoaderConfig());
+    cache.load("b.count", stream(5), new SimpleImageLoaderConfig());
+    cache.load("a.count", stream(4), new SimpleImageLoaderConfig());
+    assertEquals(2, decodes.get());
+
+    // 16 + 20 + 12 bytes exceed the budget and b is the least recently used
+    cache.load("c.count", stream(3), new SimpleImageLoaderConfig());
+    assertEquals(28, cache.getBytes());
+    cache.load("a.count", stream(4), new SimpleImageLoaderConfig());
+    assertEquals(3, decodes.get());
+    cache.load("b.count", stream(5), new SimpleImageLoaderConfig());
+    assertEquals(4, decodes.get());
+  }
+
+  @Test
+  public void testEvictedImageIsGivenBackAfterTheLastRelease() throws Exception {
+    ImageCache cache = new ImageCache(loader, 40);
+    ImageData first = cache.load("a.count", stream(4), new SimpleImageLoaderConfig());
+    ImageData second = cache.load("a.count", stream(4), new SimpleImageLoaderConfig());
+    cache.load("b.count", stream(5), new SimpleImageLoaderConfig()).release();
+
+    // a is evicted but still in use
+    cache.load("c.count", stream(3), new SimpleImageLoaderConfig());
+    assertEquals(0, releases.get());
+    first.release();
+    first.release();
+    assertEquals(0, releases.get());
+    second.release();
+    assertEquals(1, releases.get());
+
+    // b is not in use anymore and given back right away
+    cache.load("d.count", stream(6), new SimpleImageLoaderConfig());
+    assertEquals(2, releases.get());
+  }
+
+  @Test
+  public void testClearGivesBackUnusedImages() throws Exception {
+    ImageCache cache = new ImageCache(loader, 1024);
+    cache.load("a.count", stream(4), new SimpleImageLoaderConfig()).release();
+    ImageData used = cache.load("b.count", stream(5), new SimpleImageLoaderConfig());
+    cache.clear();
+    assertEquals(1, releases.get());
+    used.release();
+    assertEquals(2, releases.get());
+  }
+
+  @Test
+  public void testImageLargerThanBudgetIsNotCached() throws Exception {
+    ImageCache cache = new ImageCache(loader, 8);
+    ImageData image = cache.load("a.count", stream(4), new SimpleImageLoaderConfig());
+    assertEquals(4, image.getHeight());
+    assertEquals(0, cache.getBytes());
+    assertEquals(0, cache.size());
+    image.release();
+    assertEquals(1, releases.get());
+  }
+
+  @Test
+  public void testConcurrentLoadsDecodeOnce() throws Exception {
+    final ImageCache cache = new ImageCache(loader, 1024);
+    decodeStarted = new CountDownLatch(1);
+    decodeGate = new CountDownLatch(1);
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<ImageData>> results = new ArrayList<Future<ImageData>>();
+      for (int i = 0; i < 4; i++) {
+        results.add(executor.submit(new Callable<ImageData>() {
+          @Override
+          public ImageData call() throws Exception {
+            return cache.load("a.count", stream(4), new SimpleImageLoaderConfig());
+          }
+        }));
+      }
+      decodeStarted.await();
+      Thread.sleep(50);
+      decodeGate.countDown();
+      for (Future<ImageData> result : results) {
+        assertEquals(4, result.get().getHeight());
+        result.get().release();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(1, decodes.get());
+
+    // every thread got its own view
+    cache.clear();
+    assertEquals(1, releases.get());
+  }
+
+  @Test
+  public void testChangedFileIsLoadedAgain() throws Exception {
+    ImageCache cache = new ImageCache(loader, 1024);
+    Path file = temporaryFolder.newFile("image.count").toPath();
+    Files.write(file, new byte[4]);
+    FileTime modified = Files.getLastModifiedTime(file);
+
+    assertEquals(4, cache.load(file, new SimpleImageLoaderConfig()).getHeight());
+    assertEquals(4, cache.load(file, new SimpleImageLoaderConfig()).getHeight());
+    assertEquals(1, decodes.get());
+
+    Files.write(file, new byte[6]);
+    Files.setLastModifiedTime(file, FileTime.fromMillis(modified.toMillis() + 2000));
+    assertEquals(6, cache.load(file, new SimpleImageLoaderConfig()).getHeight());
+    assertEquals(2, decodes.get());
+  }
+
+  @Test
+  public void testFailedLoadIsNotCached() throws Exception {
+    ImageCache cache = new ImageCache(loader, 1024);
+    try {
+      cache.load("broken.tga", stream(4), new SimpleImageLoaderConfig());
+    } catch (IOException e) {
+      assertEquals(0, cache.size());
+      assertEquals(0, cache.getBytes());
+      return;
+    }
+    throw new AssertionError("broken TGA should fail");
+  }
+
+  private InputStream stream(final int size) {
+    return new ByteArrayInputStream(new byte[size]);
+  }
+}
@@ -0,0 +1,101 @@
+package de.lessvoid.simpleimageloader.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lessvoid.simpleimageloader.SimpleImageLoader;
+import de.lessvoid.simpleimageloader.SimpleImageLoaderConfig;
+import de.lessvoid.simpleimageloader.type.ImageType;
+import de.lessvoid.simpleimageloader.type.ImageTypePNG;
+import de.lessvoid.simpleimageloader.type.ImageTypeTGA;
+
+public class LoadRecorderTest {
+
+  @Test
+  public void testHistogram() {
+    Histogram histogram = new Histogram();
+    assertEquals(0, histogram.getPercentile(0.5));
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i);
+    }
+    histogram.record(-5);
+    assertEquals(101, histogram.getCount());
+    assertEquals(5050, histogram.getSum());
+    assertEquals(100, histogram.getMax());
+    // 50 is in the bucket from 32 to 63, 99 in the one from 64 to 127 which is capped by the max
+    assertEquals(63, histogram.getPercentile(0.5));
+    assertEquals(100, histogram.getPercentile(0.99));
+    assertEquals(0, histogram.getPercentile(0));
+    long[] buckets = histogram.getBuckets();
+    assertEquals(1, buckets[0]);
+    assertEquals(1, buckets[1]);
+    assertEquals(2, buckets[2]);
+    assertEquals(100 - 63, buckets[7]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testHistogramPercentileOutOfRange() {
+    new Histogram().getPercentile(1.5);
+  }
+
+  @Test
+  public void testRecorder() {
+    LoadRecorder recorder = new LoadRecorder(2);
+    recorder.loaded(event("a.png", new ImageTypePNG(), 300, null));
+    recorder.loaded(event("b.png", new ImageTypePNG(), 100, null));
+    recorder.loaded(event("c.tga", new ImageTypeTGA(), 200, null));
+    recorder.loaded(event("d.tga", new ImageTypeTGA(), 999, new IOException()));
+
+    assertEquals(3, recorder.getAll().getCount());
+    assertEquals(1, recorder.getAll().getFailures());
+    assertEquals(600, recorder.getAll().getTotalNanos().getSum());
+    assertEquals(2, recorder.getStatistics("ImageTypePNG").getCount());
+    assertEquals(1, recorder.getStatistics("ImageTypeTGA").getCount());
+    assertEquals(1, recorder.getStatistics("ImageTypeTGA").getFailures());
+    assertNull(recorder.getStatistics("ImageTypeImageIO"));
+    assertEquals("[ImageTypePNG, ImageTypeTGA]", recorder.getFormats().toString());
+
+    List<LoadEvent> slowest = recorder.getSlowest();
+    assertEquals(2, slowest.size());
+    assertEquals("a.png", slowest.get(0).getName());
+    assertEquals("c.tga", slowest.get(1).getName());
+    assertTrue(recorder.toString().contains("ImageTypePNG: loads=2"));
+  }
+
+  @Test
+  public void testRecorderWithLoader() throws Exception {
+    LoadRecorder recorder = new LoadRecorder();
+    SimpleImageLoader loader = new SimpleImageLoader();
+    loader.setLoadListener(recorder);
+    for (int i = 0; i < 3; i++) {
+      loader.load("demo.tga", LoadRecorderTest.class.getResourceAsStream("/demo.tga"));
+      loader.load("demo.png", LoadRecorderTest.class.getResourceAsStream("/demo.png"));
+    }
+    assertEquals(6, recorder.getAll().getCount());
+    assertEquals(3, recorder.getStatistics("ImageTypeTGA").getCount());
+    assertEquals(3 * 11 * 5 * 3, recorder.getStatistics("ImageTypePNG").getOutputBytes().getSum());
+  }
+
+  private LoadEvent event(final String name, final ImageType imageType, final long totalNanos, final Exception e) {
+    return new LoadEvent(
+        name,
+        imageType,
+        false,
+        false,
+        new SimpleImageLoaderConfig(),
+        100,
+        e == null ? 200 : 0,
+        0,
+        totalNanos,
+        0,
+        0,
+        totalNanos,
+        e);
+  }
+}
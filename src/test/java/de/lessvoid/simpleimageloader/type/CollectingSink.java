@@ -0,0 +1,93 @@
+package de.lessvoid.simpleimageloader.type;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+
+import de.lessvoid.simpleimageloader.ImageData;
+import de.lessvoid.simpleimageloader.ScanlineSink;
+import de.lessvoid.simpleimageloader.SimpleImageLoaderConfig;
+
+/**
+ * A ScanlineSink that puts the streamed rows back together and checks that every row is delivered exactly once in
+ * bands of at most bandHeight rows.
+ */
+class CollectingSink implements ScanlineSink {
+  private final int bandHeight;
+  private int width;
+  private int height;
+  private int bitsPerPixel;
+  private byte[] data;
+  private boolean[] delivered;
+  private int bands;
+  private boolean ended;
+
+  CollectingSink(final int bandHeight) {
+    this.bandHeight = bandHeight;
+  }
+
+  /**
+   * Streams the image and checks that the rows are the same as the ones load() returns without power of two padding.
+   */
+  static void assertStreamSameAsLoad(
+      final ImageType type,
+      final byte[] content,
+      final SimpleImageLoaderConfig config,
+      final int bandHeight) throws Exception {
+    ImageData expected = type.load(config, new ByteArrayInputStream(content));
+    CollectingSink sink = new CollectingSink(bandHeight);
+    type.stream(config, new ByteArrayInputStream(content), sink, bandHeight);
+
+    assertTrue(sink.ended);
+    assertEquals(expected.getOriginalWidth(), sink.width);
+    assertEquals(expected.getOriginalHeight(), sink.height);
+    assertEquals(expected.getBitsPerPixel(), sink.bitsPerPixel);
+    assertEquals((sink.height + bandHeight - 1) / bandHeight, sink.bands);
+    for (boolean row : sink.delivered) {
+      assertTrue(row);
+    }
+
+    int rowSize = sink.width * sink.bitsPerPixel / 8;
+    int stride = expected.getWidth() * expected.getBitsPerPixel() / 8;
+    for (int y = 0; y < sink.height; y++) {
+      byte[] row = new byte[rowSize];
+      ByteBuffer data = expected.getData().duplicate();
+      data.position(y * stride);
+      data.get(row);
+      byte[] actual = new byte[rowSize];
+      System.arraycopy(sink.data, y * rowSize, actual, 0, rowSize);
+      assertArrayEquals("row " + y, row, actual);
+    }
+  }
+
+  @Override
+  public void start(final int width, final int height, final int bitsPerPixel) {
+    assertTrue(data == null);
+    this.width = width;
+    this.height = height;
+    this.bitsPerPixel = bitsPerPixel;
+    data = new byte[width * height * bitsPerPixel / 8];
+    delivered = new boolean[height];
+  }
+
+  @Override
+  public void rows(final ByteBuffer rows, final int y, final int count) {
+    int rowSize = width * bitsPerPixel / 8;
+    assertTrue(count > 0 && count <= bandHeight);
+    assertEquals(count * rowSize, rows.remaining());
+    for (int i = y; i < y + count; i++) {
+      assertTrue("row " + i + " delivered twice", !delivered[i]);
+      delivered[i] = true;
+    }
+    rows.get(data, y * rowSize, count * rowSize);
+    bands++;
+  }
+
+  @Override
+  public void end() {
+    ended = true;
+  }
+}
@@ -0,0 +1,35 @@
+package de.lessvoid.simpleimageloader.type;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class DecodeScratchTest {
+
+  @Test
+  public void testRowsAreReusedWhenTheSizeMatches() {
+    DecodeScratch scratch = DecodeScratch.acquire();
+    byte[] row = scratch.row(0, 16);
+    row[3] = 42;
+    scratch.release();
+
+    scratch = DecodeScratch.acquire();
+    byte[] again = scratch.row(0, 16);
+    assertSame(row, again);
+    assertArrayEquals(new byte[16], again);
+    assertNotSame(again, scratch.row(0, 17));
+    scratch.release();
+  }
+
+  @Test
+  public void testNestedAcquireGetsItsOwnScratch() {
+    DecodeScratch outer = DecodeScratch.acquire();
+    DecodeScratch inner = DecodeScratch.acquire();
+    assertNotSame(outer, inner);
+    assertNotSame(outer.row(0, 8), inner.row(0, 8));
+    inner.release();
+    outer.release();
+  }
+}
@@ -0,0 +1,125 @@
+package de.lessvoid.simpleimageloader.type;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lessvoid.simpleimageloader.ImageData;
+import de.lessvoid.simpleimageloader.SimpleImageLoaderConfig;
+import de.lessvoid.simpleimageloader.buffer.DirectBufferAllocator;
+
+/**
+ * Compares the images read directly from their DataBuffer with the same images drawn with Java2D.
+ */
+public class ImageTypeImageIOTest {
+  private static final int WIDTH = 5;
+  private static final int HEIGHT = 3;
+
+  @Test
+  public void testIntARGB() throws Exception {
+    assertSameAsJava2D(BufferedImage.TYPE_INT_ARGB);
+  }
+
+  @Test
+  public void testIntRGB() throws Exception {
+    assertSameAsJava2D(BufferedImage.TYPE_INT_RGB);
+  }
+
+  @Test
+  public void test4ByteABGR() throws Exception {
+    assertSameAsJava2D(BufferedImage.TYPE_4BYTE_ABGR);
+  }
+
+  @Test
+  public void test3ByteBGR() throws Exception {
+    assertSameAsJava2D(BufferedImage.TYPE_3BYTE_BGR);
+  }
+
+  @Test
+  public void testByteGray() throws Exception {
+    assertSameAsJava2D(BufferedImage.TYPE_BYTE_GRAY);
+  }
+
+  @Test
+  public void testTranslucentPixels() throws Exception {
+    // every color with every alpha
+    BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_4BYTE_ABGR);
+    for (int alpha = 0; alpha < 256; alpha++) {
+      for (int color = 0; color < 256; color++) {
+        image.setRGB(color, alpha, alpha << 24 | color << 16 | (255 - color) << 8 | color / 2);
+      }
+    }
+    assertSameAsJava2D(image, new SimpleImageLoaderConfig());
+  }
+
+  private void assertSameAsJava2D(final int type) throws Exception {
+    BufferedImage image = createImage(type);
+    SimpleImageLoaderConfig[] configs = {
+        new SimpleImageLoaderConfig(),
+        new SimpleImageLoaderConfig().flipped(),
+        new SimpleImageLoaderConfig().modeARGB(),
+        new SimpleImageLoaderConfig().forceAlpha(),
+        new SimpleImageLoaderConfig().powerOfTwoSupport(),
+        new SimpleImageLoaderConfig().flipped().modeARGB(),
+        new SimpleImageLoaderConfig().forceAlpha().modeARGB(),
+        new SimpleImageLoaderConfig().flipped().powerOfTwoSupport(),
+        new SimpleImageLoaderConfig().flipped().modeARGB().forceAlpha().powerOfTwoSupport() };
+    for (SimpleImageLoaderConfig config : configs) {
+      assertSameAsJava2D(image, config);
+    }
+  }
+
+  private void assertSameAsJava2D(final BufferedImage image, final SimpleImageLoaderConfig config) throws Exception {
+    ImageTypeImageIO imageType = new ImageTypeImageIO();
+    ImageData direct = imageType.load(config, image, new DirectBufferAllocator());
+    ImageData java2d = imageType.load(config, subImage(image), new DirectBufferAllocator());
+    String message = image.getType() + " " + config;
+    assertEquals(message, java2d.getWidth(), direct.getWidth());
+    assertEquals(message, java2d.getHeight(), direct.getHeight());
+    assertEquals(message, java2d.getPixelFormat(), direct.getPixelFormat());
+    assertArrayEquals(message, data(java2d), data(direct));
+  }
+
+  /**
+   * Random pixels, a quarter of them translucent when the type has alpha.
+   */
+  private BufferedImage createImage(final int type) {
+    BufferedImage image = new BufferedImage(WIDTH, HEIGHT, type);
+    Random random = new Random(type);
+    WritableRaster raster = image.getRaster();
+    for (int y = 0; y < HEIGHT; y++) {
+      for (int x = 0; x < WIDTH; x++) {
+        if (type == BufferedImage.TYPE_BYTE_GRAY) {
+          raster.setSample(x, y, 0, random.nextInt(256));
+        } else {
+          int alpha = random.nextInt(4) == 0 ? random.nextInt(256) : 0xFF;
+          image.setRGB(x, y, alpha << 24 | random.nextInt(0x1000000));
+        }
+      }
+    }
+    return image;
+  }
+
+  /**
+   * The same pixels as a sub image of a larger image. Sub images can't be read from their DataBuffer directly so this
+   * image is drawn with Java2D.
+   */
+  private BufferedImage subImage(final BufferedImage image) {
+    BufferedImage parent = new BufferedImage(image.getWidth() + 1, image.getHeight(), image.getType());
+    parent.getRaster().setRect(1, 0, image.getRaster());
+    return parent.getSubimage(1, 0, image.getWidth(), image.getHeight());
+  }
+
+  private byte[] data(final ImageData imageData) {
+    ByteBuffer buffer = imageData.getData();
+    byte[] data = new byte[buffer.remaining()];
+    buffer.get(data);
+    return data;
+  }
+}
@@ -0,0 +1,296 @@
+package de.lessvoid.simpleimageloader.type;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.junit.Test;
+
+import de.lessvoid.simpleimageloader.ImageData;
+import de.lessvoid.simpleimageloader.ImageInfo;
+import de.lessvoid.simpleimageloader.Padding;
+import de.lessvoid.simpleimageloader.PixelFormat;
+import de.lessvoid.simpleimageloader.SimpleImageLoaderConfig;
+
+/**
+ * Compares the result of ImageTypePNG with ImageTypeImageIO for the different kinds of PNG files.
+ */
+public class ImageTypePNGTest {
+
+  @Test
+  public void testRGB() throws Exception {
+    assertSameAsImageIO(createPNG(BufferedImage.TYPE_INT_RGB, false), new SimpleImageLoaderConfig());
+  }
+
+  @Test
+  public void testRGBForcedAlphaFlippedPowerOfTwo() throws Exception {
+    assertSameAsImageIO(
+        createPNG(BufferedImage.TYPE_INT_RGB, false),
+        new SimpleImageLoaderConfig().forceAlpha().flipped().powerOfTwoSupport());
+  }
+
+  @Test
+  public void testRGBA() throws Exception {
+    assertSameAsImageIO(createPNG(BufferedImage.TYPE_INT_ARGB, false), new SimpleImageLoaderConfig());
+  }
+
+  @Test
+  public void testRGBAModeARGB() throws Exception {
+    assertSameAsImageIO(createPNG(BufferedImage.TYPE_INT_ARGB, false), new SimpleImageLoaderConfig().modeARGB());
+  }
+
+  @Test
+  public void testPremultipliedLinear() throws Exception {
+    SimpleImageLoaderConfig config = new SimpleImageLoaderConfig().premultipliedAlpha().srgbToLinear();
+    assertSameAsImageIO(createPNG(BufferedImage.TYPE_INT_ARGB, false), config);
+    assertSameAsImageIO(createPNG(BufferedImage.TYPE_BYTE_INDEXED, false), config.modeARGB().flipped());
+  }
+
+  @Test
+  public void testGray() throws Exception {
+    assertSameAsImageIO(createPNG(BufferedImage.TYPE_BYTE_GRAY, false), new SimpleImageLoaderConfig());
+  }
+
+  @Test
+  public void testGray16() throws Exception {
+    assertSameAsImageIO(createPNG(BufferedImage.TYPE_USHORT_GRAY, false), new SimpleImageLoaderConfig());
+  }
+
+  @Test
+  public void testPalette() throws Exception {
+    assertSameAsImageIO(createPNG(BufferedImage.TYPE_BYTE_INDEXED, false), new SimpleImageLoaderConfig());
+  }
+
+  @Test
+  public void testPaletteOneBit() throws Exception {
+    assertSameAsImageIO(createPNG(BufferedImage.TYPE_BYTE_BINARY, false), new SimpleImageLoaderConfig().flipped());
+  }
+
+  @Test
+  public void testInterlacedFallsBackToImageIO() throws Exception {
+    assertSameAsImageIO(createPNG(BufferedImage.TYPE_INT_RGB, true), new SimpleImageLoaderConfig());
+  }
+
+  @Test
+  public void testTransparent() throws Exception {
+    BufferedImage image = new BufferedImage(2, 1, BufferedImage.TYPE_INT_RGB);
+    image.setRGB(0, 0, 0xFF00FF);
+    image.setRGB(1, 0, 0x102030);
+    ImageData imageData = new ImageTypePNG().load(
+        new SimpleImageLoaderConfig().transparent(new int[] { 0xFF, 0x00, 0xFF }),
+        new ByteArrayInputStream(encode(image, false)));
+    assertEquals(32, imageData.getBitsPerPixel());
+    assertArrayEquals(new byte[] { (byte) 0xFF, 0, (byte) 0xFF, 0, 0x10, 0x20, 0x30, (byte) 0xFF }, data(imageData));
+  }
+
+  @Test
+  public void testRegion() throws Exception {
+    byte[] png = createPNG(BufferedImage.TYPE_INT_RGB, false);
+    SimpleImageLoaderConfig config = new SimpleImageLoaderConfig().region(3, 4, 20, 9);
+    ImageData imageData = new ImageTypePNG().load(config, new ByteArrayInputStream(png));
+    assertEquals(20, imageData.getWidth());
+    assertEquals(9, imageData.getHeight());
+    assertSameAsImageIO(png, config);
+    assertSameAsImageIO(createPNG(BufferedImage.TYPE_INT_ARGB, false), new SimpleImageLoaderConfig().region(36, 0, 1, 19).flipped());
+    assertSameAsImageIO(createPNG(BufferedImage.TYPE_BYTE_BINARY, false), new SimpleImageLoaderConfig().region(9, 18, 17, 1).powerOfTwoSupport());
+    assertSameAsImageIO(createPNG(BufferedImage.TYPE_INT_RGB, true), new SimpleImageLoaderConfig().region(1, 1, 2, 2).forceAlpha());
+  }
+
+  @Test
+  public void testPixelFormats() throws Exception {
+    byte[][] pngs = new byte[][] {
+        createPNG(BufferedImage.TYPE_INT_RGB, false),
+        createPNG(BufferedImage.TYPE_INT_ARGB, false),
+        createPNG(BufferedImage.TYPE_BYTE_GRAY, false),
+        createPNG(BufferedImage.TYPE_BYTE_INDEXED, false) };
+    for (byte[] png : pngs) {
+      for (PixelFormat format : PixelFormat.values()) {
+        assertSameAsImageIO(png, new SimpleImageLoaderConfig().pixelFormat(format));
+        assertSameAsImageIO(png, new SimpleImageLoaderConfig().pixelFormat(format).region(3, 4, 20, 9).powerOfTwoSupport());
+        CollectingSink.assertStreamSameAsLoad(new ImageTypePNG(), png, new SimpleImageLoaderConfig().pixelFormat(format).flipped(), 4);
+      }
+    }
+
+    // a gray image keeps its values as luminance and as alpha
+    byte[] gray = createPNG(BufferedImage.TYPE_BYTE_GRAY, false);
+    ImageData rgb = new ImageTypePNG().load(new SimpleImageLoaderConfig(), new ByteArrayInputStream(gray));
+    for (PixelFormat format : new PixelFormat[] { PixelFormat.L8, PixelFormat.A8 }) {
+      ImageData packed = new ImageTypePNG().load(new SimpleImageLoaderConfig().pixelFormat(format), new ByteArrayInputStream(gray));
+      assertEquals(format, packed.getPixelFormat());
+      assertEquals(8, packed.getBitsPerPixel());
+      byte[] values = data(packed);
+      byte[] colors = data(rgb);
+      for (int i = 0; i < values.length; i++) {
+        assertEquals(colors[i * 3], values[i]);
+      }
+    }
+  }
+
+  @Test
+  public void testStream() throws Exception {
+    byte[][] pngs = new byte[][] {
+        createPNG(BufferedImage.TYPE_INT_RGB, false),
+        createPNG(BufferedImage.TYPE_INT_ARGB, false),
+        createPNG(BufferedImage.TYPE_BYTE_BINARY, false),
+        createPNG(BufferedImage.TYPE_INT_RGB, true) };
+    for (byte[] png : pngs) {
+      for (int bandHeight : new int[] { 1, 5, 19, 64 }) {
+        CollectingSink.assertStreamSameAsLoad(new ImageTypePNG(), png, new SimpleImageLoaderConfig(), bandHeight);
+        CollectingSink.assertStreamSameAsLoad(new ImageTypePNG(), png, new SimpleImageLoaderConfig().flipped().modeARGB(), bandHeight);
+        CollectingSink.assertStreamSameAsLoad(new ImageTypePNG(), png, new SimpleImageLoaderConfig().region(3, 4, 20, 9).powerOfTwoSupport(), bandHeight);
+      }
+    }
+  }
+
+  @Test
+  public void testSubsample() throws Exception {
+    byte[] rgb = createPNG(BufferedImage.TYPE_INT_RGB, false);
+    byte[] palette = createPNG(BufferedImage.TYPE_BYTE_INDEXED, false);
+    for (int factor = 2; factor <= 5; factor++) {
+      assertSameAsImageIO(rgb, new SimpleImageLoaderConfig().subsample(factor));
+      assertSameAsImageIO(palette, new SimpleImageLoaderConfig().subsample(factor).flipped());
+    }
+    // ImageIO only supports the box filter for a factor of 2
+    assertSameAsImageIO(rgb, new SimpleImageLoaderConfig().subsample(2).boxFilter().forceAlpha());
+    assertSameAsImageIO(palette, new SimpleImageLoaderConfig().subsample(2).boxFilter().flipped());
+    for (int factor = 3; factor <= 4; factor++) {
+      assertArrayEquals(
+          data(new ImageTypeImageIO().load(new SimpleImageLoaderConfig().subsample(factor), new ByteArrayInputStream(rgb))),
+          data(new ImageTypeImageIO().load(
+              new SimpleImageLoaderConfig().subsample(factor).boxFilter(), new ByteArrayInputStream(rgb))));
+    }
+    assertSameAsImageIO(rgb, new SimpleImageLoaderConfig().region(3, 4, 20, 9).maxDimension(7).powerOfTwoSupport());
+
+    ImageData limited = new ImageTypePNG().load(new SimpleImageLoaderConfig().maxDimension(16), new ByteArrayInputStream(rgb));
+    assertEquals(13, limited.getWidth());
+    assertEquals(7, limited.getHeight());
+    CollectingSink.assertStreamSameAsLoad(new ImageTypePNG(), rgb, new SimpleImageLoaderConfig().subsample(2).boxFilter(), 3);
+  }
+
+  @Test
+  public void testPadding() throws Exception {
+    byte[] png = createPNG(BufferedImage.TYPE_INT_RGB, false);
+    for (Padding padding : Padding.values()) {
+      assertSameAsImageIO(png, new SimpleImageLoaderConfig().powerOfTwoSupport().padding(padding));
+      assertSameAsImageIO(png, new SimpleImageLoaderConfig().flipped().sizeMultipleOf(8).padding(padding));
+      assertSameAsImageIO(png, new SimpleImageLoaderConfig().subsample(2).rowAlignment(16).padding(padding));
+    }
+    assertSameAsImageIO(png, new SimpleImageLoaderConfig().pixelFormat(PixelFormat.L8).rowAlignment(4));
+  }
+
+  @Test
+  public void testReadInfo() throws Exception {
+    int[] types = new int[] {
+        BufferedImage.TYPE_INT_RGB,
+        BufferedImage.TYPE_INT_ARGB,
+        BufferedImage.TYPE_BYTE_GRAY,
+        BufferedImage.TYPE_USHORT_GRAY,
+        BufferedImage.TYPE_BYTE_INDEXED,
+        BufferedImage.TYPE_BYTE_BINARY };
+    for (int type : types) {
+      byte[] png = createPNG(type, false);
+      ImageInfo expected = ImageTypeSupport.readInfoImageIO(new ByteArrayInputStream(png));
+      ImageInfo actual = new ImageTypePNG().readInfo(new ByteArrayInputStream(png));
+      assertEquals(expected.toString(), actual.toString());
+    }
+  }
+
+  @Test
+  public void testReadInfoTransparencyChunk() throws Exception {
+    ImageInfo info = new ImageTypePNG().readInfo(new ByteArrayInputStream(withTransparencyChunk(createPNG(BufferedImage.TYPE_INT_RGB, false))));
+    assertEquals(37, info.getWidth());
+    assertEquals(19, info.getHeight());
+    assertEquals(24, info.getBitsPerPixel());
+    assertTrue(info.hasAlpha());
+  }
+
+  @Test
+  public void testTransparencyChunk() throws Exception {
+    // every other pixel has the color 1/2/3 of the tRNS chunk
+    BufferedImage image = new BufferedImage(37, 19, BufferedImage.TYPE_INT_RGB);
+    Random random = new Random(19);
+    for (int y = 0; y < image.getHeight(); y++) {
+      for (int x = 0; x < image.getWidth(); x++) {
+        image.setRGB(x, y, (x + y) % 2 == 0 ? 0x010203 : random.nextInt(0x1000000));
+      }
+    }
+    byte[] png = withTransparencyChunk(encode(image, false));
+    ImageData imageData = new ImageTypePNG().load(new SimpleImageLoaderConfig(), new ByteArrayInputStream(png));
+    assertEquals(PixelFormat.RGBA, imageData.getPixelFormat());
+    assertEquals(0, imageData.getData().getInt(0));
+    assertSameAsImageIO(png, new SimpleImageLoaderConfig());
+    assertSameAsImageIO(png, new SimpleImageLoaderConfig().flipped().modeARGB());
+    assertSameAsImageIO(png, new SimpleImageLoaderConfig().subsample(2).boxFilter());
+  }
+
+  private void assertSameAsImageIO(final byte[] png, final SimpleImageLoaderConfig config) throws Exception {
+    ImageData expected = new ImageTypeImageIO().load(config, new ByteArrayInputStream(png));
+    ImageData actual = new ImageTypePNG().load(config, new ByteArrayInputStream(png));
+    assertEquals(expected.getWidth(), actual.getWidth());
+    assertEquals(expected.getHeight(), actual.getHeight());
+    assertEquals(expected.getOriginalWidth(), actual.getOriginalWidth());
+    assertEquals(expected.getOriginalHeight(), actual.getOriginalHeight());
+    assertEquals(expected.getBitsPerPixel(), actual.getBitsPerPixel());
+    assertEquals(expected.getPixelFormat(), actual.getPixelFormat());
+    assertArrayEquals(data(expected), data(actual));
+  }
+
+  private byte[] createPNG(final int type, final boolean interlaced) throws Exception {
+    BufferedImage image = new BufferedImage(37, 19, type);
+    Random random = new Random(type);
+    for (int y = 0; y < image.getHeight(); y++) {
+      for (int x = 0; x < image.getWidth(); x++) {
+        // only fully opaque or fully transparent pixels - Java2D rounds partially transparent colors
+        int alpha = random.nextInt(4) == 0 ? 0 : 0xFF;
+        image.setRGB(x, y, (alpha << 24) | (x * 7 << 16) | (y * 13 << 8) | random.nextInt(256));
+      }
+    }
+    return encode(image, interlaced);
+  }
+
+  private byte[] encode(final BufferedImage image, final boolean interlaced) throws Exception {
+    ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+    ImageWriteParam param = writer.getDefaultWriteParam();
+    param.setProgressiveMode(interlaced ? ImageWriteParam.MODE_DEFAULT : ImageWriteParam.MODE_DISABLED);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageOutputStream imageOut = ImageIO.createImageOutputStream(out);
+    try {
+      writer.setOutput(imageOut);
+      writer.write(null, new IIOImage(image, null, null), param);
+    } finally {
+      imageOut.close();
+      writer.dispose();
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Inserts a tRNS chunk (with a wrong CRC that nobody checks) for an RGB image right behind the IHDR chunk.
+   */
+  private byte[] withTransparencyChunk(final byte[] png) {
+    byte[] chunk = new byte[] { 0, 0, 0, 6, 't', 'R', 'N', 'S', 0, 1, 0, 2, 0, 3, 0, 0, 0, 0 };
+    int headerEnd = 8 + 8 + 13 + 4;
+    byte[] result = new byte[png.length + chunk.length];
+    System.arraycopy(png, 0, result, 0, headerEnd);
+    System.arraycopy(chunk, 0, result, headerEnd, chunk.length);
+    System.arraycopy(png, headerEnd, result, headerEnd + chunk.length, png.length - headerEnd);
+    return result;
+  }
+
+  private byte[] data(final ImageData imageData) {
+    byte[] data = new byte[imageData.getData().limit()];
+    imageData.getData().duplicate().get(data);
+    return data;
+  }
+}
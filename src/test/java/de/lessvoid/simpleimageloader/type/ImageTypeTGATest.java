@@ -0,0 +1,434 @@
+package de.lessvoid.simpleimageloader.type;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lessvoid.simpleimageloader.ImageData;
+import de.lessvoid.simpleimageloader.Padding;
+import de.lessvoid.simpleimageloader.PixelFormat;
+import de.lessvoid.simpleimageloader.SimpleImageLoaderConfig;
+
+/**
+ * Compares run length encoded TGAs with the same image stored uncompressed.
+ */
+public class ImageTypeTGATest {
+  private static final int TYPE_COLOR_MAPPED = 1;
+  private static final int TYPE_TRUECOLOR = 2;
+  private static final int TYPE_TRUECOLOR_RLE = 10;
+
+  @Test
+  public void testRunLengthEncoded24() throws Exception {
+    byte[] pixels = createPixels(37, 11, 3);
+    assertSameAsUncompressed(37, 11, 24, pixels, new SimpleImageLoaderConfig());
+    assertSameAsUncompressed(37, 11, 24, pixels, new SimpleImageLoaderConfig().forceAlpha().powerOfTwoSupport());
+  }
+
+  @Test
+  public void testRunLengthEncoded32() throws Exception {
+    byte[] pixels = createPixels(19, 23, 4);
+    assertSameAsUncompressed(19, 23, 32, pixels, new SimpleImageLoaderConfig().flipped());
+    assertSameAsUncompressed(19, 23, 32, pixels, new SimpleImageLoaderConfig().modeARGB().transparent(new int[] { 0, 0, 0 }));
+    assertSameAsUncompressed(19, 23, 32, pixels, new SimpleImageLoaderConfig().premultipliedAlpha().srgbToLinear());
+  }
+
+  @Test
+  public void testColorMapIsSkipped() throws Exception {
+    byte[] pixels = createPixels(5, 3, 3);
+    byte[] expected = data(load(tga(TYPE_TRUECOLOR, 5, 3, 24, pixels, 0), new SimpleImageLoaderConfig()));
+    byte[] withColorMap = tga(TYPE_TRUECOLOR, 5, 3, 24, pixels, 7);
+    assertArrayEquals(expected, data(load(withColorMap, new SimpleImageLoaderConfig())));
+    assertEquals(5, new ImageTypeTGA().readInfo(new ByteArrayInputStream(withColorMap)).getWidth());
+  }
+
+  @Test
+  public void testCanDecode() throws Exception {
+    ImageTypeTGA type = new ImageTypeTGA();
+    assertTrue(type.canDecode(tga(TYPE_TRUECOLOR, 5, 3, 24, new byte[0], 0)));
+    assertTrue(type.canDecode(tga(TYPE_TRUECOLOR_RLE, 5, 3, 32, new byte[0], 7)));
+    assertFalse(type.canDecode(tga(TYPE_COLOR_MAPPED, 5, 3, 24, new byte[0], 0)));
+    assertFalse(type.canDecode(tga(TYPE_TRUECOLOR, 5, 3, 16, new byte[0], 0)));
+    assertFalse(type.canDecode(tga(TYPE_TRUECOLOR, 0, 3, 24, new byte[0], 0)));
+    assertFalse(type.canDecode(new byte[] { 0, 0, 2 }));
+    assertFalse(type.canDecode("GIF89a and some more bytes".getBytes("US-ASCII")));
+  }
+
+  @Test
+  public void testUnsupportedTypeFailsFast() throws Exception {
+    // just the header - the pixel data must not be read at all
+    byte[] header = new byte[18];
+    System.arraycopy(tga(TYPE_COLOR_MAPPED, 64, 64, 24, new byte[0], 0), 0, header, 0, header.length);
+    try {
+      load(header, new SimpleImageLoaderConfig());
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("type 1"));
+      return;
+    }
+    throw new AssertionError("color mapped TGA should fail");
+  }
+
+  @Test
+  public void testRegion() throws Exception {
+    byte[] pixels = createPixels(37, 11, 3);
+    byte[][] tgas = new byte[][] {
+        tga(TYPE_TRUECOLOR, 37, 11, 24, pixels, 0),
+        topDown(tga(TYPE_TRUECOLOR, 37, 11, 24, pixels, 0)),
+        tga(TYPE_TRUECOLOR_RLE, 37, 11, 24, encode(pixels, 3), 0) };
+    for (byte[] tga : tgas) {
+      assertRegion(tga, 0, 0, 37, 11);
+      assertRegion(tga, 5, 2, 7, 4);
+      assertRegion(tga, 36, 10, 1, 1);
+      assertRegion(tga, 0, 3, 37, 8);
+    }
+  }
+
+  @Test
+  public void testRegionFlippedPowerOfTwo() throws Exception {
+    byte[] tga = tga(TYPE_TRUECOLOR, 37, 11, 24, createPixels(37, 11, 3), 0);
+    ImageData region = load(tga, new SimpleImageLoaderConfig().region(5, 2, 7, 4).flipped().powerOfTwoSupport());
+    ImageData expected = crop(load(tga, new SimpleImageLoaderConfig().flipped()), 5, 11 - 2 - 4, 7, 4);
+    assertEquals(8, region.getWidth());
+    assertEquals(4, region.getHeight());
+    assertEquals(7, region.getOriginalWidth());
+    for (int y = 0; y < 4; y++) {
+      byte[] row = new byte[7 * 3];
+      region.getData().position(y * 8 * 3);
+      region.getData().get(row);
+      byte[] expectedRow = new byte[7 * 3];
+      expected.getData().position(y * 7 * 3);
+      expected.getData().get(expectedRow);
+      assertArrayEquals(expectedRow, row);
+    }
+  }
+
+  @Test
+  public void testStream() throws Exception {
+    byte[] pixels = createPixels(37, 11, 3);
+    byte[][] tgas = new byte[][] {
+        tga(TYPE_TRUECOLOR, 37, 11, 24, pixels, 0),
+        topDown(tga(TYPE_TRUECOLOR, 37, 11, 24, pixels, 0)),
+        tga(TYPE_TRUECOLOR_RLE, 37, 11, 24, encode(pixels, 3), 0) };
+    for (byte[] tga : tgas) {
+      for (int bandHeight : new int[] { 1, 4, 11, 64 }) {
+        CollectingSink.assertStreamSameAsLoad(new ImageTypeTGA(), tga, new SimpleImageLoaderConfig(), bandHeight);
+        CollectingSink.assertStreamSameAsLoad(new ImageTypeTGA(), tga, new SimpleImageLoaderConfig().flipped().forceAlpha(), bandHeight);
+        CollectingSink.assertStreamSameAsLoad(new ImageTypeTGA(), tga, new SimpleImageLoaderConfig().region(5, 2, 7, 9).powerOfTwoSupport(), bandHeight);
+      }
+    }
+  }
+
+  @Test
+  public void testPixelFormats() throws Exception {
+    byte[][] tgas = new byte[][] {
+        tga(TYPE_TRUECOLOR, 37, 11, 24, createPixels(37, 11, 3), 0),
+        topDown(tga(TYPE_TRUECOLOR, 37, 11, 32, createPixels(37, 11, 4), 0)),
+        tga(TYPE_TRUECOLOR_RLE, 37, 11, 24, encode(createPixels(37, 11, 3), 3), 0) };
+    for (byte[] tga : tgas) {
+      boolean hasAlpha = tga[16] == 32;
+      for (PixelFormat format : PixelFormat.values()) {
+        SimpleImageLoaderConfig config = new SimpleImageLoaderConfig().flipped().powerOfTwoSupport();
+        ImageData rgba = load(tga, new SimpleImageLoaderConfig(config).forceAlpha());
+        ImageData actual = load(tga, new SimpleImageLoaderConfig(config).pixelFormat(format));
+        assertEquals(format, actual.getPixelFormat());
+        assertEquals(format.getBitsPerPixel(), actual.getBitsPerPixel());
+        assertEquals(64, actual.getWidth());
+
+        // the same as converting the RGBA result including the power of two padding
+        byte[] expected = new byte[actual.getData().limit()];
+        byte[] rgbaData = data(rgba);
+        byte[] row = new byte[64 * format.getBitsPerPixel() / 8];
+        for (int y = 0; y < 16; y++) {
+          format.pack(rgbaData, y * 64 * 4, row, 64, hasAlpha);
+          System.arraycopy(row, 0, expected, y * row.length, row.length);
+        }
+        assertArrayEquals(format.name(), expected, data(actual));
+        CollectingSink.assertStreamSameAsLoad(new ImageTypeTGA(), tga, new SimpleImageLoaderConfig().pixelFormat(format), 4);
+      }
+    }
+  }
+
+  @Test
+  public void testSubsample() throws Exception {
+    byte[] pixels = createPixels(37, 11, 3);
+    byte[][] tgas = new byte[][] {
+        tga(TYPE_TRUECOLOR, 37, 11, 24, pixels, 0),
+        topDown(tga(TYPE_TRUECOLOR, 37, 11, 24, pixels, 0)),
+        tga(TYPE_TRUECOLOR_RLE, 37, 11, 24, encode(pixels, 3), 0) };
+    for (byte[] tga : tgas) {
+      ImageData full = load(tga, new SimpleImageLoaderConfig());
+      for (int factor = 2; factor <= 4; factor++) {
+        assertSubsampled(full, factor, false, load(tga, new SimpleImageLoaderConfig().subsample(factor)));
+        assertSubsampled(full, factor, true, load(tga, new SimpleImageLoaderConfig().subsample(factor).boxFilter()));
+      }
+      // 37 needs a factor of 4 to fit into 10 pixels
+      assertSubsampled(full, 4, false, load(tga, new SimpleImageLoaderConfig().maxDimension(10)));
+      assertSubsampled(full, 5, false, load(tga, new SimpleImageLoaderConfig().maxDimension(10).subsample(5)));
+      assertSubsampled(crop(full, 5, 2, 7, 4), 2, true,
+          load(tga, new SimpleImageLoaderConfig().region(5, 2, 7, 4).subsample(2).boxFilter()));
+      CollectingSink.assertStreamSameAsLoad(new ImageTypeTGA(), tga, new SimpleImageLoaderConfig().subsample(3), 2);
+    }
+  }
+
+  @Test
+  public void testBoxFilterWeightsAlpha() throws Exception {
+    // BGRA: an opaque red pixel with three transparent green ones and a transparent white block
+    byte[] pixels = new byte[] {
+        0, 0, (byte) 255, (byte) 255, 0, (byte) 255, 0, 0, -1, -1, -1, 0, -1, -1, -1, 0,
+        0, (byte) 255, 0, 0, 0, (byte) 255, 0, 0, -1, -1, -1, 0, -1, -1, -1, 0 };
+    byte[] tga = tga(TYPE_TRUECOLOR, 4, 2, 32, pixels, 0);
+    ImageData image = load(tga, new SimpleImageLoaderConfig().subsample(2).boxFilter());
+    assertArrayEquals(new byte[] { (byte) 255, 0, 0, 64, 0, 0, 0, 0 }, data(image));
+  }
+
+  @Test
+  public void testPadding() throws Exception {
+    byte[] pixels = createPixels(5, 3, 3);
+    byte[] tga = tga(TYPE_TRUECOLOR, 5, 3, 24, pixels, 0);
+    ImageData image = load(tga, new SimpleImageLoaderConfig());
+    ImageData flipped = load(tga, new SimpleImageLoaderConfig().flipped());
+    for (Padding padding : Padding.values()) {
+      assertPadded(image, padding, load(tga, new SimpleImageLoaderConfig().powerOfTwoSupport().padding(padding)));
+      assertPadded(flipped, padding, load(tga, new SimpleImageLoaderConfig().flipped().sizeMultipleOf(4).padding(padding)));
+    }
+  }
+
+  @Test
+  public void testSizeMultipleAndRowAlignment() throws Exception {
+    byte[] tga = tga(TYPE_TRUECOLOR, 5, 3, 24, createPixels(5, 3, 3), 0);
+    ImageData multiple = load(tga, new SimpleImageLoaderConfig().sizeMultipleOf(4));
+    assertEquals(8, multiple.getWidth());
+    assertEquals(4, multiple.getHeight());
+
+    // 3 bytes per pixel need a width that is a multiple of 4 to get rows that are a multiple of 4 bytes
+    ImageData aligned = load(tga, new SimpleImageLoaderConfig().rowAlignment(4));
+    assertEquals(8, aligned.getWidth());
+    assertEquals(3, aligned.getHeight());
+    assertEquals(5, aligned.getOriginalWidth());
+
+    // 4 bytes per pixel are aligned already
+    assertEquals(5, load(tga, new SimpleImageLoaderConfig().forceAlpha().rowAlignment(4)).getWidth());
+    assertEquals(16, load(tga, new SimpleImageLoaderConfig().forceAlpha().rowAlignment(64)).getWidth());
+    assertEquals(16, load(tga, new SimpleImageLoaderConfig().powerOfTwoSupport().sizeMultipleOf(16)).getWidth());
+  }
+
+  @Test(expected = IOException.class)
+  public void testRegionOutsideOfImage() throws Exception {
+    load(tga(TYPE_TRUECOLOR, 5, 3, 24, createPixels(5, 3, 3), 0), new SimpleImageLoaderConfig().region(3, 0, 3, 1));
+  }
+
+  /**
+   * Checks the image area of padded against image and the padding against what the Padding should have written.
+   */
+  private void assertPadded(final ImageData image, final Padding padding, final ImageData padded) {
+    int perPixel = image.getBitsPerPixel() / 8;
+    byte[] source = data(image);
+    byte[] actual = data(padded);
+    for (int y = 0; y < padded.getHeight(); y++) {
+      for (int x = 0; x < padded.getWidth(); x++) {
+        boolean inside = x < image.getWidth() && y < image.getHeight();
+        if (!inside && padding == Padding.NONE && y >= image.getHeight()) {
+          continue;
+        }
+        int sourceX = x;
+        int sourceY = y;
+        if (padding == Padding.CLAMP) {
+          sourceX = Math.min(x, image.getWidth() - 1);
+          sourceY = Math.min(y, image.getHeight() - 1);
+        } else if (padding == Padding.WRAP) {
+          sourceX = x % image.getWidth();
+          sourceY = y % image.getHeight();
+        }
+        for (int c = 0; c < perPixel; c++) {
+          int expected = 0;
+          if (inside || padding == Padding.CLAMP || padding == Padding.WRAP) {
+            expected = source[(sourceY * image.getWidth() + sourceX) * perPixel + c];
+          }
+          assertEquals(padding + " at " + x + "," + y, expected, actual[(y * padded.getWidth() + x) * perPixel + c]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Compares the subsampled image with the full image shrunk by picking or averaging the pixels of each block.
+   */
+  private void assertSubsampled(final ImageData full, final int factor, final boolean box, final ImageData actual) {
+    byte[] source = data(full);
+    int width = full.getWidth();
+    int height = full.getHeight();
+    int subWidth = (width + factor - 1) / factor;
+    int subHeight = (height + factor - 1) / factor;
+    byte[] expected = new byte[subWidth * subHeight * 3];
+    for (int y = 0; y < subHeight; y++) {
+      for (int x = 0; x < subWidth; x++) {
+        for (int c = 0; c < 3; c++) {
+          int sum = 0;
+          int count = 0;
+          int size = box ? factor : 1;
+          for (int by = y * factor; by < Math.min(y * factor + size, height); by++) {
+            for (int bx = x * factor; bx < Math.min(x * factor + size, width); bx++) {
+              sum += source[(by * width + bx) * 3 + c] & 0xFF;
+              count++;
+            }
+          }
+          expected[(y * subWidth + x) * 3 + c] = (byte) ((sum + count / 2) / count);
+        }
+      }
+    }
+    assertEquals(subWidth, actual.getWidth());
+    assertEquals(subHeight, actual.getHeight());
+    assertArrayEquals(expected, data(actual));
+  }
+
+  private void assertRegion(final byte[] tga, final int x, final int y, final int width, final int height) throws Exception {
+    ImageData expected = crop(load(tga, new SimpleImageLoaderConfig()), x, y, width, height);
+    ImageData actual = load(tga, new SimpleImageLoaderConfig().region(x, y, width, height));
+    assertEquals(width, actual.getWidth());
+    assertEquals(height, actual.getHeight());
+    assertArrayEquals(data(expected), data(actual));
+  }
+
+  private ImageData crop(final ImageData imageData, final int x, final int y, final int width, final int height) {
+    int perPixel = imageData.getBitsPerPixel() / 8;
+    ByteBuffer result = ByteBuffer.allocate(width * height * perPixel);
+    byte[] row = new byte[width * perPixel];
+    for (int i = 0; i < height; i++) {
+      imageData.getData().position(((y + i) * imageData.getWidth() + x) * perPixel);
+      imageData.getData().get(row);
+      result.put(row);
+    }
+    result.flip();
+    return new ImageData(width, height, width, height, imageData.getBitsPerPixel(), result);
+  }
+
+  /**
+   * Turns the bottom up image into a top down image that contains the same picture.
+   */
+  private byte[] topDown(final byte[] tga) {
+    int width = (tga[12] & 0xFF) | (tga[13] & 0xFF) << 8;
+    int height = (tga[14] & 0xFF) | (tga[15] & 0xFF) << 8;
+    int rowSize = width * (tga[16] & 0xFF) / 8;
+    byte[] result = tga.clone();
+    result[17] |= 0x20;
+    for (int y = 0; y < height; y++) {
+      System.arraycopy(tga, 18 + y * rowSize, result, 18 + (height - 1 - y) * rowSize, rowSize);
+    }
+    return result;
+  }
+
+  private void assertSameAsUncompressed(
+      final int width,
+      final int height,
+      final int depth,
+      final byte[] pixels,
+      final SimpleImageLoaderConfig config) throws Exception {
+    ImageData expected = load(tga(TYPE_TRUECOLOR, width, height, depth, pixels, 0), config);
+    byte[] compressed = tga(TYPE_TRUECOLOR_RLE, width, height, depth, encode(pixels, depth / 8), 0);
+    assertTrue(compressed.length < 18 + pixels.length);
+    ImageData actual = load(compressed, config);
+    assertEquals(expected.getWidth(), actual.getWidth());
+    assertEquals(expected.getHeight(), actual.getHeight());
+    assertEquals(expected.getBitsPerPixel(), actual.getBitsPerPixel());
+    assertArrayEquals(data(expected), data(actual));
+  }
+
+  private ImageData load(final byte[] tga, final SimpleImageLoaderConfig config) throws Exception {
+    return new ImageTypeTGA().load(config, new ByteArrayInputStream(tga));
+  }
+
+  /**
+   * Rows of runs and noise that don't line up with the scanlines so that packets continue in the next one.
+   */
+  private byte[] createPixels(final int width, final int height, final int perPixel) {
+    Random random = new Random(width * height);
+    byte[] pixels = new byte[width * height * perPixel];
+    for (int i = 0; i < width * height; ) {
+      int length = 1 + random.nextInt(2 * width);
+      boolean run = random.nextBoolean();
+      byte[] pixel = new byte[perPixel];
+      random.nextBytes(pixel);
+      for (int j = 0; j < length && i < width * height; j++, i++) {
+        if (!run) {
+          random.nextBytes(pixel);
+        }
+        System.arraycopy(pixel, 0, pixels, i * perPixel, perPixel);
+      }
+    }
+    return pixels;
+  }
+
+  private byte[] encode(final byte[] pixels, final int perPixel) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int count = pixels.length / perPixel;
+    int i = 0;
+    while (i < count) {
+      int run = 1;
+      while (i + run < count && run < 128 && samePixel(pixels, i, i + run, perPixel)) {
+        run++;
+      }
+      if (run > 1) {
+        out.write(0x80 | (run - 1));
+        out.write(pixels, i * perPixel, perPixel);
+        i += run;
+        continue;
+      }
+      int raw = 1;
+      while (i + raw < count && raw < 128 &&
+          (i + raw + 1 >= count || !samePixel(pixels, i + raw, i + raw + 1, perPixel))) {
+        raw++;
+      }
+      out.write(raw - 1);
+      out.write(pixels, i * perPixel, raw * perPixel);
+      i += raw;
+    }
+    return out.toByteArray();
+  }
+
+  private boolean samePixel(final byte[] pixels, final int a, final int b, final int perPixel) {
+    for (int c = 0; c < perPixel; c++) {
+      if (pixels[a * perPixel + c] != pixels[b * perPixel + c]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private byte[] tga(
+      final int type,
+      final int width,
+      final int height,
+      final int depth,
+      final byte[] data,
+      final int colorMapLength) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(0);
+    out.write(colorMapLength > 0 ? 1 : 0);
+    out.write(type);
+    out.write(new byte[] { 0, 0, (byte) colorMapLength, 0, 24 }, 0, 5);
+    out.write(new byte[4], 0, 4);
+    out.write(width);
+    out.write(width >> 8);
+    out.write(height);
+    out.write(height >> 8);
+    out.write(depth);
+    out.write(0);
+    out.write(new byte[colorMapLength * 3], 0, colorMapLength * 3);
+    out.write(data, 0, data.length);
+    return out.toByteArray();
+  }
+
+  private byte[] data(final ImageData imageData) {
+    byte[] data = new byte[imageData.getData().limit()];
+    imageData.getData().duplicate().get(data);
+    return data;
+  }
+}
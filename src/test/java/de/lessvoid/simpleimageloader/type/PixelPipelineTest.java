@@ -0,0 +1,71 @@
+package de.lessvoid.simpleimageloader.type;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import de.lessvoid.simpleimageloader.PixelFormat;
+import de.lessvoid.simpleimageloader.SimpleImageLoaderConfig;
+
+public class PixelPipelineTest {
+  private static final byte[] BGRA = new byte[] {
+      10, 20, 30, (byte) 255,
+      (byte) 255, (byte) 255, (byte) 255, (byte) 128,
+      1, 2, 3, 0,
+      30, 20, 10, 64 };
+
+  @Test
+  public void testSwizzleAndColorKey() {
+    PixelPipeline pipeline = new PixelPipeline(
+        new SimpleImageLoaderConfig().transparent(new int[] { 10, 20, 30 }), 4, true, true);
+    assertEquals(PixelFormat.RGBA, pipeline.getPixelFormat());
+    byte[] row = new byte[16];
+    pipeline.apply(BGRA, 0, row, 4);
+    // the transparent color keeps its color, fully transparent pixels become black
+    assertArrayEquals(new byte[] {
+        30, 20, 10, (byte) 255,
+        (byte) 255, (byte) 255, (byte) 255, (byte) 128,
+        0, 0, 0, 0,
+        10, 20, 30, 0 }, row);
+  }
+
+  @Test
+  public void testPremultipliedModeARGB() {
+    PixelPipeline pipeline = new PixelPipeline(new SimpleImageLoaderConfig().premultipliedAlpha().modeARGB(), 4, true, true);
+    assertEquals(PixelFormat.BGRA, pipeline.getPixelFormat());
+    byte[] row = new byte[16];
+    pipeline.apply(BGRA, 0, row, 4);
+    assertArrayEquals(new byte[] {
+        10, 20, 30, (byte) 255,
+        (byte) 128, (byte) 128, (byte) 128, (byte) 128,
+        0, 0, 0, 0,
+        8, 5, 3, 64 }, row);
+  }
+
+  @Test
+  public void testLinear() {
+    PixelPipeline pipeline = new PixelPipeline(new SimpleImageLoaderConfig().srgbToLinear(), 3, false, false);
+    assertEquals(PixelFormat.RGB, pipeline.getPixelFormat());
+    byte[] row = new byte[6];
+    pipeline.apply(new byte[] { 0, (byte) 128, (byte) 255, (byte) 188, 10, 50 }, 0, row, 2);
+    assertArrayEquals(new byte[] { 0, 55, (byte) 255, (byte) 128, 1, 8 }, row);
+  }
+
+  @Test
+  public void testOffsetAndPackedFormat() {
+    PixelPipeline pipeline = new PixelPipeline(
+        new SimpleImageLoaderConfig().pixelFormat(PixelFormat.LA88).premultipliedAlpha(), 4, true, true);
+    assertEquals(16, pipeline.getBitsPerPixel());
+    byte[] row = new byte[4];
+    pipeline.apply(BGRA, 4, row, 2);
+    assertArrayEquals(new byte[] { (byte) 128, (byte) 128, 0, 0 }, row);
+  }
+
+  @Test
+  public void testFlipped() {
+    assertEquals(2, new PixelPipeline(new SimpleImageLoaderConfig(), 3, false, false).targetRow(2, 5));
+    assertEquals(2, new PixelPipeline(new SimpleImageLoaderConfig().flipped(), 3, false, false).targetRow(2, 5));
+    assertEquals(4, new PixelPipeline(new SimpleImageLoaderConfig().flipped(), 3, false, false).targetRow(0, 5));
+  }
+}
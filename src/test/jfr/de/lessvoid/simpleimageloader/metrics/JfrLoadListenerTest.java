@@ -0,0 +1,45 @@
+package de.lessvoid.simpleimageloader.metrics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+import de.lessvoid.simpleimageloader.SimpleImageLoader;
+
+public class JfrLoadListenerTest {
+
+  @Test
+  public void testJfrEvents() throws Exception {
+    Path file = Files.createTempFile("loads", ".jfr");
+    try {
+      LoadRecorder recorder = new LoadRecorder();
+      SimpleImageLoader loader = new SimpleImageLoader();
+      loader.setLoadListener(new JfrLoadListener(recorder));
+
+      Recording recording = new Recording();
+      recording.enable("de.lessvoid.simpleimageloader.Load");
+      recording.start();
+      loader.load("demo.png", JfrLoadListenerTest.class.getResourceAsStream("/demo.png"));
+      recording.stop();
+      recording.dump(file);
+      recording.close();
+
+      List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+      assertEquals(1, events.size());
+      assertEquals("demo.png", events.get(0).getString("name"));
+      assertEquals("ImageTypePNG", events.get(0).getString("format"));
+      assertEquals(11 * 5 * 3, events.get(0).getLong("outputBytes"));
+      assertEquals(1, recorder.getAll().getCount());
+    } finally {
+      Files.delete(file);
+    }
+  }
+}